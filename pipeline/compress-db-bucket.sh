@@ -0,0 +1,11 @@
+#!/bin/bash
+# compress-db-bucket.sh: creates a copy of a bucket of database-chunks,
+# with the sequence-files gzip-compressed ( for instance 'nt_50M.00.nsq.gz' )
+# usage: ./compress-db-bucket.sh gs://nt_50mb_chunks gs://nt_50mb_chunks_gz [--threads N] [nsq ...]
+
+if [ $# -lt 2 ] ; then
+    echo "Usage: $0 <src-bucket-url> <dst-bucket-url> [--threads N] [extension ...]"
+    exit 0
+fi
+
+java -cp ./target/sparkblast-1-jar-with-dependencies.jar gov.nih.nlm.ncbi.blastjni.BC_COMPRESS_BUCKET $*
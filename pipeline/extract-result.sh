@@ -0,0 +1,13 @@
+#!/bin/bash
+# extract-result.sh: extracts one result from the segments of the result-log,
+# written if the results-layout is 'segments' ( report/results.NNNNNN.seg )
+# usage: ./extract-result.sh report RID [asn1|txt|errors|chunks|tabular|json] [out-file]
+#        ./extract-result.sh report --list
+
+if [ $# -lt 2 ] ; then
+    echo "Usage: $0 <report-dir> <request-id> [asn1|txt|errors|chunks|tabular|json] [out-file]"
+    echo "       $0 <report-dir> --list"
+    exit 0
+fi
+
+java -cp ./target/sparkblast-1-jar-with-dependencies.jar gov.nih.nlm.ncbi.blastjni.BC_RESULT_LOG $*
@@ -5,14 +5,57 @@ import pandas as pd
 import numpy as np
 from itertools import islice
 import argparse
+import gzip
+import json
 import os
+import struct
 
-def parse(filename):
-    """Parse the txt file for a single BLAST RID and report full and chunk
-    trun times, worker nodes where search was done, and time stamps.
+def open_text(filename):
+    """Open a report file, gzip-compressed if it ends with .gz"""
+    if filename.endswith('.gz'):
+        return gzip.open(filename, 'rt')
+    return open(filename)
+
+def read_result_log(dirname, kinds):
+    """Read the records of some kinds from the result-log, written if the
+    results-layout is 'segments' ( results.NNNNNN.seg, see BC_RESULT_LOG ).
+    A request written more than once is represented by its latest record.
+
+    Returns:
+    a dictionary kind -> { rid -> list of lines }
+    """
+    res = {kind: {} for kind in kinds}
+    segments = sorted(f for f in os.listdir(dirname)
+                      if f.startswith('results.') and f.endswith('.seg'))
+    for seg in segments:
+        with open(os.path.join(dirname, seg), 'rb') as f:
+            while True:
+                header = f.read(6)
+                if len(header) < 6:
+                    break
+                magic, rid_len = struct.unpack('>iH', header)
+                if magic != 0x42435231:
+                    break
+                rid = f.read(rid_len).decode('utf-8')
+                kind = f.read(f.read(1)[0]).decode('utf-8')
+                length = struct.unpack('>q', f.read(8))[0]
+                if kind in res:
+                    payload = f.read(length)
+                    if len(payload) < length:
+                        break   # incomplete last record
+                    res[kind][rid] = payload.decode('utf-8').splitlines()
+                else:
+                    f.seek(length, os.SEEK_CUR)
+    return res
+
+def parse(lines, chunk_lines):
+    """Parse the report of a single BLAST RID and its per-chunk execution
+    records, and report full and chunk run times, worker nodes where search
+    was done, and time stamps.
 
     Arguments:
-    filename - path to the txt file
+    lines - lines of the txt report ( REQ_x.txt ), for start and end of the request
+    chunk_lines - the records ( REQ_x.chunks.json ), one json object per line
 
     Returns:
     a dataframe indexed by database chunk name, run time for the reques,
@@ -27,54 +70,57 @@ def parse(filename):
     traceback_num_results = {}
     traceback_start = {}
 
-    with open(filename) as f:
-        for line in f:
-            fields = line.rstrip().split()
-
-            if line.startswith('starting request'):
-                rid = fields[2][1:-1]
-                start_time = pd.Timestamp(fields[4][1:].split('[', 1)[0])
-            elif 'search' in line:
-                chunk = fields[1]
-                prelim_hosts[chunk] = fields[0]
-                prelim_times[chunk] = int(fields[7])
-                prelim_num_results[chunk] = int(fields[4])
-                prelim_start[chunk] = int(fields[10])
-            elif 'traceback' in line:
-                chunk = fields[1]
-                traceback_times[chunk] = int(fields[7])
-                traceback_num_results[chunk] = int(fields[4])
-                traceback_start[chunk] = int(fields[10])
-            elif 'done' in line:
-                end_time = pd.Timestamp(fields[4][1:].split('[', 1)[0])
-                runtime = int(fields[6])    # Wall-clock in ms
-                errors = int(fields[11])
-
-        phosts = pd.Series(prelim_hosts)
-        ptimes = pd.Series(prelim_times)
-        presults = pd.Series(prelim_num_results)
-        ttimes = pd.Series(traceback_times, dtype=np.int64)
-        tresults = pd.Series(traceback_times, dtype=np.int64)
-        prelim_start = pd.Series(prelim_start, dtype=np.int64)
-        traceback_start = pd.Series(traceback_start, dtype=np.int64)
-
-        df = pd.DataFrame({'Host': phosts, 'PrelimTime': ptimes,
-                           'PrelimResults': presults,
-                           'PrelimStart': prelim_start,
-                           'TracebackStart': traceback_start})
-
-        df['TracebackTime'] = ttimes
-        df['TracebackResults'] = tresults
-
-        # Traceback is not always run and logged, hence there are missing data. Pandas seems to convert
-        # columns with missing data to float64.
-        # Fill missing data with zeros and set type as int64.
-        df.fillna(0, inplace = True)
-        df['TracebackTime'] = df['TracebackTime'].astype('int64')
-        df['TracebackResults'] = df['TracebackResults'].astype('int64')
-        df['TracebackStart'] = df['TracebackStart'].astype('int64')
-
-        return (df, runtime, start_time, end_time)
+    for line in lines:
+        fields = line.rstrip().split()
+
+        if line.startswith('starting request'):
+            rid = fields[2][1:-1]
+            start_time = pd.Timestamp(fields[4][1:].split('[', 1)[0])
+        elif line.startswith('request') and ' done at ' in line:
+            end_time = pd.Timestamp(fields[4][1:].split('[', 1)[0])
+            runtime = int(fields[6])    # Wall-clock in ms
+            errors = int(fields[11])
+
+    # the OID-ranges of a split chunk are summed up
+    for line in chunk_lines:
+        if not line.strip():
+            continue
+        rec = json.loads(line)
+        chunk = rec['chunk']
+        prelim_hosts[chunk] = rec['worker']
+        prelim_times[chunk] = prelim_times.get(chunk, 0) + rec['search_ms']
+        prelim_num_results[chunk] = prelim_num_results.get(chunk, 0) + rec['prelim_hits']
+        prelim_start[chunk] = min(prelim_start.get(chunk, rec['start']), rec['start'])
+        if rec['prelim_hits'] > 0:
+            traceback_times[chunk] = traceback_times.get(chunk, 0) + rec['traceback_ms']
+            traceback_num_results[chunk] = traceback_num_results.get(chunk, 0) + rec['traceback_hits']
+            traceback_start[chunk] = rec['start'] + rec['search_ms']
+
+    phosts = pd.Series(prelim_hosts)
+    ptimes = pd.Series(prelim_times)
+    presults = pd.Series(prelim_num_results)
+    ttimes = pd.Series(traceback_times, dtype=np.int64)
+    tresults = pd.Series(traceback_times, dtype=np.int64)
+    prelim_start = pd.Series(prelim_start, dtype=np.int64)
+    traceback_start = pd.Series(traceback_start, dtype=np.int64)
+
+    df = pd.DataFrame({'Host': phosts, 'PrelimTime': ptimes,
+                       'PrelimResults': presults,
+                       'PrelimStart': prelim_start,
+                       'TracebackStart': traceback_start})
+
+    df['TracebackTime'] = ttimes
+    df['TracebackResults'] = tresults
+
+    # Traceback is not always run and logged, hence there are missing data. Pandas seems to convert
+    # columns with missing data to float64.
+    # Fill missing data with zeros and set type as int64.
+    df.fillna(0, inplace = True)
+    df['TracebackTime'] = df['TracebackTime'].astype('int64')
+    df['TracebackResults'] = df['TracebackResults'].astype('int64')
+    df['TracebackStart'] = df['TracebackStart'].astype('int64')
+
+    return (df, runtime, start_time, end_time)
 
                 
                 
@@ -120,16 +166,35 @@ if __name__ == '__main__':
     
     perc_overhead = {}
 
-    # for each file matching *.txt
-    files = [f for f in os.listdir(args.dir) if f.endswith('.txt')]
-    for filename in files:
+    # for each file matching *.chunks.json, with the report next to it
+    requests = []
+    suffixes = ('.chunks.json', '.chunks.json.gz')
+    files = [f for f in os.listdir(args.dir) if f.endswith(suffixes)]
+    for chunks_filename in files:
         # get RID from file name
-        rid = filename[:-4]
+        gz = chunks_filename.endswith('.gz')
+        rid = chunks_filename[:-len(suffixes[1] if gz else suffixes[0])]
+        filename = rid + ('.txt.gz' if gz else '.txt')
         if rid.startswith('REQ_'):
             rid = rid[4:]
-
+        with open_text(args.dir + '/' + filename) as f:
+            lines = f.readlines()
+        with open_text(args.dir + '/' + chunks_filename) as f:
+            chunk_lines = f.readlines()
+        requests.append((rid, lines, chunk_lines))
+
+    # results-layout 'segments': the reports are records in the result-log
+    log = read_result_log(args.dir, ('txt', 'chunks'))
+    for rid, chunk_lines in log['chunks'].items():
+        if rid in log['txt']:
+            requests.append((rid, log['txt'][rid], chunk_lines))
+
+    if not requests:
+        raise SystemExit('no reports found in {}'.format(args.dir))
+
+    for rid, lines, chunk_lines in requests:
         # collect information from the log
-        df, runtime, start_time, end_time = parse(args.dir + '/' + filename)
+        df, runtime, start_time, end_time = parse(lines, chunk_lines)
 
         # index values by RID
         start[rid] = start_time
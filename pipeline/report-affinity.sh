@@ -1,2 +1,2 @@
 #!/bin/bash -x
-java -cp ./target/classes gov.nih.nlm.ncbi.blastjni.LOCATION_REPORT $*
+java -cp ./target/sparkblast-1-jar-with-dependencies.jar gov.nih.nlm.ncbi.blastjni.LOCATION_REPORT $*
@@ -0,0 +1,184 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.IOException;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * utility-class to list the names below a prefix of a bucket with several threads
+ * - the keyspace is split into shards by the next character after the prefix,
+ *   one shard per printable ASCII-character, the shards are listed concurrently
+ * - names starting ( after the prefix ) with a character outside of printable
+ *   ASCII are not found when sharded, only with a single thread: the storage-API
+ *   of this build lists by prefix only ( no start/end-offset ), so there is no
+ *   catch-all shard for them and sharding has to be enabled explicitly
+ * - names are handed to the consumer as the pages arrive, from several threads,
+ *   the order is lexicographic per shard only
+ * - the consumer can stop the listing
+ *
+ * @see        BC_GCP_TOOLS
+ * @see        BC_BUCKET_LIST
+*/
+public final class BC_BUCKET_LISTER
+{
+    private static final char FIRST_SHARD = ' ';
+    private static final char LAST_SHARD = '~';
+
+/**
+ * source of pages of names, implemented for buckets in BC_GCP_TOOLS
+ * and by a fake bucket in the tests
+ *
+*/
+    public interface PAGE_SOURCE
+    {
+/**
+ * list one page of names below a prefix
+ *
+ * @param prefix    prefix of the names
+ * @param token     token of the page, null for the first page
+ * @param names     list to append the full names to
+ * @return          token of the next page, null after the last page
+*/
+        String page( String prefix, String token, List< String > names ) throws IOException;
+    }
+
+/**
+ * receives the listed names, must be thread-safe
+ *
+*/
+    public interface CONSUMER
+    {
+/**
+ * @param name      listed name, relative to the prefix of the listing
+ * @return          continue listing ?
+*/
+        boolean accept( String name );
+    }
+
+/**
+ * the prefixes the keyspace below a prefix is split into
+ *
+ * @param prefix    prefix of the listing
+ * @param threads   how many shards are listed at once, 1...no sharding
+ * @return          list of prefixes
+*/
+    static List< String > shards( final String prefix, int threads )
+    {
+        List< String > res = new ArrayList<>();
+        if ( threads <= 1 )
+            res.add( prefix );
+        else
+        {
+            for ( char c = FIRST_SHARD; c <= LAST_SHARD; ++c )
+                res.add( prefix + c );
+        }
+        return res;
+    }
+
+/**
+ * private helper: list all pages of one shard
+*/
+    private static void list_shard( final PAGE_SOURCE src, final String prefix, final String shard,
+                                    final String filter, final CONSUMER consumer,
+                                    final AtomicBoolean stop, final AtomicLong found ) throws IOException
+    {
+        List< String > names = new ArrayList<>();
+        String token = null;
+        do
+        {
+            names.clear();
+            token = src.page( shard, token, names );
+            for ( String name : names )
+            {
+                if ( stop.get() )
+                    return;
+                if ( filter.isEmpty() || name.endsWith( filter ) )
+                {
+                    found.incrementAndGet();
+                    if ( !consumer.accept( name.substring( prefix.length() ) ) )
+                        stop.set( true );
+                }
+            }
+        } while ( token != null && !stop.get() );
+    }
+
+/**
+ * list all names below a prefix, hand them to the consumer as they arrive
+ * - returns after all shards are listed, or the consumer asked to stop
+ *
+ * @param src       source of the pages
+ * @param prefix    prefix of the names, '' for the whole bucket
+ * @param filter    only names ending in this, '' for all names
+ * @param threads   how many shards are listed at once, 1...no sharding
+ * @param consumer  receives the names, relative to the prefix
+ * @return          number of names handed to the consumer, -1 if a shard failed
+*/
+    public static long list( final PAGE_SOURCE src, final String prefix, final String filter,
+                             int threads, final CONSUMER consumer )
+    {
+        final AtomicBoolean stop = new AtomicBoolean( false );
+        final AtomicBoolean failed = new AtomicBoolean( false );
+        final AtomicLong found = new AtomicLong( 0 );
+        ExecutorService pool = Executors.newFixedThreadPool( Math.max( threads, 1 ) );
+        for ( final String shard : shards( prefix, threads ) )
+        {
+            pool.submit( () ->
+            {
+                try
+                {
+                    if ( !stop.get() )
+                        list_shard( src, prefix, shard, filter, consumer, stop, found );
+                }
+                catch ( Exception e )
+                {
+                    System.out.println( String.format( "listing '%s' : %s", shard, e ) );
+                    failed.set( true );
+                }
+            } );
+        }
+        pool.shutdown();
+        try
+        {
+            pool.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+        }
+        catch ( InterruptedException e )
+        {
+            stop.set( true );
+            pool.shutdownNow();
+            failed.set( true );
+        }
+        return failed.get() ? -1 : found.get();
+    }
+}
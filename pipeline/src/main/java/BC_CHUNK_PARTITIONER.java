@@ -0,0 +1,169 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * packs the entries of a database into partitions of about equal weight
+ * - 'count'   : every entry weighs the same ( round robin, as parallelize does )
+ * - 'bytes'   : an entry weighs the total size of its files
+ * - 'runtime' : an entry weighs its observed runtime, entries never observed weigh
+ *               the median runtime; without any observation it falls back to 'bytes'
+ * - uses longest-processing-time-first: the heaviest entry goes into the lightest partition
+ *
+ * @see        BC_DATABASES
+ * @see        BC_CHUNK_STATS
+*/
+public final class BC_CHUNK_PARTITIONER
+{
+    public static final String BY_COUNT = "count";
+    public static final String BY_BYTES = "bytes";
+    public static final String BY_RUNTIME = "runtime";
+
+    private final List< List< BC_DATABASE_RDD_ENTRY > > partitions;
+    private final double[] loads;
+    private final String method;
+
+/**
+ * pack the entries into the given number of partitions
+ *
+ * @param entries       entries of the database
+ * @param num_partitions number of partitions to create, capped at the number of entries
+ * @param a_method      one of 'count', 'bytes' or 'runtime'
+ * @param stats         observed runtimes, can be null
+ * @param db            key of the database, used to look up the runtimes
+*/
+    public BC_CHUNK_PARTITIONER( final List< BC_DATABASE_RDD_ENTRY > entries, int num_partitions,
+                                 final String a_method, final BC_CHUNK_STATS stats, final String db )
+    {
+        int n = Math.max( 1, Math.min( num_partitions, entries.size() ) );
+        partitions = new ArrayList<>();
+        for ( int i = 0; i < n; ++i )
+            partitions.add( new ArrayList< BC_DATABASE_RDD_ENTRY >() );
+        loads = new double[ n ];
+
+        String m = a_method;
+        if ( BY_RUNTIME.equals( m ) && ( stats == null || stats.median( db ) < 0 ) )
+            m = BY_BYTES;
+        method = m;
+
+        if ( BY_BYTES.equals( method ) || BY_RUNTIME.equals( method ) )
+        {
+            final double[] weights = new double[ entries.size() ];
+            double median = BY_RUNTIME.equals( method ) ? stats.median( db ) : 0;
+            Integer[] order = new Integer[ entries.size() ];
+            for ( int i = 0; i < entries.size(); ++i )
+            {
+                order[ i ] = i;
+                if ( BY_RUNTIME.equals( method ) )
+                {
+                    double rt = stats.runtime( db, entries.get( i ).chunk.name );
+                    weights[ i ] = ( rt >= 0 ) ? rt : median;
+                }
+                else
+                    weights[ i ] = bytes( entries.get( i ) );
+            }
+            Arrays.sort( order, new Comparator< Integer >()
+            {
+                @Override public int compare( Integer a, Integer b ) { return Double.compare( weights[ b ], weights[ a ] ); }
+            } );
+            for ( Integer idx : order )
+            {
+                int lightest = 0;
+                for ( int p = 1; p < n; ++p )
+                {
+                    if ( loads[ p ] < loads[ lightest ] ) lightest = p;
+                }
+                partitions.get( lightest ).add( entries.get( idx ) );
+                loads[ lightest ] += weights[ idx ];
+            }
+        }
+        else
+        {
+            for ( int i = 0; i < entries.size(); ++i )
+            {
+                partitions.get( i % n ).add( entries.get( i ) );
+                loads[ i % n ] += 1;
+            }
+        }
+    }
+
+/**
+ * total size of the files of an entry
+ *
+ * @param entry     database-entry
+ * @return          sum of the ( uncompressed ) sizes of its files in bytes
+*/
+    public static long bytes( final BC_DATABASE_RDD_ENTRY entry )
+    {
+        long res = 0;
+        for ( BC_NAME_SIZE f : entry.chunk.files )
+            res += f.size.longValue();
+        return res;
+    }
+
+/**
+ * the packed partitions
+ *
+ * @return  list of partitions, each a list of entries
+*/
+    public List< List< BC_DATABASE_RDD_ENTRY > > partitions()
+    {
+        return partitions;
+    }
+
+/**
+ * the method actually used ( 'runtime' falls back to 'bytes' without observations )
+ *
+ * @return  one of 'count', 'bytes' or 'runtime'
+*/
+    public String method()
+    {
+        return method;
+    }
+
+/**
+ * how unbalanced are the partitions
+ *
+ * @return  load of the heaviest partition divided by the average load, 1.0 is perfect
+*/
+    public double imbalance()
+    {
+        double max = 0;
+        double sum = 0;
+        for ( double l : loads )
+        {
+            max = Math.max( max, l );
+            sum += l;
+        }
+        return ( sum > 0 ) ? max / ( sum / loads.length ) : 1.0;
+    }
+}
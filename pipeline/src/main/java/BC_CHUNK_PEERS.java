@@ -0,0 +1,85 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Collections;
+
+/**
+ * which peers have which chunks of one database, broadcasted with each request
+ * - stores the port and bandwidth-cap of the chunk-servers
+ * - stores a list of 'host:port' per chunk-directory
+ *
+ * @see        BC_CHUNK_REGISTRY
+ * @see        BC_CHUNK_SERVER
+*/
+public final class BC_CHUNK_PEERS implements Serializable
+{
+    public final int port;              /* port of the chunk-servers, 0...peer-to-peer disabled */
+    public final int mb_per_sec;        /* bandwidth-cap of one chunk-server */
+    private final Map< String, List< String > > by_dir;
+
+/**
+ * create instance of BC_CHUNK_PEERS
+ *
+ * @param a_port        port of the chunk-servers, 0...disabled
+ * @param a_mb_per_sec  bandwidth-cap of one chunk-server in MB/s
+ * @param a_by_dir      map of chunk-directory to list of peers
+*/
+    public BC_CHUNK_PEERS( int a_port, int a_mb_per_sec, final Map< String, List< String > > a_by_dir )
+    {
+        port = a_port;
+        mb_per_sec = a_mb_per_sec;
+        by_dir = new HashMap<>( a_by_dir );
+    }
+
+/**
+ * is peer-to-peer distribution enabled ?
+ *
+ * @return  enabled
+*/
+    public boolean enabled()
+    {
+        return port > 0;
+    }
+
+/**
+ * the peers having a chunk
+ *
+ * @param chunk_dir     name of the chunk-directory, see BC_DATABASE_RDD_ENTRY.chunk_dir_name()
+ * @return              list of 'host:port', empty if none
+*/
+    public List< String > of( final String chunk_dir )
+    {
+        List< String > res = by_dir.get( chunk_dir );
+        return ( res != null ) ? res : Collections.< String >emptyList();
+    }
+}
@@ -0,0 +1,218 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * read-ahead for the chunks of one partition, lives on the executor for one task
+ * - while chunk i is searched, chunks i+1 ... i+depth are downloaded ( if absent )
+ *   and read once, so their pages are in the page-cache when their search starts
+ * - the bytes read ahead, but not yet searched, are capped by a budget, the last
+ *   chunk is read only partially if it does not fit
+ * - one background-thread per task, a failed read-ahead is only reported, the
+ *   search of the chunk downloads and reports as usual
+ * - a download by the read-ahead is kept ( status and time ) for the
+ *   execution-record of the chunk
+ *
+ * @see        BC_JOBS
+*/
+public final class BC_CHUNK_PREFETCHER
+{
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final List< BC_DATABASE_RDD_ENTRY > items;
+    private final int depth;
+    private final long budget;
+    private final BC_CHUNK_PEERS peers;
+    private final long[] sizes;
+    private final long[] limits;    /* how many bytes of an item are read ahead */
+    private final Map< Integer, String > reports;
+    private final Map< Integer, String > downloads;     /* BC_CHUNK_RECORD.DL_* of items downloaded ahead */
+    private final Map< Integer, Long > download_times;
+    private ExecutorService pool;
+    private int submitted;      /* items up to this index have been handed to the pool */
+
+/**
+ * create instance of BC_CHUNK_PREFETCHER
+ *
+ * @param a_items       the entries of the partition, in the order they are searched
+ * @param a_depth       how many chunks to read ahead, 0...none
+ * @param a_budget_mb   how many MB to read ahead at most
+ * @param a_peers       chunk-servers to copy absent chunks from, can be null
+*/
+    public BC_CHUNK_PREFETCHER( final List< BC_DATABASE_RDD_ENTRY > a_items, int a_depth, int a_budget_mb,
+                                final BC_CHUNK_PEERS a_peers )
+    {
+        items = a_items;
+        depth = a_depth;
+        budget = ( long )a_budget_mb * 1024L * 1024L;
+        peers = a_peers;
+        sizes = new long[ items.size() ];
+        limits = new long[ items.size() ];
+        for ( int i = 0; i < items.size(); ++i )
+            sizes[ i ] = BC_CHUNK_PARTITIONER.bytes( items.get( i ) );
+        reports = new ConcurrentHashMap<>();
+        downloads = new ConcurrentHashMap<>();
+        download_times = new ConcurrentHashMap<>();
+        pool = null;
+        submitted = 0;
+    }
+
+/**
+ * the search of item i starts: read ahead the following items, as far as
+ * depth and budget allow
+ *
+ * @param i     index of the item about to be searched
+*/
+    public void advance( int i )
+    {
+        if ( depth <= 0 || budget <= 0 )
+            return;
+        submitted = Math.max( submitted, i + 1 );
+        long ahead = 0;
+        for ( int j = i + 1; j < submitted; ++j )
+            ahead += limits[ j ];
+        while ( submitted < items.size() && submitted <= i + depth && ahead < budget )
+        {
+            final int idx = submitted;
+            final long limit = Math.min( sizes[ idx ], budget - ahead );
+            limits[ idx ] = limit;
+            if ( pool == null )
+            {
+                pool = Executors.newSingleThreadExecutor( r ->
+                {
+                    Thread t = new Thread( r, "chunk-prefetch" );
+                    t.setDaemon( true );
+                    return t;
+                } );
+            }
+            pool.submit( () -> reports.put( idx, prefetch( idx, limit ) ) );
+            ahead += limit;
+            submitted += 1;
+        }
+    }
+
+/**
+ * private helper: download an item if absent, then read up to limit bytes of its files
+*/
+    private String prefetch( int idx, long limit )
+    {
+        final BC_DATABASE_RDD_ENTRY item = items.get( idx );
+        long started_at = System.currentTimeMillis();
+        if ( !item.present() )
+        {
+            List< String > errors = new ArrayList<>();
+            List< String > infos = new ArrayList<>();
+            List< String > sources = new ArrayList<>();
+            boolean ok = item.downloadIfAbsent( errors, infos, peers != null ? peers.of( item.chunk_dir_name() ) : null,
+                                                false, sources );
+            if ( !ok )
+                return String.format( "%s: %s - prefetch: download failed", item.workername(), item.label() );
+            if ( !sources.isEmpty() )
+            {
+                download_times.put( idx, System.currentTimeMillis() - started_at );
+                downloads.put( idx, BC_CHUNK_RECORD.download_status( ok, sources ) );
+            }
+        }
+
+        long read = 0;
+        byte[] buffer = new byte[ BUFFER_SIZE ];
+        try
+        {
+            for ( BC_NAME_SIZE obj : item.chunk.files )
+            {
+                if ( read >= limit )
+                    break;
+                try ( FileInputStream in = new FileInputStream( new File( item.build_worker_path( obj.name ) ) ) )
+                {
+                    int n;
+                    while ( read < limit && ( n = in.read( buffer, 0, ( int )Math.min( buffer.length, limit - read ) ) ) > 0 )
+                        read += n;
+                }
+            }
+        }
+        catch ( Exception e )
+        {
+            return String.format( "%s: %s - prefetch: %s", item.workername(), item.label(), e );
+        }
+        return String.format( "%s: %s - prefetch: %,d bytes read ahead ( %d ms )", item.workername(), item.label(),
+                              read, System.currentTimeMillis() - started_at );
+    }
+
+/**
+ * the report of the read-ahead of an item, if it has finished
+ *
+ * @param i     index of the item
+ * @return      report or null if not read ahead ( yet )
+*/
+    public String report( int i )
+    {
+        return reports.get( i );
+    }
+
+/**
+ * how an item was downloaded by the read-ahead
+ *
+ * @param i     index of the item
+ * @return      BC_CHUNK_RECORD.DL_PEER, DL_DOWNLOADED etc., null if it was not downloaded ahead
+*/
+    public String download( int i )
+    {
+        return downloads.get( i );
+    }
+
+/**
+ * how long the read-ahead spent downloading an item
+ *
+ * @param i     index of the item
+ * @return      ms, 0 if it was not downloaded ahead
+*/
+    public long download_ms( int i )
+    {
+        Long res = download_times.get( i );
+        return res == null ? 0 : res;
+    }
+
+/**
+ * stop the background-thread, a read-ahead in progress is finished but not waited for
+*/
+    public void close()
+    {
+        if ( pool != null )
+            pool.shutdown();
+    }
+}
@@ -0,0 +1,169 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.Serializable;
+import java.util.List;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * execution-record of one request against one database-chunk ( or one OID-range of it )
+ * - filled on the executor by the search, returned inside of BC_CHUNK_RESULT
+ * - replaces the formatted 'search:' and 'traceback:' lines of the report:
+ *   the driver writes one json-object per record and line into 'REQ_x.chunks.json',
+ *   LOCATION_REPORT and parse-search-logs.py read them back
+ * - only primitives and short strings, nothing is formatted on the executor
+ *
+ * @see        BC_CHUNK_RESULT
+ * @see        BC_JOBS
+*/
+public final class BC_CHUNK_RECORD implements Serializable
+{
+    public static final String DL_PRESENT = "present";      /* chunk was already on the worker */
+    public static final String DL_IN_PLACE = "in_place";    /* chunk is read from its source */
+    public static final String DL_DOWNLOADED = "downloaded";  /* at least one file from the source */
+    public static final String DL_PEER = "peer";            /* all missing files copied from peers */
+    public static final String DL_FAILED = "failed";
+
+    public String chunk = "";           /* name of the database-chunk */
+    public int part = 0;                /* OID-range of the chunk, 0...parts-1 */
+    public int parts = 1;               /* 1...whole chunk */
+    public String worker = "";          /* host the chunk was searched on */
+    public String executor = "";        /* spark-executor-id */
+    public String download = DL_PRESENT;
+    public boolean prefetched = false;  /* was the chunk read ahead by the prefetcher */
+    public long download_ms = 0;
+    public long start = 0;              /* epoch-ms the search started */
+    public long search_ms = 0;
+    public long traceback_ms = 0;
+    public int prelim_hits = 0;         /* HSP-lists of the prelim-search */
+    public int traceback_hits = 0;      /* results of the traceback, before the top N per chunk */
+    public long read_bytes = 0;         /* size of the chunk-files searched */
+    public long written_bytes = 0;      /* bytes downloaded to the worker */
+    public int errors = 0;
+
+/**
+ * create an empty record
+*/
+    public BC_CHUNK_RECORD() { }
+
+/**
+ * the download-status of a chunk from where its missing files came from
+ *
+ * @param ok        did the download succeed
+ * @param sources   DL_PEER or DL_DOWNLOADED per copied file, see BC_DATABASE_RDD_ENTRY.downloadIfAbsent()
+ * @return          DL_FAILED, DL_DOWNLOADED, DL_PEER or DL_PRESENT if nothing was copied
+*/
+    public static String download_status( boolean ok, final List< String > sources )
+    {
+        if ( !ok )
+            return DL_FAILED;
+        if ( sources.contains( DL_DOWNLOADED ) )
+            return DL_DOWNLOADED;
+        if ( sources.contains( DL_PEER ) )
+            return DL_PEER;
+        return DL_PRESENT;
+    }
+
+/**
+ * total time spent in blast for this chunk
+ *
+ * @return  search- plus traceback-time in ms
+*/
+    public long elapsed()
+    {
+        return search_ms + traceback_ms;
+    }
+
+/**
+ * the record as one json-object
+ *
+ * @return  compact json without newline
+*/
+    public String to_json()
+    {
+        JsonObject o = new JsonObject();
+        o.addProperty( "chunk", chunk );
+        if ( parts > 1 )
+        {
+            o.addProperty( "part", part );
+            o.addProperty( "parts", parts );
+        }
+        o.addProperty( "worker", worker );
+        o.addProperty( "executor", executor );
+        o.addProperty( "download", download );
+        o.addProperty( "prefetched", prefetched );
+        o.addProperty( "download_ms", download_ms );
+        o.addProperty( "start", start );
+        o.addProperty( "search_ms", search_ms );
+        o.addProperty( "traceback_ms", traceback_ms );
+        o.addProperty( "prelim_hits", prelim_hits );
+        o.addProperty( "traceback_hits", traceback_hits );
+        o.addProperty( "read_bytes", read_bytes );
+        o.addProperty( "written_bytes", written_bytes );
+        o.addProperty( "errors", errors );
+        return o.toString();
+    }
+
+/**
+ * parse a record written by to_json()
+ *
+ * @param line  one json-object
+ * @return      the record, null if the line is not a json-object
+*/
+    public static BC_CHUNK_RECORD from_json( final String line )
+    {
+        try
+        {
+            JsonObject o = new JsonParser().parse( line ).getAsJsonObject();
+            BC_CHUNK_RECORD res = new BC_CHUNK_RECORD();
+            res.chunk = BC_JSON_UTILS.get_json_string( o, "chunk", res.chunk );
+            res.part = BC_JSON_UTILS.get_json_int( o, "part", res.part );
+            res.parts = BC_JSON_UTILS.get_json_int( o, "parts", res.parts );
+            res.worker = BC_JSON_UTILS.get_json_string( o, "worker", res.worker );
+            res.executor = BC_JSON_UTILS.get_json_string( o, "executor", res.executor );
+            res.download = BC_JSON_UTILS.get_json_string( o, "download", res.download );
+            res.prefetched = BC_JSON_UTILS.get_json_bool( o, "prefetched", res.prefetched );
+            res.download_ms = BC_JSON_UTILS.get_json_long( o, "download_ms", res.download_ms );
+            res.start = BC_JSON_UTILS.get_json_long( o, "start", res.start );
+            res.search_ms = BC_JSON_UTILS.get_json_long( o, "search_ms", res.search_ms );
+            res.traceback_ms = BC_JSON_UTILS.get_json_long( o, "traceback_ms", res.traceback_ms );
+            res.prelim_hits = BC_JSON_UTILS.get_json_int( o, "prelim_hits", res.prelim_hits );
+            res.traceback_hits = BC_JSON_UTILS.get_json_int( o, "traceback_hits", res.traceback_hits );
+            res.read_bytes = BC_JSON_UTILS.get_json_long( o, "read_bytes", res.read_bytes );
+            res.written_bytes = BC_JSON_UTILS.get_json_long( o, "written_bytes", res.written_bytes );
+            res.errors = BC_JSON_UTILS.get_json_int( o, "errors", res.errors );
+            return res;
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.LinkedHashSet;
+import java.util.Collection;
+import java.util.Collections;
+
+import com.google.gson.JsonParser;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * registry of the chunks present on the executor-hosts, lives only on the master
+ * - is fed by the jobs: each search reports the host it ran on
+ * - a snapshot per database is broadcasted with each request, for copies between peers
+ * - is used to place the partitions on hosts holding their chunks, and to find
+ *   under-replicated partitions
+ * - entries of removed chunk-versions, detached databases and lost hosts are dropped
+ * - is persisted next to the manifests, so a restarted driver knows the placement
+ *   right away, the inventory-scan at startup corrects it per host
+ *
+ * @see        BC_CHUNK_PEERS
+ * @see        BC_JOBS
+ * @see        BC_DATABASES
+*/
+public final class BC_CHUNK_REGISTRY
+{
+    private static final int MAX_PEERS = 3;     /* peers offered per chunk */
+    public static final int FORMAT = 1;
+
+    private final Map< String, Map< String, Set< String > > > peers;   /* db -> chunk-dir -> hosts */
+    private boolean changed;    /* modified since the last write() */
+
+/**
+ * the host-part of a worker-name
+ *
+ * @param worker    worker-name 'host/executor-id'
+ * @return          host
+*/
+    public static String host_of( final String worker )
+    {
+        int slash = worker.indexOf( '/' );
+        return ( slash >= 0 ) ? worker.substring( 0, slash ) : worker;
+    }
+
+/**
+ * create instance of BC_CHUNK_REGISTRY
+*/
+    public BC_CHUNK_REGISTRY()
+    {
+        peers = new HashMap<>();
+        changed = false;
+    }
+
+/**
+ * construct the filename of the persisted registry
+ *
+ * @param dir       directory of the manifests
+ * @return          path of the file, for instance './placement.json'
+*/
+    public static String filename( final String dir )
+    {
+        return String.format( "%s/placement.json", dir );
+    }
+
+/**
+ * record that a host has a chunk
+ *
+ * @param db        key of the database
+ * @param chunk_dir name of the chunk-directory
+ * @param host      name of the host
+*/
+    public synchronized void add( final String db, final String chunk_dir, final String host )
+    {
+        Map< String, Set< String > > m = peers.get( db );
+        if ( m == null )
+        {
+            m = new HashMap<>();
+            peers.put( db, m );
+        }
+        Set< String > s = m.get( chunk_dir );
+        if ( s == null )
+        {
+            s = new LinkedHashSet<>();
+            m.put( chunk_dir, s );
+        }
+        if ( s.add( host ) )
+            changed = true;
+    }
+
+/**
+ * replace what is known about one host, with the result of an inventory-scan
+ *
+ * @param db            key of the database
+ * @param host          name of the host
+ * @param chunk_dirs    names of the chunk-directories found on the host
+*/
+    public synchronized void set_host( final String db, final String host, final Collection< String > chunk_dirs )
+    {
+        Map< String, Set< String > > m = peers.get( db );
+        if ( m != null )
+        {
+            for ( Map.Entry< String, Set< String > > e : m.entrySet() )
+            {
+                if ( !chunk_dirs.contains( e.getKey() ) && e.getValue().remove( host ) )
+                    changed = true;
+            }
+        }
+        for ( String dir : chunk_dirs )
+            add( db, dir, host );
+    }
+
+/**
+ * the hosts having a chunk
+ *
+ * @param db        key of the database
+ * @param chunk_dir name of the chunk-directory
+ * @return          set of hosts, empty if none
+*/
+    public synchronized Set< String > hosts_of( final String db, final String chunk_dir )
+    {
+        Map< String, Set< String > > m = peers.get( db );
+        Set< String > s = ( m != null ) ? m.get( chunk_dir ) : null;
+        return ( s != null ) ? new LinkedHashSet<>( s ) : new LinkedHashSet< String >();
+    }
+
+/**
+ * the hosts having most of a list of chunks, for instance the chunks of one partition
+ *
+ * @param db            key of the database
+ * @param chunk_dirs    names of the chunk-directories
+ * @param max           how many hosts to return at most
+ * @param all           only return hosts having all of the chunks
+ * @return              hosts, the ones having the most chunks first
+*/
+    public synchronized List< String > best_hosts( final String db, final Collection< String > chunk_dirs,
+                                                   int max, boolean all )
+    {
+        final Map< String, Integer > count = new HashMap<>();
+        Map< String, Set< String > > m = peers.get( db );
+        if ( m != null )
+        {
+            for ( String dir : chunk_dirs )
+            {
+                Set< String > s = m.get( dir );
+                if ( s == null )
+                    continue;
+                for ( String host : s )
+                {
+                    Integer n = count.get( host );
+                    count.put( host, n == null ? 1 : n + 1 );
+                }
+            }
+        }
+        List< String > res = new ArrayList<>();
+        for ( Map.Entry< String, Integer > e : count.entrySet() )
+        {
+            if ( !all || e.getValue() == chunk_dirs.size() )
+                res.add( e.getKey() );
+        }
+        Collections.sort( res, ( a, b ) -> count.get( b ) - count.get( a ) );
+        return res.size() > max ? new ArrayList<>( res.subList( 0, max ) ) : res;
+    }
+
+/**
+ * drop all hosts which are not alive any more, for instance after an executor was lost
+ *
+ * @param live      names of the hosts with running executors
+ * @return          number of chunk-copies dropped
+*/
+    public synchronized int retain_hosts( final Collection< String > live )
+    {
+        int res = 0;
+        for ( Map< String, Set< String > > m : peers.values() )
+        {
+            for ( Set< String > s : m.values() )
+            {
+                int before = s.size();
+                s.retainAll( live );
+                res += before - s.size();
+            }
+        }
+        if ( res > 0 )
+            changed = true;
+        return res;
+    }
+
+/**
+ * number of chunk-copies per host for a database, used to balance new replicas
+ *
+ * @param db        key of the database
+ * @return          map of host to number of chunks
+*/
+    public synchronized Map< String, Integer > load( final String db )
+    {
+        Map< String, Integer > res = new HashMap<>();
+        Map< String, Set< String > > m = peers.get( db );
+        if ( m != null )
+        {
+            for ( Set< String > s : m.values() )
+            {
+                for ( String host : s )
+                {
+                    Integer n = res.get( host );
+                    res.put( host, n == null ? 1 : n + 1 );
+                }
+            }
+        }
+        return res;
+    }
+
+/**
+ * forget chunk-directories of a database, after they have been removed from the workers
+ *
+ * @param db            key of the database
+ * @param chunk_dirs    names of the chunk-directories
+*/
+    public synchronized void forget( final String db, final Collection< String > chunk_dirs )
+    {
+        Map< String, Set< String > > m = peers.get( db );
+        if ( m != null && m.keySet().removeAll( chunk_dirs ) )
+            changed = true;
+    }
+
+/**
+ * forget all chunks of a database
+ *
+ * @param db        key of the database
+*/
+    public synchronized void forget( final String db )
+    {
+        if ( peers.remove( db ) != null )
+            changed = true;
+    }
+
+/**
+ * number of chunk-copies known for a database
+ *
+ * @param db        key of the database
+ * @return          sum of peers over all chunks
+*/
+    public synchronized int copies( final String db )
+    {
+        int res = 0;
+        Map< String, Set< String > > m = peers.get( db );
+        if ( m != null )
+        {
+            for ( Set< String > s : m.values() )
+                res += s.size();
+        }
+        return res;
+    }
+
+/**
+ * snapshot of the peers of a database, to be broadcasted to the workers
+ * - the peers of each chunk are shuffled, so that not every new executor asks the same host
+ *
+ * @param db            key of the database
+ * @param port          port of the chunk-servers, 0...disabled
+ * @param mb_per_sec    bandwidth-cap of one chunk-server
+ * @return              BC_CHUNK_PEERS-instance
+*/
+    public synchronized BC_CHUNK_PEERS peers_of( final String db, int port, int mb_per_sec )
+    {
+        Map< String, List< String > > res = new HashMap<>();
+        Map< String, Set< String > > m = peers.get( db );
+        if ( port > 0 && m != null )
+        {
+            for ( Map.Entry< String, Set< String > > e : m.entrySet() )
+            {
+                List< String > l = new ArrayList<>();
+                for ( String host : e.getValue() )
+                    l.add( String.format( "%s:%d", host, port ) );
+                Collections.shuffle( l );
+                res.put( e.getKey(), l.size() > MAX_PEERS ? new ArrayList<>( l.subList( 0, MAX_PEERS ) ) : l );
+            }
+        }
+        return new BC_CHUNK_PEERS( port, mb_per_sec, res );
+    }
+
+/**
+ * write the registry, if it has changed since the last write, the file is replaced atomically
+ *
+ * @param filename  path of the file
+ * @return          success of operation, true if there was nothing to write
+*/
+    public synchronized boolean write( final String filename )
+    {
+        if ( !changed )
+            return true;
+        boolean res = false;
+        File tmp = new File( filename + ".tmp" );
+        try
+        {
+            JsonWriter w = new JsonWriter( new FileWriter( tmp ) );
+            try
+            {
+                w.beginObject();
+                w.name( "format" ).value( FORMAT );
+                w.name( "created_at" ).value( System.currentTimeMillis() );
+                w.name( "databases" ).beginObject();
+                for ( Map.Entry< String, Map< String, Set< String > > > db : peers.entrySet() )
+                {
+                    w.name( db.getKey() ).beginObject();
+                    for ( Map.Entry< String, Set< String > > e : db.getValue().entrySet() )
+                    {
+                        if ( e.getValue().isEmpty() )
+                            continue;
+                        w.name( e.getKey() ).beginArray();
+                        for ( String host : e.getValue() )
+                            w.value( host );
+                        w.endArray();
+                    }
+                    w.endObject();
+                }
+                w.endObject();
+                w.endObject();
+            }
+            finally
+            {
+                w.close();
+            }
+            Files.move( tmp.toPath(), new File( filename ).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            changed = false;
+            res = true;
+        }
+        catch ( IOException e )
+        {
+            System.out.println( String.format( "placement '%s' : %s", filename, e ) );
+            tmp.delete();
+        }
+        return res;
+    }
+
+/**
+ * add the content of a persisted registry to this one
+ *
+ * @param filename  path of the file
+ * @return          number of chunk-copies read, 0 if missing or invalid
+*/
+    public synchronized int read( final String filename )
+    {
+        int res = 0;
+        if ( !BC_UTILS.file_exists( filename ) )
+            return res;
+        try
+        {
+            JsonParser parser = new JsonParser();
+            FileReader reader = new FileReader( filename );
+            JsonElement tree;
+            try
+            {
+                tree = parser.parse( reader );
+            }
+            finally
+            {
+                reader.close();
+            }
+            if ( !tree.isJsonObject() )
+                return res;
+            JsonObject root = tree.getAsJsonObject();
+            if ( BC_JSON_UTILS.get_json_int( root, "format", 0 ) != FORMAT )
+                return res;
+
+            JsonObject dbs = BC_JSON_UTILS.get_sub( root, "databases" );
+            if ( dbs != null )
+            {
+                for ( Map.Entry< String, JsonElement > db : dbs.entrySet() )
+                {
+                    for ( Map.Entry< String, JsonElement > e : db.getValue().getAsJsonObject().entrySet() )
+                    {
+                        for ( JsonElement host : e.getValue().getAsJsonArray() )
+                        {
+                            add( db.getKey(), e.getKey(), host.getAsString() );
+                            res += 1;
+                        }
+                    }
+                }
+            }
+            changed = false;
+        }
+        catch ( Exception e )
+        {
+            System.out.println( String.format( "placement '%s' : %s", filename, e ) );
+        }
+        return res;
+    }
+}
@@ -0,0 +1,86 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * result of one request against one database-chunk, returned from the workers
+ * - stores the name of the chunk
+ * - stores the traceback-results, errors and info's
+ * - stores the text renderings of the traceback-results, if the request wants text-formats
+ * - stores the execution-record: timings, hit-counts, bytes read and downloaded
+ * - stores the host and the disk, which now have the chunk
+ * - the last result of a partition carries the GCS-counters of its executor
+ *   before and after the partition
+ *
+ * @see        BC_JOBS
+ * @see        BC_CHUNK_RECORD
+*/
+public final class BC_CHUNK_RESULT implements Serializable
+{
+    public final String chunk;
+    public final List< BLAST_TB_LIST > results;
+    public final List< byte[][] > rendered; /* per result its text per text-format, empty...none */
+    public final List< String > errors;
+    public final List< String > infos;
+    public final BC_CHUNK_RECORD record;
+    public String worker = "";      /* host/executor the chunk was processed on */
+    public String chunk_dir = "";   /* directory of the chunk on the worker */
+    public String host = null;      /* host now holding the chunk, as known to spark, null...not stored */
+    public String device = "";      /* worker-location ( local disk ) holding the chunk */
+    public BC_GCS_METRICS.COUNTS gcs_before = null;
+    public BC_GCS_METRICS.COUNTS gcs_after = null;
+
+/**
+ * create instance of BC_CHUNK_RESULT with empty lists
+ *
+ * @param a_chunk   name of the database-chunk
+*/
+    public BC_CHUNK_RESULT( final String a_chunk )
+    {
+        chunk = a_chunk;
+        results = new ArrayList<>();
+        rendered = new ArrayList<>();
+        errors = new ArrayList<>();
+        infos = new ArrayList<>();
+        record = new BC_CHUNK_RECORD();
+        record.chunk = a_chunk;
+    }
+
+/**
+ * total time spent in blast for this chunk
+ *
+ * @return  search- plus traceback-time in ms
+*/
+    public long elapsed()
+    {
+        return record.elapsed();
+    }
+}
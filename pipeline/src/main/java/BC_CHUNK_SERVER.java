@@ -0,0 +1,385 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.File;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Infrastructure-Class to serve one file to a peer, runs on the pool of the server
+ * class is used only by the BC_CHUNK_SERVER-class
+ * - protocol: the peer sends database-key, chunk-directory and file-name, the
+ *   server resolves them below its own worker-locations, the answer is the size
+ *   of the file ( -1 if refused ) followed by its bytes
+*/
+class BC_CHUNK_SERVER_CLIENT implements Runnable
+{
+    private final BC_CHUNK_SERVER server;
+    private final Socket socket;
+
+    public BC_CHUNK_SERVER_CLIENT( final BC_CHUNK_SERVER a_server, final Socket a_socket )
+    {
+        server = a_server;
+        socket = a_socket;
+    }
+
+    @Override public void run()
+    {
+        try
+        {
+            socket.setSoTimeout( BC_CHUNK_SERVER.TIMEOUT_MS );
+            DataInputStream in = new DataInputStream( socket.getInputStream() );
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream(), BC_CHUNK_SERVER.BUFFER_SIZE ) );
+            String db = in.readUTF();
+            String chunk_dir = in.readUTF();
+            File f = server.servable( db, chunk_dir, in.readUTF() );
+            if ( f == null )
+                out.writeLong( -1 );
+            else
+            {
+                out.writeLong( f.length() );
+                try ( InputStream is = new FileInputStream( f ) )
+                {
+                    byte[] buf = new byte[ BC_CHUNK_SERVER.BUFFER_SIZE ];
+                    int n;
+                    while ( ( n = is.read( buf ) ) > 0 )
+                    {
+                        server.throttle( n );
+                        out.write( buf, 0, n );
+                    }
+                }
+            }
+            out.flush();
+        }
+        catch ( Exception e )
+        {
+            /* the peer falls back to the bucket */
+        }
+        finally
+        {
+            try { socket.close(); }
+            catch ( IOException e ) { }
+        }
+    }
+}
+
+/**
+ * executor-side server for database-chunks already downloaded to this host,
+ * so that new executors can copy chunks from their peers instead of the bucket
+ * - one instance per JVM ( singleton ), if several executors share a host only
+ *   the first one can bind the port, which is fine: they share the worker-location
+ * - only complete chunks below a worker-location registered for their database
+ *   are served, peers name the file, not its path: the worker-locations of the
+ *   hosts may differ
+ * - the outgoing bandwidth of all connections together is capped
+ * - at most MAX_CONNECTIONS files are sent at once, MAX_WAITING more connections
+ *   wait for them, any further connection is closed: the peer uses the bucket
+ *
+ * @see        BC_CHUNK_REGISTRY
+ * @see        BC_DATABASE_RDD_ENTRY
+*/
+public final class BC_CHUNK_SERVER extends Thread
+{
+    public static final int TIMEOUT_MS = 30000;
+    public static final int CONNECT_TIMEOUT_MS = 2000;
+    public static final int BUFFER_SIZE = 256 * 1024;
+    public static final int MAX_CONNECTIONS = 8;
+    public static final int MAX_WAITING = 32;
+
+    private static BC_CHUNK_SERVER instance = null;
+    private static String address = null;
+
+    private final ServerSocket ss;
+    private final ThreadPoolExecutor pool;
+    private final Map< String, Set< String > > roots;   /* database-key -> worker-locations */
+    private final double bytes_per_ns;
+    private long budget_at;             /* nano-time when the bytes sent so far are paid for */
+
+    private BC_CHUNK_SERVER( final ServerSocket a_ss, int mb_per_sec )
+    {
+        ss = a_ss;
+        pool = new ThreadPoolExecutor( MAX_CONNECTIONS, MAX_CONNECTIONS, 60, TimeUnit.SECONDS,
+                                       new ArrayBlockingQueue< Runnable >( MAX_WAITING ),
+                                       r ->
+                                       {
+                                           Thread t = new Thread( r, "chunk-server-client" );
+                                           t.setDaemon( true );
+                                           return t;
+                                       } );
+        roots = new ConcurrentHashMap<>();
+        bytes_per_ns = ( mb_per_sec * 1024.0 * 1024.0 ) / 1.0e9;
+        budget_at = 0;
+        setDaemon( true );
+    }
+
+/**
+ * start the server of this JVM ( if not yet running ), and offer a chunk to the peers
+ *
+ * @param port          port to listen on
+ * @param mb_per_sec    cap of the outgoing bandwidth in MB/s, 0...no cap
+ * @param entry         chunk which is complete on this host
+ * @return              'host:port' of the server of this JVM, null if none
+*/
+    public static synchronized String serve( int port, int mb_per_sec, final BC_DATABASE_RDD_ENTRY entry )
+    {
+        if ( port <= 0 )
+            return null;
+        if ( instance == null )
+        {
+            try
+            {
+                ServerSocket s = new ServerSocket();
+                s.setReuseAddress( true );
+                s.bind( new InetSocketAddress( port ) );
+                instance = new BC_CHUNK_SERVER( s, mb_per_sec );
+                instance.start();
+                /* same host-name as in the registry, so peers_of() and fetch() agree on it */
+                address = String.format( "%s:%d", entry.hostname(), port );
+            }
+            catch ( IOException e )
+            {
+                /* another executor on this host has the port, it does not serve our chunks */
+            }
+        }
+        if ( instance != null )
+            instance.roots.computeIfAbsent( entry.db_key(), k -> new CopyOnWriteArraySet<>() )
+                          .add( new File( entry.worker_root() ).getAbsolutePath() );
+        entry.mark_complete();
+        return address;
+    }
+
+/**
+ * the 'host:port' of the server of this JVM, if already started
+ *
+ * @return  address or null
+*/
+    public static synchronized String address()
+    {
+        return address;
+    }
+
+/**
+ * the connections being served or waiting
+ *
+ * @return  number of connections, 0 if the server is not running
+*/
+    static synchronized int connections()
+    {
+        if ( instance == null )
+            return 0;
+        return instance.pool.getActiveCount() + instance.pool.getQueue().size();
+    }
+
+/**
+ * private helper: a single path-component, no separator and no '.' or '..'
+*/
+    private static boolean plain_name( final String name )
+    {
+        return !name.isEmpty() && !name.equals( "." ) && !name.equals( ".." ) &&
+               name.indexOf( '/' ) < 0 && name.indexOf( '\\' ) < 0;
+    }
+
+/**
+ * find a requested file below the worker-locations of its database, it
+ * may be served if its chunk is complete
+ *
+ * @param db        key of the database
+ * @param chunk_dir name of the chunk-directory
+ * @param name      name of the file in the chunk-directory
+ * @return          the file, or null if refused
+*/
+    File servable( final String db, final String chunk_dir, final String name )
+    {
+        Set< String > db_roots = roots.get( db );
+        if ( db_roots == null || !plain_name( chunk_dir ) || !plain_name( name ) || name.endsWith( ".lock" ) ||
+             name.endsWith( BC_RANGED_DOWNLOAD.PART_SUFFIX ) )
+            return null;
+        for ( String root : db_roots )
+        {
+            try
+            {
+                File dir = new File( root, chunk_dir );
+                File f = new File( dir, name ).getCanonicalFile();
+                if ( !f.isFile() || !new File( dir, BC_DATABASE_RDD_ENTRY.COMPLETE_MARKER ).exists() )
+                    continue;
+                if ( f.getPath().startsWith( new File( root ).getCanonicalPath() + File.separator ) )
+                    return f;
+            }
+            catch ( IOException e ) { }
+        }
+        return null;
+    }
+
+/**
+ * wait until n more bytes may be sent, shared by all connections
+ *
+ * @param n     number of bytes about to be sent
+*/
+    void throttle( int n )
+    {
+        if ( bytes_per_ns <= 0.0 )
+            return;
+        long wait;
+        synchronized( this )
+        {
+            long now = System.nanoTime();
+            budget_at = Math.max( budget_at, now ) + ( long )( n / bytes_per_ns );
+            wait = budget_at - now;
+        }
+        if ( wait > 1000000L )
+        {
+            try { Thread.sleep( wait / 1000000L ); }
+            catch ( InterruptedException e ) { }
+        }
+    }
+
+/**
+ * overwritten run method of Thread-BC_CHUNK_SERVER
+ * - accept connections from peers, serve them on the bounded pool
+ * - a connection finding the pool and its queue full is closed right away
+*/
+    @Override public void run()
+    {
+        while ( !ss.isClosed() )
+        {
+            Socket socket;
+            try
+            {
+                socket = ss.accept();
+            }
+            catch ( IOException e )
+            {
+                continue;
+            }
+            try
+            {
+                pool.execute( new BC_CHUNK_SERVER_CLIENT( this, socket ) );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                try { socket.close(); }
+                catch ( IOException e2 ) { }
+            }
+        }
+    }
+
+/**
+ * copy one file of a chunk from a peer, verifying size and md5 ( if known )
+ *
+ * @param peer          'host:port' of the peer
+ * @param db            key of the database
+ * @param chunk_dir     name of the chunk-directory
+ * @param dst_filename  absolute path of destination-file to be created, its
+ *                      name is the name of the file on the peer
+ * @param obj           name/size/md5 of the file as listed from the source
+ * @return              success of operation, the destination-file exists only on success
+*/
+    public static boolean fetch( final String peer, final String db, final String chunk_dir,
+                                 final String dst_filename, final BC_NAME_SIZE obj )
+    {
+        boolean res = false;
+        int colon = peer.lastIndexOf( ':' );
+        if ( colon < 0 || peer.equals( address() ) )
+            return res;
+
+        /* copied next to the destination, renamed into place after size and md5 are verified */
+        File dst = new File( dst_filename );
+        File f = new File( dst_filename + BC_RANGED_DOWNLOAD.PART_SUFFIX );
+        try ( Socket socket = new Socket() )
+        {
+            socket.connect( new InetSocketAddress( peer.substring( 0, colon ),
+                            Integer.parseInt( peer.substring( colon + 1 ) ) ), CONNECT_TIMEOUT_MS );
+            socket.setSoTimeout( TIMEOUT_MS );
+            DataOutputStream out = new DataOutputStream( socket.getOutputStream() );
+            out.writeUTF( db );
+            out.writeUTF( chunk_dir );
+            out.writeUTF( dst.getName() );
+            out.flush();
+
+            DataInputStream in = new DataInputStream( new BufferedInputStream( socket.getInputStream(), BUFFER_SIZE ) );
+            long size = in.readLong();
+            if ( size != obj.size.longValue() )
+                return res;
+
+            boolean check_md5 = !obj.compressed() && !obj.md5.isEmpty();
+            MessageDigest md = MessageDigest.getInstance( "MD5" );
+            long copied = 0;
+            try ( OutputStream os = new FileOutputStream( f ) )
+            {
+                byte[] buf = new byte[ BUFFER_SIZE ];
+                int n;
+                while ( copied < size && ( n = in.read( buf, 0, ( int )Math.min( buf.length, size - copied ) ) ) > 0 )
+                {
+                    os.write( buf, 0, n );
+                    if ( check_md5 )
+                        md.update( buf, 0, n );
+                    copied += n;
+                }
+            }
+            res = ( copied == size );
+            if ( res && check_md5 )
+                res = Base64.getEncoder().encodeToString( md.digest() ).equals( obj.md5 );
+            if ( res )
+                Files.move( f.toPath(), dst.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( Exception e )
+        {
+            res = false;
+        }
+        if ( !res && f.exists() )
+            f.delete();
+        return res;
+    }
+}
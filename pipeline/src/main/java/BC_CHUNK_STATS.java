@@ -0,0 +1,116 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Collections;
+
+/**
+ * observed runtime per database-chunk, lives only on the master
+ * - stores a moving average of the blast-time of every chunk
+ * - is fed by the jobs after each request
+ * - is used to balance the partitions and to find chunks worth splitting
+ *
+ * @see        BC_CHUNK_PARTITIONER
+ * @see        BC_JOBS
+*/
+public final class BC_CHUNK_STATS
+{
+    private static final double WEIGHT = 0.3;   /* weight of a new observation in the moving average */
+
+    private final Map< String, Map< String, Double > > runtimes;
+
+/**
+ * create instance of BC_CHUNK_STATS
+*/
+    public BC_CHUNK_STATS()
+    {
+        runtimes = new HashMap<>();
+    }
+
+/**
+ * record the runtime of one chunk for one request
+ *
+ * @param db        key of the database
+ * @param chunk     name of the chunk
+ * @param ms        time spent in blast for this chunk
+*/
+    public synchronized void record( final String db, final String chunk, long ms )
+    {
+        Map< String, Double > m = runtimes.get( db );
+        if ( m == null )
+        {
+            m = new HashMap<>();
+            runtimes.put( db, m );
+        }
+        Double prev = m.get( chunk );
+        m.put( chunk, prev == null ? ms : ( 1.0 - WEIGHT ) * prev + WEIGHT * ms );
+    }
+
+/**
+ * get the average runtime of one chunk
+ *
+ * @param db        key of the database
+ * @param chunk     name of the chunk
+ * @return          average runtime in ms, or -1 if never observed
+*/
+    public synchronized double runtime( final String db, final String chunk )
+    {
+        Map< String, Double > m = runtimes.get( db );
+        Double res = ( m != null ) ? m.get( chunk ) : null;
+        return ( res != null ) ? res : -1.0;
+    }
+
+/**
+ * get the median of the average runtimes of all chunks of a database
+ *
+ * @param db        key of the database
+ * @return          median runtime in ms, or -1 if nothing observed
+*/
+    public synchronized double median( final String db )
+    {
+        Map< String, Double > m = runtimes.get( db );
+        if ( m == null || m.isEmpty() )
+            return -1.0;
+        List< Double > l = new ArrayList<>( m.values() );
+        Collections.sort( l );
+        return l.get( l.size() / 2 );
+    }
+
+/**
+ * forget all observations of a database
+ *
+ * @param db        key of the database
+*/
+    public synchronized void clear( final String db )
+    {
+        runtimes.remove( db );
+    }
+}
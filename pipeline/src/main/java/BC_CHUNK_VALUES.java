@@ -31,7 +31,7 @@ import java.util.List;
 import java.util.ArrayList;
 
 /**
- * Name-Size pair
+ * Name and files of one database-chunk
  *
 */
 public final class BC_CHUNK_VALUES implements Serializable
@@ -50,4 +50,17 @@ public final class BC_CHUNK_VALUES implements Serializable
         name = a_name;
         files = new ArrayList<>();
     }
+
+/**
+ * version of the chunk: the highest generation of its files in the bucket
+ *
+ * @return  version of the chunk, 0...unknown
+*/
+    public long version()
+    {
+        long res = 0;
+        for ( BC_NAME_SIZE f : files )
+            res = Math.max( res, f.generation );
+        return res;
+    }
 }
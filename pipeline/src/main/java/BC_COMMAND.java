@@ -117,6 +117,66 @@ public final class BC_COMMAND
 */
     private boolean is_wait_request() { return parts[ 0 ].equals( "wait" ); }
 
+/**
+ * test for refresh command ( pick up changed chunks of a database )
+ *
+ * @return     is it a refresh command ?
+*/
+    private boolean is_refresh_request() { return parts[ 0 ].equals( "refresh" ); }
+
+/**
+ * test for rebalance command ( repack the chunks of a database into partitions )
+ *
+ * @return     is it a rebalance command ?
+*/
+    private boolean is_rebalance_request() { return parts[ 0 ].equals( "rebalance" ); }
+
+/**
+ * test for attach command ( add a database at runtime )
+ *
+ * @return     is it a attach command ?
+*/
+    private boolean is_attach_request() { return parts[ 0 ].equals( "attach" ); }
+
+/**
+ * test for detach command ( remove a database at runtime )
+ *
+ * @return     is it a detach command ?
+*/
+    private boolean is_detach_request() { return parts[ 0 ].equals( "detach" ); }
+
+/**
+ * test if one of the parts after the verb is the given option
+ *
+ * @param option    option to look for, for instance '--predownload'
+ * @return          is the option present ?
+*/
+    private boolean has_option( final String option )
+    {
+        for ( int i = 1; i < num_parts; ++i )
+        {
+            if ( parts[ i ].equals( option ) ) return true;
+        }
+        return false;
+    }
+
+/**
+ * join all parts after the verb, which are not options, with a single space
+ *
+ * @return          the argument of the command
+*/
+    private String argument()
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 1; i < num_parts; ++i )
+        {
+            if ( parts[ i ].startsWith( "--" ) ) continue;
+            if ( sb.length() > 0 ) sb.append( " " );
+            sb.append( parts[ i ] );
+        }
+        return sb.toString();
+    }
+
 /**
  * handle the file-command, by delegating it to the global context
  *
@@ -227,6 +287,64 @@ public final class BC_COMMAND
         logger.info( "wait done\n" );
     }
 
+/**
+ * handle the refresh-command, by delegating it to the global context
+ *
+ * @param context the global application-context
+ * @see        BC_CONTEXT
+*/
+    private void handle_refresh_request( BC_CONTEXT context )
+    {
+        if ( num_parts > 1 )
+            context.refresh_database( parts[ 1 ] );
+        else
+            logger.info( "refresh_request: database-key is missing" );
+    }
+
+/**
+ * handle the rebalance-command, by delegating it to the global context
+ *
+ * @param context the global application-context
+ * @see        BC_CONTEXT
+*/
+    private void handle_rebalance_request( BC_CONTEXT context )
+    {
+        if ( num_parts > 1 )
+            context.rebalance_database( parts[ 1 ] );
+        else
+            logger.info( "rebalance_request: database-key is missing" );
+    }
+
+/**
+ * handle the attach-command, by delegating it to the global context
+ *
+ * @param context the global application-context
+ * @see        BC_CONTEXT
+*/
+    private void handle_attach_request( BC_CONTEXT context )
+    {
+        String src = argument();
+        if ( !src.isEmpty() )
+            context.attach_database( src, has_option( "--predownload" ) );
+        else
+            logger.info( "attach_request: database-settings are missing" );
+    }
+
+/**
+ * handle the detach-command, by delegating it to the global context
+ *
+ * @param context the global application-context
+ * @see        BC_CONTEXT
+*/
+    private void handle_detach_request( BC_CONTEXT context )
+    {
+        String key = argument();
+        if ( !key.isEmpty() )
+            context.detach_database( key, has_option( "--remove" ) );
+        else
+            logger.info( "detach_request: database-key is missing" );
+    }
+
 /**
  * handle a preparsed command using the given context
  *
@@ -244,6 +362,10 @@ public final class BC_COMMAND
         else if ( is_execute_request() ) handle_execute_request( context );
         else if ( is_info_request() ) context.print_info();
         else if ( is_wait_request() ) handle_wait_request( context );
+        else if ( is_refresh_request() ) handle_refresh_request( context );
+        else if ( is_rebalance_request() ) handle_rebalance_request( context );
+        else if ( is_attach_request() ) handle_attach_request( context );
+        else if ( is_detach_request() ) handle_detach_request( context );
         else logger.info( String.format( "unknown: %s", parts ) );
     }
 }
@@ -0,0 +1,204 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import java.net.URI;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * companion tool to create a compressed copy of a bucket of database-chunks
+ * - files with one of the given extensions are gzip-compressed into 'name.ext.gz',
+ *   their uncompressed size is stored in the object-metadata
+ * - all other files are copied unchanged inside of GCS
+ * - objects already present in the destination are skipped
+ *
+ * usage: compress-db-bucket.sh src-url dst-url [--threads N] [extension ...]
+ *        example: compress-db-bucket.sh gs://nt_50mb_chunks gs://nt_50mb_chunks_gz nsq
+*/
+public final class BC_COMPRESS_BUCKET
+{
+    private static String bucket_name( final String url ) throws Exception
+    {
+        URI uri = new URI( url );
+        if ( !"gs".equals( uri.getScheme() ) )
+            throw new IllegalArgumentException( String.format( "'%s' is not a gs:// url", url ) );
+        return uri.getAuthority();
+    }
+
+    private static boolean has_extension( final String name, final List< String > extensions )
+    {
+        for ( String ext : extensions )
+        {
+            if ( name.endsWith( "." + ext ) ) return true;
+        }
+        return false;
+    }
+
+/**
+ * download one object, compress it into a temp-file and upload the result
+ *
+ * @param src_bucket    name of the source-bucket
+ * @param dst_bucket    name of the destination-bucket
+ * @param name          name of the object
+ * @return              success of operation
+*/
+    private static boolean compress_one( final String src_bucket, final String dst_bucket, final String name )
+    {
+        boolean res = false;
+        File tmp = null;
+        try
+        {
+            tmp = File.createTempFile( "bc_compress_", ".gz" );
+            long uncompressed = 0;
+            InputStream is = BC_GCP_TOOLS.download_as_stream( src_bucket, name );
+            if ( is == null )
+                return false;
+            GZIPOutputStream os = new GZIPOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ), 1024 * 1024 ), 256 * 1024 );
+            try
+            {
+                byte[] buf = new byte[ 256 * 1024 ];
+                int n;
+                while ( ( n = is.read( buf ) ) > 0 )
+                {
+                    os.write( buf, 0, n );
+                    uncompressed += n;
+                }
+            }
+            finally
+            {
+                os.close();
+                is.close();
+            }
+
+            Map< String, String > meta = new HashMap<>();
+            meta.put( BC_GCP_TOOLS.KEY_UNCOMPRESSED_SIZE, Long.toString( uncompressed ) );
+            long uploaded = BC_GCP_TOOLS.upload_file( dst_bucket,
+                                String.format( "%s.%s", name, BC_GCP_TOOLS.COMPRESSION_GZ ),
+                                tmp.getAbsolutePath(), meta );
+            res = ( uploaded == tmp.length() );
+            System.out.println( String.format( "%s : %,d -> %,d bytes ( %.1f%% )%s", name, uncompressed, tmp.length(),
+                                ( 100.0 * tmp.length() ) / Math.max( uncompressed, 1 ), res ? "" : " UPLOAD FAILED" ) );
+        }
+        catch ( Exception e )
+        {
+            System.out.println( String.format( "%s : %s", name, e ) );
+        }
+        finally
+        {
+            if ( tmp != null )
+                tmp.delete();
+        }
+        return res;
+    }
+
+    public static void main( String[] args ) throws Exception
+    {
+        List< String > positional = new ArrayList<>();
+        List< String > extensions = new ArrayList<>();
+        int threads = 4;
+
+        for ( int i = 0; i < args.length; ++i )
+        {
+            if ( args[ i ].equals( "--threads" ) && i + 1 < args.length )
+                threads = BC_UTILS.toInt( args[ ++i ] );
+            else
+                positional.add( args[ i ] );
+        }
+        if ( positional.size() < 2 )
+        {
+            System.out.println( "usage: BC_COMPRESS_BUCKET src-url dst-url [--threads N] [extension ...]" );
+            return;
+        }
+        for ( int i = 2; i < positional.size(); ++i )
+            extensions.add( positional.get( i ) );
+        if ( extensions.isEmpty() )
+        {
+            extensions.add( "nsq" );
+            extensions.add( "psq" );
+        }
+
+        final String src_bucket = bucket_name( positional.get( 0 ) );
+        final String dst_bucket = bucket_name( positional.get( 1 ) );
+
+        Set< String > existing = new HashSet<>();
+        for ( BC_NAME_SIZE ns : BC_GCP_TOOLS.list( positional.get( 1 ) ) )
+            existing.add( ns.name );
+
+        final AtomicInteger failed = new AtomicInteger( 0 );
+        ExecutorService pool = Executors.newFixedThreadPool( Math.max( threads, 1 ) );
+        for ( BC_NAME_SIZE ns : BC_GCP_TOOLS.list( positional.get( 0 ) ) )
+        {
+            final String name = ns.name;
+            if ( ns.compressed() )
+            {
+                if ( !existing.contains( name ) && !BC_GCP_TOOLS.copy( src_bucket, name, dst_bucket, name ) )
+                    failed.incrementAndGet();
+            }
+            else if ( has_extension( name, extensions ) )
+            {
+                if ( !existing.contains( String.format( "%s.%s", name, BC_GCP_TOOLS.COMPRESSION_GZ ) ) )
+                {
+                    pool.submit( new Runnable()
+                    {
+                        @Override public void run()
+                        {
+                            if ( !compress_one( src_bucket, dst_bucket, name ) )
+                                failed.incrementAndGet();
+                        }
+                    } );
+                }
+            }
+            else if ( !existing.contains( name ) )
+            {
+                if ( BC_GCP_TOOLS.copy( src_bucket, name, dst_bucket, name ) )
+                    System.out.println( String.format( "%s : copied", name ) );
+                else
+                    failed.incrementAndGet();
+            }
+        }
+        pool.shutdown();
+        pool.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+
+        System.out.println( String.format( "done, %d errors", failed.get() ) );
+    }
+}
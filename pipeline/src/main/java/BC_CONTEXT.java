@@ -46,6 +46,8 @@ import org.apache.log4j.Logger;
  * - owns a thread-safe queue for commands
  * - owns a thread-safe queue for requests
  * - owns a list of Request-Lists
+ * - owns the writer and the uploader of the result-files
+ * - owns the result-log, if the results are appended to segments
  * @see        BC_SETTINGS
 */
 public class BC_CONTEXT
@@ -55,7 +57,11 @@ public class BC_CONTEXT
     private final ConcurrentLinkedQueue< BC_COMMAND > command_queue;
     private final ConcurrentLinkedQueue< BC_REQUEST > request_queue;
     private final BC_LISTS list_manager;
+    private final BC_RESULT_UPLOADER uploader;
+    private final BC_RESULT_WRITER writer;
+    private final BC_RESULT_LOG result_log;
     private BC_JOBS jobs;
+    private BC_DATABASES databases;
     private final List< String > history;
     private final Logger logger;
 
@@ -74,7 +80,13 @@ public class BC_CONTEXT
         command_queue = new ConcurrentLinkedQueue<>();
         request_queue = new ConcurrentLinkedQueue<>();
         list_manager = new BC_LISTS( this );
+        uploader = new BC_RESULT_UPLOADER( settings );
+        writer = new BC_RESULT_WRITER( settings.res_compression, settings.res_compression_level,
+                                       settings.res_write_queue, uploader::upload );
+        result_log = settings.segmented_report() ?
+            new BC_RESULT_LOG( settings.report_dir, settings.report_segment_mb, this ) : null;
         jobs = null;
+        databases = null;
         history = Collections.synchronizedList( new ArrayList< String >() );
         logger = LogManager.getLogger( BC_CONTEXT.class );
     }
@@ -86,6 +98,91 @@ public class BC_CONTEXT
 */
     public void set_jobs( BC_JOBS a_jobs ) { jobs = a_jobs; }
 
+/**
+ * set the database-registry after creation
+ *
+ * @param   reference to database-registry
+*/
+    public void set_databases( BC_DATABASES a_databases ) { databases = a_databases; }
+
+/**
+ * refresh a database in the background, by delegating it to the database-registry
+ *
+ * @param key   key of the database, for instance 'nt'
+*/
+    public void refresh_database( final String key )
+    {
+        if ( databases != null )
+            databases.refresh( key );
+    }
+
+/**
+ * upload a result-file into the result-bucket in the background, if configured
+ *
+ * @param filename  path of the file in the report-dir
+*/
+    public void upload_result( final String filename )
+    {
+        uploader.upload( filename );
+    }
+
+/**
+ * the writer of the result- and report-files
+ *
+ * @return  the result-writer
+ * @see     BC_RESULT_WRITER
+*/
+    public BC_RESULT_WRITER result_writer() { return writer; }
+
+/**
+ * the result-log, the results are appended to
+ *
+ * @return  the result-log, null...one file per result
+ * @see     BC_RESULT_LOG
+*/
+    public BC_RESULT_LOG result_log() { return result_log; }
+
+/**
+ * repack the chunks of a database into partitions, by delegating it to the database-registry
+ *
+ * @param key   key of the database, for instance 'nt'
+*/
+    public void rebalance_database( final String key )
+    {
+        if ( databases != null )
+            databases.rebalance( key );
+    }
+
+/**
+ * attach a database at runtime, by delegating it to the database-registry
+ *
+ * @param src           json-string or json-file with the settings of the database
+ * @param predownload   download the chunks to the workers before attaching
+ * @return              was the attach started ?
+*/
+    public boolean attach_database( final String src, boolean predownload )
+    {
+        boolean res = false;
+        BC_DATABASE_SETTING setting = BC_SETTINGS_READER.read_database_setting( src );
+        if ( setting == null )
+            logger.info( String.format( "invalid database-settings '%s'", src ) );
+        else if ( databases != null )
+            res = databases.attach( setting, predownload );
+        return res;
+    }
+
+/**
+ * detach a database at runtime, by delegating it to the database-registry
+ *
+ * @param key           key of the database, for instance 'nt'
+ * @param remove_files  remove the chunk-files from the workers too
+ * @return              was the database detached ?
+*/
+    public boolean detach_database( final String key, boolean remove_files )
+    {
+        return ( databases != null ) && databases.detach( key, remove_files );
+    }
+
 /**
  * test if the request-queue has space for at least one more request
  *
@@ -296,6 +393,13 @@ public class BC_CONTEXT
         int n = ( jobs != null ) ? jobs.active() : 0;
         logger.info( String.format( "jobs active  : %d of %d\n",
                     n, settings.parallel_jobs ) );
+
+        logger.info( writer.report() + "\n" );
+        if ( uploader.enabled() )
+            logger.info( uploader.report() + "\n" );
+
+        if ( databases != null )
+            databases.print_info();
     }
 
 /**
@@ -329,12 +433,17 @@ public class BC_CONTEXT
     }
 
 /**
- * wait for all list-threads owned by the list-manager to finish
+ * wait for all list-threads owned by the list-manager to finish,
+ * close the result-log and wait for the queued writes and uploads of result-files
  *
 */
     public void join()
     {
         list_manager.join();
+        if ( result_log != null )
+            result_log.close();
+        writer.close();
+        uploader.close();
     }
 }
 
@@ -0,0 +1,1564 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.TreeMap;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.SparkExecutorInfo;
+
+import scala.Tuple2;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+import scala.reflect.ClassTag;
+import scala.reflect.ClassTag$;
+
+/**
+ * thread to download the chunks of a new snapshot in the background, while the
+ * jobs already serve requests on it ( missing chunks are downloaded on demand )
+ * - works in waves: wave k downloads the k-th chunk of every partition, so each
+ *   wave is a short spark-job and requests queued in between are not starved
+ * - the RDD of the snapshot is cached before the first wave, the later waves and
+ *   the searches run where the partitions are cached, so each chunk lands on the
+ *   executor which will search it
+ * - counts the warmed chunks per database and per host for the 'I' command
+ * - stops early if the snapshot is retired or the application closes
+ *
+ * @see        BC_DATABASES
+*/
+class BC_DATABASE_WARMUP extends Thread
+{
+    private final BC_DATABASES databases;
+    private final BC_DATABASE_SNAPSHOT snapshot;
+    private final int peer_port;
+    private final int peer_mb_per_sec;
+    private final Map< String, Integer > per_host;
+    private final long started_at;
+    private int done = 0;
+    private int failed = 0;
+    private long finished_at = 0;
+    private final Logger logger;
+
+/**
+ * create instance of BC_DATABASE_WARMUP
+ *
+ * @param a_databases       the database-registry
+ * @param a_snapshot        the snapshot to warm up, acquired by the caller
+ * @param a_peer_port       port of the chunk-servers, 0...disabled
+ * @param a_peer_mb_per_sec bandwidth-cap of the chunk-servers
+*/
+    public BC_DATABASE_WARMUP( final BC_DATABASES a_databases, final BC_DATABASE_SNAPSHOT a_snapshot,
+                               int a_peer_port, int a_peer_mb_per_sec )
+    {
+        databases = a_databases;
+        snapshot = a_snapshot;
+        peer_port = a_peer_port;
+        peer_mb_per_sec = a_peer_mb_per_sec;
+        per_host = new TreeMap<>();
+        started_at = System.currentTimeMillis();
+        logger = LogManager.getLogger( BC_DATABASE_WARMUP.class );
+    }
+
+/**
+ * run one wave: download the k-th chunk of every partition
+ *
+ * @param k     index of the chunk inside each partition
+ * @return      results of the wave, empty if no partition has a k-th chunk
+*/
+    private List< BC_CHUNK_RESULT > wave( final int k )
+    {
+        final int port = peer_port;
+        final int mb_per_sec = peer_mb_per_sec;
+        final BC_CHUNK_PEERS peers = databases.registry().peers_of( snapshot.setting.key, port, mb_per_sec );
+        return snapshot.rdd.mapPartitions( it ->
+        {
+            List< BC_CHUNK_RESULT > res = new ArrayList<>();
+            for ( int i = 0; i < k && it.hasNext(); ++i )
+                it.next();
+            if ( it.hasNext() )
+            {
+                BC_DATABASE_RDD_ENTRY item = it.next();
+                BC_CHUNK_RESULT r = new BC_CHUNK_RESULT( item.chunk.name );
+                r.worker = item.workername();
+                if ( !item.present() )
+                    item.downloadIfAbsent( r.errors, r.infos, peers.of( item.chunk_dir_name() ), false );
+                if ( r.errors.isEmpty() && item.downloadAndScan( r.errors, r.infos ) && !item.in_place() )
+                {
+                    r.chunk_dir = item.chunk_dir_name();
+                    r.host = item.hostname();
+                    if ( peers.enabled() )
+                        BC_CHUNK_SERVER.serve( port, mb_per_sec, item );
+                }
+                res.add( r );
+            }
+            return res.iterator();
+        } ).collect();
+    }
+
+/**
+ * overwritten run method of Thread-BC_DATABASE_WARMUP
+ * - cache the RDD of the snapshot, the jobs search on the same cached partitions
+ * - run waves until every chunk has been visited
+*/
+    @Override public void run()
+    {
+        String key = snapshot.setting.key;
+        logger.info( String.format( "warm-up '%s' : version %d, %d chunks", key, snapshot.version, snapshot.chunks.size() ) );
+        try
+        {
+            snapshot.rdd.cache();
+            List< BC_CHUNK_RESULT > results;
+            int k = 0;
+            do
+            {
+                if ( snapshot.retired || !databases.is_running() )
+                    break;
+                results = wave( k++ );
+                for ( BC_CHUNK_RESULT r : results )
+                {
+                    String host = BC_CHUNK_REGISTRY.host_of( r.worker );
+                    synchronized( this )
+                    {
+                        if ( r.errors.isEmpty() )
+                        {
+                            done += 1;
+                            Integer n = per_host.get( host );
+                            per_host.put( host, n == null ? 1 : n + 1 );
+                        }
+                        else
+                            failed += 1;
+                    }
+                    for ( String msg : r.errors )
+                        logger.info( msg );
+                    if ( r.host != null )
+                        databases.registry().add( key, r.chunk_dir, r.host );
+                }
+            } while ( !results.isEmpty() );
+        }
+        catch ( Exception e )
+        {
+            logger.info( String.format( "warm-up '%s' : %s", key, e ) );
+        }
+        finally
+        {
+            synchronized( this ) { finished_at = System.currentTimeMillis(); }
+            databases.release( snapshot );
+        }
+        logger.info( String.format( "warm-up '%s' : %s", key, progress() ) );
+    }
+
+/**
+ * describe the progress for the 'I' command
+ *
+ * @return      one line for the database, one more line per host
+*/
+    public synchronized String progress()
+    {
+        int total = snapshot.chunks.size();
+        long elapsed = ( finished_at > 0 ? finished_at : System.currentTimeMillis() ) - started_at;
+        String S = String.format( "version %d, %d of %d chunks warm ( %.1f%% ), %d failed, %s after %,d s",
+                                  snapshot.version, done, total, ( 100.0 * done ) / Math.max( total, 1 ),
+                                  failed, finished_at > 0 ? "finished" : "running", elapsed / 1000 );
+        for ( Map.Entry< String, Integer > e : per_host.entrySet() )
+            S = S + String.format( "\n\t\t%-20s : %d chunks", e.getKey(), e.getValue() );
+        return S;
+    }
+
+/**
+ * is the warm-up still running ?
+ *
+ * @return  running
+*/
+    public synchronized boolean running()
+    {
+        return finished_at == 0;
+    }
+}
+
+/**
+ * thread to refresh one database in the background
+ * - lists the source again and compares the chunks by their generation
+ * - downloads only changed or added chunks, while the jobs keep using the current snapshot
+ * - hands the new list of chunks to BC_DATABASES for the switch-over
+ *
+ * @see        BC_DATABASES
+*/
+class BC_DATABASE_REFRESH extends Thread
+{
+    private final BC_DATABASES databases;
+    private final JavaSparkContext jsc;
+    private final String key;
+    private final Logger logger;
+
+/**
+ * create instance of BC_DATABASE_REFRESH
+ *
+ * @param a_databases   the database-registry
+ * @param a_jsc         JavaSparkContext
+ * @param a_key         key of the database to refresh
+*/
+    public BC_DATABASE_REFRESH( final BC_DATABASES a_databases, final JavaSparkContext a_jsc, final String a_key )
+    {
+        databases = a_databases;
+        jsc = a_jsc;
+        key = a_key;
+        logger = LogManager.getLogger( BC_DATABASE_REFRESH.class );
+    }
+
+/**
+ * download the given chunks on the workers
+ * - a changed chunk prefers the hosts holding the partition it is in now, an
+ *   added chunk goes where spark places it
+ * - the hosts which got a chunk are entered into the chunk-registry, so the
+ *   RDD of the new snapshot prefers them
+ *
+ * @param current   the current snapshot of the database
+ * @param chunks    chunks to download
+ * @return          number of errors
+*/
+    private int download( final BC_DATABASE_SNAPSHOT current, final List< BC_CHUNK_VALUES > chunks )
+    {
+        BC_DATABASE_SETTING setting = current.setting;
+        BC_CHUNK_REGISTRY registry = databases.registry();
+        Map< String, List< String > > hosts_of_chunk = new HashMap<>();
+        for ( List< BC_DATABASE_RDD_ENTRY > part : current.partitions )
+        {
+            List< String > l = registry.best_hosts( key, BC_DATABASES.chunk_dirs( part ),
+                                                    Math.max( setting.replicas, 1 ), false );
+            for ( BC_DATABASE_RDD_ENTRY entry : part )
+                hosts_of_chunk.put( entry.chunk.name, l );
+        }
+
+        List< BC_DATABASE_RDD_ENTRY > entries = BC_DATABASE_RDD_ENTRY.make_rdd_entry_list( setting, chunks );
+        List< List< String > > hosts = new ArrayList<>();
+        for ( BC_DATABASE_RDD_ENTRY entry : entries )
+        {
+            List< String > l = hosts_of_chunk.get( entry.chunk.name );
+            hosts.add( l != null ? l : new ArrayList< String >() );
+        }
+
+        List< BC_CHUNK_RESULT > results = BC_DATABASES.parallelize_at( jsc, entries, hosts ).map( item ->
+        {
+            BC_CHUNK_RESULT r = new BC_CHUNK_RESULT( item.chunk.name );
+            r.worker = item.workername();
+            if ( item.downloadIfAbsent( r.errors, r.infos ) && r.errors.isEmpty() && !item.in_place() )
+            {
+                r.chunk_dir = item.chunk_dir_name();
+                r.host = item.hostname();
+            }
+            return r;
+        } ).collect();
+
+        int errors = 0;
+        for ( BC_CHUNK_RESULT r : results )
+        {
+            for ( String msg : r.errors )
+                logger.info( msg );
+            errors += r.errors.size();
+            if ( r.host != null )
+                registry.add( key, r.chunk_dir, r.host );
+        }
+        return errors;
+    }
+
+/**
+ * overwritten run method of Thread-BC_DATABASE_REFRESH
+ * - compare the listing with the current snapshot
+ * - unchanged chunks are taken over, changed and added ones are downloaded
+ * - changed chunks of not versioned databases are skipped, because their
+ *   files on the workers are in use by the current snapshot
+ *
+ * @see        BC_DATABASES
+*/
+    @Override public void run()
+    {
+        BC_DATABASE_SNAPSHOT current = databases.acquire( key );
+        if ( current == null )
+            return;
+        try
+        {
+            BC_DATABASE_SETTING setting = current.setting;
+            Map< String, BC_CHUNK_VALUES > prev = new HashMap<>();
+            for ( BC_CHUNK_VALUES c : current.chunks )
+                prev.put( c.name, c );
+
+            List< BC_CHUNK_VALUES > next = new ArrayList<>();
+            List< BC_CHUNK_VALUES > fresh = new ArrayList<>();
+            int skipped = 0;
+            for ( BC_CHUNK_VALUES c : BC_DATABASES.list_chunks( setting, logger ) )
+            {
+                BC_CHUNK_VALUES p = prev.remove( c.name );
+                if ( p != null && p.version() == c.version() )
+                    next.add( p );
+                else if ( p == null || setting.versioned || setting.in_place( Collections.singletonList( c ) ) )
+                {
+                    next.add( c );
+                    fresh.add( c );
+                }
+                else
+                {
+                    next.add( p );
+                    skipped += 1;
+                }
+            }
+            if ( skipped > 0 )
+                logger.info( String.format( "refresh '%s' : %d changed chunks skipped, database is not versioned",
+                                            key, skipped ) );
+
+            if ( fresh.isEmpty() && prev.isEmpty() )
+            {
+                logger.info( String.format( "refresh '%s' : version %d is up to date", key, current.version ) );
+                return;
+            }
+
+            logger.info( String.format( "refresh '%s' : %d changed or added, %d removed chunks",
+                                        key, fresh.size(), prev.size() ) );
+            long started_at = System.currentTimeMillis();
+            if ( !setting.in_place( fresh ) && !fresh.isEmpty() && !databases.predownload() )
+            {
+                int errors = download( current, fresh );
+                if ( errors > 0 )
+                {
+                    logger.info( String.format( "refresh '%s' : %d download-errors, keeping version %d",
+                                                key, errors, current.version ) );
+                    return;
+                }
+            }
+            databases.install( key, setting, next, databases.predownload() );
+            logger.info( String.format( "refresh '%s' done in %,d ms", key, System.currentTimeMillis() - started_at ) );
+        }
+        catch ( Exception e )
+        {
+            logger.info( String.format( "refresh '%s' : %s", key, e ) );
+        }
+        finally
+        {
+            databases.release( current );
+        }
+    }
+}
+
+/**
+ * thread to attach a database in the background
+ * - lists the source and creates the RDD, optionally downloading the chunks
+ * - the database becomes visible to the jobs only when this is done
+ *
+ * @see        BC_DATABASES
+*/
+class BC_DATABASE_ATTACH extends Thread
+{
+    private final BC_DATABASES databases;
+    private final BC_DATABASE_SETTING setting;
+    private final boolean predownload;
+    private final Logger logger;
+
+/**
+ * create instance of BC_DATABASE_ATTACH
+ *
+ * @param a_databases   the database-registry
+ * @param a_setting     settings of the database to attach
+ * @param a_predownload download the chunks to the workers before attaching
+*/
+    public BC_DATABASE_ATTACH( final BC_DATABASES a_databases, final BC_DATABASE_SETTING a_setting,
+                               boolean a_predownload )
+    {
+        databases = a_databases;
+        setting = a_setting;
+        predownload = a_predownload;
+        logger = LogManager.getLogger( BC_DATABASE_ATTACH.class );
+    }
+
+/**
+ * overwritten run method of Thread-BC_DATABASE_ATTACH
+ *
+ * @see        BC_DATABASES
+*/
+    @Override public void run()
+    {
+        try
+        {
+            long started_at = System.currentTimeMillis();
+            List< BC_CHUNK_VALUES > chunks = databases.load_chunks( setting );
+            if ( chunks.isEmpty() )
+                logger.info( String.format( "attach '%s' : no chunks found in '%s'", setting.key, setting.source_location ) );
+            else
+            {
+                databases.install( setting.key, setting, chunks, predownload );
+                logger.info( String.format( "attach '%s' done in %,d ms", setting.key, System.currentTimeMillis() - started_at ) );
+            }
+        }
+        catch ( Exception e )
+        {
+            logger.info( String.format( "attach '%s' : %s", setting.key, e ) );
+        }
+    }
+}
+
+/**
+ * thread to bring the partitions of a database back to its replication-factor
+ * - each partition should be complete on 'replicas' hosts, hosts with all of
+ *   its chunks count as a replica
+ * - new copies go to live hosts already holding some of the chunks, then to
+ *   the hosts holding the fewest chunks of this database
+ * - the copies are made by a spark-job whose tasks prefer the target-hosts,
+ *   the chunks are fetched from peers if possible
+ * - if copies were made, the snapshot is re-installed with the same partitions,
+ *   so the new RDD prefers all hosts holding a partition
+ *
+ * @see        BC_DATABASES
+ * @see        BC_CHUNK_REGISTRY
+*/
+class BC_DATABASE_REPAIR extends Thread
+{
+    private final BC_DATABASES databases;
+    private final JavaSparkContext jsc;
+    private final BC_DATABASE_SNAPSHOT snapshot;
+    private final List< String > live;
+    private final int peer_port;
+    private final int peer_mb_per_sec;
+    private final Logger logger;
+
+/**
+ * create instance of BC_DATABASE_REPAIR
+ *
+ * @param a_databases       the database-registry
+ * @param a_jsc             JavaSparkContext
+ * @param a_snapshot        acquired snapshot to repair, released when done
+ * @param a_live            hosts with running executors
+ * @param a_peer_port       port of the chunk-servers, 0...no copies between peers
+ * @param a_peer_mb_per_sec cap of the outgoing bandwidth of a chunk-server
+*/
+    public BC_DATABASE_REPAIR( final BC_DATABASES a_databases, final JavaSparkContext a_jsc,
+                               final BC_DATABASE_SNAPSHOT a_snapshot, final List< String > a_live,
+                               int a_peer_port, int a_peer_mb_per_sec )
+    {
+        databases = a_databases;
+        jsc = a_jsc;
+        snapshot = a_snapshot;
+        live = a_live;
+        peer_port = a_peer_port;
+        peer_mb_per_sec = a_peer_mb_per_sec;
+        logger = LogManager.getLogger( BC_DATABASE_REPAIR.class );
+    }
+
+/**
+ * pick the hosts to receive a new copy of a partition
+ *
+ * @param part      list of database-entries of the partition
+ * @param load      number of chunks per host, updated with the picked hosts
+ * @return          list of target-hosts, empty if the partition is fully replicated
+*/
+    private List< String > targets( final List< BC_DATABASE_RDD_ENTRY > part, final Map< String, Integer > load )
+    {
+        String key = snapshot.setting.key;
+        BC_CHUNK_REGISTRY registry = databases.registry();
+        Set< String > dirs = BC_DATABASES.chunk_dirs( part );
+        List< String > holders = registry.best_hosts( key, dirs, live.size(), true );
+        int missing = snapshot.setting.replicas - holders.size();
+        List< String > res = new ArrayList<>();
+        if ( missing <= 0 )
+            return res;
+
+        final List< String > partial = registry.best_hosts( key, dirs, live.size(), false );
+        List< String > candidates = new ArrayList<>( live );
+        candidates.removeAll( holders );
+        Collections.sort( candidates, ( a, b ) ->
+        {
+            int ra = partial.contains( a ) ? partial.indexOf( a ) : partial.size();
+            int rb = partial.contains( b ) ? partial.indexOf( b ) : partial.size();
+            if ( ra != rb )
+                return ra - rb;
+            return ( load.containsKey( a ) ? load.get( a ) : 0 ) - ( load.containsKey( b ) ? load.get( b ) : 0 );
+        } );
+        for ( int i = 0; i < missing && i < candidates.size(); ++i )
+        {
+            String host = candidates.get( i );
+            res.add( host );
+            load.put( host, ( load.containsKey( host ) ? load.get( host ) : 0 ) + part.size() );
+        }
+        return res;
+    }
+
+/**
+ * overwritten run method of Thread-BC_DATABASE_REPAIR
+ *
+ * @see        BC_DATABASES
+*/
+    @Override public void run()
+    {
+        String key = snapshot.setting.key;
+        try
+        {
+            BC_CHUNK_REGISTRY registry = databases.registry();
+            Map< String, Integer > load = registry.load( key );
+            List< List< BC_DATABASE_RDD_ENTRY > > items = new ArrayList<>();
+            List< List< String > > hosts = new ArrayList<>();
+            int under = 0;
+            for ( List< BC_DATABASE_RDD_ENTRY > part : snapshot.partitions )
+            {
+                List< String > t = targets( part, load );
+                if ( !t.isEmpty() )
+                    under += 1;
+                for ( String host : t )
+                {
+                    items.add( part );
+                    hosts.add( Collections.singletonList( host ) );
+                }
+            }
+            if ( items.isEmpty() )
+                return;
+            logger.info( String.format( "repair '%s' : %d partitions under-replicated, making %d copies",
+                                        key, under, items.size() ) );
+
+            final int port = peer_port;
+            final int mb_per_sec = peer_mb_per_sec;
+            final BC_CHUNK_PEERS peers = registry.peers_of( key, port, mb_per_sec );
+            List< List< BC_CHUNK_RESULT > > results = BC_DATABASES.parallelize_at( jsc, items, hosts ).map( part ->
+            {
+                List< BC_CHUNK_RESULT > res = new ArrayList<>();
+                for ( BC_DATABASE_RDD_ENTRY item : part )
+                {
+                    BC_CHUNK_RESULT r = new BC_CHUNK_RESULT( item.chunk.name );
+                    r.worker = item.workername();
+                    if ( !item.present() )
+                        item.downloadIfAbsent( r.errors, r.infos, peers.of( item.chunk_dir_name() ), false );
+                    if ( r.errors.isEmpty() && item.present() )
+                    {
+                        r.chunk_dir = item.chunk_dir_name();
+                        r.host = item.hostname();
+                        if ( peers.enabled() )
+                            BC_CHUNK_SERVER.serve( port, mb_per_sec, item );
+                    }
+                    res.add( r );
+                }
+                return res;
+            } ).collect();
+
+            int added = 0;
+            int failed = 0;
+            for ( List< BC_CHUNK_RESULT > l : results )
+            {
+                for ( BC_CHUNK_RESULT r : l )
+                {
+                    for ( String msg : r.errors )
+                        logger.info( msg );
+                    if ( r.host == null )
+                        failed += 1;
+                    else if ( !registry.hosts_of( key, r.chunk_dir ).contains( r.host ) )
+                    {
+                        registry.add( key, r.chunk_dir, r.host );
+                        added += 1;
+                    }
+                }
+            }
+            logger.info( String.format( "repair '%s' : %d chunk-copies added, %d failed", key, added, failed ) );
+            if ( added > 0 )
+                databases.relocate( snapshot );
+        }
+        catch ( Exception e )
+        {
+            logger.info( String.format( "repair '%s' : %s", key, e ) );
+        }
+        finally
+        {
+            databases.release( snapshot );
+        }
+    }
+}
+
+/**
+ * registry of the databases, lives only on the master
+ * - owns the current snapshot of every database
+ * - hands out snapshots to the jobs, counting their references
+ * - switches to a refreshed snapshot atomically, requests already running
+ *   keep the snapshot they started with
+ * - removes chunk-files of retired snapshots from the workers, as soon as
+ *   no running request references them any more
+ * - databases can be attached and detached at runtime
+ * - as a thread it checks databases with a refresh-interval periodically
+ * - as a thread it drops lost hosts from the chunk-registry and repairs
+ *   databases with a replication-factor periodically
+ *
+ * @see        BC_DATABASE_SNAPSHOT
+ * @see        BC_DATABASE_REFRESH
+ * @see        BC_DATABASE_ATTACH
+ * @see        BC_DATABASE_REPAIR
+*/
+public final class BC_DATABASES extends Thread
+{
+    private final BC_CONTEXT context;
+    private final JavaSparkContext jsc;
+    private final Map< String, BC_DATABASE_SNAPSHOT > current;
+    private final List< BC_DATABASE_SNAPSHOT > retired;
+    private final Map< String, Thread > busy;     /* running refresh, attach or repair per database */
+    private final Map< String, Long > last_refresh;
+    private final Map< String, Integer > first_version;  /* continues the version of a manifest */
+    private final Set< String > from_manifest;           /* chunks not listed, manifest stays as it is */
+    private final BC_CHUNK_STATS stats;
+    private final BC_CHUNK_REGISTRY registry;
+    private final BC_DEVICE_STATS devices;
+    private final Map< String, BC_DATABASE_WARMUP > warmups;   /* background predownload per database */
+    private final Logger logger;
+
+    private static final long REPAIR_INTERVAL = 60L * 1000L;  /* check the hosts and replicas every minute */
+    private static final long PLACEMENT_INTERVAL = 30L * 1000L; /* persist the chunk-registry at most this often */
+
+/**
+ * create instance of BC_DATABASES
+ *
+ * @param a_context     application-context
+ * @param a_jsc         JavaSparkContext
+ * @see        BC_CONTEXT
+*/
+    public BC_DATABASES( final BC_CONTEXT a_context, final JavaSparkContext a_jsc )
+    {
+        context = a_context;
+        jsc = a_jsc;
+        current = new HashMap<>();
+        retired = new ArrayList<>();
+        busy = new HashMap<>();
+        last_refresh = new HashMap<>();
+        first_version = new HashMap<>();
+        from_manifest = new HashSet<>();
+        stats = new BC_CHUNK_STATS();
+        registry = new BC_CHUNK_REGISTRY();
+        devices = new BC_DEVICE_STATS();
+        warmups = new HashMap<>();
+        logger = LogManager.getLogger( BC_DATABASES.class );
+        context.set_databases( this );
+    }
+
+/**
+ * list the chunks of a database from its source, sorted by name and limited
+ *
+ * @param setting   database-settings
+ * @param logger    logger to report the number of chunks
+ * @return          list of chunks
+ * @see             BC_STORAGE
+*/
+    public static List< BC_CHUNK_VALUES > list_chunks( final BC_DATABASE_SETTING setting, final Logger logger )
+    {
+        /* get a list of entries from the source ( bucket )
+           each file
+        */
+        List< BC_NAME_SIZE > files = BC_STORAGE.of( setting.source_location ).list( setting.source_location, logger );
+
+        /* get a list of unique names ( without the extension ) */
+        List< BC_CHUNK_VALUES > all_chunks = BC_GCP_TOOLS.unique_by_extension( files, setting.extensions );
+
+        /* sort by name, so that the limit always picks the same chunks */
+        Collections.sort( all_chunks, new Comparator< BC_CHUNK_VALUES >()
+        {
+            @Override public int compare( BC_CHUNK_VALUES a, BC_CHUNK_VALUES b ) { return a.name.compareTo( b.name ); }
+        } );
+
+        if ( setting.limit > 0 && setting.limit < all_chunks.size() )
+        {
+            logger.info( String.format( "%s has %d chunks, using %d of them", setting.key, all_chunks.size(), setting.limit ) );
+            return new ArrayList<>( all_chunks.subList( 0, setting.limit ) );
+        }
+        logger.info( String.format( "%s has %d chunks", setting.key, all_chunks.size() ) );
+        return all_chunks;
+    }
+
+/**
+ * get the chunks of a database, from its manifest if that is still fresh,
+ * otherwise by listing the source
+ *
+ * @param setting   database-settings
+ * @return          list of chunks
+ * @see             BC_MANIFEST
+*/
+    public List< BC_CHUNK_VALUES > load_chunks( final BC_DATABASE_SETTING setting )
+    {
+        BC_SETTINGS settings = context.settings;
+        BC_MANIFEST manifest = null;
+        if ( settings.manifest_max_age > 0 )
+            manifest = BC_MANIFEST.read( BC_MANIFEST.filename( settings.manifest_dir, setting.key ) );
+
+        if ( manifest != null && manifest.matches( setting ) )
+        {
+            long started_at = System.currentTimeMillis();
+            boolean fresh = manifest.fresh( setting, settings.manifest_max_age, settings.manifest_samples );
+            synchronized( this )
+            {
+                first_version.put( setting.key, fresh ? manifest.version : manifest.version + 1 );
+                if ( fresh )
+                    from_manifest.add( setting.key );
+            }
+            if ( fresh )
+            {
+                logger.info( String.format( "%s : using manifest version %d with %d chunks ( %d minutes old, checked in %,d ms )",
+                             setting.key, manifest.version, manifest.chunks.size(), manifest.age_minutes(),
+                             System.currentTimeMillis() - started_at ) );
+                return manifest.chunks;
+            }
+            logger.info( String.format( "%s : manifest version %d is outdated", setting.key, manifest.version ) );
+        }
+        return list_chunks( setting, logger );
+    }
+
+/**
+ * the observed runtimes of the chunks, fed by the jobs
+ *
+ * @return     BC_CHUNK_STATS-instance
+*/
+    public BC_CHUNK_STATS stats()
+    {
+        return stats;
+    }
+
+/**
+ * which executor-hosts have which chunks, fed by the jobs
+ *
+ * @return     BC_CHUNK_REGISTRY-instance
+*/
+    public BC_CHUNK_REGISTRY registry()
+    {
+        return registry;
+    }
+
+/**
+ * I/O per local disk of the workers, fed by the jobs
+ *
+ * @return     BC_DEVICE_STATS-instance
+*/
+    public BC_DEVICE_STATS devices()
+    {
+        return devices;
+    }
+
+/**
+ * is the application still running, used by the background-threads
+ *
+ * @return     is the application running
+*/
+    boolean is_running()
+    {
+        return context.is_running();
+    }
+
+/**
+ * are the databases downloaded to the workers before they are used
+ *
+ * @return     value of the predownload-setting
+*/
+    public boolean predownload()
+    {
+        return context.settings.predownload_dbs;
+    }
+
+/**
+ * number of partitions for a database
+ * - the setting of the database, if given
+ * - the setting of the cluster, if given
+ * - otherwise the number of live executors times their cores
+ *
+ * @param setting   database-settings
+ * @return          number of partitions
+*/
+    private int num_partitions( final BC_DATABASE_SETTING setting )
+    {
+        if ( setting.num_partitions > 0 )
+            return setting.num_partitions;
+        if ( context.settings.num_partitions > 0 )
+            return context.settings.num_partitions;
+
+        /* the list of executors includes the driver */
+        int executors = jsc.sc().statusTracker().getExecutorInfos().length - 1;
+        if ( executors <= 0 )
+            executors = context.settings.num_executors;
+        int cores = context.settings.num_executor_cores;
+        if ( executors <= 0 || cores <= 0 )
+            return jsc.defaultParallelism();
+        return executors * cores;
+    }
+
+/**
+ * pack a list of chunks into partitions of equal weight
+ *
+ * @param setting       database-settings
+ * @param chunks        list of chunks
+ * @return              list of partitions, each a list of database-entries
+*/
+    private List< List< BC_DATABASE_RDD_ENTRY > > pack( final BC_DATABASE_SETTING setting,
+                                                        final List< BC_CHUNK_VALUES > chunks )
+    {
+        /* create a list of Database-RDD-entries using a static method of this class */
+        List< BC_DATABASE_RDD_ENTRY > entries = BC_DATABASE_RDD_ENTRY.make_rdd_entry_list( setting, chunks );
+
+        /* 16 parallel jobs, 64 partitions each = 1024
+         * 16 workers, 64 cores each =            1024
+         */
+        BC_CHUNK_PARTITIONER packer = new BC_CHUNK_PARTITIONER( entries, num_partitions( setting ),
+                                                                setting.partition_by, stats, setting.key );
+        List< List< BC_DATABASE_RDD_ENTRY > > packed = packer.partitions();
+        logger.info( String.format( "%s : %d chunks in %d partitions by %s, imbalance %.2f",
+                     setting.key, entries.size(), packed.size(), packer.method(), packer.imbalance() ) );
+        return packed;
+    }
+
+/**
+ * the names of the chunk-directories of one partition
+ *
+ * @param part      list of database-entries
+ * @return          set of directory-names
+*/
+    static Set< String > chunk_dirs( final List< BC_DATABASE_RDD_ENTRY > part )
+    {
+        Set< String > res = new HashSet<>();
+        for ( BC_DATABASE_RDD_ENTRY entry : part )
+            res.add( entry.chunk_dir_name() );
+        return res;
+    }
+
+/**
+ * are all database-entries of one partition read in place ?
+ *
+ * @param part      list of database-entries
+ * @return          is none of them copied to the workers
+*/
+    static boolean in_place( final List< BC_DATABASE_RDD_ENTRY > part )
+    {
+        for ( BC_DATABASE_RDD_ENTRY entry : part )
+        {
+            if ( !entry.in_place() )
+                return false;
+        }
+        return true;
+    }
+
+/**
+ * distribute a list of items, one item per partition, each partition with its
+ * own preferred hosts ( the scheduler runs the tasks there if possible )
+ *
+ * @param jsc       spark-context
+ * @param items     list of items
+ * @param hosts     preferred hosts per item, may be empty
+ * @return          RDD with one partition per item
+*/
+    static < T > JavaRDD< T > parallelize_at( final JavaSparkContext jsc, final List< T > items,
+                                              final List< List< String > > hosts )
+    {
+        List< Tuple2< T, Seq< String > > > located = new ArrayList<>();
+        for ( int i = 0; i < items.size(); ++i )
+            located.add( new Tuple2< T, Seq< String > >( items.get( i ),
+                         JavaConverters.asScalaBufferConverter( hosts.get( i ) ).asScala() ) );
+        ClassTag< T > tag = ClassTag$.MODULE$.apply( Object.class );
+        return JavaRDD.fromRDD( jsc.sc().makeRDD( JavaConverters.asScalaBufferConverter( located ).asScala(), tag ), tag );
+    }
+
+/**
+ * create the RDD for a list of packed chunks
+ * - ask the spark-context to distribute the RDD to the workers,
+ *   one packed list per partition, no shuffle needed
+ * - each partition prefers the hosts already holding its chunks, a task which
+ *   failed or lost its executor is re-run on one of them
+ * - if requested, force downloading the chunks to the workers
+ *
+ * @param setting       database-settings
+ * @param packed        list of partitions, each a list of database-entries
+ * @param predownload   download the chunks to the workers
+ * @return              RDD of database-entries
+*/
+    private JavaRDD< BC_DATABASE_RDD_ENTRY > make_rdd( final BC_DATABASE_SETTING setting,
+                                                       final List< List< BC_DATABASE_RDD_ENTRY > > packed,
+                                                       boolean predownload )
+    {
+        List< List< String > > hosts = new ArrayList<>();
+        int located = 0;
+        for ( List< BC_DATABASE_RDD_ENTRY > part : packed )
+        {
+            List< String > l = in_place( part ) ? new ArrayList< String >() :
+                    registry.best_hosts( setting.key, chunk_dirs( part ), Math.max( setting.replicas, 1 ), false );
+            if ( !l.isEmpty() )
+                located += 1;
+            hosts.add( l );
+        }
+
+        JavaRDD< List< BC_DATABASE_RDD_ENTRY > > parts;
+        if ( located > 0 )
+        {
+            logger.info( String.format( "%s : %d of %d partitions placed on hosts holding their chunks",
+                                        setting.key, located, packed.size() ) );
+            parts = parallelize_at( jsc, packed, hosts );
+        }
+        else
+            parts = jsc.parallelize( packed, packed.size() );
+        JavaRDD< BC_DATABASE_RDD_ENTRY > rdd = parts.flatMap( part -> part.iterator() );
+
+        if ( predownload )
+        {
+            rdd = rdd.map(item -> {
+
+                       List<String> error_list = new ArrayList<String>();
+                       List<String> info_list = new ArrayList<String>();
+                       item.downloadAndScan(error_list, info_list);
+                       return item;
+                      }).cache();
+
+            rdd.collect();
+        }
+        return rdd;
+    }
+
+/**
+ * path of the persisted chunk-registry, next to the manifests
+ *
+ * @return      path of the file
+*/
+    private String placement_file()
+    {
+        return BC_CHUNK_REGISTRY.filename( context.settings.manifest_dir );
+    }
+
+/**
+ * ask every live host which chunks of a database it already has, the answer
+ * replaces what the chunk-registry knows about this host
+ * - one task per host, preferring this host, each checks the files of all chunks
+ *
+ * @param setting   database-settings
+ * @param chunks    list of chunks of the database
+ * @return          number of chunk-copies found
+*/
+    private int inventory( final BC_DATABASE_SETTING setting, final List< BC_CHUNK_VALUES > chunks )
+    {
+        int res = 0;
+        List< String > live = live_hosts();
+        if ( setting.in_place( chunks ) || live.isEmpty() )
+            return res;
+
+        List< List< String > > hosts = new ArrayList<>();
+        for ( String host : live )
+            hosts.add( Collections.singletonList( host ) );
+        final List< BC_DATABASE_RDD_ENTRY > entries = BC_DATABASE_RDD_ENTRY.make_rdd_entry_list( setting, chunks );
+        try
+        {
+            List< Tuple2< String, List< String > > > found = parallelize_at( jsc, live, hosts ).map( h ->
+            {
+                /* the task may not run on the preferred host, report the one it ran on */
+                String host = entries.isEmpty() ? h : entries.get( 0 ).hostname();
+                List< String > dirs = new ArrayList<>();
+                for ( BC_DATABASE_RDD_ENTRY entry : entries )
+                {
+                    if ( entry.present() )
+                        dirs.add( entry.chunk_dir_name() );
+                }
+                return new Tuple2< String, List< String > >( host, dirs );
+            } ).collect();
+            for ( Tuple2< String, List< String > > t : found )
+            {
+                registry.set_host( setting.key, t._1(), t._2() );
+                res += t._2().size();
+            }
+            logger.info( String.format( "%s : inventory of %d hosts, %d chunk-copies found",
+                                        setting.key, found.size(), res ) );
+        }
+        catch ( Exception e )
+        {
+            logger.info( String.format( "%s : inventory failed : %s", setting.key, e ) );
+        }
+        return res;
+    }
+
+/**
+ * create the first snapshot of all databases found in the settings,
+ * the databases are set up in parallel
+ * - the chunk-registry is restored from its file and corrected by an inventory
+ *   of the hosts, so the partitions prefer the hosts already holding their chunks
+ * - with predownload the chunks are downloaded in the background, requests are
+ *   served right away and download missing chunks on demand
+ *
+ * @see        BC_SETTINGS
+ * @see        BC_DATABASE_WARMUP
+*/
+    public void setup()
+    {
+        int restored = registry.read( placement_file() );
+        if ( restored > 0 )
+            logger.info( String.format( "placement : %d chunk-copies restored from '%s'", restored, placement_file() ) );
+
+        List< Thread > threads = new ArrayList<>();
+        for ( String key : context.settings.dbs.keySet() )
+        {
+            final BC_DATABASE_SETTING setting = context.settings.dbs.get( key );
+            Thread t = new Thread( () ->
+            {
+                try
+                {
+                    List< BC_CHUNK_VALUES > chunks = load_chunks( setting );
+                    inventory( setting, chunks );
+                    install( setting.key, setting, chunks, false );
+                    if ( predownload() )
+                        warm_up( setting.key );
+                }
+                catch ( Exception e )
+                {
+                    logger.info( String.format( "database '%s' : setup failed : %s", setting.key, e ) );
+                }
+            } );
+            threads.add( t );
+            t.start();
+        }
+        for ( Thread t : threads )
+        {
+            try { t.join(); }
+            catch( InterruptedException e ) { }
+        }
+    }
+
+/**
+ * create a new snapshot from a list of chunks and make it the current one
+ * - the previous snapshot is retired, its obsolete chunk-files are removed
+ *   as soon as it is not referenced any more
+ *
+ * @param key           key of the database
+ * @param setting       database-settings
+ * @param chunks        list of chunks of the new snapshot
+ * @param predownload   download the chunks to the workers before switching
+*/
+    public void install( final String key, final BC_DATABASE_SETTING setting,
+                         final List< BC_CHUNK_VALUES > chunks, boolean predownload )
+    {
+        install( key, setting, chunks, pack( setting, chunks ), predownload );
+    }
+
+/**
+ * create a new snapshot from chunks already packed into partitions and make it the current one
+ *
+ * @param key           key of the database
+ * @param setting       database-settings
+ * @param chunks        list of chunks of the new snapshot
+ * @param packed        the chunks packed into partitions
+ * @param predownload   download the chunks to the workers before switching
+*/
+    private void install( final String key, final BC_DATABASE_SETTING setting,
+                          final List< BC_CHUNK_VALUES > chunks,
+                          final List< List< BC_DATABASE_RDD_ENTRY > > packed, boolean predownload )
+    {
+        JavaRDD< BC_DATABASE_RDD_ENTRY > rdd = make_rdd( setting, packed, predownload );
+        BC_DATABASE_SNAPSHOT prev;
+        BC_DATABASE_SNAPSHOT snapshot;
+        boolean write_manifest;
+        synchronized( this )
+        {
+            write_manifest = !from_manifest.remove( key );
+            prev = current.get( key );
+            int version = ( prev != null ) ? prev.version + 1 :
+                          ( first_version.containsKey( key ) ? first_version.remove( key ) : 1 );
+            snapshot = new BC_DATABASE_SNAPSHOT( setting, version, chunks, packed, rdd );
+            current.put( key, snapshot );
+            last_refresh.put( key, snapshot.created_at );
+            if ( prev != null )
+            {
+                prev.retired = true;
+                if ( prev.refs > 0 )
+                {
+                    retired.add( prev );
+                    prev = null;
+                }
+            }
+        }
+        logger.info( String.format( "database '%s' : version %d with %d chunks", key, snapshot.version, chunks.size() ) );
+        if ( write_manifest && context.settings.manifest_max_age > 0 )
+            BC_MANIFEST.write( BC_MANIFEST.filename( context.settings.manifest_dir, key ), setting,
+                               snapshot.version, chunks );
+        if ( prev != null )
+            dispose( key, prev );
+    }
+
+/**
+ * start downloading the chunks of the current snapshot of a database in the background
+ *
+ * @param key   key of the database
+ * @see         BC_DATABASE_WARMUP
+*/
+    private void warm_up( final String key )
+    {
+        BC_DATABASE_SNAPSHOT snapshot = acquire( key );
+        if ( snapshot == null )
+            return;
+        BC_DATABASE_WARMUP w = new BC_DATABASE_WARMUP( this, snapshot, context.settings.peer_port,
+                                                       context.settings.peer_mb_per_sec );
+        synchronized( this ) { warmups.put( key, w ); }
+        w.start();
+    }
+
+/**
+ * find the current snapshot for a request and add a reference to it
+ * - the snapshot has to be released after use
+ *
+ * @param db    database-key of the request, or its first 2 characters
+ * @return      snapshot or null if not found
+*/
+    public synchronized BC_DATABASE_SNAPSHOT acquire( final String db )
+    {
+        BC_DATABASE_SNAPSHOT res = current.get( db );
+        if ( res == null && db.length() > 2 )
+            res = current.get( db.substring( 0, 2 ) );
+        if ( res != null )
+            res.refs += 1;
+        return res;
+    }
+
+/**
+ * remove a reference from a snapshot, retired snapshots are disposed
+ * as soon as no reference is left
+ *
+ * @param snapshot  snapshot obtained via acquire()
+*/
+    public void release( final BC_DATABASE_SNAPSHOT snapshot )
+    {
+        boolean done;
+        synchronized( this )
+        {
+            snapshot.refs -= 1;
+            done = ( snapshot.retired && snapshot.refs == 0 && retired.remove( snapshot ) );
+        }
+        if ( done )
+            dispose( snapshot.setting.key, snapshot );
+    }
+
+/**
+ * remove the chunk-files of a retired snapshot, which are not used by a
+ * newer snapshot, from the workers and drop its RDD from the cache
+ * - one task per host the chunk-registry knows to hold obsolete chunks, so
+ *   replicas and copies made for peers are removed as well
+ * - obsolete chunks without a known holder are removed on the RDD of the
+ *   retired snapshot, where its partitions have been cached
+ * - the chunk-registry forgets the chunks after the removal has run
+ *
+ * @param key       key of the database
+ * @param snapshot  the retired snapshot
+*/
+    private void dispose( final String key, final BC_DATABASE_SNAPSHOT snapshot )
+    {
+        Set< String > obsolete = snapshot.chunk_dirs();
+        synchronized( this )
+        {
+            BC_DATABASE_SNAPSHOT cur = current.get( key );
+            if ( cur != null )
+                obsolete.removeAll( cur.chunk_dirs() );
+            for ( BC_DATABASE_SNAPSHOT s : retired )
+            {
+                if ( s.setting.key.equals( key ) )
+                    obsolete.removeAll( s.chunk_dirs() );
+            }
+        }
+
+        if ( !obsolete.isEmpty() && !snapshot.setting.in_place( snapshot.chunks ) && !snapshot.keep_files )
+        {
+            /* one entry per obsolete chunk-directory, grouped by the hosts holding it */
+            Map< String, List< BC_DATABASE_RDD_ENTRY > > by_host = new TreeMap<>();
+            final Set< String > unknown = new HashSet<>();
+            Set< String > seen = new HashSet<>();
+            for ( List< BC_DATABASE_RDD_ENTRY > part : snapshot.partitions )
+            {
+                for ( BC_DATABASE_RDD_ENTRY entry : part )
+                {
+                    String dir = entry.chunk_dir_name();
+                    if ( !obsolete.contains( dir ) || !seen.add( dir ) )
+                        continue;
+                    Set< String > holders = registry.hosts_of( key, dir );
+                    if ( holders.isEmpty() )
+                        unknown.add( dir );
+                    for ( String host : holders )
+                    {
+                        List< BC_DATABASE_RDD_ENTRY > l = by_host.get( host );
+                        if ( l == null )
+                        {
+                            l = new ArrayList<>();
+                            by_host.put( host, l );
+                        }
+                        l.add( entry );
+                    }
+                }
+            }
+
+            try
+            {
+                List< List< BC_DATABASE_RDD_ENTRY > > items = new ArrayList<>();
+                List< List< String > > hosts = new ArrayList<>();
+                for ( Map.Entry< String, List< BC_DATABASE_RDD_ENTRY > > e : by_host.entrySet() )
+                {
+                    items.add( e.getValue() );
+                    hosts.add( Collections.singletonList( e.getKey() ) );
+                }
+                List< List< String > > reports = new ArrayList<>();
+                if ( !items.isEmpty() )
+                {
+                    reports.addAll( parallelize_at( jsc, items, hosts ).map( part ->
+                    {
+                        List< String > info_lst = new ArrayList<>();
+                        for ( BC_DATABASE_RDD_ENTRY item : part )
+                            item.remove( info_lst );
+                        return info_lst;
+                    } ).collect() );
+                }
+                if ( !unknown.isEmpty() )
+                {
+                    reports.addAll( snapshot.rdd.filter( item -> unknown.contains( item.chunk_dir_name() ) )
+                                                .map( item ->
+                    {
+                        List< String > info_lst = new ArrayList<>();
+                        item.remove( info_lst );
+                        return info_lst;
+                    } ).collect() );
+                }
+                for ( List< String > report : reports )
+                {
+                    for ( String msg : report )
+                        logger.info( msg );
+                }
+            }
+            catch ( Exception e )
+            {
+                logger.info( String.format( "database '%s' : removing version %d failed : %s", key, snapshot.version, e ) );
+            }
+            registry.forget( key, obsolete );
+        }
+        snapshot.rdd.unpersist( false );
+        logger.info( String.format( "database '%s' : version %d retired, %d chunks obsolete%s",
+                                    key, snapshot.version, obsolete.size(),
+                                    snapshot.keep_files ? ", files kept" : "" ) );
+    }
+
+/**
+ * start refreshing a database in the background
+ *
+ * @param key   key of the database
+ * @return      was a refresh started ( false if unknown or already refreshing )
+*/
+    public synchronized boolean refresh( final String key )
+    {
+        if ( !current.containsKey( key ) )
+        {
+            logger.info( String.format( "refresh : database '%s' not found", key ) );
+            return false;
+        }
+        if ( is_busy( key ) )
+        {
+            logger.info( String.format( "refresh : database '%s' is busy", key ) );
+            return false;
+        }
+        BC_DATABASE_REFRESH r = new BC_DATABASE_REFRESH( this, jsc, key );
+        busy.put( key, r );
+        last_refresh.put( key, System.currentTimeMillis() );
+        r.start();
+        return true;
+    }
+
+/**
+ * repack the current chunks of a database into partitions in the background,
+ * for instance after runtimes have been observed for 'partition_by' : 'runtime'
+ *
+ * @param key   key of the database
+ * @return      was the rebalance started ( false if unknown or busy )
+*/
+    public synchronized boolean rebalance( final String key )
+    {
+        final BC_DATABASE_SNAPSHOT s = current.get( key );
+        if ( s == null || is_busy( key ) )
+        {
+            logger.info( String.format( "rebalance : database '%s' not found or busy", key ) );
+            return false;
+        }
+        Thread t = new Thread( () -> install( key, s.setting, s.chunks, predownload() ) );
+        busy.put( key, t );
+        t.start();
+        return true;
+    }
+
+/**
+ * re-install a snapshot with the same partitions, so the new RDD prefers
+ * the hosts which got copies of the chunks in the meantime
+ *
+ * @param snapshot  the current snapshot of a database
+ * @see             BC_DATABASE_REPAIR
+*/
+    void relocate( final BC_DATABASE_SNAPSHOT snapshot )
+    {
+        String key = snapshot.setting.key;
+        synchronized( this )
+        {
+            if ( snapshot.retired || current.get( key ) != snapshot )
+                return;
+        }
+        install( key, snapshot.setting, snapshot.chunks, snapshot.partitions, false );
+    }
+
+/**
+ * the hosts with running executors, without the driver
+ *
+ * @return      list of host-names
+*/
+    private List< String > live_hosts()
+    {
+        Set< String > res = new LinkedHashSet<>();
+        for ( SparkExecutorInfo info : jsc.sc().statusTracker().getExecutorInfos() )
+            res.add( info.host() );
+        if ( res.size() > 1 )
+            res.remove( jsc.sc().getConf().get( "spark.driver.host", "" ) );
+        return new ArrayList<>( res );
+    }
+
+/**
+ * count the partitions of a snapshot which are complete on fewer hosts than its replication-factor
+ *
+ * @param snapshot  snapshot of a database
+ * @return          number of under-replicated partitions
+*/
+    private int under_replicated( final BC_DATABASE_SNAPSHOT snapshot )
+    {
+        int res = 0;
+        int replicas = snapshot.setting.replicas;
+        for ( List< BC_DATABASE_RDD_ENTRY > part : snapshot.partitions )
+        {
+            if ( registry.best_hosts( snapshot.setting.key, chunk_dirs( part ), replicas, true ).size() < replicas )
+                res += 1;
+        }
+        return res;
+    }
+
+/**
+ * drop lost hosts from the chunk-registry, start a repair for every database
+ * with under-replicated partitions ( if it is not busy or warming up )
+ *
+ * @see        BC_DATABASE_REPAIR
+*/
+    private void check_replicas()
+    {
+        List< String > live = live_hosts();
+        if ( live.isEmpty() )
+            return;
+        int lost = registry.retain_hosts( live );
+        if ( lost > 0 )
+            logger.info( String.format( "%d chunk-copies dropped from the registry, their hosts are gone", lost ) );
+
+        synchronized( this )
+        {
+            for ( String key : current.keySet() )
+            {
+                BC_DATABASE_SNAPSHOT s = current.get( key );
+                BC_DATABASE_WARMUP w = warmups.get( key );
+                if ( s.setting.replicas <= 1 || s.setting.in_place( s.chunks ) || live.size() < 2 || is_busy( key ) ||
+                     ( w != null && w.running() ) || under_replicated( s ) == 0 )
+                    continue;
+                s.refs += 1;
+                BC_DATABASE_REPAIR r = new BC_DATABASE_REPAIR( this, jsc, s, live, context.settings.peer_port,
+                                                               context.settings.peer_mb_per_sec );
+                busy.put( key, r );
+                r.start();
+            }
+        }
+    }
+
+/**
+ * test if a refresh or attach is running for a database
+ *
+ * @param key   key of the database
+ * @return      is a refresh or attach running ?
+*/
+    private synchronized boolean is_busy( final String key )
+    {
+        Thread t = busy.get( key );
+        return ( t != null && t.isAlive() );
+    }
+
+/**
+ * attach a new database in the background, it becomes available to the jobs
+ * after its RDD has been created ( and its chunks have been downloaded )
+ *
+ * @param setting       settings of the database, same as in the database-section of the ini.json
+ * @param predownload   download the chunks to the workers before attaching
+ * @return              was the attach started ( false if invalid, known or busy )
+ * @see        BC_DATABASE_ATTACH
+*/
+    public synchronized boolean attach( final BC_DATABASE_SETTING setting, boolean predownload )
+    {
+        if ( !setting.valid() )
+        {
+            logger.info( String.format( "attach : settings for database '%s' are invalid", setting.key ) );
+            return false;
+        }
+        if ( current.containsKey( setting.key ) || is_busy( setting.key ) )
+        {
+            logger.info( String.format( "attach : database '%s' is already attached or busy", setting.key ) );
+            return false;
+        }
+        logger.info( String.format( "attach : database '%s'\n%s", setting.key, setting ) );
+        BC_DATABASE_ATTACH a = new BC_DATABASE_ATTACH( this, setting, predownload || predownload() );
+        busy.put( setting.key, a );
+        a.start();
+        return true;
+    }
+
+/**
+ * detach a database, new requests for it are rejected, requests already running
+ * finish on its last snapshot, then its RDD is unpersisted
+ *
+ * @param key           key of the database
+ * @param remove_files  remove the chunk-files from the workers too
+ * @return              was the database detached ( false if unknown or busy )
+*/
+    public boolean detach( final String key, boolean remove_files )
+    {
+        BC_DATABASE_SNAPSHOT snapshot;
+        synchronized( this )
+        {
+            if ( is_busy( key ) )
+            {
+                logger.info( String.format( "detach : database '%s' is busy", key ) );
+                return false;
+            }
+            snapshot = current.remove( key );
+            if ( snapshot == null )
+            {
+                logger.info( String.format( "detach : database '%s' not found", key ) );
+                return false;
+            }
+            last_refresh.remove( key );
+            snapshot.retired = true;
+            snapshot.keep_files = !remove_files;
+            if ( snapshot.refs > 0 )
+            {
+                retired.add( snapshot );
+                logger.info( String.format( "detach : database '%s' detached, %d requests still running",
+                                            key, snapshot.refs ) );
+                return true;
+            }
+        }
+        dispose( key, snapshot );
+        logger.info( String.format( "detach : database '%s' detached", key ) );
+        return true;
+    }
+
+/**
+ * print info about the snapshots
+ *
+*/
+    public synchronized void print_info()
+    {
+        for ( String key : current.keySet() )
+        {
+            BC_DATABASE_SNAPSHOT s = current.get( key );
+            logger.info( String.format( "database %-8s: version %d, %d chunks, %d requests, %d copies on peers%s%s\n",
+                         key, s.version, s.chunks.size(), s.refs, registry.copies( key ),
+                         s.setting.replicas > 1 ? String.format( ", %d of %d partitions under-replicated",
+                                                  under_replicated( s ), s.partitions.size() ) : "",
+                         is_busy( key ) ? ", refreshing" : "" ) );
+        }
+        for ( String key : busy.keySet() )
+        {
+            if ( !current.containsKey( key ) && is_busy( key ) )
+                logger.info( String.format( "database %-8s: attaching\n", key ) );
+        }
+        for ( BC_DATABASE_SNAPSHOT s : retired )
+            logger.info( String.format( "database %-8s: version %d retired, %d requests\n",
+                         s.setting.key, s.version, s.refs ) );
+        for ( String key : warmups.keySet() )
+            logger.info( String.format( "warm-up  %-8s: %s\n", key, warmups.get( key ).progress() ) );
+        for ( String line : devices.report() )
+            logger.info( line + "\n" );
+        for ( String line : BC_GCP_TOOLS.metrics() )
+            logger.info( line + "\n" );
+    }
+
+/**
+ * overwritten run method of Thread-BC_DATABASES
+ * - loop until application closed
+ * - start a refresh for every database whose refresh-interval has elapsed
+ * - check the hosts and the replicas every minute
+ * - persist the chunk-registry, if it has changed
+ *
+ * @see        BC_DATABASE_REFRESH
+ * @see        BC_DATABASE_REPAIR
+*/
+    @Override public void run()
+    {
+        long last_repair = System.currentTimeMillis();
+        long last_placement = last_repair;
+        while ( context.is_running() )
+        {
+            if ( System.currentTimeMillis() - last_placement > PLACEMENT_INTERVAL )
+            {
+                last_placement = System.currentTimeMillis();
+                registry.write( placement_file() );
+            }
+            if ( System.currentTimeMillis() - last_repair > REPAIR_INTERVAL )
+            {
+                last_repair = System.currentTimeMillis();
+                check_replicas();
+            }
+            List< String > due = new ArrayList<>();
+            synchronized( this )
+            {
+                long now = System.currentTimeMillis();
+                for ( String key : current.keySet() )
+                {
+                    int minutes = current.get( key ).setting.refresh_minutes;
+                    Long last = last_refresh.get( key );
+                    if ( minutes > 0 && last != null && now - last > minutes * 60L * 1000L )
+                        due.add( key );
+                }
+            }
+            for ( String key : due )
+                refresh( key );
+            try
+            {
+                Thread.sleep( 1000 );
+            }
+            catch ( InterruptedException e ) { }
+        }
+
+        List< Thread > to_join;
+        synchronized( this )
+        {
+            to_join = new ArrayList<>( busy.values() );
+            to_join.addAll( warmups.values() );
+        }
+        for ( Thread r : to_join )
+        {
+            try { r.join(); }
+            catch( InterruptedException e ) { }
+        }
+        registry.write( placement_file() );
+    }
+}
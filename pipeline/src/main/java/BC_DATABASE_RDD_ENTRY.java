@@ -30,14 +30,23 @@ import java.io.Serializable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.BufferedInputStream;
+import java.io.PrintWriter;
 
 import java.nio.file.Paths;
 import java.nio.file.Path;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import java.net.InetAddress;
 
@@ -49,6 +58,8 @@ import java.nio.channels.FileLock;
  * Content of the Database-RDD
  * - stores a reference to database-settings common to all chunks
  * - stores the name of one specific database-chunk. for instance : 'nr_50M.00'
+ * - optionally stores one OID-range ( part of parts ) of the chunk, to split
+ *   an oversized chunk into several tasks
  *
  * @see        BC_DATABASE_SETTING
 */
@@ -56,7 +67,14 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
 {
     private final BC_DATABASE_SETTING setting;
     public final BC_CHUNK_VALUES chunk;
+    public final int part;      /* which OID-range of the chunk, 0...parts-1 */
+    public final int parts;     /* into how many OID-ranges the chunk is split, 1...whole chunk */
+    public static final String COMPLETE_MARKER = ".complete";  /* all files of the chunk-directory are verified */
     private static Object mutex = new Object();
+    private static final ConcurrentHashMap< String, Object > file_mutexes = new ConcurrentHashMap<>();
+    private static final Map< String, String > placed = new HashMap<>();     /* chunk-dir -> root, placement 'space' */
+    private static final Map< String, Long > reserved = new HashMap<>();     /* root -> bytes of downloads in flight */
+    private static final Map< String, Long > pending = new HashMap<>();      /* chunk-dir -> bytes reserved for it */
 
 /**
  * create instance BC_DATABASE_RDD_ENTRY
@@ -70,6 +88,50 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
     {
         setting = a_setting;
         chunk = a_chunk;
+        part = 0;
+        parts = 1;
+    }
+
+/**
+ * create instance BC_DATABASE_RDD_ENTRY for one OID-range of a chunk
+ * - the range covers the OIDs part * N / parts ... ( part + 1 ) * N / parts - 1
+ *
+ * @param whole      entry for the whole chunk
+ * @param a_part     which range, 0...a_parts-1
+ * @param a_parts    into how many ranges the chunk is split
+*/
+    public BC_DATABASE_RDD_ENTRY( final BC_DATABASE_RDD_ENTRY whole, int a_part, int a_parts )
+    {
+        setting = whole.setting;
+        chunk = whole.chunk;
+        part = a_part;
+        parts = a_parts;
+    }
+
+/**
+ * create the entries for all OID-ranges of this chunk
+ *
+ * @param n          into how many ranges to split the chunk
+ * @return           list of n range-entries
+*/
+    public List< BC_DATABASE_RDD_ENTRY > split( int n )
+    {
+        List< BC_DATABASE_RDD_ENTRY > res = new ArrayList<>();
+        for ( int i = 0; i < n; ++i )
+            res.add( new BC_DATABASE_RDD_ENTRY( this, i, n ) );
+        return res;
+    }
+
+/**
+ * name of the chunk, for ranges including the range, for instance 'nt_50M.00[2/4]'
+ *
+ * @return           name for reports and logs
+*/
+    public String label()
+    {
+        if ( parts > 1 )
+            return String.format( "%s[%d/%d]", chunk.name, part + 1, parts );
+        return chunk.name;
     }
 
 /**
@@ -101,8 +163,63 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
         return String.format( "%s/%s.%s", setting.source_location, chunk.name, extension );
     }
 
+/**
+ * construct the source-path for one of the database-chunk-files, for compressed
+ * files this includes the compression-suffix, for instance 'nsq.gz'
+ *
+ * @param obj        name/size-tuple of one file of the database-chunk
+ * @return           fully qualified url of the file in the source-location
+ * @see              BC_NAME_SIZE
+*/
+    public String build_source_path( final BC_NAME_SIZE obj )
+    {
+        if ( obj.compressed() )
+            return String.format( "%s.%s", build_source_path( obj.name ), obj.compression );
+        return build_source_path( obj.name );
+    }
+
+/**
+ * construct the name of the directory on the worker holding the files of this chunk,
+ * for versioned databases this includes the version, for instance 'nt_50M.00.v1538672384123456'
+ *
+ * @return           name of the directory, relative to the worker-location
+ * @see              BC_DATABASE_SETTING
+*/
+    public String chunk_dir_name()
+    {
+        long version = chunk.version();
+        if ( setting.versioned && version > 0 )
+            return String.format( "%s.v%d", chunk.name, version );
+        return chunk.name;
+    }
+
+/**
+ * is this chunk searched in place ( 'direct' or a source in the local filesystem ) ?
+ * - compressed chunks are always decompressed into the worker-location
+ *
+ * @return           is the chunk read in place, without a copy on the worker
+ * @see              BC_DATABASE_SETTING
+*/
+    public boolean in_place()
+    {
+        return setting.in_place( Collections.singletonList( chunk ) );
+    }
+
+/**
+ * private helper: path of the chunk-files without extension
+*/
+    private String chunk_base()
+    {
+        if ( setting.direct )
+            return String.format( "%s/%s", setting.worker_location, chunk.name );
+        if ( in_place() )
+            return String.format( "%s/%s", BC_STORAGE.of( setting.source_location ).local_path( setting.source_location ), chunk.name );
+        return String.format( "%s/%s/%s", worker_root(), chunk_dir_name(), chunk.name );
+    }
+
 /**
  * construct the destination-path one of the database-chunk-files based on its extension
+ * - for chunks read in place this is the path of the file in the source
  *
  * @param extension  one of the extensions of database-chunk, for instance 'nhr'
  * @return           absolute path of one of the files of a datbase-chunk on the worker
@@ -110,7 +227,7 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
 */
     public String build_worker_path( final String extension )
     {
-        return String.format( "%s/%s/%s.%s", setting.worker_location, chunk.name, chunk.name, extension );
+        return String.format( "%s.%s", chunk_base(), extension );
     }
 
 /**
@@ -122,10 +239,154 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
 */
     public String worker_location()
     {
-        if ( setting.direct )
-            return String.format( "%s/%s", setting.worker_location, chunk.name );
-        else
-            return String.format( "%s/%s/%s", setting.worker_location, chunk.name, chunk.name );
+        if ( parts > 1 && !setting.direct )
+            return String.format( "%s/%s/%s", worker_root(), chunk_dir_name(), range_name() );
+        return chunk_base();
+    }
+
+/**
+ * private helper: name of the alias-database of this OID-range, for instance 'nt_50M.00.r1of4'
+*/
+    private String range_name()
+    {
+        return String.format( "%s.r%dof%d", chunk.name, part, parts );
+    }
+
+/**
+ * private helper: 'p' for protein-chunks, 'n' for nucleotide-chunks
+*/
+    private String molecule()
+    {
+        for ( BC_NAME_SIZE obj : chunk.files )
+        {
+            if ( obj.name.length() == 3 && obj.name.endsWith( "in" ) )
+                return obj.name.substring( 0, 1 );
+        }
+        return "n";
+    }
+
+/**
+ * read the number of sequences ( OIDs ) from the header of a blast-index-file ( .nin / .pin )
+ * - format 4: version, type, title, date, num_oids
+ * - format 5: version, type, volume, title, lmdb-name, date, num_oids
+ *
+ * @param index_path path of the index-file
+ * @return           number of OIDs in the volume, -1 on error
+*/
+    public static int read_num_oids( final String index_path )
+    {
+        int res = -1;
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( index_path ) ) ) )
+        {
+            int version = in.readInt();
+            in.readInt();                       /* sequence-type */
+            if ( version == 5 )
+                in.readInt();                   /* volume-number */
+            in.skipBytes( in.readInt() );       /* title */
+            if ( version == 5 )
+                in.skipBytes( in.readInt() );   /* lmdb-filename */
+            in.skipBytes( in.readInt() );       /* date */
+            if ( version == 4 || version == 5 )
+                res = in.readInt();
+        }
+        catch ( Exception e )
+        {
+            res = -1;
+        }
+        return res;
+    }
+
+/**
+ * write the alias-database restricting the downloaded chunk to this OID-range
+ * - the alias is placed next to the chunk-files, BLAST_LIB receives it via worker_location()
+ * - for chunks read in place the alias is placed in the worker-location and refers to the source
+ * - the file is written once per worker, an existing alias is reused
+ *
+ * @param       error_lst       list of errors
+ * @param       info_lst        list of info's
+ * @return      false if there is nothing to search: on error or for an empty range
+*/
+    public boolean prepare_range( List< String > error_lst, List< String > info_lst )
+    {
+        if ( parts <= 1 )
+            return true;
+
+        String mol = molecule();
+        File alias = new File( String.format( "%s.%sal", worker_location(), mol ) );
+        if ( alias.exists() )
+            return alias.length() > 0;
+
+        int num_oids = read_num_oids( build_worker_path( mol + "in" ) );
+        if ( num_oids < 0 )
+        {
+            error_lst.add( String.format( "%s: %s - cannot read number of OIDs", workername(), label() ) );
+            return false;
+        }
+        /* FIRST_OID / LAST_OID in the alias-file are 1-based and inclusive */
+        long first = ( ( long )part * num_oids ) / parts + 1;
+        long last = ( ( long )( part + 1 ) * num_oids ) / parts;
+
+        synchronized( mutex )
+        {
+            alias.getParentFile().mkdirs();
+            File tmp = new File( alias.getPath() + ".tmp" );
+            try ( PrintWriter w = new PrintWriter( tmp ) )
+            {
+                if ( first <= last )
+                {
+                    w.println( String.format( "TITLE %s OIDs %d..%d of %d", chunk.name, first, last, num_oids ) );
+                    w.println( String.format( "DBLIST %s", in_place() ? chunk_base() : chunk.name ) );
+                    w.println( String.format( "FIRST_OID %d", first ) );
+                    w.println( String.format( "LAST_OID %d", last ) );
+                }
+            }
+            catch ( Exception e )
+            {
+                error_lst.add( String.format( "%s: %s - cannot write alias : %s", workername(), label(), e ) );
+                return false;
+            }
+            try
+            {
+                Files.move( tmp.toPath(), alias.toPath(), StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch ( Exception e )
+            {
+                tmp.delete();
+            }
+        }
+        info_lst.add( String.format( "%s: %s - OIDs %d..%d of %d", workername(), label(), first, last, num_oids ) );
+        return first <= last;
+    }
+
+/**
+ * the key of the database of this chunk, for instance 'nt'
+ *
+ * @return           database-key of the settings
+*/
+    public String db_key()
+    {
+        return setting.key;
+    }
+
+/**
+ * the name of this host as known to the spark-scheduler, used to register
+ * where the chunk is stored and as preferred location of the partitions
+ *
+ * @return           host-name, for instance 'cluster-w-0'
+*/
+    public String hostname()
+    {
+        try {
+            return SparkEnv.get().blockManager().blockManagerId().host();
+        }
+        catch ( Exception e ) // Running outside Spark
+        {
+            return BC_CHUNK_REGISTRY.host_of( workername() );
+        }
+        catch ( NoClassDefFoundError e )
+        {
+            return BC_CHUNK_REGISTRY.host_of( workername() );
+        }
     }
 
 /**
@@ -178,6 +439,26 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
         return ( found == chunk.files.size() );
     }
 
+/**
+ * private helper: chunks read in place are not copied, they only have to be there
+*/
+    private boolean check_in_place( List< String > error_lst, List< String > info_lst )
+    {
+        String wn = workername();
+        for ( BC_NAME_SIZE obj : chunk.files )
+        {
+            File f = new File( build_worker_path( obj.name ) );
+            if ( !f.exists() || obj.size.longValue() != f.length() )
+            {
+                error_lst.add( String.format( "%s : %s ( IN-PLACE missing or size=%d, should=%d )",
+                                              wn, f.getPath(), f.length(), obj.size ) );
+                return false;
+            }
+        }
+        info_lst.add( String.format( "%s : %s ( in place )", wn, chunk_base() ) );
+        return true;
+    }
+
 /**
  * download ( if neccessary ) all files fo a database-chunk to the worker
  *
@@ -186,15 +467,17 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
  * @return      success
  *
  * @see              BC_DATABASE_SETTING
- * @see              BC_GCP_TOOLS
+ * @see              BC_STORAGE
 */
     public boolean download( List< String > error_lst, List< String > info_lst )
     {
+        if ( in_place() )
+            return check_in_place( error_lst, info_lst );
         String wn = workername();
         for ( BC_NAME_SIZE obj : chunk.files )
         {
             String extension = obj.name;
-            String src = build_source_path( extension );
+            String src = build_source_path( obj );
             String dst = build_worker_path( extension );
             File f = new File( dst );
             if ( f.exists() )
@@ -210,7 +493,8 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
             else
             {
                 long started_at = System.currentTimeMillis();
-                boolean success = BC_GCP_TOOLS.download( src, dst );
+                boolean success = BC_STORAGE.of( src ).download( src, dst, setting.download_segment_size(),
+                                                        setting.download_threads, setting.download_retries );
                 long elapsed = System.currentTimeMillis() - started_at;
 
                 long fl = f.length();
@@ -237,24 +521,130 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
 
 
 
+/**
+ * private helper: the mutex for one destination-file, downloads of different
+ * files do not wait for each other, the FileLock within a JVM must not be taken
+ * twice, so the mutex is kept for the lifetime of the JVM
+*/
+    private static Object file_mutex( final String dst )
+    {
+        return file_mutexes.computeIfAbsent( dst, k -> new Object() );
+    }
+
 /**
  * Check a database file is present and download if it is not. The method is
  * synchronized for threads and processes. Check and download is atomic.
+ * This is a background-download, it yields to the downloads of running searches.
  *
  * @param       report, list of string reporting the download
  * @return      number of errors
  * @see              BC_DATABASE_SETTING
- * @see              BC_GCP_TOOLS
+ * @see              BC_STORAGE
+ * @see              BC_DOWNLOAD_GOVERNOR
 */
     public boolean downloadIfAbsent(List<String> error_lst,
                                     List<String> info_lst)
+    {
+        return downloadIfAbsent( error_lst, info_lst, null, false );
+    }
+
+/**
+ * Check a database file is present and copy it from a peer or download it if it
+ * is not, for a running search.
+ *
+ * @param       error_lst       list of download-errors
+ * @param       info_lst        list of info's
+ * @param       peers           'host:port' of chunk-servers having this chunk, can be null
+ * @return      success
+*/
+    public boolean downloadIfAbsent(List<String> error_lst,
+                                    List<String> info_lst,
+                                    List<String> peers)
+    {
+        return downloadIfAbsent( error_lst, info_lst, peers, true );
+    }
+
+/**
+ * Check a database file is present and copy it from a peer or download it if it
+ * is not. Peers are tried in order, the source is the fallback. Each file waits
+ * for a download-slot of this host first.
+ *
+ * @param       error_lst       list of download-errors
+ * @param       info_lst        list of info's
+ * @param       peers           'host:port' of chunk-servers having this chunk, can be null
+ * @param       urgent          is the chunk needed by a running search, or a background-download ?
+ * @return      success
+ * @see              BC_CHUNK_SERVER
+ * @see              BC_DOWNLOAD_GOVERNOR
+*/
+    public boolean downloadIfAbsent(List<String> error_lst,
+                                    List<String> info_lst,
+                                    List<String> peers,
+                                    boolean urgent)
+    {
+        return downloadIfAbsent( error_lst, info_lst, peers, urgent, null );
+    }
+
+/**
+ * Check a database file is present and copy it from a peer or download it if it
+ * is not, reporting where each copied file came from.
+ *
+ * @param       error_lst       list of download-errors
+ * @param       info_lst        list of info's
+ * @param       peers           'host:port' of chunk-servers having this chunk, can be null
+ * @param       urgent          is the chunk needed by a running search, or a background-download ?
+ * @param       sources         receives BC_CHUNK_RECORD.DL_PEER or DL_DOWNLOADED per copied file, can be null
+ * @return      success
+ * @see              BC_CHUNK_RECORD
+*/
+    public boolean downloadIfAbsent(List<String> error_lst,
+                                    List<String> info_lst,
+                                    List<String> peers,
+                                    boolean urgent,
+                                    List<String> sources)
+    {
+        if ( in_place() )
+            return check_in_place( error_lst, info_lst );
+        try
+        {
+            return copy_files( error_lst, info_lst, peers, urgent, sources );
+        }
+        finally
+        {
+            release_space();
+        }
+    }
+
+/**
+ * private helper: the space reserved for this chunk by worker_root() is now
+ * used by its files ( or not needed, if the download failed )
+*/
+    private void release_space()
+    {
+        synchronized( placed )
+        {
+            Long bytes = pending.remove( chunk_dir_name() );
+            String root = placed.get( chunk_dir_name() );
+            if ( bytes != null && root != null )
+                reserved.put( root, reserved.get( root ) - bytes );
+        }
+    }
+
+/**
+ * private helper: copy the absent files of the chunk, see downloadIfAbsent()
+*/
+    private boolean copy_files(List<String> error_lst,
+                               List<String> info_lst,
+                               List<String> peers,
+                               boolean urgent,
+                               List<String> sources)
     {
         String wn = workername();
 
         for ( BC_NAME_SIZE obj : chunk.files )
         {
             String extension = obj.name;
-            String src = build_source_path( extension );
+            String src = build_source_path( obj );
             String dst = build_worker_path( extension );
             File f = new File( dst );
 
@@ -268,75 +658,98 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
             FileOutputStream f_out = null;
             FileLock f_lock = null;
 
-            // synchronize threads within a jvm
-            synchronized(mutex) {
+            // wait for a download-slot of this host, outside of the mutex
+            try ( BC_DOWNLOAD_GOVERNOR.PERMIT permit = f.exists() ? null :
+                  BC_DOWNLOAD_GOVERNOR.get().acquire( urgent ) ) {
+                // synchronize threads within a jvm, per destination-file
+                synchronized(file_mutex(dst)) {
                 
-                try {
+                    try {
 
-                    f_out = new FileOutputStream( ff );
+                        f_out = new FileOutputStream( ff );
 
-                    // synchronize jvms
-                    f_lock = f_out.getChannel().lock();
+                        // synchronize jvms
+                        f_lock = f_out.getChannel().lock();
                     
-                    if ( f.exists() ) {
-                        long fl = f.length();
-                        /* we can now check the size... */
-                        if ( obj.size.longValue() == fl ) {
-                            info_lst.add( String.format( 
-                                          "%s : %s -> %s (exists size = %d )",
-                                          wn, src, dst, fl ) );
-                        }
-                        else {
-                            error_lst.add( String.format(
-                               "%s : %s -> %s (exists, size=%d, should be %d)",
-                               wn, src, dst, fl, obj.size ) );
-                        }
-                    }
-                    else {
-                        long started_at = System.currentTimeMillis();
-                        boolean success = BC_GCP_TOOLS.download( src, dst );
-                        long elapsed = System.currentTimeMillis() - started_at;
-
-                        /* we can now check the size... */
-                        long fl = f.length();
-                        if (success) {
+                        if ( f.exists() ) {
+                            long fl = f.length();
+                            /* we can now check the size... */
                             if ( obj.size.longValue() == fl ) {
-                                info_lst.add( String.format(
-                                     "%s : %s -> %s (%s in %,d ms, size=%d)",
-                                     wn, src, dst, Boolean.toString( success ),
-                                     elapsed, fl ) );
+                                info_lst.add( String.format( 
+                                              "%s : %s -> %s (exists size = %d )",
+                                              wn, src, dst, fl ) );
                             }
                             else {
-                                success = false;
                                 error_lst.add( String.format(
-                                    "%s : %s -> %s ( SIZE-ERROR in %,d ms, size=%d, should=%d )",
-                                    wn, src, dst, elapsed, fl, obj.size ) );
-                                return false;
+                                   "%s : %s -> %s (exists, size=%d, should be %d)",
+                                   wn, src, dst, fl, obj.size ) );
                             }
                         }
                         else {
-                            error_lst.add( String.format(
-                                 "%s : %s -> %s ( FAILED in %,d ms, size=%d, should=%d )",
-                                 wn, src, dst, elapsed, fl, obj.size ) );
-                    return false;
+                            long started_at = System.currentTimeMillis();
+                            boolean success = false;
+                            String from = src;
+                            if ( peers != null ) {
+                                for ( String peer : peers ) {
+                                    if ( BC_CHUNK_SERVER.fetch( peer, setting.key, chunk_dir_name(), dst, obj ) ) {
+                                        success = true;
+                                        from = String.format( "peer %s", peer );
+                                        break;
+                                    }
+                                }
+                            }
+                            if ( !success ) {
+                                success = BC_STORAGE.of( src ).download( src, dst, setting.download_segment_size(),
+                                                                         setting.download_threads, setting.download_retries );
+                            }
+                            long elapsed = System.currentTimeMillis() - started_at;
+
+                            /* we can now check the size... */
+                            long fl = f.length();
+                            if (success) {
+                                if ( obj.size.longValue() == fl ) {
+                                    if ( sources != null )
+                                        sources.add( from.equals( src ) ? BC_CHUNK_RECORD.DL_DOWNLOADED : BC_CHUNK_RECORD.DL_PEER );
+                                    info_lst.add( String.format(
+                                         "%s : %s -> %s (%s in %,d ms, size=%d)",
+                                         wn, from, dst, Boolean.toString( success ),
+                                         elapsed, fl ) );
+                                }
+                                else {
+                                    success = false;
+                                    error_lst.add( String.format(
+                                        "%s : %s -> %s ( SIZE-ERROR in %,d ms, size=%d, should=%d )",
+                                        wn, src, dst, elapsed, fl, obj.size ) );
+                                    return false;
+                                }
+                            }
+                            else {
+                                error_lst.add( String.format(
+                                     "%s : %s -> %s ( FAILED in %,d ms, size=%d, should=%d )",
+                                     wn, src, dst, elapsed, fl, obj.size ) );
+                        return false;
 
+                            }
                         }
-                    }
 
-                }
-                catch (java.io.FileNotFoundException e) {
-                    e.printStackTrace();
-                }
-                catch (java.io.IOException e) {
-                    e.printStackTrace();
-                }
-                finally {
-                    try {
-                        f_lock.release();
                     }
-                    catch (Exception e) {
+                    catch (java.io.FileNotFoundException e) {
+                        e.printStackTrace();
+                    }
+                    catch (java.io.IOException e) {
                         e.printStackTrace();
                     }
+                    finally {
+                        try {
+                            if ( f_lock != null )
+                                f_lock.release();
+                            if ( f_out != null )
+                                f_out.close();
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
                 }
             }
         }
@@ -370,8 +783,131 @@ public class BC_DATABASE_RDD_ENTRY implements Serializable
             }
         }
 
-        System.out.println(String.format("Downloaded %s in %s", chunk.name, wn));
+        if (status)
+            info_list.add(String.format("%s : %s downloaded and scanned", wn, chunk.name));
         return status;
     }
 
+/**
+ * the root of the chunk-directory of this chunk on the worker, with several
+ * worker-locations ( one per local disk ) the one holding or receiving this chunk
+ * - a chunk already present on one of the disks is found there
+ * - otherwise 'hash' picks a disk by the name of the chunk-directory, the same on
+ *   every host, 'space' picks the disk with the most free space
+ * - with 'space' the size of the chunk is reserved on the picked disk until its
+ *   download has finished, so concurrent tasks spread over the disks
+ *
+ * @return      one of the worker-locations of the database-settings
+ * @see         BC_DATABASE_SETTING
+*/
+    public String worker_root()
+    {
+        List< String > roots = setting.worker_roots();
+        if ( roots.size() == 1 || setting.direct )
+            return roots.get( 0 );
+
+        String dir = chunk_dir_name();
+        for ( String root : roots )
+        {
+            if ( new File( root, dir ).isDirectory() )
+                return root;
+        }
+        if ( "space".equals( setting.placement ) )
+        {
+            synchronized( placed )
+            {
+                String res = placed.get( dir );
+                if ( res != null )
+                    return res;
+                res = roots.get( 0 );
+                long best = Long.MIN_VALUE;
+                for ( String root : roots )
+                {
+                    File f = new File( root );
+                    f.mkdirs();
+                    Long r = reserved.get( root );
+                    long free = f.getUsableSpace() - ( r == null ? 0 : r );
+                    if ( free > best )
+                    {
+                        best = free;
+                        res = root;
+                    }
+                }
+                long bytes = BC_CHUNK_PARTITIONER.bytes( this );
+                Long r = reserved.get( res );
+                reserved.put( res, ( r == null ? 0 : r ) + bytes );
+                pending.put( dir, bytes );
+                placed.put( dir, res );
+                return res;
+            }
+        }
+        return roots.get( Math.floorMod( dir.hashCode(), roots.size() ) );
+    }
+
+/**
+ * mark the chunk-directory as complete, after all files have been verified,
+ * only complete chunks are served to peers
+ *
+ * @see         BC_CHUNK_SERVER
+*/
+    public void mark_complete()
+    {
+        if ( in_place() || !present() )
+            return;
+        File marker = new File( new File( build_worker_path( "x" ) ).getParentFile(), COMPLETE_MARKER );
+        if ( !marker.exists() )
+        {
+            try { marker.createNewFile(); }
+            catch ( Exception e ) { }
+        }
+    }
+
+/**
+ * remove all files of this database-chunk from the worker, after a newer
+ * snapshot of the database does not reference this version of the chunk any more
+ *
+ * @param       info_lst        list of info's
+ * @return      number of files removed
+ * @see         BC_DATABASES
+*/
+    public int remove( List< String > info_lst )
+    {
+        int res = 0;
+        if ( in_place() )
+            return res;
+
+        String wn = workername();
+        synchronized( mutex )
+        {
+            for ( BC_NAME_SIZE obj : chunk.files )
+            {
+                String dst = build_worker_path( obj.name );
+                synchronized( file_mutex( dst ) )
+                {
+                    File f = new File( dst );
+                    if ( f.exists() && f.delete() )
+                        res += 1;
+                    new File( dst + ".lock" ).delete();
+                    /* left over by a download that was killed */
+                    new File( dst + BC_RANGED_DOWNLOAD.PART_SUFFIX ).delete();
+                }
+            }
+            /* alias-files written for OID-ranges of this chunk */
+            File[] aliases = new File( String.format( "%s/%s", worker_root(), chunk_dir_name() ) )
+                .listFiles( ( d, n ) -> n.startsWith( chunk.name + ".r" ) && n.endsWith( "al" ) );
+            if ( aliases != null )
+            {
+                for ( File a : aliases )
+                    a.delete();
+            }
+            File dir = new File( String.format( "%s/%s", worker_root(), chunk_dir_name() ) );
+            new File( dir, COMPLETE_MARKER ).delete();
+            dir.delete();   /* only succeeds if the directory is empty */
+        }
+        release_space();
+        synchronized( placed ) { placed.remove( chunk_dir_name() ); }
+        info_lst.add( String.format( "%s : %s removed ( %d files )", wn, chunk_dir_name(), res ) );
+        return res;
+    }
+
 }
@@ -34,20 +34,38 @@ import java.util.ArrayList;
  * common database-settings for one database, 'nt' or 'nr'
  * - stores a key to match the datbase with the request, for instance 'nt'
  * - stores the common location for the databases on the worker, for instance '/tmp/blast/db'
+ * - optionally stores several locations on the worker ( one per local disk ), and how
+ *   the chunks are spread over them
  * - stores the source ( bucket ) for a database, for instance 'gs://nr_50mb_chunks'
  * - stores a flag to indicate, if we want to access the database-chunks directly for on-premise
  * - stores a numer to limit the number of chunks to this value, 0...no limit
  * - stores a list of extensions for each database-chunk
+ * - stores if the chunks are stored per version on the worker, to allow refreshing them
+ * - stores how the chunks are packed into partitions
+ * - stores when a slow chunk is split into OID-ranges
+ * - stores on how many hosts each chunk is kept
  *
 */
 public class BC_DATABASE_SETTING implements Serializable
 {
     public String key = "";             /* key for mapping to request... ( 'nt', 'nr' ) */
     public String worker_location = "/tmp/blast/db"; /* where is the location root on the worker? dflt: '/tmp/blast/db' */
+    public List< String > worker_locations; /* one location per local disk, empty...only worker_location */
+    public String placement = "hash";   /* spread the chunks over the worker_locations by 'hash' or free 'space' */
     public String source_location = ""; /* bucket or filesystem-path */
     public Boolean direct = false;      /* are we adressing the chunks directly, in case of on-premise */
     public int limit = 0;               /* in case we want to limit the number of db-chunks */
     public List< String > extensions;   /* for nt: nsq, nin, nhr / nr: psq, pin, phr */
+    public int download_segment_mb = 0; /* split downloads into ranges of this size, 0...single stream */
+    public int download_threads = 4;    /* how many ranges of one file to download in parallel */
+    public int download_retries = 3;    /* how many times to retry a failed range */
+    public Boolean versioned = false;   /* store chunks per version on the worker, to pick up changed chunks */
+    public int refresh_minutes = 0;     /* check the source for changed chunks every N minutes, 0...never */
+    public int num_partitions = 0;      /* partitions of this database, 0...cluster-setting or executors * cores */
+    public String partition_by = "bytes"; /* pack chunks into partitions by 'count', 'bytes' or 'runtime' */
+    public double split_factor = 0.0;   /* split chunks slower than factor * median runtime, 0...never */
+    public int split_parts = 4;         /* split a slow chunk into at most this many OID-ranges */
+    public int replicas = 1;            /* keep each partition on this many hosts, 1...no extra copies */
 
 /**
  * create instance of BC_DATABASE_SETTING
@@ -56,6 +74,23 @@ public class BC_DATABASE_SETTING implements Serializable
     public BC_DATABASE_SETTING()
     {
         extensions = new ArrayList<>();
+        worker_locations = new ArrayList<>();
+    }
+
+/**
+ * the locations on the worker the chunks are spread over, one per local disk
+ *
+ * @return     list of locations, at least the worker-location
+*/
+    public List< String > worker_roots()
+    {
+        if ( worker_locations.isEmpty() )
+        {
+            List< String > res = new ArrayList<>();
+            res.add( worker_location );
+            return res;
+        }
+        return worker_locations;
     }
 
 /**
@@ -68,6 +103,54 @@ public class BC_DATABASE_SETTING implements Serializable
         return ( !key.isEmpty() && !worker_location.isEmpty() && !source_location.isEmpty() && !extensions.isEmpty() );
     }
 
+/**
+ * is the source in the local filesystem ( 'file://' or a mounted path ) ?
+ *
+ * @return     can the source be read without a download
+ * @see        BC_STORAGE
+*/
+    public boolean local_source()
+    {
+        return BC_STORAGE.of( source_location ).local_path( source_location ) != null;
+    }
+
+/**
+ * are the chunks read in place, instead of being copied to the worker-location ?
+ * - 'direct' : the chunks are already in the worker-location
+ * - the source is in the local filesystem and none of the chunks is compressed,
+ *   compressed chunks are decompressed into the worker-location
+ *
+ * @param chunks    chunks of this database
+ * @return          are all of these chunks read in place
+ * @see             BC_DATABASE_RDD_ENTRY
+*/
+    public boolean in_place( final List< BC_CHUNK_VALUES > chunks )
+    {
+        if ( direct )
+            return true;
+        if ( !local_source() )
+            return false;
+        for ( BC_CHUNK_VALUES chunk : chunks )
+        {
+            for ( BC_NAME_SIZE obj : chunk.files )
+            {
+                if ( obj.compressed() )
+                    return false;
+            }
+        }
+        return true;
+    }
+
+/**
+ * size of one download-range in bytes
+ *
+ * @return     size of one download-range in bytes, 0...downloads are not split
+*/
+    public long download_segment_size()
+    {
+        return ( long )download_segment_mb * 1024L * 1024L;
+    }
+
 /**
  * convert settings to multiline string for debug-purpose
  *
@@ -76,11 +159,26 @@ public class BC_DATABASE_SETTING implements Serializable
     @Override public String toString()
     {
         String S = String.format( "\t(%s).worker-loc ...... '%s'\n", key, worker_location );
+        if ( worker_locations.size() > 1 )
+            S =  S  +  String.format( "\t(%s).worker-locs ..... %s by %s\n", key, worker_locations, placement );
         S =  S  +  String.format( "\t(%s).source-loc ...... '%s'\n", key, source_location );
         S =  S  +  String.format( "\t(%s).direct .......... %s\n", key, Boolean.toString( direct ) );
         S =  S  +  String.format( "\t(%s).extensions ...... %s\n", key, extensions );
         if ( limit > 0 )
             S =  S  +  String.format( "\t(%s).limit ........... %d\n", key, limit );
+        if ( download_segment_mb > 0 )
+            S =  S  +  String.format( "\t(%s).download ........ %d MB segments, %d threads, %d retries\n",
+                                      key, download_segment_mb, download_threads, download_retries );
+        S =  S  +  String.format( "\t(%s).partitions ...... %s by %s\n", key,
+                                  num_partitions > 0 ? Integer.toString( num_partitions ) : "auto", partition_by );
+        if ( split_factor > 0.0 )
+            S =  S  +  String.format( "\t(%s).split ........... above %.1f x median, max %d ranges\n",
+                                      key, split_factor, split_parts );
+        if ( replicas > 1 )
+            S =  S  +  String.format( "\t(%s).replicas ........ %d\n", key, replicas );
+        if ( versioned || refresh_minutes > 0 )
+            S =  S  +  String.format( "\t(%s).refresh ......... versioned=%s, every %d minutes\n",
+                                      key, Boolean.toString( versioned ), refresh_minutes );
         return S;
     }
 }
@@ -0,0 +1,94 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.util.List;
+import java.util.Set;
+import java.util.HashSet;
+
+import org.apache.spark.api.java.JavaRDD;
+
+/**
+ * one version of a database, as seen by the jobs
+ * - stores the database-settings
+ * - stores the list of chunks, how they are packed into partitions and the RDD made from them
+ * - stores a version-number, counting up with every refresh
+ * - counts how many requests are currently using this snapshot
+ *
+ * @see        BC_DATABASES
+*/
+public final class BC_DATABASE_SNAPSHOT
+{
+    public final BC_DATABASE_SETTING setting;
+    public final int version;
+    public final List< BC_CHUNK_VALUES > chunks;
+    public final List< List< BC_DATABASE_RDD_ENTRY > > partitions;
+    public final JavaRDD< BC_DATABASE_RDD_ENTRY > rdd;
+    public final long created_at;
+    public int refs;        /* guarded by BC_DATABASES */
+    public boolean retired; /* guarded by BC_DATABASES */
+    public boolean keep_files;  /* keep the chunk-files on the workers after retirement */
+
+/**
+ * create instance of BC_DATABASE_SNAPSHOT
+ *
+ * @param a_setting     database-settings
+ * @param a_version     version-number of the snapshot
+ * @param a_chunks      list of chunks in this snapshot
+ * @param a_partitions  the chunks packed into the partitions of the RDD
+ * @param a_rdd         RDD made from the chunks
+*/
+    public BC_DATABASE_SNAPSHOT( final BC_DATABASE_SETTING a_setting, int a_version,
+                                 final List< BC_CHUNK_VALUES > a_chunks,
+                                 final List< List< BC_DATABASE_RDD_ENTRY > > a_partitions,
+                                 final JavaRDD< BC_DATABASE_RDD_ENTRY > a_rdd )
+    {
+        setting = a_setting;
+        version = a_version;
+        chunks = a_chunks;
+        partitions = a_partitions;
+        rdd = a_rdd;
+        created_at = System.currentTimeMillis();
+        refs = 0;
+        retired = false;
+        keep_files = false;
+    }
+
+/**
+ * the names of the chunk-directories on the workers used by this snapshot
+ *
+ * @return     set of directory-names
+ * @see        BC_DATABASE_RDD_ENTRY
+*/
+    public Set< String > chunk_dirs()
+    {
+        Set< String > res = new HashSet<>();
+        for ( BC_DATABASE_RDD_ENTRY entry : BC_DATABASE_RDD_ENTRY.make_rdd_entry_list( setting, chunks ) )
+            res.add( entry.chunk_dir_name() );
+        return res;
+    }
+}
@@ -0,0 +1,102 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * I/O per local disk of the workers, lives only on the master
+ * - a disk is one of the worker-locations of a database on one host
+ * - counts the chunks searched, the bytes paged in by the searches, the bytes
+ *   downloaded and the time spent searching
+ * - is fed by the jobs after each request, printed by the 'I' command
+ *
+ * @see        BC_DATABASE_SETTING
+ * @see        BC_JOBS
+*/
+public final class BC_DEVICE_STATS
+{
+    private static final int CHUNKS = 0;
+    private static final int READ = 1;
+    private static final int WRITTEN = 2;
+    private static final int MS = 3;
+
+    private final Map< String, long[] > devices;    /* 'host:path' -> counters */
+
+/**
+ * create instance of BC_DEVICE_STATS
+*/
+    public BC_DEVICE_STATS()
+    {
+        devices = new TreeMap<>();
+    }
+
+/**
+ * record the I/O of one chunk of one request
+ *
+ * @param host      host the chunk was searched on
+ * @param device    worker-location holding the chunk
+ * @param read      bytes of the chunk-files searched
+ * @param written   bytes downloaded to the disk
+ * @param ms        time spent in blast
+*/
+    public synchronized void record( final String host, final String device, long read, long written, long ms )
+    {
+        String key = String.format( "%s:%s", host, device );
+        long[] c = devices.get( key );
+        if ( c == null )
+        {
+            c = new long[ 4 ];
+            devices.put( key, c );
+        }
+        c[ CHUNKS ] += 1;
+        c[ READ ] += read;
+        c[ WRITTEN ] += written;
+        c[ MS ] += ms;
+    }
+
+/**
+ * one line per disk, sorted by host and path
+ *
+ * @return  list of lines
+*/
+    public synchronized List< String > report()
+    {
+        List< String > res = new ArrayList<>();
+        for ( Map.Entry< String, long[] > e : devices.entrySet() )
+        {
+            long[] c = e.getValue();
+            res.add( String.format( "disk %s : %,d chunks, %,d MB read, %,d MB downloaded, %,d ms searching",
+                     e.getKey(), c[ CHUNKS ], c[ READ ] >> 20, c[ WRITTEN ] >> 20, c[ MS ] ) );
+        }
+        return res;
+    }
+}
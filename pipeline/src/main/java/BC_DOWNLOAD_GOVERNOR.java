@@ -0,0 +1,299 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.lang.management.ManagementFactory;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.spark.SparkEnv;
+
+/**
+ * host-wide limit for the downloads of all executor-JVMs on a node
+ * - a download needs one of N slots, a slot is an exclusive lock on a file
+ *   in a directory shared by the JVMs, the OS releases it if a JVM dies
+ * - downloads for a running search are urgent, background-downloads ( warm-up,
+ *   prefetch, refresh, repair ) are speculative: they cannot use the last slot and
+ *   wait as long as any urgent download is waiting for a slot
+ * - each slot is worth 1/N of the bandwidth-budget of the host, a JVM holding
+ *   k slots is throttled to k/N of it
+ * - configured via the spark-conf, set by the driver from the cluster-settings
+ *
+ * @see        BC_SETTINGS
+ * @see        BC_DATABASE_RDD_ENTRY
+*/
+public final class BC_DOWNLOAD_GOVERNOR
+{
+    public static final String KEY_SLOTS = "spark.blastjni.download_slots";
+    public static final String KEY_MB_PER_SEC = "spark.blastjni.download_mb_per_sec";
+    public static final String KEY_DIR = "spark.blastjni.download_slot_dir";
+
+    private static final long POLL_MS = 100;
+    private static final long WAITER_MAX_AGE_MS = 10000;    /* ignore waiting-markers of dead JVMs */
+    private static final String WAITER_PREFIX = "waiting.";
+
+    private static BC_DOWNLOAD_GOVERNOR instance = null;
+
+    private final File dir;
+    private final int slots;
+    private final double bytes_per_ns;  /* per slot, 0...no cap */
+    private int held;                   /* slots held by this JVM */
+    private long budget_at;             /* nano-time the bandwidth-budget is used up to */
+
+/**
+ * one acquired slot, to be closed after the download
+*/
+    public final class PERMIT implements AutoCloseable
+    {
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        private PERMIT( final FileChannel a_channel, final FileLock a_lock )
+        {
+            channel = a_channel;
+            lock = a_lock;
+        }
+
+        @Override public void close()
+        {
+            if ( lock != null )
+            {
+                try
+                {
+                    lock.release();
+                    channel.close();
+                }
+                catch ( IOException e ) { }
+            }
+            synchronized( BC_DOWNLOAD_GOVERNOR.this ) { held -= 1; }
+        }
+    }
+
+/**
+ * create instance of BC_DOWNLOAD_GOVERNOR
+ *
+ * @param a_dir         directory of the slot-files, shared by the JVMs of the host
+ * @param a_slots       how many downloads may run on the host at once, 0...no limit
+ * @param a_mb_per_sec  bandwidth-budget of the host in MB/s, 0...no cap
+*/
+    public BC_DOWNLOAD_GOVERNOR( final String a_dir, int a_slots, int a_mb_per_sec )
+    {
+        dir = new File( a_dir );
+        slots = Math.max( a_slots, 0 );
+        double total = ( a_mb_per_sec * 1024.0 * 1024.0 ) / 1.0e9;
+        bytes_per_ns = total / Math.max( slots, 1 );
+        held = 0;
+        budget_at = 0;
+        if ( slots > 0 )
+            dir.mkdirs();
+    }
+
+/**
+ * the governor of this JVM, configured from the spark-conf of the executor
+ * - outside of spark ( tests, tools ) downloads are not limited
+ *
+ * @return  BC_DOWNLOAD_GOVERNOR-instance
+*/
+    public static synchronized BC_DOWNLOAD_GOVERNOR get()
+    {
+        if ( instance == null )
+        {
+            int slots = 0;
+            int mb_per_sec = 0;
+            String path = String.format( "%s/blast-download-slots", System.getProperty( "java.io.tmpdir" ) );
+            try
+            {
+                slots = SparkEnv.get().conf().getInt( KEY_SLOTS, 0 );
+                mb_per_sec = SparkEnv.get().conf().getInt( KEY_MB_PER_SEC, 0 );
+                path = SparkEnv.get().conf().get( KEY_DIR, path );
+            }
+            catch ( Exception e ) { }
+            catch ( NoClassDefFoundError e ) { }
+            instance = new BC_DOWNLOAD_GOVERNOR( path, slots, mb_per_sec );
+        }
+        return instance;
+    }
+
+/**
+ * private helper: a name for waiting-markers, unique per JVM and thread
+*/
+    private static String waiter_name()
+    {
+        return String.format( "%s%s.%d", WAITER_PREFIX, ManagementFactory.getRuntimeMXBean().getName(),
+                              Thread.currentThread().getId() );
+    }
+
+/**
+ * private helper: is an urgent download of any JVM waiting for a slot
+*/
+    private boolean urgent_waiting()
+    {
+        long now = System.currentTimeMillis();
+        File[] waiters = dir.listFiles( ( d, n ) -> n.startsWith( WAITER_PREFIX ) );
+        if ( waiters != null )
+        {
+            for ( File w : waiters )
+            {
+                if ( now - w.lastModified() < WAITER_MAX_AGE_MS )
+                    return true;
+            }
+        }
+        return false;
+    }
+
+/**
+ * private helper: try to lock one of the first n slot-files
+*/
+    private PERMIT try_acquire( int n )
+    {
+        for ( int k = 0; k < n; ++k )
+        {
+            FileChannel ch = null;
+            try
+            {
+                ch = FileChannel.open( new File( dir, String.format( "slot.%d", k ) ).toPath(),
+                                       StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+                FileLock lock = ch.tryLock();
+                if ( lock != null )
+                {
+                    synchronized( this ) { held += 1; }
+                    return new PERMIT( ch, lock );
+                }
+            }
+            catch ( OverlappingFileLockException e ) { /* held by another thread of this JVM */ }
+            catch ( IOException e ) { }
+            try
+            {
+                if ( ch != null )
+                    ch.close();
+            }
+            catch ( IOException e ) { }
+        }
+        return null;
+    }
+
+/**
+ * wait for a download-slot of this host
+ *
+ * @param urgent    is the download needed by a running search ?
+ * @return          permit, to be closed after the download
+*/
+    public PERMIT acquire( boolean urgent )
+    {
+        if ( slots <= 0 )
+        {
+            synchronized( this ) { held += 1; }
+            return new PERMIT( null, null );
+        }
+        int usable = ( urgent || slots == 1 ) ? slots : slots - 1;
+        File waiter = urgent ? new File( dir, waiter_name() ) : null;
+        try
+        {
+            while ( true )
+            {
+                if ( urgent || !urgent_waiting() )
+                {
+                    PERMIT res = try_acquire( usable );
+                    if ( res != null )
+                        return res;
+                }
+                if ( waiter != null )
+                {
+                    /* refreshed while waiting, so a stale marker of a dead JVM expires */
+                    if ( !waiter.exists() )
+                        waiter.createNewFile();
+                    waiter.setLastModified( System.currentTimeMillis() );
+                }
+                Thread.sleep( POLL_MS );
+            }
+        }
+        catch ( Exception e )
+        {
+            /* interrupted or the slot-directory is not usable: do not block the download */
+            synchronized( this ) { held += 1; }
+            return new PERMIT( null, null );
+        }
+        finally
+        {
+            if ( waiter != null )
+                waiter.delete();
+        }
+    }
+
+/**
+ * account for n downloaded bytes, sleep if this JVM is above its share of the budget
+ *
+ * @param n     number of bytes just downloaded
+*/
+    public void consume( int n )
+    {
+        if ( bytes_per_ns <= 0.0 )
+            return;
+        long wait;
+        synchronized( this )
+        {
+            double rate = bytes_per_ns * Math.max( held, 1 );
+            long now = System.nanoTime();
+            budget_at = Math.max( budget_at, now ) + ( long )( n / rate );
+            wait = budget_at - now;
+        }
+        if ( wait > 1000000L )
+        {
+            try { Thread.sleep( wait / 1000000L ); }
+            catch ( InterruptedException e ) { }
+        }
+    }
+
+/**
+ * wrap an output-stream, so that everything written to it is accounted for
+ *
+ * @param out   stream of the downloaded file
+ * @return      throttled stream
+*/
+    public OutputStream throttled( final OutputStream out )
+    {
+        if ( bytes_per_ns <= 0.0 )
+            return out;
+        return new FilterOutputStream( out )
+        {
+            @Override public void write( byte[] b, int off, int len ) throws IOException
+            {
+                consume( len );
+                out.write( b, off, len );
+            }
+        };
+    }
+}
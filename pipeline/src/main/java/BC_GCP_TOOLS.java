@@ -34,8 +34,13 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
+import java.io.FileInputStream;
 import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import java.math.BigInteger;
 
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -43,11 +48,24 @@ import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import com.google.cloud.storage.Bucket;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.InputStreamContent;
 import com.google.api.client.json.JsonFactory;
@@ -57,24 +75,71 @@ import com.google.api.services.storage.StorageScopes;
 import com.google.api.services.storage.model.Objects;
 import com.google.api.services.storage.model.StorageObject;
 
+import org.apache.spark.SparkEnv;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
 /**
  * utility-class to read from / write to GCP-buckets
  * - has a static instance of itself, to function as singleton
+ * - the instance is created once per JVM and shared by all threads, all requests
+ *   go over one transport and its pool of keep-alive connections
+ * - transient errors ( network, 408, 429, 5xx ) are retried with exponential
+ *   backoff and jitter
+ * - a read slower than a latency-percentile of the previous reads is hedged:
+ *   a second request is sent, the first answer is used
+ * - calls and latencies are counted per operation
  *
+ * @see        BC_GCS_METRICS
 */
 public class BC_GCP_TOOLS
 {
-    private static BC_GCP_TOOLS instance = null;
+    private static volatile BC_GCP_TOOLS instance = null;
     private Storage storage = null;
+    private final BC_GCS_METRICS metrics = new BC_GCS_METRICS();
+    private final int retries;
+    private final int hedge_percentile;
+    private final ExecutorService hedge_pool;
+
+    /* suffix of compressed objects, and the metadata-key holding their uncompressed size */
+    public static final String COMPRESSION_GZ = "gz";
+    public static final String KEY_UNCOMPRESSED_SIZE = "uncompressed_size";
+
+    /* spark-conf keys, set by the driver from the cluster-settings */
+    public static final String KEY_CONNECTIONS = "spark.blastjni.gcs_connections";
+    public static final String KEY_RETRIES = "spark.blastjni.gcs_retries";
+    public static final String KEY_HEDGE_PERCENTILE = "spark.blastjni.gcs_hedge_percentile";
+
+    private static final int CONNECT_TIMEOUT_MS = 20000;
+    private static final int READ_TIMEOUT_MS = 60000;
+    private static final long BACKOFF_BASE_MS = 100;
+    private static final long BACKOFF_MAX_MS = 10000;
+    private static final int UPLOAD_CHUNK_SIZE = 8 * 1024 * 1024;   /* multiple of 256 KB */
+    private static final Logger logger = LogManager.getLogger( BC_GCP_TOOLS.class );
+
+/**
+ * one call to GCS, may be executed more than once
+*/
+    interface CALL< T >
+    {
+        T run() throws IOException;
+    }
 
 /**
  * private helper-function to create Storage-instance, needed for access to buckets
+ * - the connection-pool of the JDK-transport is sized by 'http.maxConnections',
+ *   this only takes effect if no http-connection was made by this JVM before
  *
- * @param AppName  name of the application to be given to the storage-instance
- * @return         Storage-instance
+ * @param AppName      name of the application to be given to the storage-instance
+ * @param connections  keep-alive connections per host, 0...JDK-default
+ * @return             Storage-instance
 */
-    private static Storage buildStorageService( final String AppName ) throws GeneralSecurityException, IOException
+    private static Storage buildStorageService( final String AppName, int connections ) throws GeneralSecurityException, IOException
     {
+        if ( connections > 0 && System.getProperty( "http.maxConnections" ) == null )
+            System.setProperty( "http.maxConnections", Integer.toString( connections ) );
+
         HttpTransport transport = GoogleNetHttpTransport.newTrustedTransport();
         JsonFactory jsonFactory = new JacksonFactory();
         GoogleCredential credential = GoogleCredential.getApplicationDefault( transport, jsonFactory );
@@ -84,19 +149,40 @@ public class BC_GCP_TOOLS
             Collection<String> scopes = StorageScopes.all();
             credential = credential.createScoped( scopes );
         }
-        return new Storage.Builder( transport, jsonFactory, credential ).setApplicationName( AppName ).build();
+        final GoogleCredential cred = credential;
+        HttpRequestInitializer init = new HttpRequestInitializer()
+        {
+            @Override public void initialize( HttpRequest request ) throws IOException
+            {
+                cred.initialize( request );
+                request.setConnectTimeout( CONNECT_TIMEOUT_MS );
+                request.setReadTimeout( READ_TIMEOUT_MS );
+            }
+        };
+        return new Storage.Builder( transport, jsonFactory, init ).setApplicationName( AppName ).build();
     }
 
 /**
  * private constructor to prevent accidental instantiation
  *
- * @param AppName  name of the application to be given to the storage-instance
+ * @param AppName           name of the application to be given to the storage-instance
+ * @param connections       keep-alive connections per host, 0...JDK-default
+ * @param a_retries         how many times to retry a call failing with a transient error
+ * @param a_hedge_percentile hedge reads slower than this percentile, 0...never
 */
-    private BC_GCP_TOOLS( final String AppName )
+    private BC_GCP_TOOLS( final String AppName, int connections, int a_retries, int a_hedge_percentile )
     {
+        retries = Math.max( a_retries, 0 );
+        hedge_percentile = Math.max( 0, Math.min( a_hedge_percentile, 99 ) );
+        hedge_pool = Executors.newCachedThreadPool( r ->
+        {
+            Thread t = new Thread( r, "gcs-hedge" );
+            t.setDaemon( true );
+            return t;
+        } );
         try
         {
-            storage = buildStorageService( AppName );
+            storage = buildStorageService( AppName, connections );
         }
         catch ( Exception e )
         {
@@ -107,16 +193,210 @@ public class BC_GCP_TOOLS
 /**
  * static method to either return an existing instance or create a new instance
  * of the BC_GCP_TOOLS-class
+ * - configured from the spark-conf, outside of spark ( tools ) the defaults are used
  *
  * @return         instance of BC_GCP_TOOLS
 */
     public static BC_GCP_TOOLS getInstance()
     {
-        if ( instance == null )
+        BC_GCP_TOOLS res = instance;
+        if ( res == null )
+        {
+            synchronized( BC_GCP_TOOLS.class )
+            {
+                res = instance;
+                if ( res == null )
+                {
+                    int connections = 0;
+                    int a_retries = 3;
+                    int a_hedge_percentile = 0;
+                    try
+                    {
+                        connections = SparkEnv.get().conf().getInt( KEY_CONNECTIONS, connections );
+                        a_retries = SparkEnv.get().conf().getInt( KEY_RETRIES, a_retries );
+                        a_hedge_percentile = SparkEnv.get().conf().getInt( KEY_HEDGE_PERCENTILE, a_hedge_percentile );
+                    }
+                    catch ( Exception e ) { }
+                    catch ( NoClassDefFoundError e ) { }
+                    res = new BC_GCP_TOOLS( "BlastSparkCluster", connections, a_retries, a_hedge_percentile );
+                    instance = res;
+                }
+            }
+        }
+        return res;
+    }
+
+/**
+ * is an error worth a retry ?
+ * - errors without a http-status ( connection reset, timeout ) are
+ * - of the http-errors only 408, 429 and 5xx, not for instance 404
+ *
+ * @param e     the error of a call
+ * @return      is the error transient
+*/
+    static boolean transient_error( final IOException e )
+    {
+        if ( e instanceof InterruptedIOException && !( e instanceof java.net.SocketTimeoutException ) )
+            return false;
+        if ( e instanceof HttpResponseException )
+        {
+            int code = ( ( HttpResponseException )e ).getStatusCode();
+            return ( code == 408 || code == 429 || code >= 500 );
+        }
+        return true;
+    }
+
+/**
+ * time to wait before the next attempt: exponential backoff with full jitter
+ *
+ * @param attempt   number of the failed attempt, starting at 0
+ * @return          random time between 0 and min( max, base * 2^attempt ) in ms
+*/
+    static long backoff_ms( int attempt )
+    {
+        long cap = Math.min( BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min( attempt, 16 ) );
+        return ThreadLocalRandom.current().nextLong( cap + 1 );
+    }
+
+/**
+ * execute a call, retry it on transient errors and record it in the metrics
+ *
+ * @param m         metrics to record the call in
+ * @param op        name of the operation
+ * @param retries   how many times to retry
+ * @param c         the call
+ * @return          result of the call
+*/
+    static < T > T with_retries( final BC_GCS_METRICS m, final String op, int retries,
+                                 final CALL< T > c ) throws IOException
+    {
+        long start = System.currentTimeMillis();
+        for ( int attempt = 0; ; ++attempt )
+        {
+            try
+            {
+                T res = c.run();
+                m.record( op, System.currentTimeMillis() - start, true );
+                return res;
+            }
+            catch ( IOException e )
+            {
+                if ( attempt >= retries || !transient_error( e ) )
+                {
+                    m.record( op, System.currentTimeMillis() - start, false );
+                    throw e;
+                }
+                m.retried( op );
+            }
+            try
+            {
+                Thread.sleep( backoff_ms( attempt ) );
+            }
+            catch ( InterruptedException e )
+            {
+                m.record( op, System.currentTimeMillis() - start, false );
+                throw new InterruptedIOException( op );
+            }
+        }
+    }
+
+/**
+ * private helper: execute a call with the retries of this instance
+*/
+    private < T > T call( final String op, final CALL< T > c ) throws IOException
+    {
+        return with_retries( metrics, op, retries, c );
+    }
+
+/**
+ * private helper: close the streams of hedged reads which lost the race, once they arrive
+*/
+    private void discard( final List< Future< InputStream > > losers )
+    {
+        for ( final Future< InputStream > f : losers )
+        {
+            hedge_pool.submit( () ->
+            {
+                try { f.get().close(); }
+                catch ( Exception e ) { }
+            } );
+        }
+    }
+
+/**
+ * private method to open a stream on an object, hedged
+ * - if no stream arrived after the configured latency-percentile of the previous reads,
+ *   a second request is sent, the stream which arrives first is used
+ *
+ * @param c         call opening the stream, must create a new request each time
+ * @param a_retries how many times each request is retried, 0 if the caller retries
+ * @return          stream of the object
+*/
+    private InputStream hedged_read( final CALL< InputStream > c, int a_retries ) throws IOException
+    {
+        long threshold = ( hedge_percentile > 0 ) ? metrics.percentile( "read", hedge_percentile ) : 0;
+        if ( threshold <= 0 )
+            return with_retries( metrics, "read", a_retries, c );
+
+        CompletionService< InputStream > cs = new ExecutorCompletionService<>( hedge_pool );
+        List< Future< InputStream > > sent = new ArrayList<>();
+        IOException last = null;
+        try
+        {
+            sent.add( cs.submit( () -> with_retries( metrics, "read", a_retries, c ) ) );
+            Future< InputStream > done = cs.poll( threshold, TimeUnit.MILLISECONDS );
+            if ( done == null )
+            {
+                metrics.hedged( "read" );
+                sent.add( cs.submit( () -> with_retries( metrics, "read", a_retries, c ) ) );
+            }
+            while ( !sent.isEmpty() )
+            {
+                if ( done == null )
+                    done = cs.take();
+                sent.remove( done );
+                try
+                {
+                    InputStream res = done.get();
+                    discard( sent );
+                    return res;
+                }
+                catch ( ExecutionException e )
+                {
+                    Throwable cause = e.getCause();
+                    last = ( cause instanceof IOException ) ? ( IOException )cause : new IOException( cause );
+                }
+                done = null;
+            }
+        }
+        catch ( InterruptedException e )
         {
-            instance = new BC_GCP_TOOLS( "BlastSparkCluster" );
+            discard( sent );
+            throw new InterruptedIOException( "read" );
         }
-        return instance;
+        throw last;
+    }
+
+/**
+ * request-counts and latencies of the GCS-calls of this JVM
+ *
+ * @return         one line per operation
+*/
+    public static List< String > metrics()
+    {
+        BC_GCP_TOOLS inst = instance;
+        return ( inst != null ) ? inst.metrics.report() : new ArrayList< String >();
+    }
+
+/**
+ * snapshot of the GCS-counters of this JVM, to report the calls of a task
+ *
+ * @return  counters per operation, empty if GCS was not used yet
+*/
+    public static BC_GCS_METRICS.COUNTS counts()
+    {
+        BC_GCP_TOOLS inst = instance;
+        return ( inst != null ) ? inst.metrics.counts() : new BC_GCS_METRICS.COUNTS();
     }
 
 /**
@@ -133,28 +413,172 @@ public class BC_GCP_TOOLS
         Integer res = 0;
         try
         {
-            String mime_type = "application/octet-stream"; /* "text/plain" */
-            ByteArrayInputStream bytes = new ByteArrayInputStream( content.array() );
-            InputStreamContent contentStream = new InputStreamContent( mime_type, bytes );
-            // Setting the length improves upload performance
+            final String mime_type = "application/octet-stream"; /* "text/plain" */
             res = content.array().length;
-            contentStream.setLength( res );
+            call( "insert", () ->
+            {
+                ByteArrayInputStream bytes = new ByteArrayInputStream( content.array() );
+                InputStreamContent contentStream = new InputStreamContent( mime_type, bytes );
+                // Setting the length improves upload performance
+                contentStream.setLength( content.array().length );
 
-            // Destination object name
-            StorageObject objectMetadata = new StorageObject().setName( key );
+                // Destination object name
+                StorageObject objectMetadata = new StorageObject().setName( key );
 
-            // Do the insert
-            Storage.Objects.Insert insertRequest = storage.objects().insert( bucket, objectMetadata, contentStream );
+                // Do the insert
+                return storage.objects().insert( bucket, objectMetadata, contentStream ).execute();
+            } );
+        }
+        catch ( Exception e )
+        {
+            res = 0;
+        }
+        return res;
+    }
 
-            insertRequest.execute();
+/**
+ * private method to upload a local file into a bucket
+ *
+ * @param  bucket    url of the bucket
+ * @param  key       name of the 'file' in the bucket to be created or overwritten
+ * @param  filename  path of the local file to be uploaded
+ * @param  metadata  custom metadata to be attached to the object, can be null
+ *
+ * @return           number of bytes uploaded
+*/
+    private long uploadFile( final String bucket, final String key, final String filename,
+                             final Map< String, String > metadata )
+    {
+        long res = 0;
+        try
+        {
+            final File f = new File( filename );
+            call( "insert", () ->
+            {
+                try ( FileInputStream f_in = new FileInputStream( f ) )
+                {
+                    InputStreamContent contentStream = new InputStreamContent( "application/octet-stream", f_in );
+                    contentStream.setLength( f.length() );
+
+                    StorageObject objectMetadata = new StorageObject().setName( key );
+                    if ( metadata != null )
+                        objectMetadata.setMetadata( metadata );
+
+                    /* resumable upload, the file is streamed in chunks and never held in memory */
+                    Storage.Objects.Insert insert = storage.objects().insert( bucket, objectMetadata, contentStream );
+                    insert.getMediaHttpUploader().setDirectUploadEnabled( false ).setChunkSize( UPLOAD_CHUNK_SIZE );
+                    return insert.execute();
+                }
+            } );
+            res = f.length();
         }
         catch ( Exception e )
         {
+            e.printStackTrace();
             res = 0;
         }
         return res;
     }
 
+/**
+ * private method to copy an object inside of GCS, without downloading it
+ *
+ * @param  src_bucket  name of the source-bucket
+ * @param  src_key     name of the source-object
+ * @param  dst_bucket  name of the destination-bucket
+ * @param  dst_key     name of the destination-object
+ *
+ * @return             success of operation
+*/
+    private boolean copyObject( final String src_bucket, final String src_key,
+                                final String dst_bucket, final String dst_key )
+    {
+        boolean res = false;
+        try
+        {
+            call( "copy", () -> storage.objects().copy( src_bucket, src_key, dst_bucket, dst_key, null ).execute() );
+            res = true;
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+        }
+        return res;
+    }
+
+/**
+ * private helper-method to turn one listed object into a name/size-tuple
+ * - compressed objects report their uncompressed size from the metadata
+ * - compressed objects without this metadata cannot be size-checked and are skipped
+ *
+ * @param  item    listed object
+ *
+ * @return         name/size-tuple or null
+*/
+    private static BC_NAME_SIZE to_name_size( final StorageObject item )
+    {
+        String name = item.getName();
+        if ( name.endsWith( "." + COMPRESSION_GZ ) )
+        {
+            Map< String, String > meta = item.getMetadata();
+            if ( meta != null && meta.containsKey( KEY_UNCOMPRESSED_SIZE ) )
+            {
+                try
+                {
+                    return new BC_NAME_SIZE( name, new BigInteger( meta.get( KEY_UNCOMPRESSED_SIZE ) ),
+                                             COMPRESSION_GZ, generation_of( item ), item.getMd5Hash() );
+                }
+                catch ( NumberFormatException e ) { }
+            }
+            logger.info( String.format( "'gs://%s/%s' has no valid '%s' metadata, skipped",
+                                        item.getBucket(), name, KEY_UNCOMPRESSED_SIZE ) );
+            return null;
+        }
+        return new BC_NAME_SIZE( name, item.getSize(), "", generation_of( item ), item.getMd5Hash() );
+    }
+
+/**
+ * private helper-method to get the generation of a listed object
+ *
+ * @param  item    listed object
+ *
+ * @return         generation of the object, 0 if unknown
+*/
+    private static long generation_of( final StorageObject item )
+    {
+        Long gen = item.getGeneration();
+        return ( gen != null ) ? gen.longValue() : 0;
+    }
+
+/**
+ * private method to get the current generation of an object
+ *
+ * @param  bucket  name of the bucket
+ * @param  key     name of the object
+ *
+ * @return         generation of the object, 0 if unknown, -1 if the object does not exist
+*/
+    private long object_generation( final String bucket, final String key )
+    {
+        long res = 0;
+        try
+        {
+            StorageObject meta = call( "get", () -> storage.objects().get( bucket, key ).execute() );
+            if ( meta != null )
+                res = generation_of( meta );
+        }
+        catch ( GoogleJsonResponseException e )
+        {
+            if ( e.getStatusCode() == 404 )
+                res = -1;
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+        }
+        return res;
+    }
+
 /**
  * private method list all entries of a bucket : name + size
  *
@@ -174,12 +598,16 @@ public class BC_GCP_TOOLS
                 Objects objects;
                 do
                 {
-                    objects = list.execute();
+                    objects = call( "list", list::execute );
                     List< StorageObject > items = objects.getItems();
                     for ( StorageObject item : items )
                     {
-                        lst.add( new BC_NAME_SIZE( item.getName(), item.getSize() ) );
-                        res += 1;
+                        BC_NAME_SIZE ns = to_name_size( item );
+                        if ( ns != null )
+                        {
+                            lst.add( ns );
+                            res += 1;
+                        }
                     }
                     list.setPageToken( objects.getNextPageToken() );
                 } while ( objects.getNextPageToken() != null );
@@ -213,7 +641,7 @@ public class BC_GCP_TOOLS
                     boolean done = false;
                     do
                     {
-                        objects = list.execute();
+                        objects = call( "list", list::execute );
                         List< StorageObject > items = objects.getItems();
                         for ( StorageObject item : items )
                         {
@@ -235,7 +663,7 @@ public class BC_GCP_TOOLS
                 {
                     do
                     {
-                        objects = list.execute();
+                        objects = call( "list", list::execute );
                         List< StorageObject > items = objects.getItems();
                         for ( StorageObject item : items )
                         {
@@ -259,73 +687,184 @@ public class BC_GCP_TOOLS
         return res;
     }
 
+/**
+ * private method to download a file from a bucket to the local filesystem as a set of
+ * byte-ranges in parallel, all ranges are pinned to the same generation of the object
+ *
+ * @param  bucket        url of the bucket
+ * @param  key           name of the 'file' in the bucket to be downloaded
+ * @param  meta          metadata of the object ( size and generation )
+ * @param  dst_filename  absolute path of destination-file to be created
+ * @param  segment_size  size of one range in bytes
+ * @param  concurrency   how many ranges to fetch in parallel
+ * @param  retries       how many times to retry a failed range
+ *
+ * return  success of operation
+*/
+    private boolean download_ranges_to_file( final String bucket, final String key,
+                                             final StorageObject meta, final String dst_filename,
+                                             long segment_size, int concurrency, int retries )
+    {
+        final Long generation = meta.getGeneration();
+        BC_RANGED_DOWNLOAD.RANGE_SOURCE src = new BC_RANGED_DOWNLOAD.RANGE_SOURCE()
+        {
+            @Override public InputStream open( long first, long last ) throws IOException
+            {
+                /* a single attempt: fetch_range retries the whole range, with backoff */
+                return hedged_read( () ->
+                {
+                    Storage.Objects.Get obj = storage.objects().get( bucket, key );
+                    if ( generation != null )
+                        obj.setGeneration( generation );
+                    obj.getRequestHeaders().setRange( String.format( "bytes=%d-%d", first, last ) );
+                    HttpResponse resp = obj.executeMedia();
+                    if ( resp.getStatusCode() != BC_RANGED_DOWNLOAD.HTTP_PARTIAL_CONTENT )
+                    {
+                        resp.disconnect();
+                        throw new IOException( String.format( "%s/%s : range %d-%d answered with status %d",
+                                               bucket, key, first, last, resp.getStatusCode() ) );
+                    }
+                    return resp.getContent();
+                }, 0 );
+            }
+        };
+        return BC_RANGED_DOWNLOAD.download( src, meta.getSize().longValue(), dst_filename,
+                                            segment_size, concurrency, retries );
+    }
+
 /**
  * private method to download a file from a bucket to the local filesystem, protected by a lock-file
+ * - objects larger than segment_size are downloaded as byte-ranges in parallel
  *
  * @param  bucket        url of the bucket
  * @param  key           name of the 'file' in the bucket to be downloaded
  * @param  dst_filename  absolute path of destination-file to be created
+ * @param  segment_size  size of one range in bytes, 0...always use a single stream
+ * @param  concurrency   how many ranges to fetch in parallel
+ * @param  retries       how many times to retry a failed range
  *
  * return  success of operation
 */
-    private boolean download_to_file( final String bucket, final String key, final String dst_filename )
+    private boolean download_to_file( final String bucket, final String key, final String dst_filename,
+                                      long segment_size, int concurrency, int retries )
     {
         boolean res = true;
+        if ( segment_size > 0 && concurrency > 1 )
+        {
+            try
+            {
+                StorageObject meta = call( "get", () -> storage.objects().get( bucket, key ).execute() );
+                if ( meta != null && meta.getSize() != null && meta.getSize().longValue() > segment_size )
+                    return download_ranges_to_file( bucket, key, meta, dst_filename,
+                                                    segment_size, concurrency, retries );
+            }
+            catch( Exception e )
+            {
+                /* fall back to a single stream */
+                e.printStackTrace();
+            }
+        }
         if ( res )
         {
+            final File f = new File( dst_filename );
             try
             {
-                Storage.Objects.Get obj = storage.objects().get( bucket, key );
-                res = ( obj != null );
-                if ( res )
+                /* a new request per attempt, the file is truncated each time */
+                call( "download", () ->
                 {
-
-                    File f = new File( dst_filename );
-                    FileOutputStream f_out = new FileOutputStream( f );
-
-                    try
+                    Storage.Objects.Get obj = storage.objects().get( bucket, key );
+                    try ( FileOutputStream f_out = new FileOutputStream( f ) )
                     {
-                        try {
-                            obj.executeMediaAndDownloadTo( f_out );
-                        }
-                        catch( Exception e ) {
-                            e.printStackTrace();
-                            res = false;
-                        }
+                        obj.executeMediaAndDownloadTo( BC_DOWNLOAD_GOVERNOR.get().throttled( f_out ) );
                     }
-                    catch( Exception e )
-                    {
-                        e.printStackTrace();
-                        res = false;
-                    }
-                    finally
-                    {
-                        f_out.flush();
-                        f_out.close();
-                    }
-                    if ( !res )
-                    {
-                        try
-                        {
-                            if ( f.exists() )
-                                f.delete();
-                        }
-                        catch( Exception e )
-                        {
-                            e.printStackTrace();
-                        }
-                    }
-                }
+                    return f;
+                } );
             }
             catch( Exception e )
             {
                 e.printStackTrace();
                 res = false;
             }
+            if ( !res )
+            {
+                try
+                {
+                    if ( f.exists() )
+                        f.delete();
+                }
+                catch( Exception e )
+                {
+                    e.printStackTrace();
+                }
+            }
         }
         return res;
     }
 
+/**
+ * private method to download a gzip-compressed object from a bucket and decompress it
+ * while streaming it to the local filesystem
+ *
+ * @param  bucket        url of the bucket
+ * @param  key           name of the compressed 'file' in the bucket to be downloaded
+ * @param  dst_filename  absolute path of the uncompressed destination-file to be created
+ *
+ * return  success of operation
+*/
+    private boolean download_decompressed_to_file( final String bucket, final String key, final String dst_filename )
+    {
+        boolean res = false;
+        File f = new File( dst_filename );
+        try
+        {
+            InputStream is = new GZIPInputStream( open_stream( bucket, key ), 256 * 1024 );
+            FileOutputStream f_out = new FileOutputStream( f );
+            try
+            {
+                byte[] buf = new byte[ 256 * 1024 ];
+                BC_DOWNLOAD_GOVERNOR governor = BC_DOWNLOAD_GOVERNOR.get();
+                int n;
+                while ( ( n = is.read( buf ) ) > 0 )
+                {
+                    governor.consume( n );
+                    f_out.write( buf, 0, n );
+                }
+                res = true;
+            }
+            finally
+            {
+                f_out.close();
+                is.close();
+            }
+        }
+        catch( Exception e )
+        {
+            e.printStackTrace();
+            res = false;
+        }
+        if ( !res && f.exists() )
+            f.delete();
+        return res;
+    }
+
+/**
+ * private method to open a stream on a whole object, hedged
+ *
+ * @param  bucket        url of the bucket
+ * @param  key           name of the 'file' in the bucket to be downloaded
+ *
+ * return  InputStream to be read from
+*/
+    private InputStream open_stream( final String bucket, final String key ) throws IOException
+    {
+        return hedged_read( () ->
+        {
+            Storage.Objects.Get obj = storage.objects().get( bucket, key );
+            obj.getMediaHttpDownloader().setDirectDownloadEnabled( true );
+            return obj.executeMediaAsInputStream();
+        }, retries );
+    }
+
 /**
  * public static method to download a file from a bucket as stream
  *
@@ -342,12 +881,7 @@ public class BC_GCP_TOOLS
         {
             try
             {
-                Storage.Objects.Get obj = inst.storage.objects().get( bucket, key );
-                if ( obj != null )
-                {
-                    obj.getMediaHttpDownloader().setDirectDownloadEnabled( true );
-                    return obj.executeMediaAsInputStream();
-                }
+                return inst.open_stream( bucket, key );
             }
             catch( Exception e )
             {
@@ -365,6 +899,24 @@ public class BC_GCP_TOOLS
  * return  success of operation
 */
     public static boolean download( final String bucket, final String dst_filename )
+    {
+        return download( bucket, dst_filename, 0, 1, 0 );
+    }
+
+/**
+ * public static method to download a file from a bucket to the local filesystem,
+ * large objects are split into byte-ranges which are fetched in parallel
+ *
+ * @param  bucket        url of the bucket
+ * @param  dst_filename  absolute path of destination-file to be created
+ * @param  segment_size  size of one range in bytes, 0...always use a single stream
+ * @param  concurrency   how many ranges to fetch in parallel
+ * @param  retries       how many times to retry a failed range
+ *
+ * return  success of operation
+*/
+    public static boolean download( final String bucket, final String dst_filename,
+                                    long segment_size, int concurrency, int retries )
     {
         boolean res = false;
         BC_GCP_TOOLS inst = getInstance();
@@ -378,7 +930,10 @@ public class BC_GCP_TOOLS
                     String key = uri.getPath();
                     if ( key.startsWith( "/" ) )
                         key = key.substring( 1 );
-                    return inst.download_to_file( uri.getAuthority(), key, dst_filename );
+                    if ( key.endsWith( "." + COMPRESSION_GZ ) )
+                        return inst.download_decompressed_to_file( uri.getAuthority(), key, dst_filename );
+                    return inst.download_to_file( uri.getAuthority(), key, dst_filename,
+                                                  segment_size, concurrency, retries );
                 }
             }
             catch( URISyntaxException e )
@@ -452,6 +1007,72 @@ public class BC_GCP_TOOLS
         return upload( bucket, key, bb );
     }
 
+/**
+ * public static method to upload a local file into a bucket
+ *
+ * @param  bucket    url of the bucket
+ * @param  key       name of the 'file' in the bucket to be created or overwritten
+ * @param  filename  path of the local file to be uploaded
+ * @param  metadata  custom metadata to be attached to the object, can be null
+ *
+ * @return           number of bytes uploaded
+*/
+    public static long upload_file( final String bucket, final String key, final String filename,
+                                    final Map< String, String > metadata )
+    {
+        long res = 0;
+        BC_GCP_TOOLS inst = getInstance();
+        if ( inst != null )
+            res = inst.uploadFile( bucket, key, filename, metadata );
+        return res;
+    }
+
+/**
+ * public static method to copy an object between buckets without downloading it
+ *
+ * @param  src_bucket  name of the source-bucket
+ * @param  src_key     name of the source-object
+ * @param  dst_bucket  name of the destination-bucket
+ * @param  dst_key     name of the destination-object
+ *
+ * @return             success of operation
+*/
+    public static boolean copy( final String src_bucket, final String src_key,
+                                final String dst_bucket, final String dst_key )
+    {
+        boolean res = false;
+        BC_GCP_TOOLS inst = getInstance();
+        if ( inst != null )
+            res = inst.copyObject( src_bucket, src_key, dst_bucket, dst_key );
+        return res;
+    }
+
+/**
+ * public static method to get the current generation of an object, without downloading it
+ *
+ * @param  url     url of the object, for instance 'gs://nt_50mb_chunks/nt_50M.00.nsq'
+ *
+ * @return         generation of the object, 0 if unknown, -1 if the object does not exist
+*/
+    public static long generation( final String url )
+    {
+        long res = 0;
+        BC_GCP_TOOLS inst = getInstance();
+        if ( inst != null )
+        {
+            try
+            {
+                URI uri = new URI( url );
+                if ( uri.getScheme().equals( "gs" ) )
+                    res = inst.object_generation( uri.getAuthority(), uri.getPath().substring( 1 ) );
+            }
+            catch( URISyntaxException e )
+            {
+            }
+        }
+        return res;
+    }
+
 /**
  * public static method to list all items in a bucket
  *
@@ -504,6 +1125,65 @@ public class BC_GCP_TOOLS
         return res;
     }
 
+/**
+ * public static method to list the names in a bucket with several threads
+ * - the names are handed to the consumer as the pages arrive
+ *
+ * @param  url       url of the bucket, optionally with a path to list below, 'gs://bucket/dir'
+ * @param  filter    only names ending in this, '' for all names
+ * @param  threads   how many shards of the keyspace are listed at once, 1...no sharding
+ * @param  consumer  receives the names, relative to the path of the url
+ *
+ * @return           number of names handed to the consumer, -1 on error
+ * @see              BC_BUCKET_LISTER
+*/
+    public static long list_names( final String url, final String filter, int threads,
+                                   final BC_BUCKET_LISTER.CONSUMER consumer )
+    {
+        final BC_GCP_TOOLS inst = getInstance();
+        if ( inst == null || inst.storage == null )
+            return -1;
+        try
+        {
+            URI uri = new URI( url );
+            if ( !uri.getScheme().equals( "gs" ) )
+                return -1;
+            final String bucket = uri.getAuthority();
+            String prefix = ( uri.getPath() != null ) ? uri.getPath() : "";
+            if ( prefix.startsWith( "/" ) )
+                prefix = prefix.substring( 1 );
+            if ( !prefix.isEmpty() && !prefix.endsWith( "/" ) )
+                prefix = prefix + "/";
+
+            BC_BUCKET_LISTER.PAGE_SOURCE src = new BC_BUCKET_LISTER.PAGE_SOURCE()
+            {
+                @Override public String page( String shard, String token, List< String > names ) throws IOException
+                {
+                    Objects objects = inst.call( "list", () ->
+                    {
+                        Storage.Objects.List list = inst.storage.objects().list( bucket );
+                        list.setPrefix( shard );
+                        list.setFields( "items(name),nextPageToken" );
+                        if ( token != null )
+                            list.setPageToken( token );
+                        return list.execute();
+                    } );
+                    if ( objects.getItems() != null )
+                    {
+                        for ( StorageObject item : objects.getItems() )
+                            names.add( item.getName() );
+                    }
+                    return objects.getNextPageToken();
+                }
+            };
+            return BC_BUCKET_LISTER.list( src, prefix, filter, threads, consumer );
+        }
+        catch( URISyntaxException e )
+        {
+        }
+        return -1;
+    }
+
 /**
  * private static helper-method to test if a String ends in any of the given extensions
  *
@@ -546,6 +1226,8 @@ public class BC_GCP_TOOLS
 
 /**
  * public static helper-method to filter a list of BC_NAME_SIZE tuples, based on a list of given extensions
+ * - compressed objects ( for instance 'nt_50M.00.nsq.gz' ) are recognized by their uncompressed name
+ * - if a file exists compressed and uncompressed, the compressed object is used
  *
  * @param  all         list of BC_NAME_SIZE tuples
  * @param  extensions  extensions to be used as filter
@@ -556,11 +1238,20 @@ public class BC_GCP_TOOLS
     {
         List< BC_CHUNK_VALUES > res = new ArrayList<>();
         Map< String, BC_CHUNK_VALUES > dict = new HashMap<>();
+        Map< String, BC_NAME_SIZE > by_plain_name = new HashMap<>();
         for ( BC_NAME_SIZE item : all )
         {
-            if ( ends_with_any( item.name, extensions ) )
+            String plain = item.plain_name();
+            BC_NAME_SIZE other = by_plain_name.get( plain );
+            if ( other == null || ( item.compressed() && !other.compressed() ) )
+                by_plain_name.put( plain, item );
+        }
+        for ( BC_NAME_SIZE item : by_plain_name.values() )
+        {
+            String plain = item.plain_name();
+            if ( ends_with_any( plain, extensions ) )
             {
-                String key = item.name.substring( 0, item.name.length() - 4 );
+                String key = plain.substring( 0, plain.length() - 4 );
                 if ( dict.containsKey( key ) )
                 {
                     BC_CHUNK_VALUES obj = dict.get( key );
@@ -580,8 +1271,9 @@ public class BC_GCP_TOOLS
             for ( BC_NAME_SIZE ns : obj.files )
             {
                 /* get the last 3 characters ( aka the extension ) */
-                String ext = ns.name.substring( Math.max( ns.name.length() - 3, 0 ) );
-                v.files.add( new BC_NAME_SIZE( ext, ns.size ) );
+                String plain = ns.plain_name();
+                String ext = plain.substring( Math.max( plain.length() - 3, 0 ) );
+                v.files.add( new BC_NAME_SIZE( ext, ns.size, ns.compression, ns.generation, ns.md5 ) );
             }
             res.add( v );
         }
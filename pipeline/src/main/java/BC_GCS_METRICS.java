@@ -0,0 +1,313 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * request-counts and latencies of the calls to GCS, per operation ( 'list', 'get',
+ * 'read', 'insert', 'copy' ), one instance per JVM inside of BC_GCP_TOOLS
+ * - counts calls, failed calls, retries and hedged requests
+ * - keeps the latencies of the last calls, to derive the percentile
+ *   after which a slow read is hedged
+ * - 'read' is the time until the first byte of a download arrives
+ * - counts() takes a snapshot of the counters, the difference of two snapshots
+ *   are the calls in between, for instance while the tasks of a request ran
+ *
+ * @see        BC_GCP_TOOLS
+*/
+public final class BC_GCS_METRICS
+{
+    private static final int SAMPLES = 256;        /* latencies kept per operation */
+    private static final int MIN_SAMPLES = 20;     /* no percentile below this many samples */
+
+    private static final class OP
+    {
+        long calls = 0;
+        long errors = 0;
+        long retries = 0;
+        long hedges = 0;
+        long total_ms = 0;
+        long max_ms = 0;
+        final long[] latencies = new long[ SAMPLES ];
+        int next = 0;
+        int filled = 0;
+    }
+
+/**
+ * snapshot of the counters per operation, sent from the executors to the driver
+ * - per operation: calls, failed calls, retries, hedged requests, total ms
+*/
+    public static final class COUNTS implements Serializable
+    {
+        private static final int N = 5;
+        private final Map< String, long[] > by_op = new TreeMap<>();
+
+        private long[] of( final String op )
+        {
+            long[] res = by_op.get( op );
+            if ( res == null )
+            {
+                res = new long[ N ];
+                by_op.put( op, res );
+            }
+            return res;
+        }
+
+/**
+ * the calls between an earlier snapshot and this one
+ *
+ * @param before    earlier snapshot of the same JVM
+ * @return          difference per operation
+*/
+        public COUNTS minus( final COUNTS before )
+        {
+            COUNTS res = new COUNTS();
+            for ( Map.Entry< String, long[] > e : by_op.entrySet() )
+            {
+                long[] b = before.by_op.get( e.getKey() );
+                long[] d = res.of( e.getKey() );
+                for ( int i = 0; i < N; ++i )
+                    d[ i ] = e.getValue()[ i ] - ( b == null ? 0 : b[ i ] );
+            }
+            return res;
+        }
+
+/**
+ * add the counters of another snapshot or difference to this one
+ *
+ * @param other     counters to add
+*/
+        public void add( final COUNTS other )
+        {
+            for ( Map.Entry< String, long[] > e : other.by_op.entrySet() )
+            {
+                long[] d = of( e.getKey() );
+                for ( int i = 0; i < N; ++i )
+                    d[ i ] += e.getValue()[ i ];
+            }
+        }
+
+/**
+ * keep per operation the smaller ( earlier ) or the larger ( later ) counters
+ * of two snapshots of the same JVM
+ *
+ * @param other     the other snapshot
+ * @param earlier   keep the smaller counters ?
+*/
+        public void widen( final COUNTS other, boolean earlier )
+        {
+            for ( Map.Entry< String, long[] > e : other.by_op.entrySet() )
+            {
+                boolean known = by_op.containsKey( e.getKey() );
+                long[] d = of( e.getKey() );
+                for ( int i = 0; i < N; ++i )
+                {
+                    long v = e.getValue()[ i ];
+                    if ( !known )
+                        d[ i ] = v;
+                    else
+                        d[ i ] = earlier ? Math.min( d[ i ], v ) : Math.max( d[ i ], v );
+                }
+            }
+            if ( earlier )
+            {
+                /* an operation missing in the other snapshot had no calls yet at that time */
+                for ( Map.Entry< String, long[] > e : by_op.entrySet() )
+                {
+                    if ( !other.by_op.containsKey( e.getKey() ) )
+                        Arrays.fill( e.getValue(), 0 );
+                }
+            }
+        }
+
+/**
+ * number of calls of an operation
+ *
+ * @param op    name of the operation
+ * @return      number of calls
+*/
+        public long calls( final String op )
+        {
+            long[] c = by_op.get( op );
+            return c == null ? 0 : c[ 0 ];
+        }
+
+/**
+ * one line per operation with calls
+ *
+ * @return  list of lines
+*/
+        public List< String > report()
+        {
+            List< String > res = new ArrayList<>();
+            for ( Map.Entry< String, long[] > e : by_op.entrySet() )
+            {
+                long[] c = e.getValue();
+                if ( c[ 0 ] > 0 )
+                    res.add( String.format( "gcs %-6s : %,d calls, %,d failed, %,d retries, %,d hedged, avg %,d ms",
+                             e.getKey(), c[ 0 ], c[ 1 ], c[ 2 ], c[ 3 ], c[ 4 ] / c[ 0 ] ) );
+            }
+            return res;
+        }
+    }
+
+    private final Map< String, OP > ops;
+
+/**
+ * create instance of BC_GCS_METRICS
+*/
+    public BC_GCS_METRICS()
+    {
+        ops = new TreeMap<>();
+    }
+
+    private OP op_of( final String op )
+    {
+        OP res = ops.get( op );
+        if ( res == null )
+        {
+            res = new OP();
+            ops.put( op, res );
+        }
+        return res;
+    }
+
+/**
+ * record one call, including its retries
+ *
+ * @param op    name of the operation
+ * @param ms    duration of the call
+ * @param ok    did the call succeed
+*/
+    public synchronized void record( final String op, long ms, boolean ok )
+    {
+        OP o = op_of( op );
+        o.calls += 1;
+        if ( !ok )
+            o.errors += 1;
+        o.total_ms += ms;
+        o.max_ms = Math.max( o.max_ms, ms );
+        o.latencies[ o.next ] = ms;
+        o.next = ( o.next + 1 ) % SAMPLES;
+        o.filled = Math.min( o.filled + 1, SAMPLES );
+    }
+
+/**
+ * record that a call had to be retried
+ *
+ * @param op    name of the operation
+*/
+    public synchronized void retried( final String op )
+    {
+        op_of( op ).retries += 1;
+    }
+
+/**
+ * record that a second request was sent for a slow call
+ *
+ * @param op    name of the operation
+*/
+    public synchronized void hedged( final String op )
+    {
+        op_of( op ).hedges += 1;
+    }
+
+/**
+ * latency-percentile of the last calls of an operation
+ *
+ * @param op    name of the operation
+ * @param p     percentile, 1...99
+ * @return      latency in ms, 0...not enough calls recorded yet
+*/
+    public synchronized long percentile( final String op, int p )
+    {
+        OP o = ops.get( op );
+        if ( o == null || o.filled < MIN_SAMPLES )
+            return 0;
+        long[] sorted = Arrays.copyOf( o.latencies, o.filled );
+        Arrays.sort( sorted );
+        int idx = ( int )Math.ceil( ( p / 100.0 ) * sorted.length ) - 1;
+        return sorted[ Math.max( 0, Math.min( idx, sorted.length - 1 ) ) ];
+    }
+
+/**
+ * number of calls of an operation
+ *
+ * @param op    name of the operation
+ * @return      number of calls recorded
+*/
+    public synchronized long calls( final String op )
+    {
+        OP o = ops.get( op );
+        return o == null ? 0 : o.calls;
+    }
+
+/**
+ * snapshot of the counters
+ *
+ * @return  counters per operation
+*/
+    public synchronized COUNTS counts()
+    {
+        COUNTS res = new COUNTS();
+        for ( Map.Entry< String, OP > e : ops.entrySet() )
+        {
+            OP o = e.getValue();
+            long[] c = res.of( e.getKey() );
+            c[ 0 ] = o.calls;
+            c[ 1 ] = o.errors;
+            c[ 2 ] = o.retries;
+            c[ 3 ] = o.hedges;
+            c[ 4 ] = o.total_ms;
+        }
+        return res;
+    }
+
+/**
+ * one line per operation
+ *
+ * @return  list of lines
+*/
+    public synchronized List< String > report()
+    {
+        List< String > res = new ArrayList<>();
+        for ( Map.Entry< String, OP > e : ops.entrySet() )
+        {
+            OP o = e.getValue();
+            res.add( String.format( "gcs %-6s : %,d calls, %,d failed, %,d retries, %,d hedged, avg %,d ms, p95 %,d ms, max %,d ms",
+                     e.getKey(), o.calls, o.errors, o.retries, o.hedges, o.total_ms / Math.max( o.calls, 1 ),
+                     percentile( e.getKey(), 95 ), o.max_ms ) );
+        }
+        return res;
+    }
+}
@@ -0,0 +1,71 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * storage-backend for 'gs://' urls, delegates to BC_GCP_TOOLS
+ *
+ * @see        BC_STORAGE
+ * @see        BC_GCP_TOOLS
+*/
+public final class BC_GCS_STORAGE implements BC_STORAGE
+{
+    public static final String SCHEME = "gs://";
+    public static final BC_GCS_STORAGE INSTANCE = new BC_GCS_STORAGE();
+
+    private BC_GCS_STORAGE() { }
+
+    @Override public List< BC_NAME_SIZE > list( final String url )
+    {
+        return BC_GCP_TOOLS.list( url );
+    }
+
+    @Override public InputStream open( final String url )
+    {
+        return BC_GCP_TOOLS.download( url );
+    }
+
+    @Override public boolean download( final String url, final String dst_filename,
+                                       long segment_size, int concurrency, int retries )
+    {
+        return BC_GCP_TOOLS.download( url, dst_filename, segment_size, concurrency, retries );
+    }
+
+    @Override public long generation( final String url )
+    {
+        return BC_GCP_TOOLS.generation( url );
+    }
+
+    @Override public String local_path( final String url )
+    {
+        return null;
+    }
+}
@@ -28,7 +28,11 @@ package gov.nih.nlm.ncbi.blastjni;
 
 import java.util.List;
 import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -42,7 +46,6 @@ import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.broadcast.Broadcast;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.rdd.RDD;
-import scala.Tuple3;
 import org.apache.spark.util.LongAccumulator;
 import org.apache.spark.SparkFiles;
 
@@ -51,7 +54,7 @@ import org.apache.spark.SparkFiles;
  * - stores reference to application-context
  * - stores reference to JavaSparkContext
  * - stores reference to broadcasted debug-settings
- * - stores reference to database-dictionary
+ * - stores reference to database-registry
  * - stores id of job-thread
  *
  * @see        BC_CONTEXT
@@ -61,7 +64,7 @@ class BC_JOB extends Thread
     private final BC_CONTEXT context;
     private final JavaSparkContext jsc;
     private Broadcast< BC_DEBUG_SETTINGS > DEBUG_SETTINGS;
-    private final Map< String, JavaRDD< BC_DATABASE_RDD_ENTRY > > db_dict;
+    private final BC_DATABASES databases;
     private final int id;
     private final AtomicBoolean active;
     private final AtomicInteger errors;
@@ -73,23 +76,23 @@ class BC_JOB extends Thread
  * @param a_context             application-context
  * @param a_jsc                 JavaSparkContext
  * @param a_DEBUG_SETTINGS      broadcasted debug-settings
- * @param a_db_dict             dictionary of blast-database-RDDs
+ * @param a_databases           registry of blast-database-snapshots
  * @param a_id                  Id of the thread
  *
  * @see        BC_CONTEXT
  * @see        BC_DEBUG_SETTINGS
- * @see        BC_DATABASE_RDD_ENTRY
+ * @see        BC_DATABASES
 */
     public BC_JOB( final BC_CONTEXT a_context,
                    final JavaSparkContext a_jsc,
                    Broadcast< BC_DEBUG_SETTINGS > a_DEBUG_SETTINGS,
-                   final Map< String, JavaRDD< BC_DATABASE_RDD_ENTRY > > a_db_dict,
+                   final BC_DATABASES a_databases,
                    final int a_id )
     {
         context = a_context;
         DEBUG_SETTINGS = a_DEBUG_SETTINGS;
         jsc = a_jsc;
-        db_dict = a_db_dict;
+        databases = a_databases;
         id = a_id;
         active = new AtomicBoolean( false );
         errors = new AtomicInteger( 0 );
@@ -116,22 +119,240 @@ class BC_JOB extends Thread
         return errors.get();
     }
 
+/**
+ * find the current snapshot of the database, based on the request.db field
+ * and hold it while the request is processed
+ * - a refresh of the database does not affect a request already running
+ *
+ * @param DBG           broadcast-variable to be used for debug-interface
+ * @param request       request to be 'blasted' against one database-chunk
+ * @return              success, ( no worker reported an error )
+ * @see        BC_DATABASES
+*/
+    private boolean handle_request( Broadcast< BC_DEBUG_SETTINGS > DBG, BC_REQUEST request )
+    {
+        BC_DATABASE_SNAPSHOT snapshot = databases.acquire( request.db );
+        if ( snapshot == null )
+        {
+            logger.info( String.format( "JOB[%d] REQUEST[%s] : db '%s' not found", id, request.id, request.db ) );
+            return true;
+        }
+        try
+        {
+            return handle_request( DBG, request, snapshot );
+        }
+        finally
+        {
+            databases.release( snapshot );
+        }
+    }
+
+/**
+ * decide which chunks of the database are searched as several OID-ranges
+ * - chunks named in the request ( chunk_splits ) are split as requested
+ * - with a split_factor in the database-settings, chunks which historically took
+ *   longer than split_factor * median are split into ~ runtime / median ranges
+ *
+ * @param request       request to be processed
+ * @param snapshot      snapshot of the database
+ * @return              map of chunk-name to number of ranges ( > 1 )
+ * @see        BC_CHUNK_STATS
+*/
+    private Map< String, Integer > split_plan( final BC_REQUEST request, final BC_DATABASE_SNAPSHOT snapshot )
+    {
+        Map< String, Integer > res = new HashMap<>();
+        BC_DATABASE_SETTING setting = snapshot.setting;
+        if ( setting.direct )
+            return res;     /* the alias-files cannot be written next to the chunks */
+
+        BC_CHUNK_STATS stats = databases.stats();
+        double median = stats.median( setting.key );
+        if ( setting.split_factor > 0.0 && median > 0.0 )
+        {
+            for ( BC_CHUNK_VALUES chunk : snapshot.chunks )
+            {
+                double runtime = stats.runtime( setting.key, chunk.name );
+                if ( runtime > setting.split_factor * median )
+                {
+                    int n = Math.min( setting.split_parts, ( int )Math.ceil( runtime / median ) );
+                    if ( n > 1 )
+                        res.put( chunk.name, n );
+                }
+            }
+        }
+        for ( Map.Entry< String, Integer > e : request.chunk_splits.entrySet() )
+        {
+            if ( e.getValue() > 1 )
+                res.put( e.getKey(), e.getValue() );
+        }
+        return res;
+    }
+
+/**
+ * build the RDD of tasks for this request
+ * - unsplit chunks come from the cached partitions of the snapshot
+ * - split chunks are replaced by one task per OID-range, each preferring the
+ *   hosts holding its chunk ( as the partitions of the snapshot do )
+ *
+ * @param snapshot      snapshot of the database
+ * @param splits        map of chunk-name to number of ranges
+ * @return              RDD of entries to be searched
+*/
+    private JavaRDD< BC_DATABASE_RDD_ENTRY > make_tasks( final BC_DATABASE_SNAPSHOT snapshot,
+                                                         final Map< String, Integer > splits )
+    {
+        if ( splits.isEmpty() )
+            return snapshot.rdd;
+
+        BC_DATABASE_SETTING setting = snapshot.setting;
+        BC_CHUNK_REGISTRY registry = databases.registry();
+        List< BC_DATABASE_RDD_ENTRY > ranges = new ArrayList<>();
+        List< List< String > > hosts = new ArrayList<>();
+        for ( BC_DATABASE_RDD_ENTRY entry : BC_DATABASE_RDD_ENTRY.make_rdd_entry_list( setting, snapshot.chunks ) )
+        {
+            Integer n = splits.get( entry.chunk.name );
+            if ( n != null )
+            {
+                List< String > l = entry.in_place() ? new ArrayList< String >() :
+                        registry.best_hosts( setting.key, Collections.singleton( entry.chunk_dir_name() ),
+                                             Math.max( setting.replicas, 1 ), false );
+                for ( BC_DATABASE_RDD_ENTRY range : entry.split( n ) )
+                {
+                    ranges.add( range );
+                    hosts.add( l );
+                }
+            }
+        }
+        if ( ranges.isEmpty() )
+            return snapshot.rdd;
+
+        final Set< String > split_names = new HashSet<>( splits.keySet() );
+        JavaRDD< BC_DATABASE_RDD_ENTRY > whole = snapshot.rdd.filter( item -> !split_names.contains( item.chunk.name ) );
+        return whole.union( BC_DATABASES.parallelize_at( jsc, ranges, hosts ) );
+    }
+
+/**
+ * search one entry on the worker
+ * - download the chunk if neccessary ( from a peer, or from the source )
+ * - offer the chunk to the peers via the chunk-server of this host
+ * - write the alias-file for an OID-range
+ * - perform the prelim-search and the traceback via BLAST_LIB
+ *
+ * @param item      entry to search
+ * @param req       the request
+ * @param text_formats  text-formats to render the results in
+ * @param peers     chunk-servers having the chunks of this database
+ * @param debug     debug-settings
+ * @return          result of this entry
+*/
+    private static BC_CHUNK_RESULT search_chunk( final BC_DATABASE_RDD_ENTRY item, final BC_REQUEST req,
+                                                 final List< String > text_formats, final BC_CHUNK_PEERS peers,
+                                                 final BC_DEBUG_SETTINGS debug ) throws Exception
+    {
+        BC_CHUNK_RESULT chunk_res = new BC_CHUNK_RESULT( item.chunk.name );
+        BC_CHUNK_RECORD rec = chunk_res.record;
+        List< String > error_lst = chunk_res.errors;
+        List< String > info_lst = chunk_res.infos;
+        rec.part = item.part;
+        rec.parts = item.parts;
+        String wn = item.workername();     /* 'host/executor' */
+        rec.worker = wn.substring( 0, Math.max( wn.lastIndexOf( '/' ), 0 ) );
+        rec.executor = wn.substring( wn.lastIndexOf( '/' ) + 1 );
+
+        if ( item.in_place() )
+            rec.download = BC_CHUNK_RECORD.DL_IN_PLACE;
+        /* always under the file-locks: present() does not see a read-ahead still copying this chunk,
+           download_ms includes the wait for it */
+        long dl_started = System.currentTimeMillis();
+        List< String > sources = new ArrayList<>();
+        item.downloadIfAbsent( error_lst, info_lst, peers.of( item.chunk_dir_name() ), true, sources );
+        rec.download_ms = System.currentTimeMillis() - dl_started;
+        if ( !item.in_place() )
+        {
+            rec.download = BC_CHUNK_RECORD.download_status( error_lst.isEmpty(), sources );
+            if ( !sources.isEmpty() )
+                rec.written_bytes = BC_CHUNK_PARTITIONER.bytes( item );
+        }
+        if ( error_lst.isEmpty() && !item.in_place() ) {
+            chunk_res.chunk_dir = item.chunk_dir_name();
+            chunk_res.host = item.hostname();
+            chunk_res.device = item.worker_root();
+            if ( peers.enabled() )
+                BC_CHUNK_SERVER.serve( peers.port, peers.mb_per_sec, item );
+        }
+
+        if ( error_lst.isEmpty() && item.prepare_range( error_lst, info_lst ) )
+        {
+            BLAST_LIB lib = new BLAST_LIB( "libblastjni.so", false );
+            if ( lib != null )
+            {
+                long starttime = System.currentTimeMillis();
+                BLAST_HSP_LIST[] hsps = lib.jni_prelim_search( item, req, debug.jni_log_level );
+                long finishtime = System.currentTimeMillis();
+                rec.start = starttime;
+                rec.search_ms = finishtime - starttime;
+                rec.read_bytes = BC_CHUNK_PARTITIONER.bytes( item ) / item.parts;
+
+                if ( hsps == null )
+                    error_lst.add( String.format( "%s: %s - search: returned null", item.workername(), item.label() ) );
+                else
+                {
+                    rec.prelim_hits = hsps.length;
+                    if ( hsps.length > 0 )
+                    {
+                        starttime = System.currentTimeMillis();
+                        BLAST_TB_LIST [] tbs = lib.jni_traceback( hsps, item, req, debug.jni_log_level );
+                        finishtime = System.currentTimeMillis();
+                        rec.traceback_ms = finishtime - starttime;
+
+                        if ( tbs == null )
+                            error_lst.add( String.format( "%s: %s - traceback: returned null", item.workername(), item.label() ) );
+                        else
+                        {
+                            rec.traceback_hits = tbs.length;
+                            for ( BLAST_TB_LIST tb : tbs )
+                                chunk_res.results.add( tb );
+                            BC_RESULTS.sort_run( chunk_res.results, req.top_n_traceback );
+
+                            /* render the text-formats here, in parallel, instead of converting the asn1 later */
+                            if ( !text_formats.isEmpty() )
+                            {
+                                for ( BLAST_TB_LIST tb : chunk_res.results )
+                                    chunk_res.rendered.add( BC_RESULT_FORMAT.render( tb.asn1_blob, text_formats ) );
+                            }
+                        }
+                    }
+                }
+            }
+            else
+                error_lst.add( String.format( "%s: %s - lib not initialized", item.workername(), item.label() ) );
+        }
+        rec.errors = error_lst.size();
+        return chunk_res;
+    }
+
 /**
  * perform the mapping-operation on the request: this is the important call via jni to Blast
- * - find the correct database, based on the request.db field
  * - broadcast the request to the cluster
- * - perform the map-operation against the chunks-RDD via closure:
- *       > download chunk if neccessary
+ * - split slow chunks into OID-ranges, each range is a task of its own
+ * - perform the map-operation against the partitions of the chunks-RDD via closure:
+ *       > read the next chunks of the partition ahead, see BC_CHUNK_PREFETCHER
+ *       > download chunk if neccessary ( from a peer, or from the source )
+ *       > offer the chunk to the peers via the chunk-server of this host
+ *       > write the alias-file for an OID-range
  *       > find instance of BLAST_LIB ( singleton )
  *       > perform lib.jni_prelim_search()
  *       > perform lib.jni_traceback()
- *       > return result-tuples
- * - collect container of result-tuples on master
+ *       > sort the results of the chunk, keep its top N
+ *       > return a result per chunk
+ * - collect the results on master, record the runtime of each chunk
+ * - merge the sorted results of the chunks into the top N
  * - write results to local filesystem
  * - write report to local filesystem
  *
  * @param DBG           broadcast-variable to be used for debug-interface
  * @param request       request to be 'blasted' against one database-chunk
+ * @param snapshot      snapshot of the database
  * @return              success, ( no worker reported an error )
  * @see        BC_DEBUG_SETTINGS
  * @see        BC_REQUEST
@@ -140,8 +361,10 @@ class BC_JOB extends Thread
  * @see        BLAST_TB_LIST
  * @see        BLAST_LIB
  * @see        BLAST_HSP_LIST
+ * @see        BC_CHUNK_RESULT
 */
-    private boolean handle_request( Broadcast< BC_DEBUG_SETTINGS > DBG, BC_REQUEST request )
+    private boolean handle_request( Broadcast< BC_DEBUG_SETTINGS > DBG, BC_REQUEST request,
+                                    BC_DATABASE_SNAPSHOT snapshot )
     {
         /* Attention: the Broadcast-Variable DBG has to be in the parameter-list, even
            if it is available as a field of the BC_JOB-class! If instead the class-field
@@ -153,116 +376,184 @@ class BC_JOB extends Thread
         long job_starttime = System.currentTimeMillis();
         boolean res = true;
 
-        JavaRDD< BC_DATABASE_RDD_ENTRY > chunks = db_dict.get( request.db );
-        if ( chunks == null )
-            chunks = db_dict.get( request.db.substring( 0, 2 ) );
+        final String db_key = snapshot.setting.key;
+        /* the request keeps its own formats, an empty list means the defaults of the settings */
+        final List< String > formats = BC_RESULT_FORMAT.effective( request.formats, context.settings.res_formats );
+        final List< String > text_formats = BC_RESULT_FORMAT.text_formats( formats );
+        snapshot.rdd.cache();
+        Map< String, Integer > splits = split_plan( request, snapshot );
+        JavaRDD< BC_DATABASE_RDD_ENTRY > chunks = make_tasks( snapshot, splits );
+        final Broadcast< BC_REQUEST > REQUEST = jsc.broadcast( request );
+        final Broadcast< BC_CHUNK_PEERS > PEERS = jsc.broadcast( databases.registry().peers_of( db_key,
+                                                context.settings.peer_port, context.settings.peer_mb_per_sec ) );
+        List< String > infoLst = new ArrayList<>();
+        List< String > errorLst = new ArrayList<>();
+        infoLst.add( String.format( "starting request '%s' at '%s'", request.id, BC_UTILS.datetime() ) );
+        if ( !splits.isEmpty() )
+        {
+            infoLst.add( String.format( "splitting into OID-ranges : %s", splits ) );
+            logger.info( String.format( "JOB[%d] REQUEST[%s] : splitting %s", id, request.id, splits ) );
+        }
 
-        if ( chunks != null )
+        /* ***** perform the map-operation on the worker-nodes ***** */
+        final int prefetch_depth = context.settings.prefetch_depth;
+        final int prefetch_mb = context.settings.prefetch_mb;
+        JavaRDD< BC_CHUNK_RESULT > RESULTS = chunks.mapPartitions( it ->
         {
-            chunks.cache();
-            final Broadcast< BC_REQUEST > REQUEST = jsc.broadcast( request );
-            List< String > infoLst = new ArrayList<>();
-            List< String > errorLst = new ArrayList<>();
-            infoLst.add( String.format( "starting request '%s' at '%s'", request.id, BC_UTILS.datetime() ) );
-
-            /* ***** perform the map-operation on the worker-nodes ***** */
-            JavaRDD< Tuple3< List< BLAST_TB_LIST >, List< String >, List< String > > > RESULTS = chunks.map( item ->
+            BC_DEBUG_SETTINGS debug = DBG.getValue();
+            BC_REQUEST req = REQUEST.getValue();
+            BC_CHUNK_PEERS peers = PEERS.getValue();
+
+            BC_GCS_METRICS.COUNTS gcs_before = BC_GCP_TOOLS.counts();
+            List< BC_DATABASE_RDD_ENTRY > items = new ArrayList<>();
+            while ( it.hasNext() )
+                items.add( it.next() );
+
+            /* read the next chunks of this partition ahead, while the current one is searched */
+            BC_CHUNK_PREFETCHER prefetcher = new BC_CHUNK_PREFETCHER( items, prefetch_depth, prefetch_mb, peers );
+            List< BC_CHUNK_RESULT > part_res = new ArrayList<>();
+            try
             {
-                BC_DEBUG_SETTINGS debug = DBG.getValue();
-
-                List< BLAST_TB_LIST > tp_lst = new ArrayList<>();
-                List< String > error_lst = new ArrayList<>();
-                List< String > info_lst = new ArrayList<>();
-
-                if ( !item.present() ) {
-                    item.downloadIfAbsent( error_lst, info_lst );
-                }
-
-                if ( error_lst.isEmpty() )
+                for ( int i = 0; i < items.size(); ++i )
                 {
-                    BC_REQUEST req = REQUEST.getValue();
-
-                    BLAST_LIB lib = new BLAST_LIB( "libblastjni.so", false );
-                    if ( lib != null )
+                    prefetcher.advance( i );
+                    String prefetched = prefetcher.report( i );
+                    BC_CHUNK_RESULT chunk_res = search_chunk( items.get( i ), req, text_formats, peers, debug );
+                    if ( prefetched != null )
                     {
-                        long starttime = System.currentTimeMillis();
-                        BLAST_HSP_LIST[] hsps = lib.jni_prelim_search( item, req, debug.jni_log_level );
-                        long finishtime = System.currentTimeMillis();
-
-                        if ( hsps == null )
-                            error_lst.add( String.format( "%s: %s - search: returned null", item.workername(), item.chunk.name ) );
-                        else
+                        BC_CHUNK_RECORD rec = chunk_res.record;
+                        rec.prefetched = true;
+                        /* the read-ahead did the download, the search found the chunk present */
+                        if ( prefetcher.download( i ) != null && BC_CHUNK_RECORD.DL_PRESENT.equals( rec.download ) )
                         {
-                            info_lst.add( String.format( "%s: %s - search: %d items ( %d ms ) %d",
-                                                    item.workername(), item.chunk.name, hsps.length, ( finishtime - starttime ), starttime ) );
-                            if ( hsps.length > 0 )
-                            {
-                                starttime = System.currentTimeMillis();
-                                BLAST_TB_LIST [] tbs = lib.jni_traceback( hsps, item, req, debug.jni_log_level );
-                                finishtime = System.currentTimeMillis();
-
-                                if ( tbs == null )
-                                    error_lst.add( String.format( "%s: %s - traceback: returned null", item.workername(), item.chunk.name ) );
-                                else
-                                {
-                                    info_lst.add( String.format( "%s: %s - traceback: %d items ( %d ms ) %d",
-                                                         item.workername(), item.chunk.name, tbs.length, ( finishtime - starttime ), starttime ) );
-
-                                    for ( BLAST_TB_LIST tb : tbs )
-                                        tp_lst.add( tb );
-                                }
-                            }
+                            rec.download = prefetcher.download( i );
+                            rec.download_ms = prefetcher.download_ms( i );
+                            rec.written_bytes = BC_CHUNK_PARTITIONER.bytes( items.get( i ) );
                         }
+                        chunk_res.infos.add( 0, prefetched );
                     }
-                    else
-                        error_lst.add( String.format( "%s: %s - lib not initialized", item.workername(), item.chunk.name ) );
+                    part_res.add( chunk_res );
                 }
-                return new Tuple3<>( tp_lst, error_lst, info_lst );
-            });
-
-            List< Tuple3< List< BLAST_TB_LIST >, List< String >, List< String > > > l_res = RESULTS.collect();
-            BC_RESULTS results = new BC_RESULTS();
-
-            Integer total_errors = 0;
-            /* collect and write the report... */
-            for ( Tuple3< List< BLAST_TB_LIST >, List< String >, List< String > > item : l_res )
+            }
+            finally
             {
-                results.add( item._1() );
-                errorLst.addAll( item._2() );
-                infoLst.addAll( item._3() );
+                prefetcher.close();
             }
-
-            long job_finishtime = System.currentTimeMillis();
-            infoLst.add( String.format( "request '%s' done at '%s' ( %d ms ), errors = %d", request.id, BC_UTILS.datetime(),
-                                      ( job_finishtime - job_starttime ), errorLst.size() ) );
-            BC_UTILS.save_to_file( infoLst, String.format( "%s/REQ_%s.txt", context.settings.report_dir, request.id ) );
-            if ( !errorLst.isEmpty() )
+            if ( !part_res.isEmpty() )
             {
-                BC_UTILS.save_to_file( errorLst, String.format( "%s/REQ_%s.errors.txt", context.settings.report_dir, request.id ) );
-                for ( String msg : errorLst )
-                    logger.info( msg );
+                BC_CHUNK_RESULT last = part_res.get( part_res.size() - 1 );
+                last.gcs_before = gcs_before;
+                last.gcs_after = BC_GCP_TOOLS.counts();
             }
-
-            if ( results.sort( request.id ) )
+            return part_res.iterator();
+        });
+
+        List< BC_CHUNK_RESULT > l_res = RESULTS.collect();
+        BC_RESULTS results = new BC_RESULTS();
+
+        /* collect and write the report, feed the observed runtimes into the stats...
+           ( the ranges of a split chunk are summed up, the stats keep the cost of the whole chunk ) */
+        Map< String, Long > elapsed = new HashMap<>();
+        Set< String > failed = new HashSet<>();
+        BC_CHUNK_REGISTRY registry = databases.registry();
+        BC_DEVICE_STATS req_devices = new BC_DEVICE_STATS();
+        final List< BC_CHUNK_RECORD > records = new ArrayList<>();
+        /* per executor: its counters before the first and after the last of its partitions */
+        Map< String, BC_GCS_METRICS.COUNTS > gcs_first = new HashMap<>();
+        Map< String, BC_GCS_METRICS.COUNTS > gcs_last = new HashMap<>();
+        for ( BC_CHUNK_RESULT item : l_res )
+        {
+            if ( item.gcs_before != null && item.gcs_after != null )
             {
-                results.cutoff( request.top_n_traceback );
-                String asn1_file_name = String.format( "%s/REQ_%s.asn1", context.settings.report_dir, request.id );
-                BC_UTILS.write_to_file( results.to_bytebuffer(), asn1_file_name );
+                String executor = item.record.worker + "/" + item.record.executor;
+                gcs_first.computeIfAbsent( executor, k -> new BC_GCS_METRICS.COUNTS() ).widen( item.gcs_before, true );
+                gcs_last.computeIfAbsent( executor, k -> new BC_GCS_METRICS.COUNTS() ).widen( item.gcs_after, false );
             }
-            else
+            results.add( item.results, item.rendered );
+            records.add( item.record );
+            errorLst.addAll( item.errors );
+            infoLst.addAll( item.infos );
+            if ( item.host != null )
+            {
+                registry.add( db_key, item.chunk_dir, item.host );
+                req_devices.record( item.host, item.device, item.record.read_bytes, item.record.written_bytes, item.elapsed() );
+                databases.devices().record( item.host, item.device, item.record.read_bytes, item.record.written_bytes,
+                                            item.elapsed() );
+            }
+            if ( item.errors.isEmpty() )
             {
-                String asn1_file_name = String.format( "%s/REQ_%s.asn1.unsorted", context.settings.report_dir, request.id );
-                BC_UTILS.write_to_file( results.to_bytebuffer(), asn1_file_name );
+                Long prev = elapsed.get( item.chunk );
+                elapsed.put( item.chunk, ( prev == null ? 0L : prev ) + item.elapsed() );
             }
+            else
+                failed.add( item.chunk );
+        }
+        BC_CHUNK_STATS stats = databases.stats();
+        for ( Map.Entry< String, Long > e : elapsed.entrySet() )
+        {
+            if ( !failed.contains( e.getKey() ) )
+                stats.record( db_key, e.getKey(), e.getValue() );
+        }
+
+        infoLst.addAll( req_devices.report() );
+
+        /* the GCS-calls of the executors while the tasks of this request ran */
+        BC_GCS_METRICS.COUNTS gcs = new BC_GCS_METRICS.COUNTS();
+        for ( Map.Entry< String, BC_GCS_METRICS.COUNTS > e : gcs_last.entrySet() )
+            gcs.add( e.getValue().minus( gcs_first.get( e.getKey() ) ) );
+        infoLst.addAll( gcs.report() );
+
+        long job_finishtime = System.currentTimeMillis();
+        infoLst.add( String.format( "request '%s' done at '%s' ( %d ms ), errors = %d", request.id, BC_UTILS.datetime(),
+                                  ( job_finishtime - job_starttime ), errorLst.size() ) );
+        /* the chunks come sorted from the executors, keep the top N of them */
+        results.merge( request.top_n_traceback );
 
-            logger.info( String.format( "JOB[%d] REQUEST[%s] done, %d errors", id, request.id, errorLst.size() ) );
-            errors.getAndAdd( errorLst.size() );
-            res = errorLst.isEmpty();
+        BC_RESULT_LOG result_log = context.result_log();
+        if ( result_log != null )
+        {
+            result_log.append( request.id, BC_RESULT_LOG.KIND_TXT, infoLst );
+            if ( !errorLst.isEmpty() )
+                result_log.append( request.id, BC_RESULT_LOG.KIND_ERRORS, errorLst );
+            result_log.append_records( request.id, records );
+            if ( formats.contains( BC_RESULT_FORMAT.ASN1 ) )
+                result_log.append( request.id, results );
+            int f = 0;
+            for ( String format : text_formats )
+                result_log.append( request.id, format, results, f++ );
         }
         else
         {
-            logger.info( String.format( "JOB[%d] REQUEST[%s] : db '%s' not found", id, request.id, request.db ) );
+            /* written in the background, in this order: the report comes last and gets the output-stats */
+            final BC_RESULT_WRITER writer = context.result_writer();
+            final BC_RESULT_WRITER.STATS out = new BC_RESULT_WRITER.STATS();
+            final String dir = context.settings.report_dir;
+            if ( formats.contains( BC_RESULT_FORMAT.ASN1 ) )
+                writer.write( String.format( "%s/REQ_%s.asn1", dir, request.id ), os -> results.write_to( os ), out );
+            int f = 0;
+            for ( String format : text_formats )
+            {
+                final int text_format = f++;
+                writer.write( String.format( "%s/REQ_%s.%s", dir, request.id, BC_RESULT_FORMAT.extension( format ) ),
+                              os -> results.write_text_to( text_format, os ), out );
+            }
+            if ( !errorLst.isEmpty() )
+                writer.write( String.format( "%s/REQ_%s.errors.txt", dir, request.id ),
+                              BC_RESULT_WRITER.lines( errorLst ), out );
+            writer.write( String.format( "%s/REQ_%s.chunks.json", dir, request.id ),
+                          BC_RESULT_WRITER.records( records ), out );
+            writer.write( String.format( "%s/REQ_%s.txt", dir, request.id ), os ->
+            {
+                infoLst.add( out.report( writer.compression() ) );
+                BC_RESULT_WRITER.lines( infoLst ).write( os );
+            }, null );
         }
+        for ( String msg : errorLst )
+            logger.info( msg );
+
+        logger.info( String.format( "JOB[%d] REQUEST[%s] done, %d errors", id, request.id, errorLst.size() ) );
+        errors.getAndAdd( errorLst.size() );
+        res = errorLst.isEmpty();
         return res;
     }
 
@@ -316,21 +607,21 @@ public class BC_JOBS
  * @param context               application-context
  * @param jsc                   JavaSparkContext
  * @param DEBUG_SETTINGS        broadcasted debug-settings
- * @param db_dict               dictionary of blast-database-RDDs
+ * @param databases             registry of blast-database-snapshots
  *
  * @see        BC_CONTEXT
  * @see        BC_DEBUG_SETTINGS
- * @see        BC_DATABASE_RDD_ENTRY
+ * @see        BC_DATABASES
 */
     public BC_JOBS( final BC_CONTEXT context,
                     final JavaSparkContext jsc,
                     Broadcast< BC_DEBUG_SETTINGS > DEBUG_SETTINGS,
-                    final Map< String, JavaRDD< BC_DATABASE_RDD_ENTRY > > db_dict )
+                    final BC_DATABASES databases )
     {
         jobs = new ArrayList<>();
         for ( int i = 0; i < context.settings.parallel_jobs; ++i )
         {
-            BC_JOB job = new BC_JOB( context, jsc, DEBUG_SETTINGS, db_dict, i );
+            BC_JOB job = new BC_JOB( context, jsc, DEBUG_SETTINGS, databases, i );
             jobs.add( job );
             job.start();
         }
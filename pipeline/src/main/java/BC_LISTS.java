@@ -35,7 +35,6 @@ import org.apache.log4j.Logger;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -226,7 +225,6 @@ class BC_FILE_LIST extends BC_LIST
 */
 class BC_BUCKET_LIST extends BC_LIST
 {
-    private List< String > files;
 
 /**
  * create instance of BC_FILE_LIST
@@ -240,30 +238,38 @@ class BC_BUCKET_LIST extends BC_LIST
     public BC_BUCKET_LIST( final BC_CONTEXT a_context, final String a_srcName, int a_limit )
     {
         super( a_context, a_srcName, a_limit );
-        logger.info( String.format( "bucket-list '%s' reading files... ( limit %d )", srcName, limit ) );
-        files = BC_GCP_TOOLS.list_names( srcName, limit, "json" );
     }
 
 /**
  * overwritten run method of Thread-BC_FILE_LIST
- * - call BC_GCP_TOOLS.list() to get a list of all entries in bucket
- * - loop until application closed, no more lines, limit reached
- * - get entry-name,
- *   submit line by calling BC_LIST.submitFile()
+ * - list the bucket with BC_GCP_TOOLS.list_names(), sharded over several threads
+ * - each entry-name is submitted by calling BC_LIST.submitFile() as soon as
+ *   its page arrives, the listing-threads wait while the request-queue is full
+ * - stop listing when the application closed or the limit is reached
  *
+ * @see        BC_BUCKET_LISTER
 */
     @Override public void run()
     {
-        logger.info( String.format( "bucket-list '%s' start", srcName ) );
+        logger.info( String.format( "bucket-list '%s' start ( limit %d )", srcName, limit ) );
 
-        Iterator< String > iter = files.iterator();
-
-        while ( is_running() && iter.hasNext() )
+        long found = BC_GCP_TOOLS.list_names( srcName, "json", context.settings.list_threads,
+                                              new BC_BUCKET_LISTER.CONSUMER()
         {
-            submitFile( String.format( "%s/%s", srcName, iter.next() ) );
-        }
+            @Override public boolean accept( String name )
+            {
+                synchronized( BC_BUCKET_LIST.this )
+                {
+                    if ( !is_running() )
+                        return false;
+                    submitFile( String.format( "%s/%s", srcName, name ) );
+                    return is_running();
+                }
+            }
+        } );
 
-        logger.info( String.format( "bucket-list '%s' done", srcName ) );
+        logger.info( String.format( "bucket-list '%s' done, %d submitted%s", srcName, line_nr,
+                                    found < 0 ? ", listing failed" : "" ) );
     }
 }
 
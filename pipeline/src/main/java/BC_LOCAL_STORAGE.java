@@ -0,0 +1,194 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.io.BufferedInputStream;
+import java.util.zip.GZIPInputStream;
+
+import java.math.BigInteger;
+
+import java.net.URI;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * storage-backend for the local filesystem
+ * - serves 'file:///path' urls and plain absolute or relative paths
+ * - a mounted shared filesystem ( on-prem ) is just a local path
+ * - the generation of a file is its modification-time
+ * - compressed files ( '.gz' ) report the uncompressed size stored in their gzip-trailer
+ *
+ * @see        BC_STORAGE
+*/
+public final class BC_LOCAL_STORAGE implements BC_STORAGE
+{
+    public static final String SCHEME = "file://";
+    public static final BC_LOCAL_STORAGE INSTANCE = new BC_LOCAL_STORAGE();
+
+    private BC_LOCAL_STORAGE() { }
+
+/**
+ * private helper: uncompressed size of a gzip-file from its trailer ( modulo 4 GB )
+*/
+    private static long gzip_size( final File f )
+    {
+        try ( RandomAccessFile raf = new RandomAccessFile( f, "r" ) )
+        {
+            if ( raf.length() < 4 )
+                return -1;
+            raf.seek( raf.length() - 4 );
+            byte[] b = new byte[ 4 ];
+            raf.readFully( b );
+            return ( b[ 0 ] & 0xFFL ) | ( ( b[ 1 ] & 0xFFL ) << 8 ) | ( ( b[ 2 ] & 0xFFL ) << 16 ) | ( ( b[ 3 ] & 0xFFL ) << 24 );
+        }
+        catch ( Exception e )
+        {
+            return -1;
+        }
+    }
+
+    @Override public String local_path( final String url )
+    {
+        if ( url == null || url.isEmpty() )
+            return null;
+        if ( url.startsWith( SCHEME ) )
+        {
+            try
+            {
+                return new URI( url ).getPath();
+            }
+            catch ( Exception e )
+            {
+                return null;
+            }
+        }
+        if ( url.contains( "://" ) )
+            return null;
+        return url;
+    }
+
+    @Override public List< BC_NAME_SIZE > list( final String url )
+    {
+        return list( url, LogManager.getLogger( BC_LOCAL_STORAGE.class ) );
+    }
+
+    @Override public List< BC_NAME_SIZE > list( final String url, final Logger logger )
+    {
+        List< BC_NAME_SIZE > res = new ArrayList<>();
+        String path = local_path( url );
+        File[] files = ( path != null ) ? new File( path ).listFiles() : null;
+        if ( files == null )
+            return res;
+
+        String gz_suffix = "." + BC_GCP_TOOLS.COMPRESSION_GZ;
+        for ( File f : files )
+        {
+            if ( !f.isFile() )
+                continue;
+            String name = f.getName();
+            if ( name.endsWith( gz_suffix ) )
+            {
+                long size = gzip_size( f );
+                if ( size < 0 )
+                    logger.info( String.format( "'%s' is not a valid gzip-file, skipped", f.getPath() ) );
+                else
+                    res.add( new BC_NAME_SIZE( name, BigInteger.valueOf( size ), BC_GCP_TOOLS.COMPRESSION_GZ,
+                                               f.lastModified() ) );
+            }
+            else
+                res.add( new BC_NAME_SIZE( name, BigInteger.valueOf( f.length() ), "", f.lastModified() ) );
+        }
+        return res;
+    }
+
+    @Override public InputStream open( final String url )
+    {
+        String path = local_path( url );
+        if ( path == null )
+            return null;
+        try
+        {
+            return new FileInputStream( path );
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+
+    @Override public boolean download( final String url, final String dst_filename,
+                                       long segment_size, int concurrency, int retries )
+    {
+        boolean res = false;
+        String path = local_path( url );
+        if ( path == null )
+            return res;
+
+        File dst = new File( dst_filename );
+        try
+        {
+            if ( path.endsWith( "." + BC_GCP_TOOLS.COMPRESSION_GZ ) )
+            {
+                try ( InputStream is = new GZIPInputStream( new BufferedInputStream( new FileInputStream( path ), 1024 * 1024 ), 256 * 1024 ) )
+                {
+                    Files.copy( is, dst.toPath(), StandardCopyOption.REPLACE_EXISTING );
+                }
+            }
+            else
+                Files.copy( new File( path ).toPath(), dst.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            res = true;
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+        }
+        if ( !res && dst.exists() )
+            dst.delete();
+        return res;
+    }
+
+    @Override public long generation( final String url )
+    {
+        String path = local_path( url );
+        if ( path == null )
+            return 0;
+        File f = new File( path );
+        return f.exists() ? f.lastModified() : -1;
+    }
+}
@@ -52,12 +52,12 @@ public final class BC_MAIN
  * - create instances of infrastructure-classes
  *     ( BC_CONTEXT, BC_CONSOLE, BC_DEBUG_RECEIVER, BC_JOBS )
  * - broadcast the debug-settings to all workers
- * - create and populate the dictionary of database-chunks
- * - parallelize ( send to workers ) the database-chunks
- * - perform a simple map-reduce operation on the database-chunks
- *     to force downloading them to the workers
- * - collect a container of strings reporting the download and
- *     save this report to the file 'downloads.txt' on the master
+ * - create the registry of databases ( BC_DATABASES ), which
+ *     parallelizes ( sends to workers ) the database-chunks
+ * - with predownload, download the database-chunks to the workers
+ *     in the background, requests are accepted right away
+ * - the background-download reports its errors and progress to the
+ *     log of the master, the 'I' command shows its progress
  * - run in a loop until termination requested ( from commandline )
  * - in the loop handle commands from input like process single
  *     requests, list of requests, buckets of requests, quit
@@ -104,55 +104,13 @@ public final class BC_MAIN
         /* broadcast the Debug-settings */
         Broadcast< BC_DEBUG_SETTINGS > DEBUG_SETTINGS = jsc.broadcast( settings.debug );
 
-        Map< String, JavaRDD< BC_DATABASE_RDD_ENTRY > > db_dict = new HashMap<>();
-
-        /* populate db_dict */
-        for ( String key : settings.dbs.keySet() )
-        {
-            BC_DATABASE_SETTING db_setting = settings.dbs.get( key );
-
-            /* get a list of entries from the source ( bucket )
-               each file
-            */
-            List< BC_NAME_SIZE > files = BC_GCP_TOOLS.list( db_setting.source_location );
-
-            /* get a list of unique names ( without the extension ) */
-            List< BC_CHUNK_VALUES > all_chunks = BC_GCP_TOOLS.unique_by_extension( files, db_setting.extensions );
-            if ( db_setting.limit > 0 )
-                logger.info( String.format( "%s has %d chunks, using %d of them", key, all_chunks.size(), db_setting.limit ) );
-            else
-                logger.info( String.format( "%s has %d chunks", key, all_chunks.size() ) );
-
-            List< BC_CHUNK_VALUES > used_chunks = db_setting.limit > 0 ? all_chunks.subList( 0, db_setting.limit ) : all_chunks;
-
-            /* create a list of Database-RDD-entries using a static method of this class */
-            List< BC_DATABASE_RDD_ENTRY > entries = BC_DATABASE_RDD_ENTRY.make_rdd_entry_list( db_setting, used_chunks );
-
-            /* ask the spark-context to distribute the RDD to the workers
-             * 16 parallel jobs, 64 partitions each = 1024
-             * 16 workers, 64 cores each =            1024
-             */
-            JavaRDD< BC_DATABASE_RDD_ENTRY > rdd = settings.num_partitions > 0 ?
-                jsc.parallelize( entries, settings.num_partitions ) :
-                jsc.parallelize( entries );
-
-            if (settings.predownload_dbs) {
-                rdd = rdd.map(item -> {
-
-                           List<String> error_list = new ArrayList<String>();
-                           List<String> info_list = new ArrayList<String>();
-                           item.downloadAndScan(error_list, info_list);
-                           return item;
-                          }).cache();
-
-                rdd.collect();
-            }
-            /* put the RDD in the database-dictionary */
-            db_dict.put( key, rdd );
-        }
+        /* create the first snapshot of every database, the registry refreshes them later */
+        BC_DATABASES databases = new BC_DATABASES( context, jsc );
+        databases.setup();
+        databases.start();
 
         /* create the job-pool to process jobs in parallel */
-        BC_JOBS jobs = new BC_JOBS( context, jsc, DEBUG_SETTINGS, db_dict );
+        BC_JOBS jobs = new BC_JOBS( context, jsc, DEBUG_SETTINGS, databases );
 
         logger.info( "ready" );
 
@@ -180,6 +138,7 @@ public final class BC_MAIN
         {
             errors = jobs.errors();
             jobs.join();
+            databases.join();
             if ( debug_receiver != null )
                 debug_receiver.join_clients();
             console.join();
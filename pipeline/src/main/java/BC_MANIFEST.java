@@ -0,0 +1,298 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.math.BigInteger;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import com.google.gson.JsonParser;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonArray;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * persisted list of the chunks of one database, written next to the settings-file
+ * - stores the source, extensions and limit the list was made for
+ * - stores the version of the database-snapshot and when the list was made
+ * - stores name, size, compression, generation and md5 of every file of every chunk
+ * - allows the driver to skip listing the source at startup, if a few sampled
+ *   files still have the generation recorded in the manifest
+ *
+ * @see        BC_DATABASES
+*/
+public final class BC_MANIFEST
+{
+    public static final int FORMAT = 1;
+
+    public final String source_location;
+    public final List< String > extensions;
+    public final int limit;
+    public final int version;
+    public final long created_at;
+    public final List< BC_CHUNK_VALUES > chunks;
+
+/**
+ * create instance of BC_MANIFEST
+ *
+ * @param a_source_location  source of the database
+ * @param a_extensions       extensions of the database-chunks
+ * @param a_limit            limit of chunks the list was made with
+ * @param a_version          version of the database-snapshot
+ * @param a_created_at       time the list was made, in ms since epoch
+ * @param a_chunks           list of chunks
+*/
+    private BC_MANIFEST( final String a_source_location, final List< String > a_extensions, int a_limit,
+                         int a_version, long a_created_at, final List< BC_CHUNK_VALUES > a_chunks )
+    {
+        source_location = a_source_location;
+        extensions = a_extensions;
+        limit = a_limit;
+        version = a_version;
+        created_at = a_created_at;
+        chunks = a_chunks;
+    }
+
+/**
+ * construct the filename of the manifest of a database
+ *
+ * @param dir       directory of the manifests
+ * @param key       key of the database, for instance 'nt'
+ * @return          path of the manifest-file, for instance './nt.manifest.json'
+*/
+    public static String filename( final String dir, final String key )
+    {
+        return String.format( "%s/%s.manifest.json", dir, key );
+    }
+
+/**
+ * write the manifest of a database-snapshot, the file is replaced atomically
+ *
+ * @param filename  path of the manifest-file
+ * @param setting   database-settings
+ * @param version   version of the database-snapshot
+ * @param chunks    list of chunks of the snapshot
+ * @return          success of operation
+*/
+    public static boolean write( final String filename, final BC_DATABASE_SETTING setting, int version,
+                                 final List< BC_CHUNK_VALUES > chunks )
+    {
+        boolean res = false;
+        File tmp = new File( filename + ".tmp" );
+        try
+        {
+            JsonWriter w = new JsonWriter( new FileWriter( tmp ) );
+            try
+            {
+                w.beginObject();
+                w.name( "format" ).value( FORMAT );
+                w.name( "key" ).value( setting.key );
+                w.name( "source_location" ).value( setting.source_location );
+                w.name( "extensions" ).beginArray();
+                for ( String ext : setting.extensions )
+                    w.value( ext );
+                w.endArray();
+                w.name( "limit" ).value( setting.limit );
+                w.name( "version" ).value( version );
+                w.name( "created_at" ).value( System.currentTimeMillis() );
+                w.name( "chunks" ).beginArray();
+                for ( BC_CHUNK_VALUES chunk : chunks )
+                {
+                    w.beginObject();
+                    w.name( "name" ).value( chunk.name );
+                    w.name( "files" ).beginArray();
+                    for ( BC_NAME_SIZE f : chunk.files )
+                    {
+                        w.beginObject();
+                        w.name( "ext" ).value( f.name );
+                        w.name( "size" ).value( f.size );
+                        w.name( "compression" ).value( f.compression );
+                        w.name( "generation" ).value( f.generation );
+                        w.name( "md5" ).value( f.md5 );
+                        w.endObject();
+                    }
+                    w.endArray();
+                    w.endObject();
+                }
+                w.endArray();
+                w.endObject();
+            }
+            finally
+            {
+                w.close();
+            }
+            Files.move( tmp.toPath(), new File( filename ).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            res = true;
+        }
+        catch ( IOException e )
+        {
+            System.out.println( String.format( "manifest '%s' : %s", filename, e ) );
+            tmp.delete();
+        }
+        return res;
+    }
+
+/**
+ * read a manifest-file
+ *
+ * @param filename  path of the manifest-file
+ * @return          BC_MANIFEST-instance or null if missing, invalid or of an other format
+*/
+    public static BC_MANIFEST read( final String filename )
+    {
+        if ( !BC_UTILS.file_exists( filename ) )
+            return null;
+        try
+        {
+            JsonParser parser = new JsonParser();
+            FileReader reader = new FileReader( filename );
+            JsonElement tree;
+            try
+            {
+                tree = parser.parse( reader );
+            }
+            finally
+            {
+                reader.close();
+            }
+            if ( !tree.isJsonObject() )
+                return null;
+
+            JsonObject root = tree.getAsJsonObject();
+            if ( BC_JSON_UTILS.get_json_int( root, "format", 0 ) != FORMAT )
+                return null;
+
+            List< String > extensions = new ArrayList<>();
+            BC_JSON_UTILS.get_string_list( root, "extensions", null, extensions );
+
+            List< BC_CHUNK_VALUES > chunks = new ArrayList<>();
+            JsonArray chunk_array = BC_JSON_UTILS.get_sub_array( root, "chunks" );
+            if ( chunk_array != null )
+            {
+                for ( JsonElement e : chunk_array )
+                {
+                    JsonObject c = e.getAsJsonObject();
+                    BC_CHUNK_VALUES chunk = new BC_CHUNK_VALUES( BC_JSON_UTILS.get_json_string( c, "name", "" ) );
+                    JsonArray file_array = BC_JSON_UTILS.get_sub_array( c, "files" );
+                    if ( file_array != null )
+                    {
+                        for ( JsonElement fe : file_array )
+                        {
+                            JsonObject f = fe.getAsJsonObject();
+                            chunk.files.add( new BC_NAME_SIZE( BC_JSON_UTILS.get_json_string( f, "ext", "" ),
+                                    new BigInteger( BC_JSON_UTILS.get_json_string( f, "size", "0" ) ),
+                                    BC_JSON_UTILS.get_json_string( f, "compression", "" ),
+                                    BC_JSON_UTILS.get_json_long( f, "generation", 0L ),
+                                    BC_JSON_UTILS.get_json_string( f, "md5", "" ) ) );
+                        }
+                    }
+                    chunks.add( chunk );
+                }
+            }
+
+            return new BC_MANIFEST( BC_JSON_UTILS.get_json_string( root, "source_location", "" ),
+                                    extensions,
+                                    BC_JSON_UTILS.get_json_int( root, "limit", 0 ),
+                                    BC_JSON_UTILS.get_json_int( root, "version", 0 ),
+                                    BC_JSON_UTILS.get_json_long( root, "created_at", 0L ),
+                                    chunks );
+        }
+        catch ( Exception e )
+        {
+            System.out.println( String.format( "manifest '%s' : %s", filename, e ) );
+        }
+        return null;
+    }
+
+/**
+ * test if the manifest was made for the given database-settings
+ *
+ * @param setting   database-settings
+ * @return          same source, extensions and limit ?
+*/
+    public boolean matches( final BC_DATABASE_SETTING setting )
+    {
+        return source_location.equals( setting.source_location ) &&
+               extensions.equals( setting.extensions ) &&
+               limit == setting.limit &&
+               !chunks.isEmpty();
+    }
+
+/**
+ * age of the manifest
+ *
+ * @return          minutes since the manifest was made
+*/
+    public long age_minutes()
+    {
+        return ( System.currentTimeMillis() - created_at ) / ( 60L * 1000L );
+    }
+
+/**
+ * cheap check if the manifest still describes the source:
+ * - the manifest is not older than max_age minutes
+ * - a few files, spread over the chunks, still have the recorded generation
+ *
+ * @param setting   database-settings
+ * @param max_age   maximum age in minutes
+ * @param samples   how many files to check against the source
+ * @return          can the manifest be used instead of listing the source ?
+ * @see             BC_STORAGE
+*/
+    public boolean fresh( final BC_DATABASE_SETTING setting, int max_age, int samples )
+    {
+        if ( max_age <= 0 || age_minutes() > max_age )
+            return false;
+
+        int n = Math.min( Math.max( samples, 1 ), chunks.size() );
+        for ( int i = 0; i < n; ++i )
+        {
+            /* always include the last chunk, added chunks usually come after it */
+            int idx = ( i == n - 1 ) ? chunks.size() - 1 : ( i * chunks.size() ) / n;
+            BC_CHUNK_VALUES chunk = chunks.get( idx );
+            BC_DATABASE_RDD_ENTRY entry = new BC_DATABASE_RDD_ENTRY( setting, chunk );
+            for ( BC_NAME_SIZE f : chunk.files )
+            {
+                String url = entry.build_source_path( f );
+                if ( f.generation == 0 || BC_STORAGE.of( url ).generation( url ) != f.generation )
+                    return false;
+            }
+        }
+        return true;
+    }
+}
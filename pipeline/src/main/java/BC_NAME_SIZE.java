@@ -31,12 +31,17 @@ import java.math.BigInteger;
 
 /**
  * Name-Size pair
+ * - for compressed objects the size is the uncompressed size
+ *   and compression holds the suffix of the compressed object ( 'gz' )
  *
 */
 public final class BC_NAME_SIZE implements Serializable
 {
     public final String name;
     public final BigInteger size;
+    public final String compression;
+    public final long generation;       /* generation of the object in the bucket, 0...unknown */
+    public final String md5;            /* base64-encoded md5 of the object in the bucket, empty if unknown */
 
 /**
  * create instance of BC_NAME_SIZE
@@ -45,9 +50,74 @@ public final class BC_NAME_SIZE implements Serializable
  * @param a_size    size to be stored
 */
     BC_NAME_SIZE( final String a_name, BigInteger a_size )
+    {
+        this( a_name, a_size, "" );
+    }
+
+/**
+ * create instance of BC_NAME_SIZE for a compressed object
+ *
+ * @param a_name        name to be stored
+ * @param a_size        uncompressed size to be stored
+ * @param a_compression suffix of the compressed object, empty if not compressed
+*/
+    BC_NAME_SIZE( final String a_name, BigInteger a_size, final String a_compression )
+    {
+        this( a_name, a_size, a_compression, 0 );
+    }
+
+/**
+ * create instance of BC_NAME_SIZE for a specific generation of an object
+ *
+ * @param a_name        name to be stored
+ * @param a_size        uncompressed size to be stored
+ * @param a_compression suffix of the compressed object, empty if not compressed
+ * @param a_generation  generation of the object in the bucket
+*/
+    BC_NAME_SIZE( final String a_name, BigInteger a_size, final String a_compression, long a_generation )
+    {
+        this( a_name, a_size, a_compression, a_generation, "" );
+    }
+
+/**
+ * create instance of BC_NAME_SIZE with all values, as listed from the bucket or read from a manifest
+ *
+ * @param a_name        name to be stored
+ * @param a_size        uncompressed size to be stored
+ * @param a_compression suffix of the compressed object, empty if not compressed
+ * @param a_generation  generation of the object in the bucket
+ * @param a_md5         base64-encoded md5 of the object in the bucket
+*/
+    BC_NAME_SIZE( final String a_name, BigInteger a_size, final String a_compression, long a_generation,
+                  final String a_md5 )
     {
         name = a_name;
         size = a_size;
+        compression = a_compression;
+        generation = a_generation;
+        md5 = ( a_md5 != null ) ? a_md5 : "";
+    }
+
+/**
+ * is the object stored compressed in the bucket ?
+ *
+ * @return  is the object compressed ?
+*/
+    public boolean compressed()
+    {
+        return !compression.isEmpty();
+    }
+
+/**
+ * the name without the compression-suffix
+ *
+ * @return  name of the uncompressed object
+*/
+    public String plain_name()
+    {
+        if ( compressed() && name.endsWith( "." + compression ) )
+            return name.substring( 0, name.length() - compression.length() - 1 );
+        return name;
     }
 
   /**
@@ -0,0 +1,232 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * utility-class to download one large object as a set of byte-ranges in parallel
+ * - a '.part'-file next to the destination is preallocated to the size of the
+ *   object, it is renamed to the destination when all ranges have arrived:
+ *   a preallocated file of the right size is never mistaken for a complete one
+ * - each range is fetched by its own stream and written at its position
+ *   into the file via a shared FileChannel
+ * - each range is retried individually, with the jittered backoff of BC_GCP_TOOLS:
+ *   this is the only retry-layer, the source makes a single attempt per open
+ *
+*/
+public final class BC_RANGED_DOWNLOAD
+{
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    public static final String PART_SUFFIX = ".part";
+
+    /* the status of an answered range-request, anything else delivered a different part of the object */
+    public static final int HTTP_PARTIAL_CONTENT = 206;
+
+/**
+ * source of byte-ranges, implemented for buckets in BC_GCP_TOOLS
+ * and by the fake object-server in the tests
+ *
+*/
+    public interface RANGE_SOURCE
+    {
+/**
+ * open a stream delivering the bytes first...last ( inclusive ) of the object
+ *
+ * @param first     offset of the first byte
+ * @param last      offset of the last byte
+ * @return          stream delivering exactly ( last - first + 1 ) bytes
+ * @throws IOException  if the range cannot be delivered, for instance if the
+ *                      server does not answer with HTTP_PARTIAL_CONTENT
+*/
+        InputStream open( long first, long last ) throws IOException;
+    }
+
+/**
+ * private helper-method to copy one stream into the channel at the given position
+ * - never writes more than the expected bytes, a stream delivering more fails
+ *
+ * @param is        stream to read from
+ * @param ch        channel to write into
+ * @param position  position in the channel to start writing
+ * @param expected  number of bytes of the range
+ * @param buf       reusable buffer
+ * @return          number of bytes copied
+*/
+    private static long copy_at( InputStream is, FileChannel ch, long position, long expected,
+                                 ByteBuffer buf ) throws IOException
+    {
+        long copied = 0;
+        byte[] a = buf.array();
+        BC_DOWNLOAD_GOVERNOR governor = BC_DOWNLOAD_GOVERNOR.get();
+        int n;
+        while ( copied < expected &&
+                ( n = is.read( a, 0, ( int )Math.min( a.length, expected - copied ) ) ) > 0 )
+        {
+            governor.consume( n );
+            buf.clear();
+            buf.limit( n );
+            while ( buf.hasRemaining() )
+                copied += ch.write( buf, position + copied );
+        }
+        if ( copied == expected && is.read() >= 0 )
+            throw new IOException( String.format( "range at %d delivers more than %d bytes", position, expected ) );
+        return copied;
+    }
+
+/**
+ * private helper-method to fetch one range, with retries
+ *
+ * @param src       source of the ranges
+ * @param ch        channel of the preallocated destination-file
+ * @param first     offset of the first byte of the range
+ * @param last      offset of the last byte of the range
+ * @param retries   how many times to retry a failed range
+ * @return          success of operation
+*/
+    private static boolean fetch_range( final RANGE_SOURCE src, final FileChannel ch,
+                                        long first, long last, int retries )
+    {
+        ByteBuffer buf = ByteBuffer.allocate( COPY_BUFFER_SIZE );
+        long expected = last - first + 1;
+        for ( int attempt = 0; attempt <= retries; ++attempt )
+        {
+            try
+            {
+                InputStream is = src.open( first, last );
+                try
+                {
+                    long copied = copy_at( is, ch, first, expected, buf );
+                    if ( copied == expected )
+                        return true;
+                }
+                finally
+                {
+                    is.close();
+                }
+            }
+            catch( IOException e )
+            {
+                if ( attempt == retries )
+                    e.printStackTrace();
+            }
+
+            if ( attempt < retries )
+            {
+                try { Thread.sleep( BC_GCP_TOOLS.backoff_ms( attempt ) ); }
+                catch ( InterruptedException e ) { return false; }
+            }
+        }
+        return false;
+    }
+
+/**
+ * download an object of known size by splitting it into ranges of segment_size bytes
+ *
+ * @param src           source of the ranges
+ * @param size          total size of the object in bytes
+ * @param dst_filename  absolute path of destination-file to be created
+ * @param segment_size  size of one range in bytes
+ * @param concurrency   how many ranges to fetch in parallel
+ * @param retries       how many times to retry a failed range
+ * @return              success of operation, the destination-file exists only on success
+*/
+    public static boolean download( final RANGE_SOURCE src, long size, final String dst_filename,
+                                    long segment_size, int concurrency, int retries )
+    {
+        boolean res = false;
+        File f = new File( dst_filename + PART_SUFFIX );
+        int segments = ( int )( ( size + segment_size - 1 ) / segment_size );
+        int threads = Math.max( 1, Math.min( concurrency, segments ) );
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile( f, "rw" );
+            try
+            {
+                raf.setLength( size );
+                final FileChannel ch = raf.getChannel();
+
+                List< Future< Boolean > > parts = new ArrayList<>();
+                for ( long first = 0; first < size; first += segment_size )
+                {
+                    final long a_first = first;
+                    final long a_last = Math.min( first + segment_size, size ) - 1;
+                    parts.add( pool.submit( new Callable< Boolean >()
+                    {
+                        @Override public Boolean call()
+                        {
+                            return fetch_range( src, ch, a_first, a_last, retries );
+                        }
+                    } ) );
+                }
+
+                res = true;
+                for ( Future< Boolean > part : parts )
+                {
+                    if ( !part.get() )
+                        res = false;
+                }
+            }
+            finally
+            {
+                raf.close();
+            }
+            if ( res )
+                Files.move( f.toPath(), new File( dst_filename ).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch( Exception e )
+        {
+            e.printStackTrace();
+            res = false;
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+
+        if ( !res && f.exists() )
+            f.delete();
+        return res;
+    }
+}
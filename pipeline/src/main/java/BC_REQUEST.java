@@ -27,6 +27,9 @@
 package gov.nih.nlm.ncbi.blastjni;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * class to store all parts needed to preform a request
@@ -36,6 +39,8 @@ public final class BC_REQUEST implements Serializable
     public String id, db, query_seq, program, params, ack_id;
     public Integer top_n_prelim;
     public Integer top_n_traceback;
+    public List< String > formats = new ArrayList<>(); /* output-formats, empty...the ones of the settings */
+    public HashMap< String, Integer > chunk_splits = new HashMap<>(); /* chunk-name -> number of OID-ranges */
 
 /**
  * test if request is valid, has all neccessary information
@@ -56,6 +61,8 @@ public final class BC_REQUEST implements Serializable
         if ( top_n_traceback == 0 ) return false;
         if ( query_seq == null ) return false;
         if ( query_seq.isEmpty() ) return false;
+        if ( formats == null ) return false;
+        if ( BC_RESULT_FORMAT.first_unknown( formats ) != null ) return false;
         return true;
     }
 
@@ -25,15 +25,12 @@
  */
 package gov.nih.nlm.ncbi.blastjni;
 
-import java.io.FileReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import java.util.List;
 import java.util.ArrayList;
-
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.util.Map;
 
 import com.google.api.services.storage.Storage;
 
@@ -71,75 +68,34 @@ public final class BC_REQUEST_READER
     }
 
 /**
- * parse a file into a Json-Element using the google-json parser
+ * parse a file from a storage-backend into a Json-Element using the google-json parser
  *
- * @param path      path of file to be parsed
+ * @param path      url of file to be parsed ( 'gs://', 'file://' or path )
  * @return          json-element representing the input
+ * @see             BC_STORAGE
 */
-    private static JsonElement parse_file_2_tree( final String path )
-    {
-        JsonElement res = null;
-        try
-        {
-            JsonParser parser = new JsonParser();
-            res = parser.parse( new FileReader( path ) );
-        }
-        catch( Exception e )
-        {
-            System.out.println( String.format( "BC_REQUEST_READER.parse_file_2_tree() : %s", e ) );
-        }
-        return res;
-    }
-
-/**
- * parse a gs:// uri into a Json-Element using the google-json parser
- *
- * @param uri       uri of file to be parsed
- * @return          json-element representing the input
-*/
-    private static JsonElement parse_gs_file_2_tree( final URI uri )
+    private static JsonElement parse_path_2_tree( final String path )
     {
         JsonElement res = null;
         try
         {
-            String bucket = uri.getAuthority();
-            String key = uri.getPath();
-            if ( key.startsWith( "/" ) )
-                key = key.substring( 1 );
-            InputStream is = BC_GCP_TOOLS.download_as_stream( bucket, key );
+            InputStream is = BC_STORAGE.of( path ).open( path );
             if ( is != null )
             {
-                JsonParser parser = new JsonParser();
-                res = parser.parse( new InputStreamReader( is ) );
+                try
+                {
+                    JsonParser parser = new JsonParser();
+                    res = parser.parse( new InputStreamReader( is ) );
+                }
+                finally
+                {
+                    is.close();
+                }
             }
         }
         catch( Exception e )
         {
-            System.out.println( String.format( "BC_REQUEST_READER.parse_gs_file_2_tree() : %s", e ) );
-        }
-        return res;
-    }
-
-/**
- * parse a file in the local filesystem or in a google-bucket using the google-json parser
- *
- * @param path      uri of file or filesystem-path to be parsed
- * @return          json-element representing the input
-*/
-    private static JsonElement parse_path_2_tree( final String path )
-    {
-        JsonElement res = null;
-        try
-        {
-            URI uri = new URI( path );
-            if ( uri.getScheme().equals( "gs" ) )
-                res = parse_gs_file_2_tree( uri );
-            else
-                res = parse_file_2_tree( path );
-        }
-        catch( Exception e )
-        {
-            res = parse_file_2_tree( path );
+            System.out.println( String.format( "BC_REQUEST_READER.parse_path_2_tree() : %s", e ) );
         }
         return res;
     }
@@ -163,6 +119,19 @@ public final class BC_REQUEST_READER
             res.top_n_traceback = BC_JSON_UTILS.get_json_int( root, "top_N_traceback", 0 );
             res.query_seq = BC_JSON_UTILS.get_json_string ( root, "query_seq", "" );
             res.params = BC_JSON_UTILS.get_sub_as_string( root, "blast_params" ); // blast_params are allowed to be empty...
+            BC_JSON_UTILS.get_string_list( root, "formats", null, res.formats ); // optional: [ "asn1", "tabular" ]
+            String unknown = BC_RESULT_FORMAT.first_unknown( res.formats );
+            if ( unknown != null )
+                System.out.println( String.format( "BC_REQUEST_READER : unknown format '%s' in request '%s'", unknown, res.id ) );
+            JsonObject splits = BC_JSON_UTILS.get_sub( root, "chunk_splits" ); // optional: { "nt_50M.00" : 4 }
+            if ( splits != null )
+            {
+                for ( Map.Entry< String, JsonElement > e : splits.entrySet() )
+                {
+                    try { res.chunk_splits.put( e.getKey(), e.getValue().getAsInt() ); }
+                    catch ( Exception ex ) { System.out.println( String.format( "BC_REQUEST_READER : invalid split for '%s'", e.getKey() ) ); }
+                }
+            }
         }
         return res;
     }
@@ -28,74 +28,127 @@ package gov.nih.nlm.ncbi.blastjni;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Collections;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * utility-class to collect BLAST_TB_LIST classes and join them into a ByteBuffer
+ * - or stream them into a file, a channel or a stream, without joining them first
+ * - the lists are collected per chunk, each sorted by the executor, and merged into
+ *   the top N by a k-way merge
+ * - the results are kept in a BC_RESULT_COLUMNS, not as objects
+ * - text renderings from the executors ( tabular, json ) are kept and written in the same order
  * @see BLAST_TB_LIST
+ * @see BC_RESULT_COLUMNS
 */
 public class BC_RESULTS
 {
-    private List< BLAST_TB_LIST > l;
+    private final BC_RESULT_COLUMNS columns;
+    private final List< Integer > starts;   /* first result of each chunk in the columns */
+    private boolean runs_sorted;            /* is every chunk sorted */
+
+    private static final byte[] SEQ_ANNOT_PREFIX = { (byte) 0x30, (byte) 0x80, (byte) 0xa4, (byte) 0x80,
+                                                     (byte) 0xa1, (byte) 0x80, (byte) 0x31, (byte) 0x80 };
+    private static final byte[] SEQ_ANNOT_SUFFIX = { 0, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int GATHER = 64;    /* buffers per gathering write */
 
 /**
  * create instance of BC_RESULTS
- * - create empty list of BLAST_TB_LIST references
+ * - create empty result-columns
  *
- * @see        BLAST_TB_LIST
+ * @see        BC_RESULT_COLUMNS
 */
     public BC_RESULTS()
     {
-        l = new ArrayList<>();
+        columns = new BC_RESULT_COLUMNS();
+        starts = new ArrayList<>();
+        runs_sorted = true;
     }
 
 /**
- * add all instance in the given list to the internal list
+ * add the results of one chunk, should be sorted already ( see sort_run() )
+ * - the items are copied into the columns, they are not referenced afterwards
  *
  * @param      items       list of BLAST_TB_LIST-instance to be added
  * @see        BLAST_TB_LIST
 */
     public void add( List< BLAST_TB_LIST > items )
     {
-        l.addAll( items );
+        add( items, null );
     }
 
 /**
- * sort the internal list, the item-class has an overriden comparison-method
+ * add the results of one chunk with their text renderings, rendered by the executor
  *
- * @param   request_id id of request to be sorted
- * @return  success
- * @see     BLAST_TB_LIST
+ * @param      items       list of BLAST_TB_LIST-instance to be added
+ * @param      rendered    per item its text per text-format, null or empty...none
+ * @see        BC_RESULT_FORMAT
 */
-    public boolean sort( final String request_id )
+    public void add( List< BLAST_TB_LIST > items, List< byte[][] > rendered )
     {
-        boolean res = false;
-        try
+        if ( !items.isEmpty() )
         {
-            Collections.sort( l );
-            res = true;
+            int first = columns.size();
+            starts.add( first );
+            for ( int i = 0; i < items.size(); ++i )
+            {
+                BLAST_TB_LIST item = items.get( i );
+                byte[][] texts = ( rendered != null && i < rendered.size() ) ? rendered.get( i ) : null;
+                columns.add( item.evalue, item.score, item.seqid, item.asn1_blob, texts );
+            }
+            if ( runs_sorted )
+                runs_sorted = columns.sorted( first, columns.size() );
         }
-        catch ( Exception e )
-        {
-            System.out.println( String.format( "exception while sorting results of reqeust[%s]", request_id ) );
-            //e.printStackTrace();
-        }
-        return res;
     }
 
 /**
- * cut the internal list, to leave just the top num_items
+ * sort the results of one chunk, called by the executor before they are returned
+ * - if top_n > 0 only the top_n items are kept, the merge never needs more of one chunk
  *
- * @see        BLAST_TB_LIST
+ * @param   items   results of one chunk, sorted in place
+ * @param   top_n   number of results the request wants, 0...keep all
+ * @see     BLAST_TB_LIST
 */
-    public void cutoff( int num_items )
+    public static void sort_run( final List< BLAST_TB_LIST > items, int top_n )
     {
-        if ( l.size() > num_items )
+        items.sort( BLAST_TB_LIST::compare );
+        if ( top_n > 0 && items.size() > top_n )
+            items.subList( top_n, items.size() ).clear();
+    }
+
+/**
+ * merge the sorted lists of all chunks into the top num_items
+ * - k-way merge over a heap of the k lists: O( k + num_items * log k ) comparisons
+ *   of the primitive keys, the other items are never touched
+ * - if a list is not sorted ( an executor without sort_run() ), all items are
+ *   radix-sorted instead
+ *
+ * @param   num_items  how many items to keep
+ * @see     BC_RESULT_COLUMNS
+*/
+    public void merge( int num_items )
+    {
+        if ( runs_sorted )
+        {
+            int[] a = new int[ starts.size() ];
+            for ( int i = 0; i < a.length; ++i )
+                a[ i ] = starts.get( i );
+            columns.merge_runs( a, num_items );
+        }
+        else
         {
-            List< BLAST_TB_LIST > sub = l.subList( 0, num_items );
-            l = sub;
+            columns.radix_sort();
+            columns.cutoff( num_items );
         }
     }
 
@@ -107,27 +160,158 @@ public class BC_RESULTS
 */
     public ByteBuffer to_bytebuffer()
     {
-        int sum = 0;
+        ByteBuffer buf = ByteBuffer.allocate( ( int )size() );
 
-        for ( BLAST_TB_LIST e : l )
-            sum += e.asn1_blob.length;
+        buf.put( SEQ_ANNOT_PREFIX );
 
-        byte[] seq_annot_prefix = { (byte) 0x30, (byte) 0x80, (byte) 0xa4, (byte) 0x80, (byte) 0xa1, (byte) 0x80, (byte) 0x31, (byte) 0x80 };
-        sum += seq_annot_prefix.length;
+        for ( int k = 0; k < columns.count(); ++k )
+            buf.put( columns.blob( k ) );
 
-        byte[] seq_annot_suffix = { 0, 0, 0, 0, 0, 0, 0, 0 };
-        sum += seq_annot_suffix.length;
+        buf.put( SEQ_ANNOT_SUFFIX );
 
-        ByteBuffer buf = ByteBuffer.allocate( sum );
+        return buf;
+    }
+
+/**
+ * number of bytes of the asn1 written for the internal list
+ *
+ * @return      size of the Seq-annot in bytes
+*/
+    public long size()
+    {
+        return SEQ_ANNOT_PREFIX.length + columns.blob_bytes() + SEQ_ANNOT_SUFFIX.length;
+    }
+
+/**
+ * private helper: write all remaining bytes of the buffers, gathering if the channel can
+*/
+    private static void write_all( final WritableByteChannel ch, final ByteBuffer[] bufs, int n ) throws IOException
+    {
+        if ( ch instanceof GatheringByteChannel )
+        {
+            GatheringByteChannel gch = ( GatheringByteChannel )ch;
+            int first = 0;
+            while ( first < n )
+            {
+                gch.write( bufs, first, n - first );
+                while ( first < n && !bufs[ first ].hasRemaining() )
+                    first += 1;
+            }
+        }
+        else
+        {
+            for ( int i = 0; i < n; ++i )
+            {
+                while ( bufs[ i ].hasRemaining() )
+                    ch.write( bufs[ i ] );
+            }
+        }
+    }
+
+/**
+ * stream the internal list as valid asn1 into a channel
+ * - the blobs are wrapped in the arena, not copied, and written in batches by gathering writes
+ * - the bytes are identical to the ones of to_bytebuffer()
+ *
+ * @param ch    channel to write into
+ * @return      number of bytes written
+ * @see         BLAST_TB_LIST
+*/
+    public long write_to( final WritableByteChannel ch ) throws IOException
+    {
+        ByteBuffer[] bufs = new ByteBuffer[ GATHER ];
+        int n = 0;
+        long res = 0;
+        bufs[ n++ ] = ByteBuffer.wrap( SEQ_ANNOT_PREFIX );
+        for ( int k = 0; k < columns.count(); ++k )
+        {
+            if ( n == GATHER )
+            {
+                write_all( ch, bufs, n );
+                n = 0;
+            }
+            bufs[ n ] = columns.blob( k );
+            res += bufs[ n++ ].remaining();
+        }
+        if ( n == GATHER )
+        {
+            write_all( ch, bufs, n );
+            n = 0;
+        }
+        bufs[ n++ ] = ByteBuffer.wrap( SEQ_ANNOT_SUFFIX );
+        write_all( ch, bufs, n );
+        return res + SEQ_ANNOT_PREFIX.length + SEQ_ANNOT_SUFFIX.length;
+    }
 
-        buf.put( seq_annot_prefix );
+/**
+ * stream the internal list as valid asn1 into a stream
+ *
+ * @param os    stream to write into, not closed
+ * @return      number of bytes written
+ * @see         BLAST_TB_LIST
+*/
+    public long write_to( final OutputStream os ) throws IOException
+    {
+        long res = SEQ_ANNOT_PREFIX.length + SEQ_ANNOT_SUFFIX.length;
+        os.write( SEQ_ANNOT_PREFIX );
+        for ( int k = 0; k < columns.count(); ++k )
+            columns.write_blob( k, os );
+        os.write( SEQ_ANNOT_SUFFIX );
+        return res + columns.blob_bytes();
+    }
 
-        for ( BLAST_TB_LIST e : l )
-            buf.put( e.asn1_blob );
+/**
+ * stream the internal list as valid asn1 into a file, replaces BC_UTILS.write_to_file( to_bytebuffer() )
+ *
+ * @param filename  path of file to be written into
+ * @return          was the operation successful ?
+*/
+    public boolean write_to_file( final String filename )
+    {
+        boolean res = BC_UTILS.create_paths_if_neccessary( filename );
+        if ( res )
+        {
+            try ( FileChannel ch = FileChannel.open( Paths.get( filename ), StandardOpenOption.CREATE,
+                                                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) )
+            {
+                write_to( ch );
+            }
+            catch( Exception e ) { e.printStackTrace(); res = false; }
+        }
+        return res;
+    }
 
-        buf.put( seq_annot_suffix );
+/**
+ * write the text of the internal list in one text-format into a stream, in output-order
+ *
+ * @param f     index of the text-format, in the order they were rendered
+ * @param os    stream to write into, not closed
+ * @see         BC_RESULT_FORMAT
+*/
+    public void write_text_to( int f, final OutputStream os ) throws IOException
+    {
+        for ( int k = 0; k < columns.count(); ++k )
+            columns.write_text( k, f, os );
+    }
 
-        return buf;
+/**
+ * write the text of the internal list in one text-format into a file
+ *
+ * @param filename  path of file to be written into
+ * @param f         index of the text-format, in the order they were rendered
+ * @return          was the operation successful ?
+*/
+    public boolean write_text_to_file( final String filename, int f )
+    {
+        boolean res = BC_UTILS.create_paths_if_neccessary( filename );
+        if ( res )
+        {
+            try ( OutputStream os = new BufferedOutputStream( new FileOutputStream( filename ), 256 * 1024 ) )
+            {
+                write_text_to( f, os );
+            }
+            catch( Exception e ) { e.printStackTrace(); res = false; }
+        }
+        return res;
     }
 }
-
@@ -0,0 +1,428 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+
+import java.util.Arrays;
+
+/**
+ * compact store of traceback-results, backing store of BC_RESULTS on the master
+ * - evalue, score and seqid of each result in parallel int-arrays
+ * - the asn1-blobs one after the other in one growable byte-arena,
+ *   each result refers to its blob by offset and length
+ * - text renderings of a result ( see BC_RESULT_FORMAT ) follow its blob in the arena,
+ *   one length per text-format
+ * - the output-order is a permutation of the results: sorting and merging move
+ *   ints, never blobs, the output wraps the arena without copying
+ * - order: descending by evalue, then score, then seqid, like BLAST_TB_LIST
+ *
+ * @see        BC_RESULTS
+ * @see        BLAST_TB_LIST
+*/
+public final class BC_RESULT_COLUMNS
+{
+    private static final int INITIAL_ITEMS = 1024;
+    private static final int INITIAL_ARENA = 64 * 1024;
+    private static final int MAX_ARENA = Integer.MAX_VALUE - 8;
+
+    private int size;           /* number of results stored */
+    private int[] evalue;
+    private int[] score;
+    private int[] seqid;
+    private int[] offset;       /* of the blob in the arena */
+    private int[] length;       /* of the blob */
+    private int[][] text_length; /* per text-format, of the text behind the blob */
+    private byte[] arena;
+    private int arena_used;
+    private int[] order;        /* output-order, indices of the results, null...as stored */
+    private int count;          /* number of results in the output */
+
+/**
+ * create instance of BC_RESULT_COLUMNS
+*/
+    public BC_RESULT_COLUMNS()
+    {
+        size = 0;
+        evalue = new int[ INITIAL_ITEMS ];
+        score = new int[ INITIAL_ITEMS ];
+        seqid = new int[ INITIAL_ITEMS ];
+        offset = new int[ INITIAL_ITEMS ];
+        length = new int[ INITIAL_ITEMS ];
+        text_length = new int[ 0 ][];
+        arena = new byte[ INITIAL_ARENA ];
+        arena_used = 0;
+        order = null;
+        count = 0;
+    }
+
+/**
+ * private helper: make room for one more result with a blob of n bytes
+*/
+    private void reserve( int n )
+    {
+        if ( size == evalue.length )
+        {
+            int cap = size * 2;
+            evalue = Arrays.copyOf( evalue, cap );
+            score = Arrays.copyOf( score, cap );
+            seqid = Arrays.copyOf( seqid, cap );
+            offset = Arrays.copyOf( offset, cap );
+            length = Arrays.copyOf( length, cap );
+            for ( int f = 0; f < text_length.length; ++f )
+                text_length[ f ] = Arrays.copyOf( text_length[ f ], cap );
+        }
+        long needed = ( long )arena_used + n;
+        if ( needed > MAX_ARENA )
+            throw new OutOfMemoryError( String.format( "result-arena above %,d bytes", MAX_ARENA ) );
+        if ( needed > arena.length )
+            arena = Arrays.copyOf( arena, ( int )Math.min( Math.max( needed, 2L * arena.length ), MAX_ARENA ) );
+    }
+
+/**
+ * append one result, the blob is copied into the arena
+ * - resets the output-order to the stored order
+ *
+ * @param a_evalue  scaled evalue
+ * @param a_score   alignment score
+ * @param a_seqid   hash of the sequence-id
+ * @param blob      asn1-blob
+*/
+    public void add( int a_evalue, int a_score, int a_seqid, final byte[] blob )
+    {
+        add( a_evalue, a_score, a_seqid, blob, null );
+    }
+
+/**
+ * append one result with its text renderings, blob and texts are copied into the arena
+ *
+ * @param a_evalue  scaled evalue
+ * @param a_score   alignment score
+ * @param a_seqid   hash of the sequence-id
+ * @param blob      asn1-blob
+ * @param texts     rendered text per text-format, null...none
+ * @see             BC_RESULT_FORMAT
+*/
+    public void add( int a_evalue, int a_score, int a_seqid, final byte[] blob, final byte[][] texts )
+    {
+        int n = blob.length;
+        if ( texts != null )
+        {
+            if ( texts.length > text_length.length )
+            {
+                int old = text_length.length;
+                text_length = Arrays.copyOf( text_length, texts.length );
+                for ( int f = old; f < texts.length; ++f )
+                    text_length[ f ] = new int[ evalue.length ];
+            }
+            for ( byte[] t : texts )
+                n += t.length;
+        }
+        reserve( n );
+        evalue[ size ] = a_evalue;
+        score[ size ] = a_score;
+        seqid[ size ] = a_seqid;
+        offset[ size ] = arena_used;
+        length[ size ] = blob.length;
+        System.arraycopy( blob, 0, arena, arena_used, blob.length );
+        arena_used += blob.length;
+        for ( int f = 0; f < text_length.length; ++f )
+        {
+            byte[] t = ( texts != null && f < texts.length ) ? texts[ f ] : new byte[ 0 ];
+            text_length[ f ][ size ] = t.length;
+            System.arraycopy( t, 0, arena, arena_used, t.length );
+            arena_used += t.length;
+        }
+        size += 1;
+        order = null;
+        count = size;
+    }
+
+/**
+ * append one result
+ *
+ * @param item  traceback-result, not referenced afterwards
+*/
+    public void add( final BLAST_TB_LIST item )
+    {
+        add( item.evalue, item.score, item.seqid, item.asn1_blob );
+    }
+
+/**
+ * number of results stored
+ *
+ * @return  number of results
+*/
+    public int size()
+    {
+        return size;
+    }
+
+/**
+ * compare two stored results on their primitive keys
+ *
+ * @param i     index of the first result
+ * @param j     index of the second result
+ * @return      negative...i comes first, 0...equal, positive...j comes first
+*/
+    public int compare( int i, int j )
+    {
+        if ( evalue[ i ] != evalue[ j ] )
+            return -Integer.compare( evalue[ i ], evalue[ j ] );
+        if ( score[ i ] != score[ j ] )
+            return -Integer.compare( score[ i ], score[ j ] );
+        return -Integer.compare( seqid[ i ], seqid[ j ] );
+    }
+
+/**
+ * are the stored results first...last-1 in output-order ?
+ *
+ * @param first     index of the first result
+ * @param last      index behind the last result
+ * @return          is the range sorted
+*/
+    public boolean sorted( int first, int last )
+    {
+        for ( int i = first + 1; i < last; ++i )
+        {
+            if ( compare( i - 1, i ) > 0 )
+                return false;
+        }
+        return true;
+    }
+
+/**
+ * private helper: one pass of the radix-sort, by 8 bits of a key
+ * - the key is mapped so that the larger signed int gets the smaller digit
+ * @return  false if all results have the same digit, the pass was skipped
+*/
+    private static boolean radix_pass( final int[] key, int shift, final int[] src, final int[] dst, final int[] buckets )
+    {
+        Arrays.fill( buckets, 0 );
+        for ( int i : src )
+            buckets[ ( ( ~( key[ i ] ^ 0x80000000 ) >>> shift ) & 0xff ) + 1 ] += 1;
+        for ( int b = 1; b <= 256; ++b )
+        {
+            if ( buckets[ b ] == src.length )
+                return false;
+        }
+        for ( int b = 1; b <= 256; ++b )
+            buckets[ b ] += buckets[ b - 1 ];
+        for ( int i : src )
+            dst[ buckets[ ( ~( key[ i ] ^ 0x80000000 ) >>> shift ) & 0xff ]++ ] = i;
+        return true;
+    }
+
+/**
+ * sort all stored results into output-order
+ * - stable LSD radix-sort over seqid, score and evalue, 8 bits per pass,
+ *   passes where all results share the digit are skipped: O( 12 * n )
+*/
+    public void radix_sort()
+    {
+        int[] src = new int[ size ];
+        for ( int i = 0; i < size; ++i )
+            src[ i ] = i;
+        int[] dst = new int[ size ];
+        int[] buckets = new int[ 257 ];
+        for ( int[] key : new int[][] { seqid, score, evalue } )
+        {
+            for ( int shift = 0; shift < 32; shift += 8 )
+            {
+                if ( radix_pass( key, shift, src, dst, buckets ) )
+                {
+                    int[] t = src;
+                    src = dst;
+                    dst = t;
+                }
+            }
+        }
+        order = src;
+        count = size;
+    }
+
+/**
+ * private helper: move the run at heap[ i ] down, until the heap is ordered again
+*/
+    private void sift_down( final int[] heap, final int[] pos, int i, int n )
+    {
+        while ( true )
+        {
+            int first = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if ( left < n && compare( pos[ heap[ left ] ], pos[ heap[ first ] ] ) < 0 )
+                first = left;
+            if ( right < n && compare( pos[ heap[ right ] ], pos[ heap[ first ] ] ) < 0 )
+                first = right;
+            if ( first == i )
+                return;
+            int t = heap[ i ];
+            heap[ i ] = heap[ first ];
+            heap[ first ] = t;
+            i = first;
+        }
+    }
+
+/**
+ * merge sorted runs of stored results into the top num_items of the output-order
+ * - k-way merge over a heap of the runs: O( k + num_items * log k ) comparisons
+ *
+ * @param starts    index of the first result of each run, ascending, each run
+ *                  ends where the next one starts, the last one at size()
+ * @param num_items how many results to keep
+*/
+    public void merge_runs( final int[] starts, int num_items )
+    {
+        int k = starts.length;
+        int[] pos = new int[ k ];       /* current head of each run */
+        int[] end = new int[ k ];
+        int[] heap = new int[ k ];      /* runs, ordered by their current head */
+        int n = 0;
+        for ( int r = 0; r < k; ++r )
+        {
+            pos[ r ] = starts[ r ];
+            end[ r ] = ( r + 1 < k ) ? starts[ r + 1 ] : size;
+            if ( pos[ r ] < end[ r ] )
+                heap[ n++ ] = r;
+        }
+        for ( int i = n / 2 - 1; i >= 0; --i )
+            sift_down( heap, pos, i, n );
+
+        int[] res = new int[ Math.min( Math.max( num_items, 0 ), size ) ];
+        for ( int j = 0; j < res.length; ++j )
+        {
+            int r = heap[ 0 ];
+            res[ j ] = pos[ r ];
+            pos[ r ] += 1;
+            if ( pos[ r ] == end[ r ] )
+                heap[ 0 ] = heap[ --n ];
+            sift_down( heap, pos, 0, n );
+        }
+        order = res;
+        count = res.length;
+    }
+
+/**
+ * keep only the first num_items of the output-order
+ *
+ * @param num_items how many results to keep
+*/
+    public void cutoff( int num_items )
+    {
+        count = Math.max( 0, Math.min( count, num_items ) );
+    }
+
+/**
+ * number of results in the output
+ *
+ * @return  number of results
+*/
+    public int count()
+    {
+        return count;
+    }
+
+/**
+ * private helper: index of the k-th result of the output
+*/
+    private int index( int k )
+    {
+        return ( order != null ) ? order[ k ] : k;
+    }
+
+/**
+ * the blob of the k-th result of the output, wraps the arena without copying
+ *
+ * @param k     position in the output, 0...count()-1
+ * @return      read-only buffer of the blob
+*/
+    public ByteBuffer blob( int k )
+    {
+        int i = index( k );
+        return ByteBuffer.wrap( arena, offset[ i ], length[ i ] ).slice().asReadOnlyBuffer();
+    }
+
+/**
+ * write the blob of the k-th result of the output into a stream
+ *
+ * @param k     position in the output, 0...count()-1
+ * @param os    stream to write into
+*/
+    public void write_blob( int k, final OutputStream os ) throws IOException
+    {
+        int i = index( k );
+        os.write( arena, offset[ i ], length[ i ] );
+    }
+
+/**
+ * write the text of the k-th result of the output into a stream
+ *
+ * @param k     position in the output, 0...count()-1
+ * @param f     index of the text-format
+ * @param os    stream to write into
+*/
+    public void write_text( int k, int f, final OutputStream os ) throws IOException
+    {
+        if ( f >= text_length.length )
+            return;
+        int i = index( k );
+        int start = offset[ i ] + length[ i ];
+        for ( int g = 0; g < f; ++g )
+            start += text_length[ g ][ i ];
+        os.write( arena, start, text_length[ f ][ i ] );
+    }
+
+/**
+ * number of bytes of the blobs of the output
+ *
+ * @return      sum of the blob-lengths
+*/
+    public long blob_bytes()
+    {
+        long res = 0;
+        for ( int k = 0; k < count; ++k )
+            res += length[ index( k ) ];
+        return res;
+    }
+
+/**
+ * the k-th result of the output as object, for tests and tools
+ *
+ * @param k     position in the output, 0...count()-1
+ * @return      traceback-result with a copy of the blob
+*/
+    public BLAST_TB_LIST get( int k )
+    {
+        int i = index( k );
+        return new BLAST_TB_LIST( evalue[ i ], score[ i ], seqid[ i ],
+                                  Arrays.copyOfRange( arena, offset[ i ], offset[ i ] + length[ i ] ) );
+    }
+}
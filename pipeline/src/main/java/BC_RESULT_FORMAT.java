@@ -0,0 +1,576 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Locale;
+
+import com.google.gson.JsonObject;
+
+/**
+ * renders the traceback-results into text-formats, on the executors
+ * - 'asn1'    : the binary Seq-annot, written by BC_RESULTS ( not rendered here )
+ * - 'tabular' : one tab-separated line per alignment, the columns of blast -outfmt 6:
+ *               qseqid sseqid pident length mismatch gapopen qstart qend sstart send evalue bitscore
+ * - 'json'    : one json-object per alignment and line, same values plus the raw score
+ * - the asn1-blob of a result is one or more BER-encoded Seq-aligns, decoded with a minimal
+ *   BER-reader: Dense-seg alignments ( blastn, blastp ), and Seq-align-sets of them
+ * - an alignment that cannot be decoded is skipped, it is still in the asn1-output
+ *
+ * @see        BLAST_TB_LIST
+ * @see        BC_RESULTS
+*/
+public final class BC_RESULT_FORMAT
+{
+    public static final String ASN1 = "asn1";
+    public static final String TABULAR = "tabular";
+    public static final String JSON = "json";
+
+    private static final byte[][] NONE = new byte[ 0 ][];
+
+/**
+ * one element of the BER-encoding
+*/
+    private static final class NODE
+    {
+        int tag;            /* first tag-byte, class | constructed | number */
+        int start;          /* content of a primitive element */
+        int len;
+        List< NODE > kids;  /* elements of a constructed element */
+
+        NODE kid( int a_tag )
+        {
+            if ( kids != null )
+            {
+                for ( NODE n : kids )
+                    if ( n.tag == a_tag ) return n;
+            }
+            return null;
+        }
+
+        NODE first()
+        {
+            return ( kids != null && !kids.isEmpty() ) ? kids.get( 0 ) : null;
+        }
+    }
+
+/**
+ * minimal reader of definite and indefinite BER-encodings
+*/
+    private static final class BER
+    {
+        final byte[] b;
+        int pos;
+
+        BER( final byte[] a_b )
+        {
+            b = a_b;
+            pos = 0;
+        }
+
+        int next()
+        {
+            if ( pos >= b.length )
+                throw new IllegalArgumentException( "BER: unexpected end" );
+            return b[ pos++ ] & 0xff;
+        }
+
+        boolean at_eoc()
+        {
+            return pos + 1 < b.length && b[ pos ] == 0 && b[ pos + 1 ] == 0;
+        }
+
+        NODE node()
+        {
+            NODE res = new NODE();
+            res.tag = next();
+            if ( ( res.tag & 0x1f ) == 0x1f )
+            {
+                while ( ( next() & 0x80 ) != 0 ) { }    /* high tag-numbers are not used by our types */
+            }
+            boolean constructed = ( res.tag & 0x20 ) != 0;
+            int len = next();
+            if ( len == 0x80 )
+            {
+                if ( !constructed )
+                    throw new IllegalArgumentException( "BER: indefinite primitive" );
+                res.kids = new ArrayList<>();
+                while ( !at_eoc() )
+                    res.kids.add( node() );
+                pos += 2;
+                return res;
+            }
+            if ( ( len & 0x80 ) != 0 )
+            {
+                int n = len & 0x7f;
+                if ( n > 4 )
+                    throw new IllegalArgumentException( "BER: length too long" );
+                len = 0;
+                for ( int i = 0; i < n; ++i )
+                    len = ( len << 8 ) | next();
+            }
+            if ( len < 0 || pos + len > b.length )
+                throw new IllegalArgumentException( "BER: length beyond end" );
+            res.start = pos;
+            res.len = len;
+            if ( constructed )
+            {
+                int end = pos + len;
+                res.kids = new ArrayList<>();
+                while ( pos < end )
+                    res.kids.add( node() );
+            }
+            else
+                pos += len;
+            return res;
+        }
+
+        long integer( final NODE n )
+        {
+            if ( n == null || n.kids != null || n.len == 0 || n.len > 8 )
+                throw new IllegalArgumentException( "BER: not an integer" );
+            long res = b[ n.start ];    /* sign-extended */
+            for ( int i = 1; i < n.len; ++i )
+                res = ( res << 8 ) | ( b[ n.start + i ] & 0xff );
+            return res;
+        }
+
+        String string( final NODE n )
+        {
+            if ( n == null || n.kids != null )
+                throw new IllegalArgumentException( "BER: not a string" );
+            return new String( b, n.start, n.len, StandardCharsets.US_ASCII );
+        }
+
+        double real( final NODE n )
+        {
+            if ( n == null || n.kids != null )
+                throw new IllegalArgumentException( "BER: not a real" );
+            if ( n.len == 0 )
+                return 0.0;
+            int first = b[ n.start ] & 0xff;
+            if ( first == 0x40 ) return Double.POSITIVE_INFINITY;
+            if ( first == 0x41 ) return Double.NEGATIVE_INFINITY;
+            if ( first == 0x42 ) return Double.NaN;
+            if ( first == 0x43 ) return -0.0;
+            if ( ( first & 0x80 ) == 0 )
+            {
+                /* decimal encoding, NCBI writes it this way */
+                String s = new String( b, n.start + 1, n.len - 1, StandardCharsets.US_ASCII );
+                return Double.parseDouble( s.trim().replace( ',', '.' ) );
+            }
+            /* binary encoding: sign * mantissa * 2^scale * base^exponent */
+            int base = new int[] { 2, 8, 16, 2 }[ ( first >> 4 ) & 3 ];
+            int scale = ( first >> 2 ) & 3;
+            int p = n.start + 1;
+            int elen = ( first & 3 ) + 1;
+            if ( elen == 4 )
+                elen = b[ p++ ] & 0xff;
+            long exponent = b[ p ];
+            for ( int i = 1; i < elen; ++i )
+                exponent = ( exponent << 8 ) | ( b[ p + i ] & 0xff );
+            p += elen;
+            double mantissa = 0;
+            for ( ; p < n.start + n.len; ++p )
+                mantissa = mantissa * 256 + ( b[ p ] & 0xff );
+            double res = mantissa * Math.pow( 2, scale ) * Math.pow( base, exponent );
+            return ( ( first & 0x40 ) != 0 ) ? -res : res;
+        }
+    }
+
+/**
+ * one decoded pairwise alignment
+*/
+    static final class HIT
+    {
+        String qseqid = "";
+        String sseqid = "";
+        int length;         /* alignment-columns */
+        int ident;
+        int mismatch;
+        int gapopen;
+        int qstart, qend, sstart, send;     /* 1-based, sstart > send on the minus strand */
+        double evalue;
+        double bitscore;
+        long score;
+    }
+
+/**
+ * private helper: Object-id ::= CHOICE { id INTEGER, str VisibleString }
+*/
+    private static String object_id( final BER ber, final NODE n )
+    {
+        NODE c = n.first();
+        if ( c == null || c.first() == null ) return "";
+        if ( c.tag == 0xa0 ) return Long.toString( ber.integer( c.first() ) );
+        return ber.string( c.first() );
+    }
+
+/**
+ * private helper: Textseq-id ::= SEQUENCE { name [0], accession [1], release [2], version [3] }
+*/
+    private static String textseq_id( final BER ber, final NODE n )
+    {
+        NODE seq = n.first();
+        if ( seq == null ) return "";
+        NODE acc = seq.kid( 0xa1 );
+        NODE name = seq.kid( 0xa0 );
+        NODE ver = seq.kid( 0xa3 );
+        String res = ( acc != null ) ? ber.string( acc.first() ) : ( name != null ) ? ber.string( name.first() ) : "";
+        if ( ver != null && !res.isEmpty() )
+            res = res + "." + ber.integer( ver.first() );
+        return res;
+    }
+
+/**
+ * private helper: the label of a Seq-id, the way blast prints it in tabular output
+*/
+    private static String seq_id( final BER ber, final NODE n )
+    {
+        int choice = n.tag & 0x1f;
+        switch ( choice )
+        {
+            case 0  : return object_id( ber, n );                               /* local */
+            case 1  :
+            case 2  : return Long.toString( ber.integer( n.first() ) );         /* gibbsq, gibbmt */
+            case 11 : return "gi|" + ber.integer( n.first() );                  /* gi */
+            case 10 :                                                           /* general: Dbtag */
+            {
+                NODE seq = n.first();
+                NODE db = ( seq != null ) ? seq.kid( 0xa0 ) : null;
+                NODE tag = ( seq != null ) ? seq.kid( 0xa1 ) : null;
+                String s_db = ( db != null ) ? ber.string( db.first() ) : "";
+                String s_tag = ( tag != null && tag.first() != null ) ? object_id( ber, tag ) : "";
+                return String.format( Locale.ROOT, "gnl|%s|%s", s_db, s_tag );
+            }
+            case 14 :                                                           /* pdb */
+            {
+                NODE seq = n.first();
+                NODE mol = ( seq != null ) ? seq.kid( 0xa0 ) : null;
+                NODE chain_id = ( seq != null ) ? seq.kid( 0xa3 ) : null;
+                String s_mol = ( mol != null ) ? ber.string( mol.first() ) : "";
+                return ( chain_id != null ) ? s_mol + "_" + ber.string( chain_id.first() ) : s_mol;
+            }
+            case 3  :                                                           /* giim, patent */
+            case 8  : return String.format( Locale.ROOT, "id%d", choice );
+            default : return textseq_id( ber, n );                              /* the Textseq-ids */
+        }
+    }
+
+/**
+ * private helper: the values of a SEQUENCE OF INTEGER / ENUMERATED
+*/
+    private static int[] int_list( final BER ber, final NODE n )
+    {
+        NODE seq = ( n != null ) ? n.first() : null;
+        if ( seq == null || seq.kids == null ) return new int[ 0 ];
+        int[] res = new int[ seq.kids.size() ];
+        for ( int i = 0; i < res.length; ++i )
+            res[ i ] = ( int )ber.integer( seq.kids.get( i ) );
+        return res;
+    }
+
+/**
+ * private helper: the named scores of a Seq-align, 'e_value', 'bit_score', 'num_ident', 'score' ...
+*/
+    private static Map< String, Double > scores( final BER ber, final NODE align )
+    {
+        Map< String, Double > res = new HashMap<>();
+        NODE set = align.kid( 0xa2 );
+        if ( set == null || set.first() == null || set.first().kids == null ) return res;
+        for ( NODE score : set.first().kids )
+        {
+            NODE id = score.kid( 0xa0 );
+            NODE value = score.kid( 0xa1 );
+            if ( id == null || value == null || value.first() == null ) continue;
+            NODE v = value.first();
+            res.put( object_id( ber, id ), v.tag == 0xa0 ? ber.real( v.first() ) : ( double )ber.integer( v.first() ) );
+        }
+        return res;
+    }
+
+/**
+ * private helper: decode the Dense-seg of a Seq-align into a hit
+*/
+    private static HIT dense_seg( final BER ber, final NODE ds, final Map< String, Double > sc )
+    {
+        NODE dim_node = ds.kid( 0xa0 );
+        int dim = ( dim_node != null ) ? ( int )ber.integer( dim_node.first() ) : 2;
+        int numseg = ( int )ber.integer( ds.kid( 0xa1 ).first() );
+        NODE ids = ds.kid( 0xa2 ).first();
+        int[] starts = int_list( ber, ds.kid( 0xa3 ) );
+        int[] lens = int_list( ber, ds.kid( 0xa4 ) );
+        int[] strands = int_list( ber, ds.kid( 0xa5 ) );
+        if ( dim < 2 || ids.kids.size() < 2 || starts.length < numseg * dim || lens.length < numseg )
+            throw new IllegalArgumentException( "Dense-seg: inconsistent" );
+
+        HIT res = new HIT();
+        res.qseqid = seq_id( ber, ids.kids.get( 0 ) );
+        res.sseqid = seq_id( ber, ids.kids.get( 1 ) );
+        int aligned = 0;
+        int q_lo = Integer.MAX_VALUE, q_hi = 0, s_lo = Integer.MAX_VALUE, s_hi = 0;
+        for ( int s = 0; s < numseg; ++s )
+        {
+            int q = starts[ s * dim ];
+            int t = starts[ s * dim + 1 ];
+            res.length += lens[ s ];
+            if ( q < 0 || t < 0 )
+                res.gapopen += 1;
+            else
+                aligned += lens[ s ];
+            if ( q >= 0 )
+            {
+                q_lo = Math.min( q_lo, q );
+                q_hi = Math.max( q_hi, q + lens[ s ] );
+            }
+            if ( t >= 0 )
+            {
+                s_lo = Math.min( s_lo, t );
+                s_hi = Math.max( s_hi, t + lens[ s ] );
+            }
+        }
+        boolean q_minus = strands.length > 0 && strands[ 0 ] == 2;
+        boolean s_minus = strands.length > 1 && strands[ 1 ] == 2;
+        res.qstart = q_minus ? q_hi : q_lo + 1;
+        res.qend = q_minus ? q_lo + 1 : q_hi;
+        res.sstart = s_minus ? s_hi : s_lo + 1;
+        res.send = s_minus ? s_lo + 1 : s_hi;
+
+        Double v = sc.get( "num_ident" );
+        res.ident = ( v != null ) ? v.intValue() : 0;
+        res.mismatch = ( v != null ) ? Math.max( aligned - res.ident, 0 ) : 0;
+        v = sc.get( "e_value" );
+        res.evalue = ( v != null ) ? v : 0.0;
+        v = sc.get( "bit_score" );
+        res.bitscore = ( v != null ) ? v : 0.0;
+        v = sc.get( "score" );
+        res.score = ( v != null ) ? v.longValue() : 0;
+        return res;
+    }
+
+/**
+ * private helper: collect the hits of a Seq-align, recursing into Seq-align-sets ( disc )
+*/
+    private static void align( final BER ber, final NODE align, final List< HIT > hits )
+    {
+        NODE segs = align.kid( 0xa3 );
+        NODE seg = ( segs != null ) ? segs.first() : null;
+        if ( seg == null ) return;
+        if ( seg.tag == 0xa1 )
+            hits.add( dense_seg( ber, seg.first(), scores( ber, align ) ) );
+        else if ( seg.tag == 0xa4 && seg.first() != null && seg.first().kids != null )
+        {
+            for ( NODE a : seg.first().kids )
+                align( ber, a, hits );
+        }
+    }
+
+/**
+ * decode the alignments of one asn1-blob
+ *
+ * @param blob  one or more BER-encoded Seq-aligns
+ * @return      the decoded hits, empty if the blob cannot be decoded
+*/
+    static List< HIT > decode( final byte[] blob )
+    {
+        List< HIT > res = new ArrayList<>();
+        try
+        {
+            BER ber = new BER( blob );
+            while ( ber.pos < blob.length && !ber.at_eoc() )
+                align( ber, ber.node(), res );
+        }
+        catch ( RuntimeException e )
+        {
+            res.clear();
+        }
+        return res;
+    }
+
+/**
+ * private helper: evalue the way blast prints it
+*/
+    private static String evalue( double e )
+    {
+        if ( e == 0.0 ) return "0.0";
+        if ( e < 1.0e-180 ) return "0.0";
+        return String.format( Locale.ROOT, "%.2e", e );
+    }
+
+/**
+ * private helper: the percentage of identical columns
+*/
+    private static double pident( final HIT h )
+    {
+        return h.length > 0 ? ( 100.0 * h.ident ) / h.length : 0.0;
+    }
+
+/**
+ * one hit as a line of blast -outfmt 6
+ *
+ * @param h     decoded hit
+ * @return      tab-separated line, with newline
+*/
+    static String tabular( final HIT h )
+    {
+        return String.format( Locale.ROOT, "%s\t%s\t%.3f\t%d\t%d\t%d\t%d\t%d\t%d\t%d\t%s\t%.1f\n",
+                              h.qseqid, h.sseqid, pident( h ), h.length, h.mismatch, h.gapopen,
+                              h.qstart, h.qend, h.sstart, h.send, evalue( h.evalue ), h.bitscore );
+    }
+
+/**
+ * one hit as a json-object on one line
+ *
+ * @param h     decoded hit
+ * @return      json-line, with newline
+*/
+    static String json( final HIT h )
+    {
+        JsonObject o = new JsonObject();
+        o.addProperty( "qseqid", h.qseqid );
+        o.addProperty( "sseqid", h.sseqid );
+        o.addProperty( "pident", Math.round( pident( h ) * 1000.0 ) / 1000.0 );
+        o.addProperty( "length", h.length );
+        o.addProperty( "mismatch", h.mismatch );
+        o.addProperty( "gapopen", h.gapopen );
+        o.addProperty( "qstart", h.qstart );
+        o.addProperty( "qend", h.qend );
+        o.addProperty( "sstart", h.sstart );
+        o.addProperty( "send", h.send );
+        o.addProperty( "evalue", h.evalue );
+        o.addProperty( "bitscore", h.bitscore );
+        o.addProperty( "score", h.score );
+        return o.toString() + "\n";
+    }
+
+/**
+ * is the format rendered here, as text ?
+ *
+ * @param format    name of the format
+ * @return          is it 'tabular' or 'json'
+*/
+    public static boolean is_text( final String format )
+    {
+        return TABULAR.equals( format ) || JSON.equals( format );
+    }
+
+/**
+ * is the format one that can be written ?
+ *
+ * @param format    name of the format
+ * @return          is it 'asn1', 'tabular' or 'json'
+*/
+    public static boolean known( final String format )
+    {
+        return ASN1.equals( format ) || is_text( format );
+    }
+
+/**
+ * the first format of a list that cannot be written
+ *
+ * @param formats   formats of a request or of the settings
+ * @return          the first unknown format, or null if all are known
+*/
+    public static String first_unknown( final List< String > formats )
+    {
+        for ( String f : formats )
+        {
+            if ( !known( f ) )
+                return f;
+        }
+        return null;
+    }
+
+/**
+ * the formats a request is written in, without changing the request
+ *
+ * @param requested formats of the request, empty for the default
+ * @param defaults  formats of the settings
+ * @return          the requested formats, or the defaults if none are requested
+*/
+    public static List< String > effective( final List< String > requested, final List< String > defaults )
+    {
+        return new ArrayList<>( requested.isEmpty() ? defaults : requested );
+    }
+
+/**
+ * the text-formats of a list of formats, in their order
+ *
+ * @param formats   formats of a request, for instance [ 'asn1', 'tabular' ]
+ * @return          the text-formats of them, without duplicates
+*/
+    public static List< String > text_formats( final List< String > formats )
+    {
+        List< String > res = new ArrayList<>();
+        for ( String f : formats )
+        {
+            if ( is_text( f ) && !res.contains( f ) )
+                res.add( f );
+        }
+        return res;
+    }
+
+/**
+ * the file-extension of a format
+ *
+ * @param format    name of the format
+ * @return          'asn1', 'tab' or 'json'
+*/
+    public static String extension( final String format )
+    {
+        return TABULAR.equals( format ) ? "tab" : format;
+    }
+
+/**
+ * render one asn1-blob into text-formats, one line per alignment
+ *
+ * @param blob          asn1-blob of one traceback-result
+ * @param text_formats  the formats to render, see text_formats()
+ * @return              the rendered text per format, empty array...nothing to render
+*/
+    public static byte[][] render( final byte[] blob, final List< String > text_formats )
+    {
+        if ( text_formats.isEmpty() )
+            return NONE;
+        List< HIT > hits = decode( blob );
+        byte[][] res = new byte[ text_formats.size() ][];
+        for ( int f = 0; f < res.length; ++f )
+        {
+            StringBuilder sb = new StringBuilder();
+            boolean tab = TABULAR.equals( text_formats.get( f ) );
+            for ( HIT h : hits )
+                sb.append( tab ? tabular( h ) : json( h ) );
+            res[ f ] = sb.toString().getBytes( StandardCharsets.UTF_8 );
+        }
+        return res;
+    }
+}
@@ -0,0 +1,552 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * append-only store of the request-results, instead of one file per result
+ * - the results are appended to rolling segment-files 'results.NNNNNN.seg' in
+ *   the report-dir, a new segment is started above a size-limit
+ * - each record is self-describing: magic, rid, kind, length, payload
+ * - per segment an index 'results.NNNNNN.idx', one line per record:
+ *   'rid kind offset length' ( offset of the payload ), written in batches
+ * - a closed segment and its index are offered to the result-uploader
+ * - main() extracts single results, from the index or by scanning the segments,
+ *   tools read all results of one kind via latest()
+ *
+ * usage: extract-result.sh report-dir rid [asn1|txt|errors|chunks|tabular|json] [out-file]
+ *        extract-result.sh report-dir --list
+ *
+ * @see        BC_JOBS
+ * @see        BC_RESULT_UPLOADER
+*/
+public final class BC_RESULT_LOG
+{
+    public static final String KIND_ASN1 = "asn1";
+    public static final String KIND_TXT = "txt";
+    public static final String KIND_ERRORS = "errors";
+    public static final String KIND_CHUNKS = "chunks";
+
+    private static final int MAGIC = 0x42435231;   /* 'BCR1' */
+    private static final int INDEX_BATCH = 64;      /* index-lines written at once */
+    private static final long INDEX_MAX_AGE_MS = 10000;
+
+/**
+ * where the payload of one record is stored
+*/
+    public static final class LOCATION
+    {
+        public final File segment;
+        public final long offset;
+        public final long length;
+
+        LOCATION( final File a_segment, long a_offset, long a_length )
+        {
+            segment = a_segment;
+            offset = a_offset;
+            length = a_length;
+        }
+    }
+
+    private final String dir;
+    private final long segment_size;
+    private final BC_CONTEXT context;   /* to hand closed segments to the uploader, can be null */
+    private int segment_nr;
+    private FileChannel segment;
+    private final List< String > index_batch;
+    private long batch_since;
+
+/**
+ * create instance of BC_RESULT_LOG
+ * - continues after the last segment found in the directory
+ *
+ * @param a_dir         directory of the segments, the report-dir
+ * @param segment_mb    start a new segment above this size
+ * @param a_context     application-context, to upload closed segments, can be null
+*/
+    public BC_RESULT_LOG( final String a_dir, int segment_mb, final BC_CONTEXT a_context )
+    {
+        dir = a_dir;
+        segment_size = Math.max( segment_mb, 1 ) * 1024L * 1024L;
+        context = a_context;
+        segment_nr = 0;
+        segment = null;
+        index_batch = new ArrayList<>();
+        batch_since = 0;
+        new File( dir ).mkdirs();
+        for ( File f : segments( dir ) )
+            segment_nr = Math.max( segment_nr, number_of( f ) );
+    }
+
+    private static String segment_name( final String dir, int nr )
+    {
+        return String.format( "%s/results.%06d.seg", dir, nr );
+    }
+
+    private static String index_name( final String dir, int nr )
+    {
+        return String.format( "%s/results.%06d.idx", dir, nr );
+    }
+
+    private static int number_of( final File f )
+    {
+        String n = f.getName();
+        return BC_UTILS.toInt( n.substring( "results.".length(), n.length() - ".seg".length() ) );
+    }
+
+/**
+ * the segment-files of a directory, in the order they were written
+ *
+ * @param a_dir     directory of the segments
+ * @return          list of files
+*/
+    static List< File > segments( final String a_dir )
+    {
+        List< File > res = new ArrayList<>();
+        File[] files = new File( a_dir ).listFiles( ( d, n ) -> n.startsWith( "results." ) && n.endsWith( ".seg" ) );
+        if ( files != null )
+        {
+            Arrays.sort( files );
+            res.addAll( Arrays.asList( files ) );
+        }
+        return res;
+    }
+
+/**
+ * private helper: write the collected index-lines of the current segment
+*/
+    private void flush_index() throws IOException
+    {
+        if ( index_batch.isEmpty() )
+            return;
+        try ( Writer w = new FileWriter( index_name( dir, segment_nr ), true ) )
+        {
+            for ( String line : index_batch )
+                w.write( line );
+        }
+        index_batch.clear();
+    }
+
+/**
+ * private helper: close the current segment, hand it to the uploader
+*/
+    private void close_segment() throws IOException
+    {
+        if ( segment != null )
+        {
+            flush_index();
+            segment.close();
+            segment = null;
+            if ( context != null )
+            {
+                context.upload_result( segment_name( dir, segment_nr ) );
+                context.upload_result( index_name( dir, segment_nr ) );
+            }
+        }
+    }
+
+/**
+ * private helper: the segment to append a record of n bytes to, rolls over if needed
+*/
+    private FileChannel segment_for( long n ) throws IOException
+    {
+        if ( segment != null && segment.position() > 0 && segment.position() + n > segment_size )
+            close_segment();
+        if ( segment == null )
+        {
+            segment_nr += 1;
+            segment = FileChannel.open( new File( segment_name( dir, segment_nr ) ).toPath(),
+                                        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                        StandardOpenOption.APPEND );
+        }
+        return segment;
+    }
+
+/**
+ * private helper: append the header of a record, returns the offset of the payload
+*/
+    private long append_header( final String rid, final String kind, long length ) throws IOException
+    {
+        byte[] r = rid.getBytes( StandardCharsets.UTF_8 );
+        byte[] k = kind.getBytes( StandardCharsets.UTF_8 );
+        ByteBuffer hdr = ByteBuffer.allocate( 4 + 2 + r.length + 1 + k.length + 8 );
+        hdr.putInt( MAGIC ).putShort( ( short )r.length ).put( r ).put( ( byte )k.length ).put( k ).putLong( length );
+        hdr.flip();
+        FileChannel ch = segment_for( hdr.remaining() + length );
+        while ( hdr.hasRemaining() )
+            ch.write( hdr );
+        return ch.position();
+    }
+
+/**
+ * private helper: remember the index-line of a record, write the batch if it is full or old
+*/
+    private void add_index( final String rid, final String kind, long offset, long length ) throws IOException
+    {
+        if ( index_batch.isEmpty() )
+            batch_since = System.currentTimeMillis();
+        index_batch.add( String.format( "%s\t%s\t%d\t%d\n", rid, kind, offset, length ) );
+        if ( index_batch.size() >= INDEX_BATCH || System.currentTimeMillis() - batch_since > INDEX_MAX_AGE_MS )
+            flush_index();
+    }
+
+/**
+ * append one result
+ *
+ * @param rid       id of the request
+ * @param kind      kind of the result, KIND_ASN1, KIND_TXT or KIND_ERRORS
+ * @param payload   bytes of the result
+ * @return          success of operation
+*/
+    public synchronized boolean append( final String rid, final String kind, final byte[] payload )
+    {
+        try
+        {
+            long offset = append_header( rid, kind, payload.length );
+            ByteBuffer buf = ByteBuffer.wrap( payload );
+            while ( buf.hasRemaining() )
+                segment.write( buf );
+            add_index( rid, kind, offset, payload.length );
+            return true;
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+/**
+ * append lines of text, one line per string
+ *
+ * @param rid       id of the request
+ * @param kind      kind of the result, KIND_TXT or KIND_ERRORS
+ * @param lines     lines to be appended
+ * @return          success of operation
+*/
+    public boolean append( final String rid, final String kind, final List< String > lines )
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( String line : lines )
+            sb.append( line ).append( '\n' );
+        return append( rid, kind, sb.toString().getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+/**
+ * append the execution-records of a request as json-lines, kind KIND_CHUNKS
+ * - the records are rendered here, by the log
+ *
+ * @param rid       id of the request
+ * @param records   records of the chunks of the request
+ * @return          success of operation
+ * @see             BC_CHUNK_RECORD
+*/
+    public boolean append_records( final String rid, final List< BC_CHUNK_RECORD > records )
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try
+        {
+            BC_RESULT_WRITER.records( records ).write( os );
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+            return false;
+        }
+        return append( rid, KIND_CHUNKS, os.toByteArray() );
+    }
+
+/**
+ * append the asn1 of the results, streamed into the segment
+ *
+ * @param rid       id of the request
+ * @param results   merged results of the request
+ * @return          success of operation
+ * @see             BC_RESULTS
+*/
+    public synchronized boolean append( final String rid, final BC_RESULTS results )
+    {
+        try
+        {
+            long length = results.size();
+            long offset = append_header( rid, KIND_ASN1, length );
+            results.write_to( segment );
+            add_index( rid, KIND_ASN1, offset, length );
+            return true;
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+/**
+ * append the text of the results in one text-format
+ *
+ * @param rid       id of the request
+ * @param format    the text-format, used as kind, for instance 'tabular'
+ * @param results   merged results of the request
+ * @param f         index of the text-format, in the order they were rendered
+ * @return          success of operation
+ * @see             BC_RESULT_FORMAT
+*/
+    public boolean append( final String rid, final String format, final BC_RESULTS results, int f )
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try
+        {
+            results.write_text_to( f, os );
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+            return false;
+        }
+        return append( rid, format, os.toByteArray() );
+    }
+
+/**
+ * write the pending index-lines and close the current segment, called at exit
+*/
+    public synchronized void close()
+    {
+        try
+        {
+            close_segment();
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+        }
+    }
+
+/**
+ * private helper: copy length bytes at offset of a segment into a stream
+*/
+    private static void copy( final File seg, long offset, long length, final OutputStream os ) throws IOException
+    {
+        try ( RandomAccessFile f = new RandomAccessFile( seg, "r" ) )
+        {
+            f.getChannel().transferTo( offset, length, Channels.newChannel( os ) );
+        }
+    }
+
+/**
+ * private helper: read the records of a segment from their headers, for results not yet indexed
+*/
+    private static List< String > scan( final File seg ) throws IOException
+    {
+        List< String > res = new ArrayList<>();
+        try ( RandomAccessFile f = new RandomAccessFile( seg, "r" ) )
+        {
+            long pos = 0;
+            long size = f.length();
+            while ( pos + 4 <= size )
+            {
+                f.seek( pos );
+                if ( f.readInt() != MAGIC )
+                    break;
+                byte[] r = new byte[ f.readUnsignedShort() ];
+                f.readFully( r );
+                byte[] k = new byte[ f.readUnsignedByte() ];
+                f.readFully( k );
+                long length = f.readLong();
+                long offset = f.getFilePointer();
+                if ( offset + length > size )
+                    break;  /* incomplete last record */
+                res.add( String.format( "%s\t%s\t%d\t%d", new String( r, StandardCharsets.UTF_8 ),
+                                        new String( k, StandardCharsets.UTF_8 ), offset, length ) );
+                pos = offset + length;
+            }
+        }
+        return res;
+    }
+
+/**
+ * all records of a segment: from its index, or by scanning it if the index is incomplete
+ *
+ * @param seg   segment-file
+ * @return      lines 'rid kind offset length'
+*/
+    static List< String > records( final File seg ) throws IOException
+    {
+        List< String > res = new ArrayList<>();
+        File idx = new File( seg.getPath().replaceAll( "\\.seg$", ".idx" ) );
+        long indexed_to = 0;
+        if ( idx.exists() )
+        {
+            try ( BufferedReader br = new BufferedReader( new FileReader( idx ) ) )
+            {
+                String line;
+                while ( ( line = br.readLine() ) != null )
+                {
+                    String[] parts = line.split( "\t" );
+                    if ( parts.length == 4 )
+                    {
+                        res.add( line );
+                        indexed_to = Long.parseLong( parts[ 2 ] ) + Long.parseLong( parts[ 3 ] );
+                    }
+                }
+            }
+        }
+        if ( indexed_to < seg.length() )
+            return scan( seg );
+        return res;
+    }
+
+/**
+ * the latest record of every request of one kind, in the order the requests were written
+ * - one pass over the indexes, for tools reading all results ( LOCATION_REPORT )
+ *
+ * @param a_dir     directory of the segments
+ * @param kind      kind of the results
+ * @return          map of request-id to location
+*/
+    public static Map< String, LOCATION > latest( final String a_dir, final String kind ) throws IOException
+    {
+        Map< String, LOCATION > res = new LinkedHashMap<>();
+        for ( File seg : segments( a_dir ) )
+        {
+            for ( String line : records( seg ) )
+            {
+                String[] parts = line.split( "\t" );
+                if ( parts[ 1 ].equals( kind ) )
+                    res.put( parts[ 0 ], new LOCATION( seg, Long.parseLong( parts[ 2 ] ), Long.parseLong( parts[ 3 ] ) ) );
+            }
+        }
+        return res;
+    }
+
+/**
+ * read the payload of one record
+ *
+ * @param loc       location from latest()
+ * @return          the payload
+*/
+    public static byte[] read( final LOCATION loc ) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream( ( int )loc.length );
+        copy( loc.segment, loc.offset, loc.length, os );
+        return os.toByteArray();
+    }
+
+/**
+ * write one result into a stream
+ * - the segments are searched from the newest, the search stops at the
+ *   first segment holding the result
+ *
+ * @param a_dir     directory of the segments
+ * @param rid       id of the request
+ * @param kind      kind of the result
+ * @param os        stream to write into
+ * @return          was the result found, the last one if it was written more than once
+*/
+    public static boolean extract( final String a_dir, final String rid, final String kind,
+                                   final OutputStream os ) throws IOException
+    {
+        List< File > segs = segments( a_dir );
+        Collections.reverse( segs );
+        for ( File seg : segs )
+        {
+            LOCATION found = null;
+            for ( String line : records( seg ) )
+            {
+                String[] parts = line.split( "\t" );
+                if ( parts[ 0 ].equals( rid ) && parts[ 1 ].equals( kind ) )
+                    found = new LOCATION( seg, Long.parseLong( parts[ 2 ] ), Long.parseLong( parts[ 3 ] ) );
+            }
+            if ( found != null )
+            {
+                copy( found.segment, found.offset, found.length, os );
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main( String[] args ) throws Exception
+    {
+        if ( args.length < 2 )
+        {
+            System.out.println( "usage: BC_RESULT_LOG report-dir rid [asn1|txt|errors|chunks|tabular|json] [out-file]" );
+            System.out.println( "       BC_RESULT_LOG report-dir --list" );
+            return;
+        }
+        if ( args[ 1 ].equals( "--list" ) )
+        {
+            for ( File seg : segments( args[ 0 ] ) )
+            {
+                for ( String line : records( seg ) )
+                    System.out.println( String.format( "%s\t%s", seg.getName(), line ) );
+            }
+            return;
+        }
+        String kind = args.length > 2 ? args[ 2 ] : KIND_ASN1;
+        boolean found;
+        if ( args.length > 3 )
+        {
+            try ( OutputStream os = new FileOutputStream( args[ 3 ] ) )
+            {
+                found = extract( args[ 0 ], args[ 1 ], kind, os );
+            }
+        }
+        else
+        {
+            found = extract( args[ 0 ], args[ 1 ], kind, System.out );
+            System.out.flush();
+        }
+        if ( !found )
+        {
+            System.err.println( String.format( "'%s' ( %s ) not found in '%s'", args[ 1 ], kind, args[ 0 ] ) );
+            System.exit( 1 );
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.File;
+
+import java.net.URI;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * uploads the result-files of the requests into the result-bucket in the background
+ * - lives only on the master, owned by the application-context
+ * - the jobs hand over the files they wrote into the report-dir, the upload
+ *   never blocks a job: if the queue is full the file waits in a list of
+ *   deferred files, which are queued as uploads finish and drained at close
+ * - a few threads upload from the local file with resumable uploads, so a
+ *   large result is never held in memory
+ * - the object-name is made from the pattern: '%s' is replaced by the name of
+ *   the file, a pattern without '%s' is a directory
+ * - counts the uploads and their latency, printed by the 'I' command
+ *
+ * @see        BC_SETTINGS
+ * @see        BC_GCP_TOOLS
+*/
+public final class BC_RESULT_UPLOADER
+{
+/**
+ * the upload of one file, BC_GCP_TOOLS or a fake in the tests
+ *
+*/
+    interface SINK
+    {
+        long upload( final String bucket, final String name, final String filename );
+    }
+
+    private final String bucket;
+    private final String pattern;
+    private final ThreadPoolExecutor pool;
+    private final SINK sink;
+    private final ConcurrentLinkedDeque< String > deferred;
+    private final AtomicLong uploaded;
+    private final AtomicLong failed;
+    private final AtomicLong bytes;
+    private final AtomicLong total_ms;
+    private final AtomicLong max_ms;
+    private final Logger logger;
+
+/**
+ * create instance of BC_RESULT_UPLOADER
+ * - without a result-bucket in the settings nothing is uploaded
+ *
+ * @param settings  application-settings
+*/
+    public BC_RESULT_UPLOADER( final BC_SETTINGS settings )
+    {
+        this( settings, ( b, name, filename ) -> BC_GCP_TOOLS.upload_file( b, name, filename, null ) );
+    }
+
+/**
+ * create instance of BC_RESULT_UPLOADER with its own upload-function
+ *
+ * @param settings  application-settings
+ * @param a_sink    uploads one file, returns the number of bytes uploaded
+*/
+    BC_RESULT_UPLOADER( final BC_SETTINGS settings, final SINK a_sink )
+    {
+        String a_bucket = settings.res_gs_bucket;
+        String prefix = "";
+        try
+        {
+            URI uri = new URI( a_bucket );
+            if ( "gs".equals( uri.getScheme() ) )
+            {
+                a_bucket = uri.getAuthority();
+                if ( uri.getPath() != null && uri.getPath().length() > 1 )
+                    prefix = uri.getPath().substring( 1 );
+            }
+        }
+        catch ( Exception e ) { }
+        if ( !prefix.isEmpty() && !prefix.endsWith( "/" ) )
+            prefix = prefix + "/";
+        bucket = a_bucket;
+        pattern = prefix + ( settings.res_gs_pattern.contains( "%s" ) ? settings.res_gs_pattern
+                                                                     : settings.res_gs_pattern + "/%s" );
+        if ( settings.res_use_gs_bucket && !bucket.isEmpty() )
+        {
+            int threads = Math.max( settings.res_upload_threads, 1 );
+            pool = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+                                           new ArrayBlockingQueue< Runnable >( Math.max( settings.res_upload_queue, 1 ) ),
+                                           r ->
+                                           {
+                                               Thread t = new Thread( r, "result-upload" );
+                                               t.setDaemon( true );
+                                               return t;
+                                           } );
+        }
+        else
+            pool = null;
+        sink = a_sink;
+        deferred = new ConcurrentLinkedDeque<>();
+        uploaded = new AtomicLong( 0 );
+        failed = new AtomicLong( 0 );
+        bytes = new AtomicLong( 0 );
+        total_ms = new AtomicLong( 0 );
+        max_ms = new AtomicLong( 0 );
+        logger = LogManager.getLogger( BC_RESULT_UPLOADER.class );
+    }
+
+/**
+ * object-name of a result-file
+ *
+ * @param pattern   pattern of the object-names, with '%s' for the file-name
+ * @param filename  path of the local file
+ * @return          name of the object in the bucket
+*/
+    static String object_name( final String pattern, final String filename )
+    {
+        String name = new File( filename ).getName();
+        String res = pattern.replace( "%s", name );
+        while ( res.startsWith( "/" ) )
+            res = res.substring( 1 );
+        return res.replace( "//", "/" );
+    }
+
+/**
+ * are the results uploaded at all ?
+ *
+ * @return  is a result-bucket configured
+*/
+    public boolean enabled()
+    {
+        return pool != null;
+    }
+
+/**
+ * queue a result-file for upload, never blocks
+ * - if the queue is full, the file is deferred until an upload has finished
+ *
+ * @param filename  path of the local file
+ * @return          was the file queued or deferred
+*/
+    public boolean upload( final String filename )
+    {
+        if ( pool == null || !new File( filename ).exists() )
+            return false;
+        if ( !submit( filename ) )
+        {
+            deferred.addLast( filename );
+            logger.info( String.format( "upload-queue full, '%s' deferred", filename ) );
+        }
+        return true;
+    }
+
+/**
+ * private helper: hand one file to the pool
+ *
+ * @param filename  path of the local file
+ * @return          was there room in the queue
+*/
+    private boolean submit( final String filename )
+    {
+        try
+        {
+            pool.execute( () -> upload_one( filename ) );
+            return true;
+        }
+        catch ( RejectedExecutionException e )
+        {
+            return false;
+        }
+    }
+
+/**
+ * private helper: queue deferred files while there is room, called after each upload
+*/
+    private void resubmit_deferred()
+    {
+        String filename;
+        while ( ( filename = deferred.pollFirst() ) != null )
+        {
+            if ( !submit( filename ) )
+            {
+                deferred.addFirst( filename );
+                return;
+            }
+        }
+    }
+
+/**
+ * private helper: upload one file, runs on a thread of the pool
+*/
+    private void upload_one( final String filename )
+    {
+        try
+        {
+            upload_now( filename );
+        }
+        finally
+        {
+            if ( !pool.isShutdown() )
+                resubmit_deferred();
+        }
+    }
+
+/**
+ * private helper: upload one file and count it
+*/
+    private void upload_now( final String filename )
+    {
+        String name = object_name( pattern, filename );
+        long start = System.currentTimeMillis();
+        long size = new File( filename ).length();
+        long n = sink.upload( bucket, name, filename );
+        long ms = System.currentTimeMillis() - start;
+        if ( n == size )
+        {
+            uploaded.incrementAndGet();
+            bytes.addAndGet( n );
+            total_ms.addAndGet( ms );
+            max_ms.accumulateAndGet( ms, Math::max );
+        }
+        else
+        {
+            failed.incrementAndGet();
+            logger.info( String.format( "upload of '%s' to 'gs://%s/%s' failed", filename, bucket, name ) );
+        }
+    }
+
+/**
+ * state of the uploads
+ *
+ * @return  one line
+*/
+    public String report()
+    {
+        long n = uploaded.get();
+        return String.format( "result-upload: %d queued, %d deferred, %,d uploaded ( %,d KB, avg %,d ms, max %,d ms ), %d failed",
+                              pool != null ? pool.getQueue().size() + pool.getActiveCount() : 0, deferred.size(),
+                              n, bytes.get() >> 10, total_ms.get() / Math.max( n, 1 ), max_ms.get(),
+                              failed.get() );
+    }
+
+/**
+ * finish the queued uploads, then upload the deferred files, called at exit
+*/
+    public void close()
+    {
+        if ( pool != null )
+        {
+            pool.shutdown();
+            try
+            {
+                pool.awaitTermination( 10, TimeUnit.MINUTES );
+            }
+            catch ( InterruptedException e ) { }
+            String filename;
+            while ( ( filename = deferred.pollFirst() ) != null )
+                upload_now( filename );
+        }
+    }
+}
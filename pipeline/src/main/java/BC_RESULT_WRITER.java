@@ -0,0 +1,388 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * writes the result- and report-files of the requests in the background, optionally gzip-compressed
+ * - lives only on the master, owned by the application-context
+ * - one writer-thread, the files are written in the order they were handed over:
+ *   the report of a request is written last and can contain the output-stats of its files
+ * - at most 'queue' files wait, a job handing over more waits for the writer
+ * - 'gzip' appends '.gz' to the file-name, the Deflater-instances are pooled and reset
+ *   instead of being created ( and their native memory allocated ) per file
+ * - a written file is handed to a consumer, the result-uploader
+ *
+ * @see        BC_SETTINGS
+ * @see        BC_RESULT_UPLOADER
+*/
+public final class BC_RESULT_WRITER
+{
+    public static final String NONE = "none";
+    public static final String GZIP = "gzip";
+
+    private static final byte[] GZIP_HEADER = { 0x1f, ( byte )0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, ( byte )0xff };
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+/**
+ * produces the content of a file
+*/
+    public interface CONTENT
+    {
+        void write( final OutputStream os ) throws IOException;
+    }
+
+/**
+ * output-stats of the files of one request, filled by the writer-thread
+*/
+    public static final class STATS
+    {
+        private final AtomicLong files = new AtomicLong( 0 );
+        private final AtomicLong raw = new AtomicLong( 0 );
+        private final AtomicLong written = new AtomicLong( 0 );
+        private final AtomicLong ms = new AtomicLong( 0 );
+
+        void add( long a_raw, long a_written, long a_ms )
+        {
+            files.incrementAndGet();
+            raw.addAndGet( a_raw );
+            written.addAndGet( a_written );
+            ms.addAndGet( a_ms );
+        }
+
+        public long raw_bytes() { return raw.get(); }
+        public long written_bytes() { return written.get(); }
+
+/**
+ * the stats as one line for the report of the request
+ *
+ * @param compression   the compression used
+ * @return              one line
+*/
+        public String report( final String compression )
+        {
+            return String.format( "output: %d files, %,d -> %,d bytes ( %.1f%% ) %s, %d ms",
+                                  files.get(), raw.get(), written.get(),
+                                  ( 100.0 * written.get() ) / Math.max( raw.get(), 1 ), compression, ms.get() );
+        }
+    }
+
+/**
+ * counts the bytes written through it
+*/
+    private static final class COUNTING_STREAM extends FilterOutputStream
+    {
+        long count = 0;
+
+        COUNTING_STREAM( final OutputStream os ) { super( os ); }
+
+        @Override public void write( int b ) throws IOException
+        {
+            out.write( b );
+            count += 1;
+        }
+
+        @Override public void write( byte[] b, int off, int len ) throws IOException
+        {
+            out.write( b, off, len );
+            count += len;
+        }
+    }
+
+/**
+ * gzip-stream over a pooled Deflater, GZIPOutputStream always creates its own
+*/
+    private static final class GZIP_STREAM extends DeflaterOutputStream
+    {
+        private final CRC32 crc = new CRC32();
+        private long size = 0;
+        private boolean finished = false;
+
+        GZIP_STREAM( final OutputStream os, final Deflater deflater ) throws IOException
+        {
+            super( os, deflater, 64 * 1024 );
+            os.write( GZIP_HEADER );
+        }
+
+        @Override public void write( byte[] b, int off, int len ) throws IOException
+        {
+            super.write( b, off, len );
+            crc.update( b, off, len );
+            size += len;
+        }
+
+        @Override public void finish() throws IOException
+        {
+            if ( finished )
+                return;
+            finished = true;
+            super.finish();
+            long c = crc.getValue();
+            byte[] trailer = new byte[ 8 ];
+            for ( int i = 0; i < 4; ++i )
+            {
+                trailer[ i ] = ( byte )( c >>> ( 8 * i ) );
+                trailer[ 4 + i ] = ( byte )( size >>> ( 8 * i ) );
+            }
+            out.write( trailer );
+        }
+    }
+
+    private final String compression;
+    private final int level;
+    private final ConcurrentLinkedQueue< Deflater > deflaters;
+    private final ThreadPoolExecutor pool;
+    private final Consumer< String > on_written;
+    private final AtomicLong written;
+    private final AtomicLong failed;
+    private final Logger logger;
+
+/**
+ * create instance of BC_RESULT_WRITER
+ *
+ * @param a_compression 'none' or 'gzip'
+ * @param a_level       compression-level 1...9
+ * @param queue         at most this many files wait for the writer
+ * @param a_on_written  gets the name of each written file, can be null
+*/
+    public BC_RESULT_WRITER( final String a_compression, int a_level, int queue, final Consumer< String > a_on_written )
+    {
+        compression = GZIP.equals( a_compression ) ? GZIP : NONE;
+        level = Math.max( 1, Math.min( a_level, 9 ) );
+        deflaters = new ConcurrentLinkedQueue<>();
+        pool = new ThreadPoolExecutor( 1, 1, 60, TimeUnit.SECONDS,
+                                       new ArrayBlockingQueue< Runnable >( Math.max( queue, 1 ) ),
+                                       r ->
+                                       {
+                                           Thread t = new Thread( r, "result-writer" );
+                                           t.setDaemon( true );
+                                           return t;
+                                       },
+                                       ( r, executor ) ->
+                                       {
+                                           /* the queue is full: the job waits for the writer, after close() it writes itself */
+                                           if ( executor.isShutdown() )
+                                               r.run();
+                                           else
+                                           {
+                                               try { executor.getQueue().put( r ); }
+                                               catch ( InterruptedException e ) { Thread.currentThread().interrupt(); }
+                                           }
+                                       } );
+        on_written = a_on_written;
+        written = new AtomicLong( 0 );
+        failed = new AtomicLong( 0 );
+        logger = LogManager.getLogger( BC_RESULT_WRITER.class );
+    }
+
+/**
+ * the compression used
+ *
+ * @return  'none' or 'gzip'
+*/
+    public String compression()
+    {
+        return compression;
+    }
+
+/**
+ * the name a file is written under
+ *
+ * @param filename  path of the uncompressed file
+ * @return          path with '.gz' appended, if compressed
+*/
+    public String file_name( final String filename )
+    {
+        return GZIP.equals( compression ) ? filename + ".gz" : filename;
+    }
+
+/**
+ * number of Deflater-instances waiting in the pool, for tests
+*/
+    int pooled()
+    {
+        return deflaters.size();
+    }
+
+/**
+ * content writing lines of text
+ *
+ * @param lines     the lines, a newline is appended to each
+ * @return          content for write()
+*/
+    public static CONTENT lines( final List< String > lines )
+    {
+        return os ->
+        {
+            for ( String line : lines )
+            {
+                os.write( line.getBytes( StandardCharsets.UTF_8 ) );
+                os.write( '\n' );
+            }
+        };
+    }
+
+/**
+ * content writing execution-records as json-lines, rendered when written
+ *
+ * @param records   the records of the chunks of a request
+ * @return          content for write()
+ * @see             BC_CHUNK_RECORD
+*/
+    public static CONTENT records( final List< BC_CHUNK_RECORD > records )
+    {
+        return os ->
+        {
+            for ( BC_CHUNK_RECORD rec : records )
+            {
+                os.write( rec.to_json().getBytes( StandardCharsets.UTF_8 ) );
+                os.write( '\n' );
+            }
+        };
+    }
+
+/**
+ * private helper: write one file on the writer-thread, counts raw and written bytes
+*/
+    private void write_one( final String filename, final CONTENT content, final STATS stats )
+    {
+        long start = System.currentTimeMillis();
+        boolean ok = BC_UTILS.create_paths_if_neccessary( filename );
+        long raw = 0;
+        if ( ok )
+        {
+            Deflater deflater = null;
+            try ( OutputStream fos = new BufferedOutputStream( new FileOutputStream( filename ), BUFFER_SIZE ) )
+            {
+                OutputStream os = fos;
+                if ( GZIP.equals( compression ) )
+                {
+                    deflater = deflaters.poll();
+                    if ( deflater == null )
+                        deflater = new Deflater( level, true );
+                    os = new GZIP_STREAM( fos, deflater );
+                }
+                COUNTING_STREAM counter = new COUNTING_STREAM( os );
+                content.write( counter );
+                if ( os instanceof GZIP_STREAM )
+                    ( ( GZIP_STREAM )os ).finish();
+                raw = counter.count;
+            }
+            catch ( Exception e )
+            {
+                e.printStackTrace();
+                ok = false;
+            }
+            finally
+            {
+                if ( deflater != null )
+                {
+                    deflater.reset();
+                    deflaters.offer( deflater );
+                }
+            }
+        }
+        if ( ok )
+        {
+            written.incrementAndGet();
+            if ( stats != null )
+                stats.add( raw, new File( filename ).length(), System.currentTimeMillis() - start );
+            if ( on_written != null )
+                on_written.accept( filename );
+        }
+        else
+        {
+            failed.incrementAndGet();
+            logger.info( String.format( "writing '%s' failed", filename ) );
+        }
+    }
+
+/**
+ * hand a file over to the writer-thread, waits only if the queue is full
+ *
+ * @param filename  path of the uncompressed file, see file_name()
+ * @param content   produces the content, called on the writer-thread
+ * @param stats     stats of the request to add the file to, can be null
+ * @return          path the file is written to
+*/
+    public String write( final String filename, final CONTENT content, final STATS stats )
+    {
+        final String name = file_name( filename );
+        pool.execute( () -> write_one( name, content, stats ) );
+        return name;
+    }
+
+/**
+ * state of the writer
+ *
+ * @return  one line
+*/
+    public String report()
+    {
+        return String.format( "result-writer: %s, %d queued, %,d written, %d failed",
+                              GZIP.equals( compression ) ? String.format( "gzip -%d", level ) : NONE,
+                              pool.getQueue().size() + pool.getActiveCount(), written.get(), failed.get() );
+    }
+
+/**
+ * finish the queued files, called at exit
+*/
+    public void close()
+    {
+        pool.shutdown();
+        try
+        {
+            pool.awaitTermination( 10, TimeUnit.MINUTES );
+        }
+        catch ( InterruptedException e ) { }
+        Deflater d;
+        while ( ( d = deflaters.poll() ) != null )
+            d.end();
+    }
+}
@@ -28,6 +28,7 @@ package gov.nih.nlm.ncbi.blastjni;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -52,15 +53,36 @@ public final class BC_SETTINGS
 
     /* DATABASES */
     HashMap< String, BC_DATABASE_SETTING > dbs; // configured via ini.json section
+    public String manifest_dir = "";        /* where the chunk-manifests are stored, dflt: next to the settings-file */
+    public int manifest_max_age = 1440;     /* minutes a manifest is used instead of listing the source, 0...never */
+    public int manifest_samples = 4;        /* how many chunk-files of a manifest are checked against the source */
+    public int peer_port = 0;               /* port of the chunk-servers on the executors, 0...no peer-to-peer copies */
+    public int peer_mb_per_sec = 100;       /* bandwidth-cap of one chunk-server in MB/s, 0...no cap */
+    public int prefetch_depth = 1;          /* read this many chunks of a partition ahead of the search, 0...off */
+    public int prefetch_mb = 1024;          /* read at most this many MB ahead per task */
+    public int download_slots = 0;          /* downloads running at once per host, 0...no limit */
+    public int download_mb_per_sec = 0;     /* download-bandwidth per host in MB/s, 0...no cap */
+    public int gcs_connections = 0;         /* keep-alive connections to GCS per JVM, 0...JDK-default */
+    public int gcs_retries = 3;             /* retry GCS-calls failing with a transient error */
+    public int gcs_hedge_percentile = 0;    /* hedge GCS-reads slower than this percentile, 0...never */
+    public int list_threads = 1;            /* list request-buckets with this many threads, 1...no sharding */
 
     /* RESULTS */
     public boolean res_use_gs_bucket = false;
     public String res_gs_bucket = "";
     public String res_gs_pattern = "";
+    public int res_upload_threads = 2;      /* upload the results with this many threads */
+    public int res_upload_queue = 64;       /* at most this many files wait for upload */
     public boolean res_use_files = false;
     public String res_files_dir = "";
     public String res_files_pattern = "";
     public String report_dir = "report";
+    public String report_layout = "files";  /* 'files'...one file per result, 'segments'...append to a result-log */
+    public int report_segment_mb = 256;     /* start a new segment of the result-log above this size */
+    public List< String > res_formats;      /* output-formats: 'asn1', 'tabular', 'json', dflt: [ 'asn1' ] */
+    public String res_compression = "none"; /* compress the result- and report-files: 'none' or 'gzip' */
+    public int res_compression_level = 6;   /* gzip-level 1...9 */
+    public int res_write_queue = 16;        /* at most this many files wait for the result-writer */
 
     /* CLUSTER */
     public List< String > transfer_files;
@@ -94,6 +116,8 @@ public final class BC_SETTINGS
         dbs = new HashMap<>();
         transfer_files = new ArrayList<>();
         debug = new BC_DEBUG_SETTINGS();
+        res_formats = new ArrayList<>();
+        res_formats.add( BC_RESULT_FORMAT.ASN1 );
     }
 
 /**
@@ -140,6 +164,12 @@ public final class BC_SETTINGS
 */
     private boolean res_valid()
     {
+        String unknown = BC_RESULT_FORMAT.first_unknown( res_formats );
+        if ( unknown != null )
+        {
+            System.out.println( String.format( "BC_SETTINGS : unknown result-format '%s'", unknown ) );
+            return false;
+        }
         /*
         >>> when code for these special result-destinations has been added
             these test will make sense
@@ -180,6 +210,17 @@ public final class BC_SETTINGS
         return req_valid() && dbs_valid() && res_valid() && transfer_files_present();
     }
 
+/**
+ * are the results appended to the segments of a result-log, instead of one file per result ?
+ *
+ * @return      is the report-layout 'segments' ?
+ * @see         BC_RESULT_LOG
+*/
+    public boolean segmented_report()
+    {
+        return "segments".equals( report_layout );
+    }
+
 /**
  * convert all settings to a string
  *
@@ -199,11 +240,35 @@ public final class BC_SETTINGS
         S = S + "\nDATABASES:\n";
         for ( BC_DATABASE_SETTING e : dbs.values() )
             S = S + e.toString();
+        if ( manifest_max_age > 0 )
+            S = S + String.format( "\tmanifests .......... '%s', max. age %d minutes, %d samples\n",
+                                   manifest_dir, manifest_max_age, manifest_samples );
+        if ( peer_port > 0 )
+            S = S + String.format( "\tchunk-servers ...... port %d, max. %d MB/s\n", peer_port, peer_mb_per_sec );
+        if ( download_slots > 0 || download_mb_per_sec > 0 )
+            S = S + String.format( "\tdownloads per host . %d slots, max. %d MB/s\n", download_slots, download_mb_per_sec );
+        S = S + String.format( "\tgcs client ......... %s connections, %d retries, hedge %s\n",
+                               gcs_connections > 0 ? Integer.toString( gcs_connections ) : "default", gcs_retries,
+                               gcs_hedge_percentile > 0 ? String.format( "above p%d", gcs_hedge_percentile ) : "off" );
+        S = S + String.format( "\tlist threads ....... %d\n", list_threads );
+        if ( prefetch_depth > 0 )
+            S = S + String.format( "\tprefetch ........... %d chunks, max. %d MB\n", prefetch_depth, prefetch_mb );
 
-        if ( res_use_gs_bucket || res_use_files )
+        boolean only_asn1 = res_formats.equals( Arrays.asList( BC_RESULT_FORMAT.ASN1 ) );
+        if ( res_use_gs_bucket || res_use_files || segmented_report() || !only_asn1 ||
+             !BC_RESULT_WRITER.NONE.equals( res_compression ) )
             S = S + "\nRESULTS:\n";
+        if ( !only_asn1 )
+            S = S + String.format( "\tformats ............ %s\n", res_formats );
+        if ( !BC_RESULT_WRITER.NONE.equals( res_compression ) )
+            S = S + String.format( "\tcompression ........ %s -%d, queue %d\n", res_compression,
+                                   res_compression_level, res_write_queue );
+        if ( segmented_report() )
+            S = S + String.format( "\tresult-log ......... %s/results.*.seg ( %d MB segments )\n", report_dir,
+                                   report_segment_mb );
         if ( res_use_gs_bucket )
-            S = S + String.format( "\tbucket ............. %s/%s\n", res_gs_bucket, res_gs_pattern );
+            S = S + String.format( "\tbucket ............. %s/%s ( %d threads, queue %d )\n", res_gs_bucket, res_gs_pattern,
+                                   res_upload_threads, res_upload_queue );
         if ( res_use_files )
             S = S + String.format( "\tfiles .............. %s/%s\n", res_files_dir, res_files_pattern );
 
@@ -29,6 +29,7 @@ package gov.nih.nlm.ncbi.blastjni;
 import java.util.List;
 import java.util.ArrayList;
 import java.io.FileReader;
+import java.io.File;
 
 import org.apache.spark.SparkConf;
 
@@ -181,6 +182,74 @@ class DATABASES_SETTINGS_READER
     private static final String key_ext = "extensions";
     private static final String key_direct = "direct";
     private static final String key_limit = "limit";
+    private static final String key_download_segment_mb = "download_segment_mb";
+    private static final String key_download_threads = "download_threads";
+    private static final String key_download_retries = "download_retries";
+    private static final String key_versioned = "versioned";
+    private static final String key_refresh_minutes = "refresh_minutes";
+    private static final String key_num_partitions = "num_partitions";
+    private static final String key_partition_by = "partition_by";
+    private static final String key_split_factor = "split_factor";
+    private static final String key_split_parts = "split_parts";
+    private static final String key_replicas = "replicas";
+    private static final String key_placement = "placement";
+
+/**
+ * extracts the settings of one database from the JsonObject
+ *
+ * @param   obj         JsonObject of one entry of the database-section
+ * @return  BC_DATABASE_SETTING-instance
+ * @see     BC_DATABASE_SETTING
+ * @see     BC_JSON_UTILS
+*/
+    public static BC_DATABASE_SETTING db_from_json( JsonObject obj )
+    {
+        BC_DATABASE_SETTING db_settings = new BC_DATABASE_SETTING();
+
+        db_settings.key = BC_JSON_UTILS.get_json_string( obj, key_db,
+            db_settings.key );
+        /* "worker_location" is one path, or a list of paths ( one per local disk ) */
+        if ( BC_JSON_UTILS.get_sub_array( obj, key_w_loc ) != null )
+        {
+            BC_JSON_UTILS.get_string_list( obj, key_w_loc, null, db_settings.worker_locations );
+            if ( !db_settings.worker_locations.isEmpty() )
+                db_settings.worker_location = db_settings.worker_locations.get( 0 );
+        }
+        else
+            db_settings.worker_location = BC_JSON_UTILS.get_json_string( obj,
+                key_w_loc, db_settings.worker_location );
+        db_settings.placement = BC_JSON_UTILS.get_json_string( obj,
+            key_placement, db_settings.placement );
+        db_settings.source_location = BC_JSON_UTILS.get_json_string( obj,
+            key_s_loc, db_settings.source_location );
+        BC_JSON_UTILS.get_string_list( obj, key_ext, "",
+            db_settings.extensions );
+        db_settings.direct = BC_JSON_UTILS.get_json_bool( obj,
+            key_direct, db_settings.direct );
+        db_settings.limit = BC_JSON_UTILS.get_json_int( obj,
+            key_limit, db_settings.limit );
+        db_settings.download_segment_mb = BC_JSON_UTILS.get_json_int( obj,
+            key_download_segment_mb, db_settings.download_segment_mb );
+        db_settings.download_threads = BC_JSON_UTILS.get_json_int( obj,
+            key_download_threads, db_settings.download_threads );
+        db_settings.download_retries = BC_JSON_UTILS.get_json_int( obj,
+            key_download_retries, db_settings.download_retries );
+        db_settings.versioned = BC_JSON_UTILS.get_json_bool( obj,
+            key_versioned, db_settings.versioned );
+        db_settings.refresh_minutes = BC_JSON_UTILS.get_json_int( obj,
+            key_refresh_minutes, db_settings.refresh_minutes );
+        db_settings.num_partitions = BC_JSON_UTILS.get_json_int( obj,
+            key_num_partitions, db_settings.num_partitions );
+        db_settings.partition_by = BC_JSON_UTILS.get_json_string( obj,
+            key_partition_by, db_settings.partition_by );
+        db_settings.split_factor = BC_JSON_UTILS.get_json_double( obj,
+            key_split_factor, db_settings.split_factor );
+        db_settings.split_parts = BC_JSON_UTILS.get_json_int( obj,
+            key_split_parts, db_settings.split_parts );
+        db_settings.replicas = BC_JSON_UTILS.get_json_int( obj,
+            key_replicas, db_settings.replicas );
+        return db_settings;
+    }
 
 /**
  * extracts all database-settings from the JsonObject
@@ -200,22 +269,7 @@ class DATABASES_SETTINGS_READER
             {
                 if ( e.isJsonObject() )
                 {
-                    JsonObject obj = e.getAsJsonObject();
-                    BC_DATABASE_SETTING db_settings = new BC_DATABASE_SETTING();
-
-                    db_settings.key = BC_JSON_UTILS.get_json_string( obj, key_db,
-                        db_settings.key );
-                    db_settings.worker_location = BC_JSON_UTILS.get_json_string( obj,
-                        key_w_loc, db_settings.worker_location );
-                    db_settings.source_location = BC_JSON_UTILS.get_json_string( obj,
-                        key_s_loc, db_settings.source_location );
-                    BC_JSON_UTILS.get_string_list( obj, key_ext, "",
-                        db_settings.extensions );
-                    db_settings.direct = BC_JSON_UTILS.get_json_bool( obj,
-                        key_direct, db_settings.direct );
-                    db_settings.limit = BC_JSON_UTILS.get_json_int( obj,
-                        key_limit, db_settings.limit );
-
+                    BC_DATABASE_SETTING db_settings = db_from_json( e.getAsJsonObject() );
                     if ( !db_settings.key.isEmpty() )
                         settings.dbs.put( db_settings.key, db_settings );
                 }
@@ -234,6 +288,8 @@ class RESULTS_BUCKET_SETTINGS_READER
     private static final String key_use = "use";
     private static final String key_bucket = "bucket";
     private static final String key_pattern = "pattern";
+    private static final String key_upload_threads = "upload_threads";
+    private static final String key_upload_queue = "upload_queue";
 
 /**
  * extracts all bucket-settings from the JsonObject
@@ -254,6 +310,10 @@ class RESULTS_BUCKET_SETTINGS_READER
                 key_bucket, settings.res_gs_bucket );
             settings.res_gs_pattern = BC_JSON_UTILS.get_json_string( obj,
                 key_pattern, settings.res_gs_pattern );
+            settings.res_upload_threads = BC_JSON_UTILS.get_json_int( obj,
+                key_upload_threads, settings.res_upload_threads );
+            settings.res_upload_queue = BC_JSON_UTILS.get_json_int( obj,
+                key_upload_queue, settings.res_upload_queue );
         }
     }
 }
@@ -299,6 +359,12 @@ class RESULTS_FILES_SETTINGS_READER
 class RESULTS_SETTINGS_READER
 {
     private static final String key = "results";
+    private static final String key_layout = "layout";
+    private static final String key_segment_mb = "segment_mb";
+    private static final String key_formats = "formats";
+    private static final String key_compression = "compression";
+    private static final String key_compression_level = "compression_level";
+    private static final String key_write_queue = "write_queue";
 
 /**
  * extracts all result-settings from the JsonObject
@@ -317,6 +383,20 @@ class RESULTS_SETTINGS_READER
         {
             RESULTS_BUCKET_SETTINGS_READER.from_json( obj, settings );
             RESULTS_FILES_SETTINGS_READER.from_json( obj, settings );
+            settings.report_layout = BC_JSON_UTILS.get_json_string( obj,
+                key_layout, settings.report_layout );
+            settings.report_segment_mb = BC_JSON_UTILS.get_json_int( obj,
+                key_segment_mb, settings.report_segment_mb );
+            List< String > formats = new ArrayList<>();
+            BC_JSON_UTILS.get_string_list( obj, key_formats, null, formats );
+            if ( !formats.isEmpty() )
+                settings.res_formats = formats;
+            settings.res_compression = BC_JSON_UTILS.get_json_string( obj,
+                key_compression, settings.res_compression );
+            settings.res_compression_level = BC_JSON_UTILS.get_json_int( obj,
+                key_compression_level, settings.res_compression_level );
+            settings.res_write_queue = BC_JSON_UTILS.get_json_int( obj,
+                key_write_queue, settings.res_write_queue );
         }
     }
 }
@@ -345,6 +425,19 @@ class CLUSTER_SETTINGS_READER
     private static final String  dflt_transfer_file = "libblastjni.so";
     private static final String key_predownload_dbs = "predownload_dbs";
     private static final boolean dflt_predownload_dbs = false;
+    private static final String key_manifest_dir = "manifest_dir";
+    private static final String key_manifest_max_age = "manifest_max_age_minutes";
+    private static final String key_manifest_samples = "manifest_samples";
+    private static final String key_peer_port = "peer_port";
+    private static final String key_peer_mb_per_sec = "peer_mb_per_sec";
+    private static final String key_prefetch_depth = "prefetch_depth";
+    private static final String key_prefetch_mb = "prefetch_mb";
+    private static final String key_download_slots = "download_slots";
+    private static final String key_download_mb_per_sec = "download_mb_per_sec";
+    private static final String key_gcs_connections = "gcs_connections";
+    private static final String key_gcs_retries = "gcs_retries";
+    private static final String key_gcs_hedge_percentile = "gcs_hedge_percentile";
+    private static final String key_list_threads = "list_threads";
 
 /**
  * extracts all cluster-settings from the JsonObject
@@ -389,6 +482,32 @@ class CLUSTER_SETTINGS_READER
                 key_jni_log_level, settings.jni_log_level );
             settings.predownload_dbs = BC_JSON_UTILS.get_json_bool( obj,
                 key_predownload_dbs, dflt_predownload_dbs );
+            settings.manifest_dir = BC_JSON_UTILS.get_json_string( obj,
+                key_manifest_dir, settings.manifest_dir );
+            settings.manifest_max_age = BC_JSON_UTILS.get_json_int( obj,
+                key_manifest_max_age, settings.manifest_max_age );
+            settings.manifest_samples = BC_JSON_UTILS.get_json_int( obj,
+                key_manifest_samples, settings.manifest_samples );
+            settings.peer_port = BC_JSON_UTILS.get_json_int( obj,
+                key_peer_port, settings.peer_port );
+            settings.peer_mb_per_sec = BC_JSON_UTILS.get_json_int( obj,
+                key_peer_mb_per_sec, settings.peer_mb_per_sec );
+            settings.prefetch_depth = BC_JSON_UTILS.get_json_int( obj,
+                key_prefetch_depth, settings.prefetch_depth );
+            settings.prefetch_mb = BC_JSON_UTILS.get_json_int( obj,
+                key_prefetch_mb, settings.prefetch_mb );
+            settings.download_slots = BC_JSON_UTILS.get_json_int( obj,
+                key_download_slots, settings.download_slots );
+            settings.download_mb_per_sec = BC_JSON_UTILS.get_json_int( obj,
+                key_download_mb_per_sec, settings.download_mb_per_sec );
+            settings.gcs_connections = BC_JSON_UTILS.get_json_int( obj,
+                key_gcs_connections, settings.gcs_connections );
+            settings.gcs_retries = BC_JSON_UTILS.get_json_int( obj,
+                key_gcs_retries, settings.gcs_retries );
+            settings.gcs_hedge_percentile = BC_JSON_UTILS.get_json_int( obj,
+                key_gcs_hedge_percentile, settings.gcs_hedge_percentile );
+            settings.list_threads = BC_JSON_UTILS.get_json_int( obj,
+                key_list_threads, settings.list_threads );
         }
     }
 }
@@ -490,6 +609,39 @@ public final class BC_SETTINGS_READER
                 CLUSTER_SETTINGS_READER.from_json( root, res );
                 DEBUG_SETTINGS_READER.from_json( root, res.debug, res.jni_log_level );
             }
+
+            /* the chunk-manifests live next to the settings-file, if not configured otherwise */
+            if ( res.manifest_dir.isEmpty() )
+            {
+                File parent = new File( json_file ).getAbsoluteFile().getParentFile();
+                res.manifest_dir = ( parent != null ) ? parent.getPath() : ".";
+            }
+        }
+        catch( Exception e )
+        {
+            System.out.println( String.format( "json-parsing: %s", e ) );
+        }
+        return res;
+    }
+
+/**
+ * parses the settings of one database, given as a json-object in the same format
+ * as an entry of the database-section, used to attach a database at runtime
+ *
+ * @param   src     json-string ( starting with '{' ) or path of a json-file
+ * @return  BC_DATABASE_SETTING-instance or null if it cannot be parsed
+ * @see     BC_DATABASE_SETTING
+ * @see     DATABASES_SETTINGS_READER
+*/
+    public static BC_DATABASE_SETTING read_database_setting( final String src )
+    {
+        BC_DATABASE_SETTING res = null;
+        try
+        {
+            JsonParser parser = new JsonParser();
+            JsonElement tree = src.trim().startsWith( "{" ) ? parser.parse( src ) : parser.parse( new FileReader( src ) );
+            if ( tree.isJsonObject() )
+                res = DATABASES_SETTINGS_READER.db_from_json( tree.getAsJsonObject() );
         }
         catch( Exception e )
         {
@@ -536,6 +688,15 @@ public final class BC_SETTINGS_READER
         if ( settings.num_executor_cores > 0 )
             conf.set( "spark.executor.cores", String.format( "%d", settings.num_executor_cores ) );
 
+        /* read by the executors, see BC_DOWNLOAD_GOVERNOR */
+        conf.set( BC_DOWNLOAD_GOVERNOR.KEY_SLOTS, String.format( "%d", settings.download_slots ) );
+        conf.set( BC_DOWNLOAD_GOVERNOR.KEY_MB_PER_SEC, String.format( "%d", settings.download_mb_per_sec ) );
+
+        /* read by the driver and the executors, see BC_GCP_TOOLS */
+        conf.set( BC_GCP_TOOLS.KEY_CONNECTIONS, String.format( "%d", settings.gcs_connections ) );
+        conf.set( BC_GCP_TOOLS.KEY_RETRIES, String.format( "%d", settings.gcs_retries ) );
+        conf.set( BC_GCP_TOOLS.KEY_HEDGE_PERCENTILE, String.format( "%d", settings.gcs_hedge_percentile ) );
+
         return conf;
     }
 }
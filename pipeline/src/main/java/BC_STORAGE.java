@@ -0,0 +1,115 @@
+/*===========================================================================
+*
+*                            PUBLIC DOMAIN NOTICE
+*               National Center for Biotechnology Information
+*
+*  This software/database is a "United States Government Work" under the
+*  terms of the United States Copyright Act.  It was written as part of
+*  the author's official duties as a United States Government employee and
+*  thus cannot be copyrighted.  This software/database is freely available
+*  to the public for use. The National Library of Medicine and the U.S.
+*  Government have not placed any restriction on its use or reproduction.
+*
+*  Although all reasonable efforts have been taken to ensure the accuracy
+*  and reliability of the software and data, the NLM and the U.S.
+*  Government do not and cannot warrant the performance or results that
+*  may be obtained by using this software or data. The NLM and the U.S.
+*  Government disclaim all warranties, express or implied, including
+*  warranties of performance, merchantability or fitness for any particular
+*  purpose.
+*
+*  Please cite the author in any work or product based on this material.
+*
+* ===========================================================================
+*
+*/
+
+
+package gov.nih.nlm.ncbi.blastjni;
+
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * storage-backend for database-chunks, requests and manifests
+ * - 'gs://bucket/...' is served by BC_GCS_STORAGE
+ * - 'file:///path/...' and plain paths ( local disk, on-prem mounts of a
+ *   shared filesystem ) are served by BC_LOCAL_STORAGE
+ *
+ * @see        BC_GCS_STORAGE
+ * @see        BC_LOCAL_STORAGE
+*/
+public interface BC_STORAGE
+{
+/**
+ * list all objects directly below an url ( bucket or directory )
+ *
+ * @param url       url of the bucket or directory
+ * @return          list of name/size-tuples, names relative to the url
+*/
+    List< BC_NAME_SIZE > list( final String url );
+
+/**
+ * list all objects directly below an url, reporting skipped objects
+ *
+ * @param url       url of the bucket or directory
+ * @param logger    logger of the caller
+ * @return          list of name/size-tuples, names relative to the url
+*/
+    default List< BC_NAME_SIZE > list( final String url, final Logger logger )
+    {
+        return list( url );
+    }
+
+/**
+ * open one object for reading
+ *
+ * @param url       url of the object
+ * @return          stream to read from, or null on error
+*/
+    InputStream open( final String url );
+
+/**
+ * copy one object to a local file, compressed objects ( '.gz' ) are decompressed
+ *
+ * @param url           url of the object
+ * @param dst_filename  absolute path of destination-file to be created
+ * @param segment_size  size of one range in bytes, 0...always use a single stream
+ * @param concurrency   how many ranges to fetch in parallel
+ * @param retries       how many times to retry a failed range
+ * @return              success of operation
+*/
+    boolean download( final String url, final String dst_filename,
+                      long segment_size, int concurrency, int retries );
+
+/**
+ * get the current generation of an object without reading it
+ *
+ * @param url       url of the object
+ * @return          generation, 0 if unknown, -1 if the object does not exist
+*/
+    long generation( final String url );
+
+/**
+ * the path of an url in the local filesystem, if the objects can be read in place
+ *
+ * @param url       url of a bucket, directory or object
+ * @return          absolute path, or null if the url is not in the local filesystem
+*/
+    String local_path( final String url );
+
+/**
+ * find the storage-backend for an url
+ *
+ * @param url       url of a bucket, directory or object
+ * @return          storage-backend serving this url
+*/
+    static BC_STORAGE of( final String url )
+    {
+        if ( url != null && url.startsWith( BC_GCS_STORAGE.SCHEME ) )
+            return BC_GCS_STORAGE.INSTANCE;
+        return BC_LOCAL_STORAGE.INSTANCE;
+    }
+}
@@ -75,16 +75,28 @@ public final class BLAST_TB_LIST implements Serializable, Comparable<BLAST_TB_LI
    */
   @Override
   public int compareTo(final BLAST_TB_LIST other) {
+    return compare(this, other);
+  }
+
+  /**
+   * static comparison on the primitive keys, same order as compareTo(),
+   * for sorting and merging without the Comparable-dispatch
+   *
+   * @param a first instance
+   * @param b second instance
+   * @return 0...equal, -1...a > b, +1...a < b
+   */
+  public static int compare(final BLAST_TB_LIST a, final BLAST_TB_LIST b) {
     // descending order
-      if (this.evalue != other.evalue) {
-          return -Integer.compare( this.evalue, other.evalue );
+      if (a.evalue != b.evalue) {
+          return -Integer.compare( a.evalue, b.evalue );
       }
 
-      if (this.score != other.score) {
-          return -Integer.compare( this.score, other.score );
+      if (a.score != b.score) {
+          return -Integer.compare( a.score, b.score );
       }
 
-      return -Integer.compare( this.seqid, other.seqid );
+      return -Integer.compare( a.seqid, b.seqid );
   }
 
   private static String toHex(final byte[] blob) {
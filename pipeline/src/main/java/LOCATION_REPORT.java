@@ -26,29 +26,52 @@
 
 package gov.nih.nlm.ncbi.blastjni;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 import java.nio.file.Paths;
 import java.nio.file.Files;
 import java.util.*;
 
+/**
+ * reports which worker searched which database-chunks, from the execution-records
+ * of the requests ( 'REQ_x.chunks.json', optionally gzip-compressed ), or from
+ * the records of kind 'chunks' in the result-log, if the results-layout is 'segments'
+ *
+ * usage: report-affinity.sh [report-dir] [--verbose]
+ *
+ * @see        BC_CHUNK_RECORD
+*/
 public final class LOCATION_REPORT
 {
-    private static int getReports( final String path, List< String > reports )
+    private static final String LOG_PREFIX = "log:";
+
+    private static int getReports( final String path, List< String > reports ) throws Exception
     {
         int res = 0;
         if (Files.notExists(Paths.get(path)))
             throw new IllegalArgumentException("Directory " + path + " does not exist");
 
+        /* results-layout 'segments' : one report per request in the result-log */
+        for ( String rid : BC_RESULT_LOG.latest( path, BC_RESULT_LOG.KIND_CHUNKS ).keySet() )
+        {
+            reports.add( LOG_PREFIX + rid );
+            res++;
+        }
+
         File[] files = new File( path ).listFiles();
         for ( File f : files )
         {
             if ( f.isFile() )
             {
                 String fn = f.getName();
-                if ( fn.endsWith( ".txt" ) )
+                if ( fn.endsWith( ".chunks.json" ) || fn.endsWith( ".chunks.json.gz" ) )
                 {
                     reports.add( String.format( "%s/%s", path, fn ) );
                     res++;
@@ -123,43 +146,42 @@ public final class LOCATION_REPORT
                                   Map< String, Set< String > > by_db,
                                   Set< String > workers )
     {
-        if ( line.startsWith( "starting" ) ) return;
-        if ( line.startsWith( "request" ) ) return;
-        String[] byColon = line.split( ":" );
-        if ( byColon.length > 1 )
+        BC_CHUNK_RECORD rec = BC_CHUNK_RECORD.from_json( line );
+        if ( rec != null && !rec.worker.isEmpty() && !rec.chunk.isEmpty() )
         {
-            String[] bySlash = byColon[ 0 ].split( "/" );
-            String[] byDash  = byColon[ 1 ].split( "-" );
-
-            if ( bySlash.length > 0 && byDash.length > 0 )
-            {
-                String worker = bySlash[ 0 ].trim();
-                String db     = byDash[ 0 ].trim();
-
-                insert( by_worker, worker, db );
-                insert( by_db,     db, worker );
-                workers.add( worker );
-            }
+            insert( by_worker, rec.worker, rec.chunk );
+            insert( by_db,     rec.chunk, rec.worker );
+            workers.add( rec.worker );
         }
     }
 
-    private static void readReports( final List< String > reports,
+    private static void readReports( final String path,
+                                     final List< String > reports,
                                      Map< String, Set< String > > by_worker,
                                      Map< String, Set< String > > by_db,
                                      Map< Integer, Integer > spread1,
-                                     Map< Integer, Integer > spread2 )
+                                     Map< Integer, Integer > spread2 ) throws Exception
     {
+        Map< String, BC_RESULT_LOG.LOCATION > in_log = BC_RESULT_LOG.latest( path, BC_RESULT_LOG.KIND_CHUNKS );
         for ( String fn : reports )
         {
             try
             {
-                FileReader fr = new FileReader( fn );
-                BufferedReader br = new BufferedReader( fr );
-                String line = null;
-                Set< String > workers = new HashSet<>();
-                while ( ( line = br.readLine() ) != null )
-                    readLine( line.trim(), by_worker, by_db, workers );
-                insert_spread( spread1, workers.size() );
+                InputStream is;
+                if ( fn.startsWith( LOG_PREFIX ) )
+                    is = new ByteArrayInputStream( BC_RESULT_LOG.read( in_log.get( fn.substring( LOG_PREFIX.length() ) ) ) );
+                else
+                    is = new FileInputStream( fn );
+                if ( fn.endsWith( ".gz" ) )
+                    is = new GZIPInputStream( is );
+                try ( BufferedReader br = new BufferedReader( new InputStreamReader( is, StandardCharsets.UTF_8 ) ) )
+                {
+                    String line = null;
+                    Set< String > workers = new HashSet<>();
+                    while ( ( line = br.readLine() ) != null )
+                        readLine( line.trim(), by_worker, by_db, workers );
+                    insert_spread( spread1, workers.size() );
+                }
             }
             catch ( Exception e )
             {
@@ -206,7 +228,7 @@ public final class LOCATION_REPORT
             // value : how many workers have that number of databases
             Map< Integer, Integer > spread2 = new HashMap<>();
 
-            readReports( reports, by_worker, by_db, spread1, spread2 );
+            readReports( path, reports, by_worker, by_db, spread1, spread2 );
 
             if ( verbose )
             {
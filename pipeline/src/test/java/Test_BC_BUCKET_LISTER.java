@@ -0,0 +1,106 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+
+public class Test_BC_BUCKET_LISTER {
+  private static final int PAGE = 3;
+
+  /* pages through a sorted set like GCS, the token is the last name of the page */
+  private static BC_BUCKET_LISTER.PAGE_SOURCE fake_bucket(
+      final TreeSet<String> objects, final AtomicInteger calls) {
+    return (prefix, token, names) -> {
+      calls.incrementAndGet();
+      String last = null;
+      for (String name : token == null ? objects : objects.tailSet(token, false)) {
+        if (!name.startsWith(prefix)) {
+          continue;
+        }
+        if (names.size() == PAGE) {
+          return last;
+        }
+        names.add(name);
+        last = name;
+      }
+      return null;
+    };
+  }
+
+  private static TreeSet<String> make_objects() {
+    final TreeSet<String> res = new TreeSet<>();
+    for (int i = 0; i < 20; ++i) {
+      res.add(String.format("req/%08x.json", i * 0x10001));
+      res.add(String.format("req/R%02d.json", i));
+      res.add(String.format("other/%02d.json", i));
+    }
+    res.add("req/readme.txt");
+    return res;
+  }
+
+  private static List<String> list(final TreeSet<String> objects, int threads, AtomicInteger calls) {
+    final List<String> res = Collections.synchronizedList(new ArrayList<>());
+    long found =
+        BC_BUCKET_LISTER.list(
+            fake_bucket(objects, calls), "req/", ".json", threads, name -> res.add(name));
+    assertEquals(res.size(), found);
+    return res;
+  }
+
+  @Test
+  public void testShardedEqualsSingle() {
+    final TreeSet<String> objects = make_objects();
+    final AtomicInteger single_calls = new AtomicInteger(0);
+    final AtomicInteger sharded_calls = new AtomicInteger(0);
+    final Set<String> single = new TreeSet<>(list(objects, 1, single_calls));
+    final List<String> sharded = list(objects, 8, sharded_calls);
+
+    assertEquals(40, single.size());
+    assertTrue(single.contains("R07.json"));
+    assertFalse(single.contains("readme.txt"));
+    assertEquals(single.size(), sharded.size());
+    assertEquals(single, new TreeSet<>(sharded));
+    assertTrue(sharded_calls.get() > single_calls.get());
+    assertEquals(95, BC_BUCKET_LISTER.shards("req/", 8).size());
+  }
+
+  @Test
+  public void testNonAsciiNamesUnsharded() {
+    final TreeSet<String> objects = make_objects();
+    objects.add("req/\u00e9t\u00e9.json");
+    objects.add("req/\u0001.json");
+    /* sharding only covers names starting with ' '...'~', the default is a single listing */
+    assertEquals(1, new BC_SETTINGS().list_threads);
+    final List<String> single = list(objects, 1, new AtomicInteger(0));
+    assertEquals(42, single.size());
+    assertTrue(single.contains("\u00e9t\u00e9.json"));
+    assertEquals(40, list(objects, 8, new AtomicInteger(0)).size());
+  }
+
+  @Test
+  public void testStop() {
+    final AtomicInteger accepted = new AtomicInteger(0);
+    final AtomicInteger calls = new AtomicInteger(0);
+    long found =
+        BC_BUCKET_LISTER.list(
+            fake_bucket(make_objects(), calls), "", "", 1, name -> accepted.incrementAndGet() < 5);
+    assertEquals(5, found);
+    assertEquals(5, accepted.get());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testFailedShard() {
+    final BC_BUCKET_LISTER.PAGE_SOURCE broken =
+        (prefix, token, names) -> {
+          throw new java.io.IOException("unavailable");
+        };
+    assertEquals(-1, BC_BUCKET_LISTER.list(broken, "", "", 4, name -> true));
+  }
+}
@@ -0,0 +1,79 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.*;
+
+public class Test_BC_CHUNK_PARTITIONER {
+
+  private static List<BC_DATABASE_RDD_ENTRY> make_entries(long... sizes) {
+    BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    List<BC_CHUNK_VALUES> chunks = new ArrayList<>();
+    for (int i = 0; i < sizes.length; i++) {
+      BC_CHUNK_VALUES chunk = new BC_CHUNK_VALUES(String.format("nt_50M.%02d", i));
+      chunk.files.add(new BC_NAME_SIZE("nsq", BigInteger.valueOf(sizes[i])));
+      chunks.add(chunk);
+    }
+    return BC_DATABASE_RDD_ENTRY.make_rdd_entry_list(setting, chunks);
+  }
+
+  private static int count(BC_CHUNK_PARTITIONER p) {
+    int n = 0;
+    for (List<BC_DATABASE_RDD_ENTRY> part : p.partitions()) {
+      n += part.size();
+    }
+    return n;
+  }
+
+  @Test
+  public void testByBytes() {
+    /* one tiny last chunk, as usual for a database */
+    List<BC_DATABASE_RDD_ENTRY> entries = make_entries(50, 50, 50, 50, 50, 50, 40, 30, 20, 10, 1);
+    BC_CHUNK_PARTITIONER bytes = new BC_CHUNK_PARTITIONER(entries, 4, "bytes", null, "nt");
+    BC_CHUNK_PARTITIONER count = new BC_CHUNK_PARTITIONER(entries, 4, "count", null, "nt");
+    assertEquals(4, bytes.partitions().size());
+    assertEquals(entries.size(), count(bytes));
+    assertEquals(entries.size(), count(count));
+    assertTrue(bytes.imbalance() < count.imbalance());
+    assertTrue(bytes.imbalance() < 1.05);
+  }
+
+  @Test
+  public void testCappedAtEntries() {
+    List<BC_DATABASE_RDD_ENTRY> entries = make_entries(10, 20, 30);
+    BC_CHUNK_PARTITIONER p = new BC_CHUNK_PARTITIONER(entries, 64, "bytes", null, "nt");
+    assertEquals(3, p.partitions().size());
+    for (List<BC_DATABASE_RDD_ENTRY> part : p.partitions()) {
+      assertEquals(1, part.size());
+    }
+  }
+
+  @Test
+  public void testByRuntime() {
+    List<BC_DATABASE_RDD_ENTRY> entries = make_entries(50, 50, 50, 50);
+
+    /* no observations yet: falls back to bytes */
+    BC_CHUNK_STATS stats = new BC_CHUNK_STATS();
+    assertEquals("bytes", new BC_CHUNK_PARTITIONER(entries, 2, "runtime", stats, "nt").method());
+
+    /* one hot chunk gets a partition of its own */
+    stats.record("nt", "nt_50M.00", 900);
+    stats.record("nt", "nt_50M.01", 100);
+    stats.record("nt", "nt_50M.02", 100);
+    stats.record("nt", "nt_50M.03", 100);
+    assertEquals(100.0, stats.median("nt"), 0.001);
+    BC_CHUNK_PARTITIONER p = new BC_CHUNK_PARTITIONER(entries, 2, "runtime", stats, "nt");
+    assertEquals("runtime", p.method());
+    for (List<BC_DATABASE_RDD_ENTRY> part : p.partitions()) {
+      if (part.get(0).chunk.name.equals("nt_50M.00")) {
+        assertEquals(1, part.size());
+      } else {
+        assertEquals(3, part.size());
+      }
+    }
+  }
+}
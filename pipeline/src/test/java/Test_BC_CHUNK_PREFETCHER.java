@@ -0,0 +1,239 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class Test_BC_CHUNK_PREFETCHER {
+  private static final int MB = 1024 * 1024;
+
+  @Rule public TemporaryFolder tempfolder = new TemporaryFolder();
+
+  private List<BC_DATABASE_RDD_ENTRY> make_chunks(int n, int mb) throws Exception {
+    final BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    setting.worker_location = tempfolder.newFolder("db").getAbsolutePath();
+    final List<BC_DATABASE_RDD_ENTRY> res = new ArrayList<>();
+    for (int i = 0; i < n; ++i) {
+      final BC_CHUNK_VALUES chunk = new BC_CHUNK_VALUES(String.format("nt_50M.%02d", i));
+      chunk.files.add(new BC_NAME_SIZE("nsq", BigInteger.valueOf(mb * MB)));
+      final BC_DATABASE_RDD_ENTRY entry = new BC_DATABASE_RDD_ENTRY(setting, chunk);
+      final File f = new File(entry.build_worker_path("nsq"));
+      f.getParentFile().mkdirs();
+      Files.write(f.toPath(), new byte[mb * MB]);
+      res.add(entry);
+    }
+    return res;
+  }
+
+  private static String await_report(BC_CHUNK_PREFETCHER p, int i) throws Exception {
+    for (int n = 0; n < 500 && p.report(i) == null; ++n) {
+      Thread.sleep(10);
+    }
+    return p.report(i);
+  }
+
+  @Test
+  public void testReadAhead() throws Exception {
+    final List<BC_DATABASE_RDD_ENTRY> items = make_chunks(4, 2);
+    final BC_CHUNK_PREFETCHER p = new BC_CHUNK_PREFETCHER(items, 2, 3, null);
+    try {
+      p.advance(0);
+      assertNull(p.report(0));
+      /* chunk 1 fits the budget of 3 MB, chunk 2 only partially */
+      assertTrue(await_report(p, 1).contains("2,097,152 bytes"));
+      assertTrue(await_report(p, 2).contains("1,048,576 bytes"));
+      assertNull(p.report(3));
+
+      p.advance(1);
+      p.advance(2);
+      assertTrue(await_report(p, 3).contains("2,097,152 bytes"));
+    } finally {
+      p.close();
+    }
+  }
+
+  /* a chunk only available gzipped in a local source, so it has to be downloaded */
+  private BC_DATABASE_RDD_ENTRY make_source_chunk(BC_DATABASE_SETTING setting, String name)
+      throws Exception {
+    final byte[] data = new byte[64 * 1024];
+    try (GZIPOutputStream out =
+        new GZIPOutputStream(
+            new FileOutputStream(new File(setting.source_location, name + ".nsq.gz")))) {
+      out.write(data);
+    }
+    final BC_CHUNK_VALUES chunk = new BC_CHUNK_VALUES(name);
+    chunk.files.add(new BC_NAME_SIZE("nsq", BigInteger.valueOf(data.length), "gz"));
+    return new BC_DATABASE_RDD_ENTRY(setting, chunk);
+  }
+
+  @Test
+  public void testSlowPrefetchDoesNotBlockSearch() throws Exception {
+    final BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    setting.worker_location = tempfolder.newFolder("slow-db").getAbsolutePath();
+    setting.source_location = tempfolder.newFolder("slow-src").getAbsolutePath();
+    final BC_DATABASE_RDD_ENTRY current = make_source_chunk(setting, "nt_50M.00");
+    final BC_DATABASE_RDD_ENTRY ahead = make_source_chunk(setting, "nt_50M.01");
+
+    /* a peer that accepts the copy of the read-ahead chunk, but does not answer */
+    final CountDownLatch asked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ServerSocket stalling = new ServerSocket(0);
+    final Thread peer =
+        new Thread(
+            () -> {
+              try (Socket s = stalling.accept()) {
+                new DataInputStream(s.getInputStream()).readUTF();
+                asked.countDown();
+                release.await();
+                new DataOutputStream(s.getOutputStream()).writeLong(-1);
+              } catch (Exception e) {
+              }
+            });
+    peer.setDaemon(true);
+    peer.start();
+
+    final Map<String, List<String>> by_dir = new HashMap<>();
+    by_dir.put(
+        ahead.chunk_dir_name(),
+        Collections.singletonList("localhost:" + stalling.getLocalPort()));
+    final List<BC_DATABASE_RDD_ENTRY> items = new ArrayList<>();
+    items.add(current);
+    items.add(ahead);
+    final BC_CHUNK_PREFETCHER p =
+        new BC_CHUNK_PREFETCHER(items, 1, 1, new BC_CHUNK_PEERS(stalling.getLocalPort(), 0, by_dir));
+    final ExecutorService search = Executors.newSingleThreadExecutor();
+    try {
+      p.advance(0);
+      assertTrue(asked.await(5, TimeUnit.SECONDS));
+
+      /* the read-ahead of chunk 1 is stuck, the search of chunk 0 downloads anyway */
+      final Future<Boolean> downloaded =
+          search.submit(
+              () ->
+                  current.downloadIfAbsent(
+                      new ArrayList<>(), new ArrayList<>(), new ArrayList<>()));
+      assertTrue(downloaded.get(5, TimeUnit.SECONDS));
+      assertTrue(current.present());
+      assertNull(p.report(1));
+
+      /* the peer fails, the read-ahead falls back to the source */
+      release.countDown();
+      assertTrue(await_report(p, 1).contains("read ahead"));
+      assertTrue(ahead.present());
+      assertEquals(BC_CHUNK_RECORD.DL_DOWNLOADED, p.download(1));
+      assertNull(p.download(0));
+    } finally {
+      release.countDown();
+      search.shutdownNow();
+      p.close();
+      stalling.close();
+    }
+  }
+
+  @Test
+  public void testSearchWaitsForSlowPrefetch() throws Exception {
+    final BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    setting.worker_location = tempfolder.newFolder("wait-db").getAbsolutePath();
+    setting.source_location = tempfolder.newFolder("wait-src").getAbsolutePath();
+    final BC_DATABASE_RDD_ENTRY current = make_source_chunk(setting, "nt_50M.00");
+    final BC_DATABASE_RDD_ENTRY ahead = make_source_chunk(setting, "nt_50M.01");
+    final int size = ahead.chunk.files.get(0).size.intValue();
+
+    /* a peer sending half of the read-ahead chunk, then waiting */
+    final CountDownLatch half = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ServerSocket slow = new ServerSocket(0);
+    final Thread peer =
+        new Thread(
+            () -> {
+              try (Socket s = slow.accept()) {
+                final DataInputStream in = new DataInputStream(s.getInputStream());
+                in.readUTF();
+                in.readUTF();
+                in.readUTF();
+                final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+                out.writeLong(size);
+                out.write(new byte[size / 2]);
+                out.flush();
+                half.countDown();
+                release.await();
+                out.write(new byte[size - size / 2]);
+                out.flush();
+              } catch (Exception e) {
+              }
+            });
+    peer.setDaemon(true);
+    peer.start();
+
+    final Map<String, List<String>> by_dir = new HashMap<>();
+    by_dir.put(
+        ahead.chunk_dir_name(), Collections.singletonList("localhost:" + slow.getLocalPort()));
+    final List<BC_DATABASE_RDD_ENTRY> items = new ArrayList<>();
+    items.add(current);
+    items.add(ahead);
+    final BC_CHUNK_PREFETCHER p =
+        new BC_CHUNK_PREFETCHER(items, 1, 1, new BC_CHUNK_PEERS(slow.getLocalPort(), 0, by_dir));
+    final ExecutorService search = Executors.newSingleThreadExecutor();
+    try {
+      p.advance(0);
+      assertTrue(half.await(5, TimeUnit.SECONDS));
+
+      /* the search reaches chunk 1 while the read-ahead is still copying it */
+      final List<String> sources = new ArrayList<>();
+      final Future<Boolean> downloaded =
+          search.submit(
+              () ->
+                  ahead.downloadIfAbsent(
+                      new ArrayList<>(), new ArrayList<>(), null, true, sources));
+      Thread.sleep(300);
+      assertFalse("the search must wait for the read-ahead", downloaded.isDone());
+      assertFalse(ahead.present());
+
+      release.countDown();
+      assertTrue(downloaded.get(5, TimeUnit.SECONDS));
+      assertTrue(ahead.present());
+      /* the search copied nothing itself, the read-ahead got the chunk from the peer */
+      assertTrue(sources.isEmpty());
+      assertTrue(await_report(p, 1).contains("read ahead"));
+      assertEquals(BC_CHUNK_RECORD.DL_PEER, p.download(1));
+    } finally {
+      release.countDown();
+      search.shutdownNow();
+      p.close();
+      slow.close();
+    }
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    final List<BC_DATABASE_RDD_ENTRY> items = make_chunks(2, 1);
+    final BC_CHUNK_PREFETCHER p = new BC_CHUNK_PREFETCHER(items, 0, 1024, null);
+    p.advance(0);
+    Thread.sleep(50);
+    assertNull(p.report(1));
+    p.close();
+  }
+}
@@ -0,0 +1,61 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.*;
+
+public class Test_BC_CHUNK_RECORD {
+  @Test
+  public void testJsonRoundTrip() {
+    final BC_CHUNK_RECORD rec = new BC_CHUNK_RECORD();
+    rec.chunk = "nt_50M.07";
+    rec.part = 2;
+    rec.parts = 4;
+    rec.worker = "cluster-w-3";
+    rec.executor = "12";
+    rec.download = BC_CHUNK_RECORD.DL_DOWNLOADED;
+    rec.prefetched = true;
+    rec.download_ms = 1500;
+    rec.start = 1571234567890L;
+    rec.search_ms = 830;
+    rec.traceback_ms = 95;
+    rec.prelim_hits = 41;
+    rec.traceback_hits = 17;
+    rec.read_bytes = 3L << 30;
+    rec.written_bytes = 52428800L;
+    rec.errors = 1;
+
+    final String line = rec.to_json();
+    assertFalse(line.contains("\n"));
+    final BC_CHUNK_RECORD back = BC_CHUNK_RECORD.from_json(line);
+    assertNotNull(back);
+    assertEquals(line, back.to_json());
+    assertEquals(925, back.elapsed());
+    assertEquals(3L << 30, back.read_bytes);
+  }
+
+  @Test
+  public void testDefaultsAndInvalid() {
+    final BC_CHUNK_RECORD rec = BC_CHUNK_RECORD.from_json("{\"chunk\":\"nr_50M.01\"}");
+    assertEquals("nr_50M.01", rec.chunk);
+    assertEquals(1, rec.parts);
+    assertEquals(BC_CHUNK_RECORD.DL_PRESENT, rec.download);
+    assertFalse(rec.to_json().contains("\"parts\""));
+    assertNull(BC_CHUNK_RECORD.from_json("cluster-w-0/1: nt_50M.00 - search: 3 items ( 5 ms ) 0"));
+  }
+
+  @Test
+  public void testDownloadStatus() {
+    final String peer = BC_CHUNK_RECORD.DL_PEER;
+    final String source = BC_CHUNK_RECORD.DL_DOWNLOADED;
+    assertEquals(BC_CHUNK_RECORD.DL_PEER, BC_CHUNK_RECORD.download_status(true, Arrays.asList(peer, peer)));
+    assertEquals(
+        BC_CHUNK_RECORD.DL_DOWNLOADED,
+        BC_CHUNK_RECORD.download_status(true, Arrays.asList(peer, source)));
+    assertEquals(
+        BC_CHUNK_RECORD.DL_PRESENT, BC_CHUNK_RECORD.download_status(true, new ArrayList<String>()));
+    assertEquals(BC_CHUNK_RECORD.DL_FAILED, BC_CHUNK_RECORD.download_status(false, Arrays.asList(peer)));
+  }
+}
@@ -0,0 +1,245 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.math.BigInteger;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class Test_BC_CHUNK_SERVER {
+
+  private static final int PORT = 47311;
+
+  @Rule public TemporaryFolder tempfolder = new TemporaryFolder();
+
+  @Test
+  public void testServeAndFetch() throws Exception {
+    final BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    setting.source_location = "gs://nt_50mb_chunks";
+    setting.worker_location = tempfolder.newFolder("peer").getAbsolutePath();
+
+    final byte[] content = new byte[3 * 1024 * 1024 + 17];
+    new Random(7).nextBytes(content);
+    final String md5 =
+        Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(content));
+
+    final BC_CHUNK_VALUES chunk = new BC_CHUNK_VALUES("nt_50M.00");
+    final BC_NAME_SIZE nsq = new BC_NAME_SIZE("nsq", BigInteger.valueOf(content.length), "", 1, md5);
+    chunk.files.add(nsq);
+    final BC_DATABASE_RDD_ENTRY entry = new BC_DATABASE_RDD_ENTRY(setting, chunk);
+    final File served = new File(entry.build_worker_path("nsq"));
+    served.getParentFile().mkdirs();
+    Files.write(served.toPath(), content);
+
+    final String peer = "127.0.0.1:" + PORT;
+    final String dir = entry.chunk_dir_name();
+    /* the receiving host has a different worker-location, the file has the same name */
+    final File dst = new File(tempfolder.newFolder("new"), "nt_50M.00.nsq");
+
+    /* not complete yet: refused */
+    assertFalse(BC_CHUNK_SERVER.fetch(peer, "nt", dir, dst.getPath(), nsq));
+
+    assertNotNull(BC_CHUNK_SERVER.serve(PORT, 0, entry));
+    assertTrue(new File(served.getParentFile(), BC_DATABASE_RDD_ENTRY.COMPLETE_MARKER).exists());
+
+    assertTrue(BC_CHUNK_SERVER.fetch(peer, "nt", dir, dst.getPath(), nsq));
+    assertArrayEquals(content, Files.readAllBytes(dst.toPath()));
+    dst.delete();
+
+    /* another database does not serve this worker-location */
+    assertFalse(BC_CHUNK_SERVER.fetch(peer, "nr", dir, dst.getPath(), nsq));
+
+    /* wrong md5: the copy is rejected and removed */
+    final BC_NAME_SIZE bad = new BC_NAME_SIZE("nsq", nsq.size, "", 1, "AAAAAAAAAAAAAAAAAAAAAA==");
+    assertFalse(BC_CHUNK_SERVER.fetch(peer, "nt", dir, dst.getPath(), bad));
+    assertFalse(dst.exists());
+    assertFalse(new File(dst.getPath() + BC_RANGED_DOWNLOAD.PART_SUFFIX).exists());
+
+    /* outside of the worker-location: refused */
+    final File outside = tempfolder.newFile("secret");
+    Files.write(outside.toPath(), new byte[] {1});
+    new File(outside.getParentFile(), BC_DATABASE_RDD_ENTRY.COMPLETE_MARKER).createNewFile();
+    final File stolen = new File(dst.getParentFile(), "secret");
+    assertFalse(
+        BC_CHUNK_SERVER.fetch(
+            peer, "nt", "..", stolen.getPath(), new BC_NAME_SIZE("secret", BigInteger.ONE)));
+    assertFalse(stolen.exists());
+
+    /* idle peers fill the pool and its queue: the next one is closed right away */
+    final List<Socket> idle = new ArrayList<>();
+    try {
+      final int limit = BC_CHUNK_SERVER.MAX_CONNECTIONS + BC_CHUNK_SERVER.MAX_WAITING;
+      for (int i = 0; i < limit; ++i) {
+        idle.add(new Socket("127.0.0.1", PORT));
+      }
+      final long deadline = System.currentTimeMillis() + 5000;
+      while (BC_CHUNK_SERVER.connections() < limit && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(limit, BC_CHUNK_SERVER.connections());
+      final long started = System.currentTimeMillis();
+      assertFalse(BC_CHUNK_SERVER.fetch(peer, "nt", dir, dst.getPath(), nsq));
+      assertTrue(System.currentTimeMillis() - started < BC_CHUNK_SERVER.TIMEOUT_MS);
+    } finally {
+      for (Socket s : idle) {
+        s.close();
+      }
+    }
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (BC_CHUNK_SERVER.connections() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(BC_CHUNK_SERVER.fetch(peer, "nt", dir, dst.getPath(), nsq));
+  }
+
+  @Test
+  public void testCopyNotVisibleBeforeVerified() throws Exception {
+    final byte[] content = new byte[256 * 1024];
+    new Random(11).nextBytes(content);
+    final String md5 =
+        Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(content));
+    final BC_NAME_SIZE nsq =
+        new BC_NAME_SIZE("nsq", BigInteger.valueOf(content.length), "", 1, md5);
+    final File dst = new File(tempfolder.newFolder("copy"), "nt_50M.00.nsq");
+
+    /* a peer sending half of the file, then waiting */
+    final CountDownLatch half = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ServerSocket slow = new ServerSocket(0);
+    final Thread server =
+        new Thread(
+            () -> {
+              try (Socket s = slow.accept()) {
+                final DataInputStream in = new DataInputStream(s.getInputStream());
+                in.readUTF();
+                in.readUTF();
+                in.readUTF();
+                final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+                out.writeLong(content.length);
+                out.write(content, 0, content.length / 2);
+                out.flush();
+                half.countDown();
+                release.await();
+                out.write(content, content.length / 2, content.length - content.length / 2);
+                out.flush();
+              } catch (Exception e) {
+              }
+            });
+    server.setDaemon(true);
+    server.start();
+
+    final ExecutorService copy = Executors.newSingleThreadExecutor();
+    try {
+      final Future<Boolean> copied =
+          copy.submit(
+              () ->
+                  BC_CHUNK_SERVER.fetch(
+                      "127.0.0.1:" + slow.getLocalPort(), "nt", "nt_50M.00", dst.getPath(), nsq));
+      assertTrue(half.await(5, TimeUnit.SECONDS));
+      Thread.sleep(100);
+      assertFalse("unverified copy must not be visible", dst.exists());
+
+      release.countDown();
+      assertTrue(copied.get(5, TimeUnit.SECONDS));
+      assertArrayEquals(content, Files.readAllBytes(dst.toPath()));
+      assertFalse(new File(dst.getPath() + BC_RANGED_DOWNLOAD.PART_SUFFIX).exists());
+    } finally {
+      release.countDown();
+      copy.shutdownNow();
+      slow.close();
+    }
+  }
+
+  @Test
+  public void testRegistry() {
+    final BC_CHUNK_REGISTRY registry = new BC_CHUNK_REGISTRY();
+    registry.add("nt", "nt_50M.00", "w-0");
+    registry.add("nt", "nt_50M.00", "w-1");
+    registry.add("nt", "nt_50M.00", "w-1");
+    registry.add("nt", "nt_50M.01", "w-2");
+    assertEquals(3, registry.copies("nt"));
+    assertEquals("w-0", BC_CHUNK_REGISTRY.host_of("w-0/3"));
+
+    final BC_CHUNK_PEERS peers = registry.peers_of("nt", 7000, 100);
+    assertTrue(peers.enabled());
+    assertEquals(2, peers.of("nt_50M.00").size());
+    assertTrue(peers.of("nt_50M.00").contains("w-1:7000"));
+    assertTrue(peers.of("nt_50M.99").isEmpty());
+
+    assertTrue(registry.peers_of("nt", 0, 100).of("nt_50M.00").isEmpty());
+
+    final List<String> gone = new ArrayList<>();
+    gone.add("nt_50M.00");
+    registry.forget("nt", gone);
+    assertEquals(1, registry.copies("nt"));
+    registry.forget("nt");
+    assertEquals(0, registry.copies("nt"));
+  }
+
+  @Test
+  public void testReplicas() {
+    final BC_CHUNK_REGISTRY registry = new BC_CHUNK_REGISTRY();
+    registry.add("nt", "nt_50M.00", "w-0");
+    registry.add("nt", "nt_50M.01", "w-0");
+    registry.add("nt", "nt_50M.00", "w-1");
+    registry.add("nt", "nt_50M.01", "w-2");
+
+    final List<String> part = new ArrayList<>();
+    part.add("nt_50M.00");
+    part.add("nt_50M.01");
+    assertEquals(Collections.singletonList("w-0"), registry.best_hosts("nt", part, 3, true));
+    assertEquals(3, registry.best_hosts("nt", part, 3, false).size());
+    assertEquals("w-0", registry.best_hosts("nt", part, 3, false).get(0));
+    assertEquals(1, registry.best_hosts("nt", part, 1, false).size());
+    assertEquals(2, (int) registry.load("nt").get("w-0"));
+
+    /* w-0 lost its executor */
+    assertEquals(2, registry.retain_hosts(Arrays.asList("w-1", "w-2")));
+    assertTrue(registry.best_hosts("nt", part, 3, true).isEmpty());
+    assertEquals(2, registry.copies("nt"));
+    registry.forget("nt");
+    assertEquals(0, registry.copies("nt"));
+  }
+
+  @Test
+  public void testPlacementFile() throws Exception {
+    final String filename = BC_CHUNK_REGISTRY.filename(tempfolder.newFolder("m").getPath());
+    final BC_CHUNK_REGISTRY registry = new BC_CHUNK_REGISTRY();
+    registry.add("nt", "nt_50M.00", "w-0");
+    registry.add("nt", "nt_50M.01", "w-0");
+    registry.add("nr", "nr_50M.00", "w-1");
+    assertTrue(registry.write(filename));
+
+    final BC_CHUNK_REGISTRY restored = new BC_CHUNK_REGISTRY();
+    assertEquals(3, restored.read(filename));
+    assertEquals(2, restored.copies("nt"));
+    assertTrue(restored.hosts_of("nr", "nr_50M.00").contains("w-1"));
+
+    /* the inventory of a host replaces what was restored for it */
+    restored.set_host("nt", "w-0", Arrays.asList("nt_50M.01", "nt_50M.02"));
+    assertTrue(restored.hosts_of("nt", "nt_50M.00").isEmpty());
+    assertTrue(restored.hosts_of("nt", "nt_50M.02").contains("w-0"));
+    assertEquals(2, restored.copies("nt"));
+
+    assertEquals(0, new BC_CHUNK_REGISTRY().read(filename + ".missing"));
+  }
+}
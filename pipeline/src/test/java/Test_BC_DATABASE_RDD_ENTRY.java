@@ -2,7 +2,11 @@ package gov.nih.nlm.ncbi.blastjni;
 
 import static org.junit.Assert.*;
 
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +51,162 @@ public class Test_BC_DATABASE_RDD_ENTRY extends Thread {
     }
   }
 
+  @Test
+  public void testVersionedWorkerPath() throws Exception {
+    final BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    setting.worker_location = tempfolder.newFolder("vdb").getAbsolutePath();
+    setting.extensions.add("nsq");
+
+    final BC_CHUNK_VALUES chunk = new BC_CHUNK_VALUES("nt_50M.00");
+    chunk.files.add(new BC_NAME_SIZE("nsq", BigInteger.valueOf(3), "", 17));
+    chunk.files.add(new BC_NAME_SIZE("nin", BigInteger.valueOf(3), "", 42));
+    assertEquals(42, chunk.version());
+
+    final BC_DATABASE_RDD_ENTRY plain = new BC_DATABASE_RDD_ENTRY(setting, chunk);
+    assertEquals("nt_50M.00", plain.chunk_dir_name());
+
+    setting.versioned = true;
+    final BC_DATABASE_RDD_ENTRY entry = new BC_DATABASE_RDD_ENTRY(setting, chunk);
+    assertEquals("nt_50M.00.v42", entry.chunk_dir_name());
+    assertEquals(setting.worker_location + "/nt_50M.00.v42/nt_50M.00", entry.worker_location());
+
+    for (final BC_NAME_SIZE obj : chunk.files) {
+      final File f = new File(entry.build_worker_path(obj.name));
+      f.getParentFile().mkdirs();
+      Files.write(f.toPath(), new byte[] {1, 2, 3});
+    }
+    assertTrue(entry.present());
+
+    final List<String> infoList = new ArrayList<>();
+    assertEquals(2, entry.remove(infoList));
+    assertFalse(entry.present());
+    assertFalse(new File(setting.worker_location, entry.chunk_dir_name()).exists());
+  }
+
+  @Test
+  public void testStripedWorkerPath() throws Exception {
+    final BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    for (int i = 0; i < 3; ++i) {
+      setting.worker_locations.add(tempfolder.newFolder("disk" + i).getAbsolutePath());
+    }
+    setting.worker_location = setting.worker_locations.get(0);
+
+    /* hash: every chunk lands on the same disk on every host, the chunks are spread */
+    final List<String> used = new ArrayList<>();
+    for (int i = 0; i < 12; ++i) {
+      final BC_CHUNK_VALUES chunk = new BC_CHUNK_VALUES(String.format("nt_50M.%02d", i));
+      final BC_DATABASE_RDD_ENTRY entry = new BC_DATABASE_RDD_ENTRY(setting, chunk);
+      final String root = entry.worker_root();
+      assertTrue(setting.worker_locations.contains(root));
+      assertEquals(root, new BC_DATABASE_RDD_ENTRY(setting, chunk).worker_root());
+      if (!used.contains(root)) {
+        used.add(root);
+      }
+    }
+    assertTrue(used.size() > 1);
+
+    /* a chunk already present on another disk is found there */
+    final BC_CHUNK_VALUES chunk = new BC_CHUNK_VALUES("nt_50M.00");
+    chunk.files.add(new BC_NAME_SIZE("nsq", BigInteger.valueOf(3)));
+    final BC_DATABASE_RDD_ENTRY entry = new BC_DATABASE_RDD_ENTRY(setting, chunk);
+    final String other =
+        setting.worker_locations.get(
+            (setting.worker_locations.indexOf(entry.worker_root()) + 1) % 3);
+    final File f = new File(other + "/nt_50M.00/nt_50M.00.nsq");
+    f.getParentFile().mkdirs();
+    Files.write(f.toPath(), new byte[] {1, 2, 3});
+    assertEquals(other, entry.worker_root());
+    assertEquals(f.getPath(), entry.build_worker_path("nsq"));
+    assertTrue(entry.present());
+
+    final List<String> infoList = new ArrayList<>();
+    assertEquals(1, entry.remove(infoList));
+    assertFalse(f.getParentFile().exists());
+
+    /* space: the disk with the most free space, all temp-folders share one disk here */
+    setting.placement = "space";
+    assertTrue(setting.worker_locations.contains(entry.worker_root()));
+
+    /* the size of a chunk not yet downloaded is reserved on its disk, the next one goes elsewhere */
+    final List<String> spread = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      final BC_CHUNK_VALUES huge = new BC_CHUNK_VALUES(String.format("nt_huge.%02d", i));
+      huge.files.add(new BC_NAME_SIZE("nsq", BigInteger.valueOf(1L << 50)));
+      final String root = new BC_DATABASE_RDD_ENTRY(setting, huge).worker_root();
+      assertFalse(spread.contains(root));
+      spread.add(root);
+      assertEquals(root, new BC_DATABASE_RDD_ENTRY(setting, huge).worker_root());
+    }
+  }
+
+  private static void write_index_header(File f, int version, int num_oids) throws Exception {
+    f.getParentFile().mkdirs();
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(f))) {
+      out.writeInt(version);
+      out.writeInt(0);
+      if (version == 5) {
+        out.writeInt(0);
+      }
+      out.writeInt(5);
+      out.writeBytes("title");
+      if (version == 5) {
+        out.writeInt(4);
+        out.writeBytes("lmdb");
+      }
+      out.writeInt(4);
+      out.writeBytes("date");
+      out.writeInt(num_oids);
+    }
+  }
+
+  @Test
+  public void testOidRanges() throws Exception {
+    final BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    setting.worker_location = tempfolder.newFolder("rdb").getAbsolutePath();
+
+    final BC_CHUNK_VALUES chunk = new BC_CHUNK_VALUES("nt_50M.00");
+    chunk.files.add(new BC_NAME_SIZE("nsq", BigInteger.valueOf(3)));
+    chunk.files.add(new BC_NAME_SIZE("nin", BigInteger.valueOf(3)));
+    final BC_DATABASE_RDD_ENTRY whole = new BC_DATABASE_RDD_ENTRY(setting, chunk);
+
+    final File nin = new File(whole.build_worker_path("nin"));
+    write_index_header(nin, 5, 1000);
+    assertEquals(1000, BC_DATABASE_RDD_ENTRY.read_num_oids(nin.getPath()));
+    write_index_header(nin, 4, 10);
+    assertEquals(10, BC_DATABASE_RDD_ENTRY.read_num_oids(nin.getPath()));
+
+    final List<String> errorList = new ArrayList<>();
+    final List<String> infoList = new ArrayList<>();
+    assertTrue(whole.prepare_range(errorList, infoList));
+
+    final List<BC_DATABASE_RDD_ENTRY> ranges = whole.split(3);
+    assertEquals(3, ranges.size());
+    assertEquals("nt_50M.00[2/3]", ranges.get(1).label());
+
+    final BC_DATABASE_RDD_ENTRY second = ranges.get(1);
+    assertTrue(second.prepare_range(errorList, infoList));
+    assertTrue(errorList.isEmpty());
+    assertEquals(setting.worker_location + "/nt_50M.00/nt_50M.00.r1of3", second.worker_location());
+    final List<String> alias =
+        Files.readAllLines(new File(second.worker_location() + ".nal").toPath());
+    assertTrue(alias.contains("DBLIST nt_50M.00"));
+    assertTrue(alias.contains("FIRST_OID 4"));
+    assertTrue(alias.contains("LAST_OID 6"));
+
+    /* more ranges than sequences: some ranges are empty */
+    int searched = 0;
+    for (final BC_DATABASE_RDD_ENTRY r : whole.split(16)) {
+      if (r.prepare_range(errorList, infoList)) {
+        searched += 1;
+      }
+    }
+    assertEquals(10, searched);
+    assertTrue(errorList.isEmpty());
+  }
+
   @Test
   public void testDbLoad() throws Exception {
     final Random rng = new Random();
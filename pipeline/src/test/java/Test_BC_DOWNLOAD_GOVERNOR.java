@@ -0,0 +1,75 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class Test_BC_DOWNLOAD_GOVERNOR {
+  @Rule public TemporaryFolder tempfolder = new TemporaryFolder();
+
+  private ExecutorService pool;
+
+  @Before
+  public void setUp() {
+    pool = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  private static boolean blocks(Future<?> f) throws Exception {
+    try {
+      f.get(300, TimeUnit.MILLISECONDS);
+      return false;
+    } catch (TimeoutException e) {
+      return true;
+    }
+  }
+
+  @Test
+  public void testReservedSlot() throws Exception {
+    final BC_DOWNLOAD_GOVERNOR g =
+        new BC_DOWNLOAD_GOVERNOR(tempfolder.newFolder("slots").getAbsolutePath(), 2, 0);
+    final BC_DOWNLOAD_GOVERNOR.PERMIT urgent = g.acquire(true);
+
+    /* the second slot is reserved for urgent downloads */
+    final Future<BC_DOWNLOAD_GOVERNOR.PERMIT> speculative = pool.submit(() -> g.acquire(false));
+    assertTrue(blocks(speculative));
+    g.acquire(true).close();
+
+    urgent.close();
+    speculative.get(5, TimeUnit.SECONDS).close();
+  }
+
+  @Test
+  public void testUrgentWaiting() throws Exception {
+    final File dir = tempfolder.newFolder("slots");
+    final BC_DOWNLOAD_GOVERNOR g = new BC_DOWNLOAD_GOVERNOR(dir.getAbsolutePath(), 3, 0);
+    final File waiter = new File(dir, "waiting.other-jvm");
+    assertTrue(waiter.createNewFile());
+
+    final Future<BC_DOWNLOAD_GOVERNOR.PERMIT> speculative = pool.submit(() -> g.acquire(false));
+    assertTrue(blocks(speculative));
+
+    assertTrue(waiter.delete());
+    speculative.get(5, TimeUnit.SECONDS).close();
+  }
+
+  @Test
+  public void testUnlimited() throws Exception {
+    final BC_DOWNLOAD_GOVERNOR g =
+        new BC_DOWNLOAD_GOVERNOR(tempfolder.newFolder("slots").getAbsolutePath(), 0, 0);
+    g.acquire(false).close();
+    g.acquire(true).close();
+    g.consume(1024 * 1024);
+  }
+}
@@ -7,7 +7,12 @@ import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
 
 
 
@@ -101,4 +106,122 @@ public class Test_BC_GCP_TOOLS {
         List< String > res = BC_GCP_TOOLS.unique_without_extension(all, ext);
         assertTrue(res.size() == 2);
     }
+
+    @Test
+    public void testUniqueByExtCompressed() {
+        List< BC_NAME_SIZE > all = new ArrayList<>();
+        all.add(new BC_NAME_SIZE("nt_50M.00.nin", BigInteger.valueOf(100)));
+        all.add(new BC_NAME_SIZE("nt_50M.00.nsq", BigInteger.valueOf(5000)));
+        all.add(new BC_NAME_SIZE("nt_50M.00.nsq.gz", BigInteger.valueOf(5000), "gz"));
+        all.add(new BC_NAME_SIZE("nt_50M.01.nin", BigInteger.valueOf(90)));
+        all.add(new BC_NAME_SIZE("nt_50M.01.nsq.gz", BigInteger.valueOf(4000), "gz"));
+
+        List< String > ext = new ArrayList<>();
+        ext.add("nin");
+        ext.add("nsq");
+
+        List< BC_CHUNK_VALUES > res = BC_GCP_TOOLS.unique_by_extension(all, ext);
+        assertEquals(2, res.size());
+        for ( BC_CHUNK_VALUES chunk : res ) {
+            assertEquals(2, chunk.files.size());
+            for ( BC_NAME_SIZE ns : chunk.files ) {
+                if (ns.name.equals("nsq")) {
+                    assertTrue("compressed object is preferred", ns.compressed());
+                } else {
+                    assertEquals("nin", ns.name);
+                    assertFalse(ns.compressed());
+                }
+            }
+        }
+    }
+
+    private static HttpResponseException http_error(int code) {
+        return new HttpResponseException.Builder(code, "", new HttpHeaders()).build();
+    }
+
+    @Test
+    public void testRetryTransient() throws Exception {
+        final BC_GCS_METRICS m = new BC_GCS_METRICS();
+        final AtomicInteger attempts = new AtomicInteger(0);
+        String res = BC_GCP_TOOLS.with_retries(m, "get", 3, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw http_error(503);
+            }
+            return "ok";
+        });
+        assertEquals("ok", res);
+        assertEquals(3, attempts.get());
+        assertEquals(1, m.calls("get"));
+        assertTrue(m.report().get(0).contains("2 retries"));
+    }
+
+    @Test
+    public void testNoRetryOnNotFound() throws Exception {
+        final BC_GCS_METRICS m = new BC_GCS_METRICS();
+        final AtomicInteger attempts = new AtomicInteger(0);
+        try {
+            BC_GCP_TOOLS.with_retries(m, "get", 3, () -> {
+                attempts.incrementAndGet();
+                throw http_error(404);
+            });
+            fail();
+        } catch (HttpResponseException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+        assertEquals(1, attempts.get());
+        assertTrue(m.report().get(0).contains("1 failed"));
+        assertTrue(BC_GCP_TOOLS.transient_error(new IOException("connection reset")));
+        assertTrue(BC_GCP_TOOLS.transient_error(http_error(429)));
+    }
+
+    @Test
+    public void testBackoff() {
+        for (int attempt = 0; attempt < 30; ++attempt) {
+            long ms = BC_GCP_TOOLS.backoff_ms(attempt);
+            assertTrue(ms >= 0 && ms <= 10000);
+            assertTrue(ms <= (100L << Math.min(attempt, 16)));
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        final BC_GCS_METRICS m = new BC_GCS_METRICS();
+        for (int i = 1; i < 20; ++i) {
+            m.record("read", i, true);
+        }
+        assertEquals(0, m.percentile("read", 95));
+        m.record("read", 20, true);
+        assertEquals(19, m.percentile("read", 95));
+        assertEquals(10, m.percentile("read", 50));
+    }
+
+    @Test
+    public void testCountsDelta() {
+        final BC_GCS_METRICS m = new BC_GCS_METRICS();
+        m.record("read", 10, true);
+        final BC_GCS_METRICS.COUNTS before_a = m.counts();
+        m.record("read", 20, true);
+        final BC_GCS_METRICS.COUNTS before_b = m.counts();
+        m.record("get", 5, false);
+        final BC_GCS_METRICS.COUNTS after_a = m.counts();
+        m.record("read", 30, true);
+        final BC_GCS_METRICS.COUNTS after_b = m.counts();
+
+        assertEquals(1, after_a.minus(before_b).calls("get"));
+        assertEquals(0, after_a.minus(before_b).calls("read"));
+
+        /* two overlapping tasks of one executor: counted once, from the first start to the last end */
+        final BC_GCS_METRICS.COUNTS first = new BC_GCS_METRICS.COUNTS();
+        final BC_GCS_METRICS.COUNTS last = new BC_GCS_METRICS.COUNTS();
+        first.widen(before_b, true);
+        first.widen(before_a, true);
+        last.widen(after_b, false);
+        last.widen(after_a, false);
+        final BC_GCS_METRICS.COUNTS total = new BC_GCS_METRICS.COUNTS();
+        total.add(last.minus(first));
+        assertEquals(2, total.calls("read"));
+        assertEquals(1, total.calls("get"));
+        assertEquals(2, total.report().size());
+        assertTrue(total.report().get(1).contains("avg 25 ms"));
+    }
 }
@@ -0,0 +1,153 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class Test_BC_LOCAL_STORAGE {
+
+  @Rule public TemporaryFolder tempfolder = new TemporaryFolder();
+
+  private static void write(File f, byte[] content) throws Exception {
+    Files.write(f.toPath(), content);
+  }
+
+  private static void write_gz(File f, byte[] content) throws Exception {
+    try (GZIPOutputStream os = new GZIPOutputStream(new FileOutputStream(f))) {
+      os.write(content);
+    }
+  }
+
+  @Test
+  public void testBackendSelection() {
+    assertSame(BC_GCS_STORAGE.INSTANCE, BC_STORAGE.of("gs://nt_50mb_chunks"));
+    assertSame(BC_LOCAL_STORAGE.INSTANCE, BC_STORAGE.of("file:///mnt/db"));
+    assertSame(BC_LOCAL_STORAGE.INSTANCE, BC_STORAGE.of("/mnt/db"));
+    assertEquals("/mnt/db", BC_STORAGE.of("file:///mnt/db").local_path("file:///mnt/db"));
+    assertEquals("/mnt/db", BC_STORAGE.of("/mnt/db").local_path("/mnt/db"));
+    assertNull(BC_STORAGE.of("gs://nt").local_path("gs://nt"));
+    assertNull(BC_LOCAL_STORAGE.INSTANCE.local_path("http://host/db"));
+    assertNull(BC_LOCAL_STORAGE.INSTANCE.local_path(""));
+  }
+
+  @Test
+  public void testListOpenDownload() throws Exception {
+    final File src = tempfolder.newFolder("src");
+    final byte[] seq = new byte[100000];
+    for (int i = 0; i < seq.length; ++i) {
+      seq[i] = (byte) (i % 7);
+    }
+    write(new File(src, "nt_50M.00.nin"), new byte[] {1, 2, 3});
+    write_gz(new File(src, "nt_50M.00.nsq.gz"), seq);
+
+    final String url = "file://" + src.getAbsolutePath();
+    final Map<String, BC_NAME_SIZE> listed = new HashMap<>();
+    for (final BC_NAME_SIZE ns : BC_STORAGE.of(url).list(url)) {
+      listed.put(ns.name, ns);
+    }
+    assertEquals(2, listed.size());
+    assertEquals(3, listed.get("nt_50M.00.nin").size.longValue());
+    final BC_NAME_SIZE gz = listed.get("nt_50M.00.nsq.gz");
+    assertTrue(gz.compressed());
+    assertEquals(seq.length, gz.size.longValue());
+    assertTrue(gz.generation > 0);
+
+    try (InputStream is = BC_STORAGE.of(url).open(url + "/nt_50M.00.nin")) {
+      assertNotNull(is);
+      assertEquals(1, is.read());
+    }
+    assertEquals(-1, BC_STORAGE.of(url).generation(url + "/missing"));
+
+    final File dst = new File(tempfolder.newFolder("dst"), "nt_50M.00.nsq");
+    assertTrue(BC_STORAGE.of(url).download(url + "/nt_50M.00.nsq.gz", dst.getPath(), 0, 1, 0));
+    assertArrayEquals(seq, Files.readAllBytes(dst.toPath()));
+  }
+
+  @Test
+  public void testInPlace() throws Exception {
+    final File src = tempfolder.newFolder("mnt");
+    write(new File(src, "nt_50M.00.nin"), new byte[] {1, 2, 3});
+    write(new File(src, "nt_50M.00.nsq"), new byte[] {1, 2, 3, 4});
+
+    final BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    setting.source_location = src.getAbsolutePath();
+    setting.worker_location = tempfolder.newFolder("worker").getAbsolutePath();
+    setting.extensions.add("nin");
+    setting.extensions.add("nsq");
+    assertTrue(setting.local_source());
+
+    final List<BC_CHUNK_VALUES> chunks =
+        BC_GCP_TOOLS.unique_by_extension(
+            BC_STORAGE.of(setting.source_location).list(setting.source_location),
+            setting.extensions);
+    assertEquals(1, chunks.size());
+    assertTrue(setting.in_place(chunks));
+
+    final BC_DATABASE_RDD_ENTRY entry = new BC_DATABASE_RDD_ENTRY(setting, chunks.get(0));
+    assertTrue(entry.in_place());
+    assertEquals(src.getAbsolutePath() + "/nt_50M.00", entry.worker_location());
+    assertTrue(entry.present());
+
+    final List<String> errorList = new ArrayList<>();
+    final List<String> infoList = new ArrayList<>();
+    assertTrue(entry.downloadIfAbsent(errorList, infoList));
+    assertTrue(errorList.isEmpty());
+    assertEquals(0, new File(setting.worker_location).list().length);
+
+    assertEquals(0, entry.remove(infoList));
+    assertTrue(new File(src, "nt_50M.00.nsq").exists());
+
+    final BC_CHUNK_VALUES changed = new BC_CHUNK_VALUES("nt_50M.00");
+    changed.files.add(new BC_NAME_SIZE("nsq", BigInteger.valueOf(5)));
+    final BC_DATABASE_RDD_ENTRY stale = new BC_DATABASE_RDD_ENTRY(setting, changed);
+    assertFalse(stale.downloadIfAbsent(errorList, infoList));
+    assertEquals(1, errorList.size());
+  }
+
+  @Test
+  public void testCompressedNotInPlace() throws Exception {
+    final File src = tempfolder.newFolder("mnt");
+    write(new File(src, "nt_50M.00.nin"), new byte[] {1, 2, 3});
+    write_gz(new File(src, "nt_50M.00.nsq.gz"), new byte[] {1, 2, 3, 4});
+
+    final BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    setting.source_location = src.getAbsolutePath();
+    setting.worker_location = tempfolder.newFolder("worker").getAbsolutePath();
+    setting.extensions.add("nin");
+    setting.extensions.add("nsq");
+
+    final List<BC_CHUNK_VALUES> chunks =
+        BC_GCP_TOOLS.unique_by_extension(
+            BC_STORAGE.of(setting.source_location).list(setting.source_location),
+            setting.extensions);
+    assertEquals(1, chunks.size());
+    assertTrue(setting.local_source());
+    assertFalse(setting.in_place(chunks));
+
+    final BC_DATABASE_RDD_ENTRY entry = new BC_DATABASE_RDD_ENTRY(setting, chunks.get(0));
+    assertFalse(entry.in_place());
+    final List<String> errorList = new ArrayList<>();
+    final List<String> infoList = new ArrayList<>();
+    assertTrue(entry.downloadIfAbsent(errorList, infoList));
+    assertTrue(errorList.isEmpty());
+    assertTrue(new File(entry.build_worker_path("nsq")).exists());
+
+    /* the decompressed copy is removed, the source stays */
+    assertTrue(entry.remove(infoList) > 0);
+    assertFalse(new File(entry.build_worker_path("nsq")).exists());
+    assertTrue(new File(src, "nt_50M.00.nsq.gz").exists());
+  }
+}
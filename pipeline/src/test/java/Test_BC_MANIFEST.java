@@ -0,0 +1,81 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class Test_BC_MANIFEST {
+
+  @Rule public TemporaryFolder tempfolder = new TemporaryFolder();
+
+  private static BC_DATABASE_SETTING make_setting() {
+    BC_DATABASE_SETTING setting = new BC_DATABASE_SETTING();
+    setting.key = "nt";
+    setting.source_location = "gs://nt_50mb_chunks";
+    setting.extensions.add("nsq");
+    setting.extensions.add("nin");
+    return setting;
+  }
+
+  private static List<BC_CHUNK_VALUES> make_chunks(int n) {
+    List<BC_CHUNK_VALUES> chunks = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      BC_CHUNK_VALUES chunk = new BC_CHUNK_VALUES(String.format("nt_50M.%02d", i));
+      chunk.files.add(
+          new BC_NAME_SIZE("nsq", BigInteger.valueOf(50000000L + i), "gz", 1000L + i, "md5nsq" + i));
+      chunk.files.add(new BC_NAME_SIZE("nin", BigInteger.valueOf(1024), "", 2000L + i, "md5nin" + i));
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  @Test
+  public void testWriteRead() throws Exception {
+    BC_DATABASE_SETTING setting = make_setting();
+    List<BC_CHUNK_VALUES> chunks = make_chunks(3);
+    String fn = BC_MANIFEST.filename(tempfolder.getRoot().getAbsolutePath(), setting.key);
+
+    assertTrue(BC_MANIFEST.write(fn, setting, 7, chunks));
+    BC_MANIFEST m = BC_MANIFEST.read(fn);
+    assertNotNull(m);
+    assertEquals(7, m.version);
+    assertEquals(0, m.age_minutes());
+    assertTrue(m.matches(setting));
+    assertEquals(3, m.chunks.size());
+    for (int i = 0; i < 3; i++) {
+      BC_CHUNK_VALUES a = chunks.get(i);
+      BC_CHUNK_VALUES b = m.chunks.get(i);
+      assertEquals(a.name, b.name);
+      assertEquals(a.version(), b.version());
+      assertEquals(a.files.size(), b.files.size());
+      for (int j = 0; j < a.files.size(); j++) {
+        assertEquals(a.files.get(j).name, b.files.get(j).name);
+        assertEquals(a.files.get(j).size, b.files.get(j).size);
+        assertEquals(a.files.get(j).compression, b.files.get(j).compression);
+        assertEquals(a.files.get(j).generation, b.files.get(j).generation);
+        assertEquals(a.files.get(j).md5, b.files.get(j).md5);
+      }
+    }
+  }
+
+  @Test
+  public void testMismatch() throws Exception {
+    BC_DATABASE_SETTING setting = make_setting();
+    String fn = BC_MANIFEST.filename(tempfolder.getRoot().getAbsolutePath(), setting.key);
+    assertNull(BC_MANIFEST.read(fn));
+
+    assertTrue(BC_MANIFEST.write(fn, setting, 1, make_chunks(2)));
+    setting.limit = 1;
+    assertFalse(BC_MANIFEST.read(fn).matches(setting));
+    setting.limit = 0;
+    setting.source_location = "gs://nt_50mb_chunks_gz";
+    assertFalse(BC_MANIFEST.read(fn).matches(setting));
+
+    /* a max. age of 0 disables the manifest */
+    assertFalse(BC_MANIFEST.read(fn).fresh(setting, 0, 1));
+  }
+}
@@ -0,0 +1,215 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * tests the segmented download against a local fake object-server, which serves
+ * byte-ranges of an in-memory object, throttles every stream and can fail requests
+ */
+public class Test_BC_RANGED_DOWNLOAD {
+
+  private static final int OBJECT_SIZE = 8 * 1024 * 1024 + 12345;
+  private static final int STREAM_BYTES_PER_SEC = 16 * 1024 * 1024;
+
+  private static byte[] object;
+  private static HttpServer server;
+  private static final AtomicInteger requests = new AtomicInteger(0);
+  private static final AtomicInteger active = new AtomicInteger(0);
+  private static final AtomicInteger max_active = new AtomicInteger(0);
+  private static volatile int fail_every = 0;
+  private static volatile boolean ignore_range = false;
+
+  @Rule public TemporaryFolder tempfolder = new TemporaryFolder();
+
+  /** fake object-server: 'GET /obj' with a 'Range: bytes=a-b' header */
+  static class RangeHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+      int nr = requests.incrementAndGet();
+      if (fail_every > 0 && nr % fail_every == 0) {
+        ex.sendResponseHeaders(503, -1);
+        ex.close();
+        return;
+      }
+      int first = 0;
+      int last = object.length - 1;
+      String range = ignore_range ? null : ex.getRequestHeaders().getFirst("Range");
+      if (range != null && range.startsWith("bytes=")) {
+        String[] parts = range.substring(6).split("-");
+        first = Integer.parseInt(parts[0]);
+        last = Math.min(Integer.parseInt(parts[1]), last);
+      }
+      int len = last - first + 1;
+      ex.sendResponseHeaders(range != null ? 206 : 200, len);
+      OutputStream os = ex.getResponseBody();
+      int now = active.incrementAndGet();
+      max_active.accumulateAndGet(now, Math::max);
+      try {
+        int chunk = 64 * 1024;
+        for (int pos = first; pos <= last; pos += chunk) {
+          int n = Math.min(chunk, last - pos + 1);
+          os.write(object, pos, n);
+          Thread.sleep((1000L * n) / STREAM_BYTES_PER_SEC);
+        }
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        active.decrementAndGet();
+        os.close();
+      }
+    }
+  }
+
+  /** range-source reading from the fake object-server */
+  static class HttpRangeSource implements BC_RANGED_DOWNLOAD.RANGE_SOURCE {
+    @Override
+    public InputStream open(long first, long last) throws IOException {
+      URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/obj");
+      HttpURLConnection con = (HttpURLConnection) url.openConnection();
+      con.setRequestProperty("Range", String.format("bytes=%d-%d", first, last));
+      if (con.getResponseCode() != BC_RANGED_DOWNLOAD.HTTP_PARTIAL_CONTENT) {
+        con.disconnect();
+        throw new IOException("status " + con.getResponseCode());
+      }
+      return con.getInputStream();
+    }
+  }
+
+  @BeforeClass
+  public static void startServer() throws IOException {
+    object = new byte[OBJECT_SIZE];
+    new Random(42).nextBytes(object);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+    server.createContext("/obj", new RangeHandler());
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+  }
+
+  @AfterClass
+  public static void stopServer() {
+    server.stop(0);
+  }
+
+  private void checked_download(File dst, long segment_size, int threads) throws Exception {
+    boolean ok = BC_RANGED_DOWNLOAD.download(new HttpRangeSource(), OBJECT_SIZE,
+        dst.getAbsolutePath(), segment_size, threads, 3);
+    assertTrue("download failed", ok);
+    assertArrayEquals("content differs", object, Files.readAllBytes(dst.toPath()));
+  }
+
+  @Test
+  public void testSegmentedDownload() throws Exception {
+    fail_every = 0;
+    File dst = new File(tempfolder.newFolder("seg"), "obj");
+    checked_download(dst, 1024 * 1024, 4);
+    assertEquals(OBJECT_SIZE, dst.length());
+  }
+
+  @Test
+  public void testRetryOfFailedRanges() throws Exception {
+    fail_every = 3;
+    try {
+      File dst = new File(tempfolder.newFolder("retry"), "obj");
+      checked_download(dst, 512 * 1024, 4);
+    } finally {
+      fail_every = 0;
+    }
+  }
+
+  @Test
+  public void testNotVisibleBeforeComplete() throws Exception {
+    fail_every = 0;
+    final File dst = new File(tempfolder.newFolder("visible"), "obj");
+    final long[] seen = {-1};
+    BC_RANGED_DOWNLOAD.RANGE_SOURCE src =
+        (first, last) -> {
+          /* while ranges arrive, the destination does not exist yet */
+          if (dst.exists()) {
+            seen[0] = dst.length();
+          }
+          return new HttpRangeSource().open(first, last);
+        };
+    assertTrue(
+        BC_RANGED_DOWNLOAD.download(src, OBJECT_SIZE, dst.getAbsolutePath(), 1024 * 1024, 2, 0));
+    assertEquals(-1, seen[0]);
+    assertArrayEquals(object, Files.readAllBytes(dst.toPath()));
+    assertFalse(new File(dst.getPath() + BC_RANGED_DOWNLOAD.PART_SUFFIX).exists());
+  }
+
+  @Test
+  public void testFailureRemovesFile() throws Exception {
+    fail_every = 1;
+    try {
+      File dst = new File(tempfolder.newFolder("fail"), "obj");
+      boolean ok = BC_RANGED_DOWNLOAD.download(new HttpRangeSource(), OBJECT_SIZE,
+          dst.getAbsolutePath(), 1024 * 1024, 4, 1);
+      assertFalse(ok);
+      assertFalse(dst.exists());
+      assertFalse(new File(dst.getPath() + BC_RANGED_DOWNLOAD.PART_SUFFIX).exists());
+    } finally {
+      fail_every = 0;
+    }
+  }
+
+  @Test
+  public void testConcurrentRanges() throws Exception {
+    fail_every = 0;
+    File dir = tempfolder.newFolder("tp");
+    max_active.set(0);
+    checked_download(new File(dir, "single"), OBJECT_SIZE, 1);
+    assertEquals(1, max_active.get());
+    max_active.set(0);
+    checked_download(new File(dir, "parallel"), 1024 * 1024, 8);
+    assertTrue("ranges should overlap", max_active.get() > 1);
+    assertTrue("not more ranges than threads", max_active.get() <= 8);
+  }
+
+  @Test
+  public void testIgnoredRangeFails() throws Exception {
+    ignore_range = true;
+    try {
+      File dst = new File(tempfolder.newFolder("ignored"), "obj");
+      assertFalse(BC_RANGED_DOWNLOAD.download(new HttpRangeSource(), OBJECT_SIZE,
+          dst.getAbsolutePath(), 1024 * 1024, 4, 0));
+      assertFalse(dst.exists());
+    } finally {
+      ignore_range = false;
+    }
+  }
+
+  @Test
+  public void testLongerStreamFails() throws Exception {
+    /* a source delivering the rest of the object instead of the range */
+    BC_RANGED_DOWNLOAD.RANGE_SOURCE src =
+        (first, last) ->
+            new ByteArrayInputStream(object, (int) first, object.length - (int) first);
+    File dst = new File(tempfolder.newFolder("longer"), "obj");
+    assertFalse(
+        BC_RANGED_DOWNLOAD.download(src, OBJECT_SIZE, dst.getAbsolutePath(), 1024 * 1024, 4, 0));
+    assertFalse(dst.exists());
+
+    /* the last range ends with the object, it is copied */
+    File whole = new File(tempfolder.newFolder("whole"), "obj");
+    assertTrue(
+        BC_RANGED_DOWNLOAD.download(src, OBJECT_SIZE, whole.getAbsolutePath(), OBJECT_SIZE, 1, 0));
+    assertArrayEquals(object, Files.readAllBytes(whole.toPath()));
+  }
+}
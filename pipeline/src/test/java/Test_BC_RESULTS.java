@@ -0,0 +1,98 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class Test_BC_RESULTS {
+  @Rule public TemporaryFolder tempfolder = new TemporaryFolder();
+
+  private static BC_RESULTS make_results(int n) {
+    final Random rnd = new Random(42);
+    final List<BLAST_TB_LIST> items = new ArrayList<>();
+    for (int i = 0; i < n; ++i) {
+      final byte[] blob = new byte[rnd.nextInt(300)];
+      rnd.nextBytes(blob);
+      items.add(new BLAST_TB_LIST(rnd.nextInt(100), rnd.nextInt(1000), i, blob));
+    }
+    final BC_RESULTS res = new BC_RESULTS();
+    res.add(items);
+    return res;
+  }
+
+  @Test
+  public void testStreamedEqualsBuffer() throws Exception {
+    for (int n : new int[] {0, 1, 63, 64, 200}) {
+      final BC_RESULTS results = make_results(n);
+      final byte[] expected = results.to_bytebuffer().array();
+      assertEquals(expected.length, results.size());
+
+      final File f = new File(tempfolder.getRoot(), String.format("sub/REQ_%d.asn1", n));
+      assertTrue(results.write_to_file(f.getPath()));
+      assertArrayEquals(expected, Files.readAllBytes(f.toPath()));
+
+      final ByteArrayOutputStream os = new ByteArrayOutputStream();
+      assertEquals(expected.length, results.write_to(os));
+      assertArrayEquals(expected, os.toByteArray());
+
+      final ByteArrayOutputStream ch = new ByteArrayOutputStream();
+      assertEquals(expected.length, results.write_to(Channels.newChannel(ch)));
+      assertArrayEquals(expected, ch.toByteArray());
+    }
+  }
+
+  private static int seqid = 0;
+
+  private static List<BLAST_TB_LIST> make_run(Random rnd, int n) {
+    final List<BLAST_TB_LIST> res = new ArrayList<>();
+    for (int i = 0; i < n; ++i) {
+      /* few distinct values, so the later keys break ties; the seqid is unique */
+      ++seqid;
+      res.add(new BLAST_TB_LIST(rnd.nextInt(5), rnd.nextInt(5), seqid, new byte[] {(byte) seqid}));
+    }
+    return res;
+  }
+
+  @Test
+  public void testMergeEqualsSort() {
+    final Random rnd = new Random(7);
+    for (int top_n : new int[] {0, 1, 10, 100, 10000}) {
+      final List<BLAST_TB_LIST> all = new ArrayList<>();
+      final BC_RESULTS merged = new BC_RESULTS();
+      for (int chunk = 0; chunk < 20; ++chunk) {
+        final List<BLAST_TB_LIST> run = make_run(rnd, rnd.nextInt(50));
+        all.addAll(run);
+        if (chunk % 5 != 0) {
+          BC_RESULTS.sort_run(run, top_n); /* some chunks arrive unsorted */
+        }
+        merged.add(run);
+      }
+      merged.merge(top_n);
+
+      Collections.sort(all);
+      final BC_RESULTS expected = new BC_RESULTS();
+      expected.add(all.subList(0, Math.min(top_n, all.size())));
+      assertArrayEquals(expected.to_bytebuffer().array(), merged.to_bytebuffer().array());
+      assertEquals(Math.min(top_n, all.size()) + 16, merged.size());
+    }
+  }
+
+  @Test
+  public void testSortRun() {
+    final List<BLAST_TB_LIST> run = make_run(new Random(3), 30);
+    BC_RESULTS.sort_run(run, 10);
+    assertEquals(10, run.size());
+    for (int i = 1; i < run.size(); ++i) {
+      assertTrue(run.get(i - 1).compareTo(run.get(i)) <= 0);
+    }
+  }
+}
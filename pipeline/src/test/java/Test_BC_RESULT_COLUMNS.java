@@ -0,0 +1,73 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.*;
+
+public class Test_BC_RESULT_COLUMNS {
+  private static byte[] blob_of(int i, int len) {
+    final byte[] res = new byte[len];
+    for (int j = 0; j < len; ++j) {
+      res[j] = (byte) (i + j);
+    }
+    return res;
+  }
+
+  @Test
+  public void testRadixSortEqualsSort() {
+    final Random rnd = new Random(11);
+    final List<BLAST_TB_LIST> items = new ArrayList<>();
+    final BC_RESULT_COLUMNS columns = new BC_RESULT_COLUMNS();
+    for (int i = 0; i < 5000; ++i) {
+      /* negative, large and tied keys */
+      final int evalue = (i % 3 == 0) ? rnd.nextInt() : rnd.nextInt(7) - 3;
+      final BLAST_TB_LIST item =
+          new BLAST_TB_LIST(evalue, rnd.nextInt(4) * 100000, rnd.nextInt(), blob_of(i, i % 500));
+      items.add(item);
+      columns.add(item);
+    }
+    Collections.sort(items);
+    columns.radix_sort();
+    assertEquals(items.size(), columns.count());
+    for (int k = 0; k < items.size(); ++k) {
+      final BLAST_TB_LIST a = items.get(k);
+      final BLAST_TB_LIST b = columns.get(k);
+      assertEquals(0, a.compareTo(b));
+      assertArrayEquals(a.asn1_blob, b.asn1_blob);
+    }
+  }
+
+  @Test
+  public void testMergeRunsAndCutoff() {
+    final BC_RESULT_COLUMNS columns = new BC_RESULT_COLUMNS();
+    /* runs [ 9 5 1 ] [ ] [ 8 6 ] [ 7 ] by evalue */
+    final int[][] runs = {{9, 5, 1}, {}, {8, 6}, {7}};
+    final int[] starts = new int[runs.length];
+    for (int r = 0; r < runs.length; ++r) {
+      starts[r] = columns.size();
+      for (int e : runs[r]) {
+        columns.add(e, 0, 0, blob_of(e, 3));
+      }
+      assertTrue(columns.sorted(starts[r], columns.size()));
+    }
+    columns.merge_runs(starts, 4);
+    assertEquals(4, columns.count());
+    final int[] expected = {9, 8, 7, 6};
+    for (int k = 0; k < 4; ++k) {
+      assertEquals(expected[k], columns.get(k).evalue);
+      final ByteBuffer b = columns.blob(k);
+      assertEquals(3, b.remaining());
+      assertEquals((byte) expected[k], b.get(0));
+    }
+    assertEquals(12, columns.blob_bytes());
+    columns.cutoff(2);
+    assertEquals(2, columns.count());
+    columns.cutoff(10);
+    assertEquals(2, columns.count());
+  }
+}
@@ -0,0 +1,180 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import org.junit.*;
+
+public class Test_BC_RESULT_FORMAT {
+  /* traceback-blobs of lib_builder/blast_json.traceback.expected */
+  private static final String BLOB_1 =
+      "3080a0800a01030000a1800201020000a28031803080a080a1801a0573636f726500000000a180a1"
+          + "80020403fe56ea0000000000003080a080a1801a0b626c6173745f73636f726500000000a180a180"
+          + "020403fe56ea0000000000003080a080a1801a07655f76616c756500000000a180a0800902003000"
+          + "00000000003080a080a1801a096269745f73636f726500000000a180a08009110032353830383339"
+          + "322e333733303737310000000000003080a080a1801a096e756d5f6964656e7400000000a180a180"
+          + "02010f0000000000003080a080a1801a16636f6d705f61646a7573746d656e745f6d6574686f6400"
+          + "000000a180a1800201010000000000003080a080a1801a0d6e756d5f706f73697469766573000000"
+          + "00a180a1800201230000000000003080a080a1801a146873705f70657263656e745f636f76657261"
+          + "676500000000a180a08009110031382e3933333137393732333530323300000000000000000000a3"
+          + "80a1803080a0800201020000a1800201010000a2803080a080a1801a0b51756572795f3930323636"
+          + "00000000ab8002041dd02036000000000000a3803080020201e7020200a900000000a48030800202"
+          + "00a200000000a58030800a01000a0100000000000000000000000000";
+  private static final String BLOB_2 =
+      "3080a0800a01030000a1800201020000a28031803080a080a1801a0573636f726500000000a180a1"
+          + "8002040187ff940000000000003080a080a1801a0b626c6173745f73636f726500000000a180a180"
+          + "02040187ff940000000000003080a080a1801a07655f76616c756500000000a180a0800902003000"
+          + "00000000003080a080a1801a096269745f73636f726500000000a180a08009110039383935373833"
+          + "2e32353433343733390000000000003080a080a1801a096e756d5f6964656e7400000000a180a180"
+          + "0201000000000000003080a080a1801a16636f6d705f61646a7573746d656e745f6d6574686f6400"
+          + "000000a180a1800201020000000000003080a080a1801a146873705f70657263656e745f636f7665"
+          + "7261676500000000a180a080091100312e3139313234343233393633313334000000000000000000"
+          + "00a380a1803080a0800201020000a18002010b0000a2803080a080a1801a0b51756572795f393032"
+          + "363600000000ab8002041dd00087000000000000a38030800202028d020202130201ff0202021402"
+          + "02028e020202190201ff0202021a0202028f0202022a0201ff0202022b020202900202023d0201ff"
+          + "0202023e02020291020202430201ff02020246020202940202025200000000a48030800201010201"
+          + "0502010102011002010102011202010102010502010302010c02010100000000a58030800a01000a"
+          + "01000a01000a01000a01000a01000a01000a01000a01000a01000a01000a01000a01000a01000a01"
+          + "000a01000a01000a01000a01000a01000a01000a0100000000000000000000000000";
+
+  private static byte[] unhex(String s) {
+    final byte[] res = new byte[s.length() / 2];
+    for (int i = 0; i < res.length; ++i)
+      res[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+    return res;
+  }
+
+  @Test
+  public void testDecodeUngapped() {
+    final List<BC_RESULT_FORMAT.HIT> hits = BC_RESULT_FORMAT.decode(unhex(BLOB_1));
+    assertEquals(1, hits.size());
+    final BC_RESULT_FORMAT.HIT h = hits.get(0);
+    assertEquals("Query_90266", h.qseqid);
+    assertEquals("gi|500178998", h.sseqid);
+    assertEquals(162, h.length);
+    assertEquals(147, h.mismatch);
+    assertEquals(0, h.gapopen);
+    assertEquals(488, h.qstart);
+    assertEquals(649, h.qend);
+    assertEquals(170, h.sstart);
+    assertEquals(331, h.send);
+    assertEquals(25808392.3730771, h.bitscore, 1e-6);
+    assertEquals(
+        "Query_90266\tgi|500178998\t9.259\t162\t147\t0\t488\t649\t170\t331\t0.0\t25808392.4\n",
+        BC_RESULT_FORMAT.tabular(h));
+  }
+
+  @Test
+  public void testTabularIgnoresLocale() {
+    final BC_RESULT_FORMAT.HIT h = BC_RESULT_FORMAT.decode(unhex(BLOB_1)).get(0);
+    final Locale saved = Locale.getDefault();
+    try {
+      /* a comma-decimal locale */
+      Locale.setDefault(Locale.GERMANY);
+      assertEquals(
+          "Query_90266\tgi|500178998\t9.259\t162\t147\t0\t488\t649\t170\t331\t0.0"
+              + "\t25808392.4\n",
+          BC_RESULT_FORMAT.tabular(h));
+      h.evalue = 1.5e-20;
+      assertTrue(BC_RESULT_FORMAT.tabular(h).contains("\t1.50e-20\t"));
+    } finally {
+      Locale.setDefault(saved);
+    }
+  }
+
+  @Test
+  public void testDecodeGapped() {
+    final List<BC_RESULT_FORMAT.HIT> hits = BC_RESULT_FORMAT.decode(unhex(BLOB_2));
+    assertEquals(1, hits.size());
+    final BC_RESULT_FORMAT.HIT h = hits.get(0);
+    assertEquals("gi|500170887", h.sseqid);
+    assertEquals(64, h.length);
+    assertEquals(5, h.gapopen);
+    assertEquals(8, h.mismatch);
+    assertEquals(654, h.qstart);
+    assertEquals(661, h.qend);
+    assertEquals(532, h.sstart);
+    assertEquals(595, h.send);
+  }
+
+  @Test
+  public void testJsonAndConcatenatedBlobs() {
+    final byte[] b1 = unhex(BLOB_1);
+    final byte[] b2 = unhex(BLOB_2);
+    final byte[] both = Arrays.copyOf(b1, b1.length + b2.length);
+    System.arraycopy(b2, 0, both, b1.length, b2.length);
+
+    final byte[][] res =
+        BC_RESULT_FORMAT.render(both, Arrays.asList(BC_RESULT_FORMAT.JSON, BC_RESULT_FORMAT.TABULAR));
+    assertEquals(2, res.length);
+    final String[] lines = new String(res[0], StandardCharsets.UTF_8).split("\n");
+    assertEquals(2, lines.length);
+    final JsonObject o = new JsonParser().parse(lines[1]).getAsJsonObject();
+    assertEquals("gi|500170887", o.get("sseqid").getAsString());
+    assertEquals(64, o.get("length").getAsInt());
+    assertEquals(2, new String(res[1], StandardCharsets.UTF_8).split("\n").length);
+  }
+
+  @Test
+  public void testInvalidBlob() {
+    final byte[] b = unhex(BLOB_1);
+    assertTrue(BC_RESULT_FORMAT.decode(Arrays.copyOf(b, b.length / 2)).isEmpty());
+    assertEquals(0, BC_RESULT_FORMAT.render(b, Collections.<String>emptyList()).length);
+    assertEquals(
+        Arrays.asList("tabular", "json"),
+        BC_RESULT_FORMAT.text_formats(Arrays.asList("asn1", "tabular", "json", "tabular")));
+  }
+
+  @Test
+  public void testUnknownFormats() {
+    assertTrue(BC_RESULT_FORMAT.known("asn1"));
+    assertFalse(BC_RESULT_FORMAT.known("tab"));
+    assertNull(BC_RESULT_FORMAT.first_unknown(Arrays.asList("asn1", "tabular", "json")));
+    assertEquals("asn", BC_RESULT_FORMAT.first_unknown(Arrays.asList("tabular", "asn", "tab")));
+
+    final BC_REQUEST req = new BC_REQUEST();
+    req.id = "REQ1";
+    req.db = "nt";
+    req.program = "blastn";
+    req.top_n_prelim = 10;
+    req.top_n_traceback = 10;
+    req.query_seq = "ACGT";
+    assertTrue(req.valid());
+    req.formats.add("tab");
+    assertFalse(req.valid());
+  }
+
+  @Test
+  public void testEffectiveFormatsLeaveRequest() {
+    final List<String> defaults = Arrays.asList("asn1", "json");
+    final List<String> requested = new ArrayList<>();
+    assertEquals(defaults, BC_RESULT_FORMAT.effective(requested, defaults));
+    assertTrue(requested.isEmpty());
+    requested.add("tabular");
+    assertEquals(requested, BC_RESULT_FORMAT.effective(requested, defaults));
+  }
+
+  @Test
+  public void testTextFollowsOrder() throws Exception {
+    final BC_RESULTS results = new BC_RESULTS();
+    results.add(
+        Arrays.asList(
+            new BLAST_TB_LIST(5, 1, 1, new byte[] {1}), new BLAST_TB_LIST(3, 1, 2, new byte[] {2})),
+        Arrays.asList(new byte[][] {"a\n".getBytes()}, new byte[][] {"b\n".getBytes()}));
+    results.add(
+        Arrays.asList(new BLAST_TB_LIST(4, 1, 3, new byte[] {3})),
+        Arrays.asList(new byte[][][] {{"c\n".getBytes()}}));
+    results.merge(2);
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    results.write_text_to(0, os);
+    assertEquals("a\nc\n", os.toString("UTF-8"));
+  }
+}
@@ -0,0 +1,120 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class Test_BC_RESULT_LOG {
+  @Rule public TemporaryFolder tempfolder = new TemporaryFolder();
+
+  private static byte[] extract(String dir, String rid, String kind) throws Exception {
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    if (!BC_RESULT_LOG.extract(dir, rid, kind, os)) return null;
+    return os.toByteArray();
+  }
+
+  private static BC_RESULTS make_results(int n) {
+    final List<BLAST_TB_LIST> items = new ArrayList<>();
+    for (int i = 0; i < n; ++i)
+      items.add(new BLAST_TB_LIST(i, 100 - i, i, new byte[] {(byte) i, 1, 2, 3}));
+    final BC_RESULTS res = new BC_RESULTS();
+    res.add(items);
+    res.merge(0 < n ? n : 1);
+    return res;
+  }
+
+  @Test
+  public void testAppendAndExtract() throws Exception {
+    final String dir = tempfolder.getRoot().getPath();
+    final BC_RESULT_LOG log = new BC_RESULT_LOG(dir, 1, null);
+    final byte[] big = new byte[700 * 1024];
+    Arrays.fill(big, (byte) 7);
+    for (int i = 0; i < 4; ++i) assertTrue(log.append("REQ" + i, BC_RESULT_LOG.KIND_ASN1, big));
+    assertTrue(log.append("REQ1", BC_RESULT_LOG.KIND_TXT, Arrays.asList("a", "b")));
+    final BC_RESULTS results = make_results(5);
+    assertTrue(log.append("REQ9", results));
+
+    /* the index is written in batches, extract scans the open segment */
+    assertArrayEquals(big, extract(dir, "REQ2", BC_RESULT_LOG.KIND_ASN1));
+    log.close();
+
+    assertEquals(4, BC_RESULT_LOG.segments(dir).size());
+    for (File seg : BC_RESULT_LOG.segments(dir))
+      assertTrue(new File(seg.getPath().replace(".seg", ".idx")).exists());
+    assertArrayEquals(big, extract(dir, "REQ3", BC_RESULT_LOG.KIND_ASN1));
+    assertEquals(
+        "a\nb\n", new String(extract(dir, "REQ1", BC_RESULT_LOG.KIND_TXT), StandardCharsets.UTF_8));
+    assertArrayEquals(results.to_bytebuffer().array(), extract(dir, "REQ9", BC_RESULT_LOG.KIND_ASN1));
+    assertNull(extract(dir, "REQ1", BC_RESULT_LOG.KIND_ERRORS));
+    assertNull(extract(dir, "REQ5", BC_RESULT_LOG.KIND_ASN1));
+  }
+
+  @Test
+  public void testContinuesAfterLastSegment() throws Exception {
+    final String dir = tempfolder.getRoot().getPath();
+    BC_RESULT_LOG log = new BC_RESULT_LOG(dir, 1, null);
+    assertTrue(log.append("A", BC_RESULT_LOG.KIND_TXT, new byte[] {1}));
+    log.close();
+    log = new BC_RESULT_LOG(dir, 1, null);
+    assertTrue(log.append("A", BC_RESULT_LOG.KIND_TXT, new byte[] {2}));
+    log.close();
+    assertEquals(2, BC_RESULT_LOG.segments(dir).size());
+    /* the last one written wins */
+    assertArrayEquals(new byte[] {2}, extract(dir, "A", BC_RESULT_LOG.KIND_TXT));
+  }
+
+  @Test
+  public void testLatestOfKind() throws Exception {
+    final String dir = tempfolder.getRoot().getPath();
+    BC_RESULT_LOG log = new BC_RESULT_LOG(dir, 1, null);
+    assertTrue(log.append("A", BC_RESULT_LOG.KIND_CHUNKS, Arrays.asList("{\"chunk\":\"a1\"}")));
+    assertTrue(log.append("B", BC_RESULT_LOG.KIND_CHUNKS, Arrays.asList("{\"chunk\":\"b\"}")));
+    assertTrue(log.append("B", BC_RESULT_LOG.KIND_TXT, Arrays.asList("txt")));
+    log.close();
+    log = new BC_RESULT_LOG(dir, 1, null);
+    assertTrue(log.append("A", BC_RESULT_LOG.KIND_CHUNKS, Arrays.asList("{\"chunk\":\"a2\"}")));
+    log.close();
+
+    final Map<String, BC_RESULT_LOG.LOCATION> chunks =
+        BC_RESULT_LOG.latest(dir, BC_RESULT_LOG.KIND_CHUNKS);
+    assertEquals(Arrays.asList("A", "B"), new ArrayList<>(chunks.keySet()));
+    assertEquals(
+        "{\"chunk\":\"a2\"}\n",
+        new String(BC_RESULT_LOG.read(chunks.get("A")), StandardCharsets.UTF_8));
+    assertEquals(
+        "{\"chunk\":\"b\"}\n",
+        new String(BC_RESULT_LOG.read(chunks.get("B")), StandardCharsets.UTF_8));
+    assertEquals(1, BC_RESULT_LOG.latest(dir, BC_RESULT_LOG.KIND_TXT).size());
+  }
+
+  @Test
+  public void testAppendRecords() throws Exception {
+    final String dir = tempfolder.getRoot().getPath();
+    final BC_RESULT_LOG log = new BC_RESULT_LOG(dir, 1, null);
+    final BC_CHUNK_RECORD a = new BC_CHUNK_RECORD();
+    a.chunk = "nt_50M.00";
+    a.search_ms = 12;
+    final BC_CHUNK_RECORD b = new BC_CHUNK_RECORD();
+    b.chunk = "nt_50M.01";
+    b.download = BC_CHUNK_RECORD.DL_PEER;
+    assertTrue(log.append_records("R", Arrays.asList(a, b)));
+    log.close();
+
+    final String[] lines =
+        new String(
+                BC_RESULT_LOG.read(BC_RESULT_LOG.latest(dir, BC_RESULT_LOG.KIND_CHUNKS).get("R")),
+                StandardCharsets.UTF_8)
+            .split("\n");
+    assertEquals(2, lines.length);
+    assertEquals(12, BC_CHUNK_RECORD.from_json(lines[0]).search_ms);
+    assertEquals(BC_CHUNK_RECORD.DL_PEER, BC_CHUNK_RECORD.from_json(lines[1]).download);
+  }
+}
@@ -0,0 +1,75 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class Test_BC_RESULT_UPLOADER {
+  @Rule public TemporaryFolder tempfolder = new TemporaryFolder();
+
+  @Test
+  public void testObjectName() {
+    assertEquals(
+        "results/REQ_1.asn1", BC_RESULT_UPLOADER.object_name("results/%s", "report/REQ_1.asn1"));
+    assertEquals(
+        "run7/REQ_1.txt.done", BC_RESULT_UPLOADER.object_name("/run7/%s.done", "/tmp/REQ_1.txt"));
+    assertEquals("REQ_1.txt", BC_RESULT_UPLOADER.object_name("/%s", "REQ_1.txt"));
+  }
+
+  @Test
+  public void testDisabled() {
+    final BC_SETTINGS settings = new BC_SETTINGS();
+    settings.res_gs_bucket = "gs://results";
+    final BC_RESULT_UPLOADER uploader = new BC_RESULT_UPLOADER(settings);
+    assertFalse(uploader.enabled());
+    assertFalse(uploader.upload("REQ_1.asn1"));
+    assertTrue(uploader.report().contains("0 uploaded"));
+    uploader.close();
+  }
+
+  @Test
+  public void testFullQueueDefers() throws Exception {
+    final BC_SETTINGS settings = new BC_SETTINGS();
+    settings.res_use_gs_bucket = true;
+    settings.res_gs_bucket = "gs://results";
+    settings.res_gs_pattern = "%s";
+    settings.res_upload_threads = 1;
+    settings.res_upload_queue = 1;
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> names = new CopyOnWriteArrayList<>();
+    final BC_RESULT_UPLOADER uploader =
+        new BC_RESULT_UPLOADER(
+            settings,
+            (bucket, name, filename) -> {
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                return -1;
+              }
+              names.add(name);
+              return new File(filename).length();
+            });
+    assertTrue(uploader.enabled());
+
+    /* one running, one queued, the others deferred */
+    for (int i = 0; i < 5; ++i) {
+      final File f = tempfolder.newFile("REQ_" + i + ".asn1");
+      assertTrue(uploader.upload(f.getPath()));
+    }
+    assertTrue(uploader.report(), uploader.report().contains("3 deferred"));
+
+    release.countDown();
+    uploader.close();
+    assertEquals(5, names.size());
+    for (int i = 0; i < 5; ++i) {
+      assertTrue(names.contains("REQ_" + i + ".asn1"));
+    }
+    assertTrue(uploader.report(), uploader.report().contains("0 deferred, 5 uploaded"));
+  }
+}
@@ -0,0 +1,85 @@
+package gov.nih.nlm.ncbi.blastjni;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class Test_BC_RESULT_WRITER {
+  @Rule public TemporaryFolder tempfolder = new TemporaryFolder();
+
+  private static byte[] gunzip(File f) throws Exception {
+    final ByteArrayOutputStream res = new ByteArrayOutputStream();
+    try (InputStream is = new GZIPInputStream(new FileInputStream(f))) {
+      final byte[] buf = new byte[4096];
+      int n;
+      while ((n = is.read(buf)) > 0) res.write(buf, 0, n);
+    }
+    return res.toByteArray();
+  }
+
+  @Test
+  public void testGzipRoundTrip() throws Exception {
+    final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+    final BC_RESULT_WRITER writer = new BC_RESULT_WRITER("gzip", 6, 2, written::add);
+    final BC_RESULT_WRITER.STATS stats = new BC_RESULT_WRITER.STATS();
+    final Random rnd = new Random(3);
+    final List<byte[]> contents = new ArrayList<>();
+    for (int i = 0; i < 5; ++i) {
+      /* compressible: few distinct bytes */
+      final byte[] b = new byte[100000 * i];
+      for (int j = 0; j < b.length; ++j) b[j] = (byte) ('a' + rnd.nextInt(4));
+      contents.add(b);
+      final String name =
+          writer.write(
+              new File(tempfolder.getRoot(), "sub/REQ_" + i + ".asn1").getPath(),
+              os -> os.write(b),
+              stats);
+      assertTrue(name.endsWith(".asn1.gz"));
+    }
+    writer.write(
+        new File(tempfolder.getRoot(), "REQ.txt").getPath(),
+        BC_RESULT_WRITER.lines(Arrays.asList("a", "b")),
+        null);
+    writer.close();
+
+    assertEquals(6, written.size());
+    long raw = 0;
+    for (int i = 0; i < 5; ++i) {
+      assertArrayEquals(
+          contents.get(i),
+          gunzip(new File(tempfolder.getRoot(), "sub/REQ_" + i + ".asn1.gz")));
+      raw += contents.get(i).length;
+    }
+    assertEquals("a\nb\n", new String(gunzip(new File(tempfolder.getRoot(), "REQ.txt.gz")), "UTF-8"));
+    assertEquals(raw, stats.raw_bytes());
+    assertTrue(stats.written_bytes() < raw / 2);
+    assertTrue(stats.report("gzip").startsWith("output: 5 files"));
+  }
+
+  @Test
+  public void testUncompressed() throws Exception {
+    final BC_RESULT_WRITER writer = new BC_RESULT_WRITER("none", 6, 1, null);
+    final BC_RESULT_WRITER.STATS stats = new BC_RESULT_WRITER.STATS();
+    final String name =
+        writer.write(
+            new File(tempfolder.getRoot(), "REQ.txt").getPath(),
+            BC_RESULT_WRITER.lines(Arrays.asList("x")),
+            stats);
+    writer.close();
+    assertArrayEquals("x\n".getBytes("UTF-8"), Files.readAllBytes(new File(name).toPath()));
+    assertEquals(2, stats.raw_bytes());
+    assertEquals(2, stats.written_bytes());
+  }
+}
@@ -99,4 +99,20 @@ public class Test_BC_SETTINGS_READER {
 
     System.out.println(res.toString());
   }
+
+  @Test
+  public void test_read_database_setting() {
+    BC_DATABASE_SETTING db =
+        BC_SETTINGS_READER.read_database_setting(
+            "{ \"key\" : \"nr\", \"source_location\" : \"gs://nr_50mb_chunks\","
+                + " \"extensions\" : [ \"psq\", \"pin\", \"phr\" ], \"limit\" : 5 }");
+    assertNotNull(db);
+    assertEquals("nr", db.key);
+    assertEquals("gs://nr_50mb_chunks", db.source_location);
+    assertEquals(3, db.extensions.size());
+    assertEquals(5, db.limit);
+    assertTrue(db.valid());
+
+    assertNull(BC_SETTINGS_READER.read_database_setting("no-such-file.json"));
+  }
 }
@@ -1,5 +1,5 @@
-"""Parse *.txt files in the report directory sorted by modificaion time and
-report the number of searches against a chunk that were done on a different
+"""Parse *.chunks.json files in the report directory sorted by modificaion time
+and report the number of searches against a chunk that were done on a different
 worker node than for the previous search.
 
 It must be run in the report directory.
@@ -13,11 +13,14 @@ were searched on a different node than in the prevoius search, search time.
 
 import os
 from collections import defaultdict
+import gzip
+import json
 import sys
 
 if __name__ == '__main__':
 
-    files = [f for f in os.listdir('.') if f.endswith('.txt')]
+    suffixes = ('.chunks.json', '.chunks.json.gz')
+    files = [f for f in os.listdir('.') if f.endswith(suffixes)]
     files.sort(key=os.path.getmtime)
 
     d = defaultdict(str)
@@ -25,21 +28,22 @@ if __name__ == '__main__':
     for fname in files:
         deltas = 0
         runtime = 0
-        with open(fname) as f:
+        opener = gzip.open if fname.endswith('.gz') else open
+        with opener(fname, 'rt') as f:
             for line in f:
-                if 'search' not in line and 'traceback' not in line:
+                if not line.strip():
                     continue
 
-                fields = line.rstrip().split()
-                host = fields[0][:-1]
-                db = fields[1]
-                chunk_time = int(fields[7])
+                # one execution-record per chunk, or per OID-range of a chunk
+                rec = json.loads(line)
+                host = rec['worker']
+                db = '{}[{}]'.format(rec['chunk'], rec.get('part', 0))
+                chunk_time = rec['search_ms'] + rec['traceback_ms']
                 runtime += chunk_time
-                
+
                 if d[db] != host:
                     deltas += 1
                     d[db] = host
 
         print('{}\t{}\t{}\t{}'.format(count, fname, deltas, runtime))
         count += 1
-